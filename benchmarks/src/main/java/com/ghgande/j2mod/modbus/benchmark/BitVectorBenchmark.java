@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.util.BitVector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating and reading <tt>BitVector</tt> instances of the given
+ * number of bits, up to the 2000 coils a single read can return.
+ *
+ * <p>
+ * Run with <tt>-prof gc</tt> to see the bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitVectorBenchmark {
+
+    @Param({"16", "256", "2000"})
+    public int size;
+
+    private byte[] data;
+    private BitVector bits;
+    private long[] words;
+
+    @Setup
+    public void setUp() {
+        data = new byte[(size + 7) / 8];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)(i * 37 + 5);
+        }
+        bits = BitVector.createBitVector(data, size);
+        words = new long[(size + 63) / 64];
+    }
+
+    @Benchmark
+    public BitVector createBitVector() {
+        return BitVector.createBitVector(data, size);
+    }
+
+    @Benchmark
+    public int getBit() {
+        int set = 0;
+        for (int i = 0; i < size; i++) {
+            if (bits.getBit(i)) {
+                set++;
+            }
+        }
+        return set;
+    }
+
+    @Benchmark
+    public BitVector setBit() {
+        for (int i = 0; i < size; i++) {
+            bits.setBit(i, (i & 3) == 0);
+        }
+        return bits;
+    }
+
+    @Benchmark
+    public long[] getBits() {
+        bits.getBits(words);
+        return words;
+    }
+
+    @Benchmark
+    public byte[] getBytes() {
+        return bits.getBytes();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.Modbus;
+
+/**
+ * Sample data sections of a request and a response for every function
+ * code j2mod supports, as they appear on the wire after the function code.
+ * Most are the examples given in the Modbus application protocol
+ * specification.
+ */
+final class CodecFixtures {
+
+    private CodecFixtures() {
+    }
+
+    /**
+     * Returns the data of a request
+     *
+     * @param functionCode the function code.
+     *
+     * @return Data bytes
+     */
+    static byte[] requestData(int functionCode) {
+        switch (functionCode) {
+            case Modbus.READ_COILS:
+            case Modbus.READ_INPUT_DISCRETES:
+                return hex("0013 0013");
+            case Modbus.READ_MULTIPLE_REGISTERS:
+            case Modbus.READ_INPUT_REGISTERS:
+                return hex("006B 007D");
+            case Modbus.WRITE_COIL:
+                return hex("00AC FF00");
+            case Modbus.WRITE_SINGLE_REGISTER:
+                return hex("0001 0003");
+            case Modbus.READ_EXCEPTION_STATUS:
+            case Modbus.READ_COMM_EVENT_COUNTER:
+            case Modbus.READ_COMM_EVENT_LOG:
+            case Modbus.REPORT_SLAVE_ID:
+                return new byte[0];
+            case Modbus.READ_SERIAL_DIAGNOSTICS:
+                return hex("0000 A537");
+            case Modbus.WRITE_MULTIPLE_COILS:
+                return hex("0013 000A 02 CD01");
+            case Modbus.WRITE_MULTIPLE_REGISTERS:
+                return hex("0001 0002 04 000A 0102");
+            case Modbus.READ_FILE_RECORD:
+                return hex("0E 06 0004 0001 0002 06 0003 0009 0002");
+            case Modbus.WRITE_FILE_RECORD:
+                return hex("0D 06 0004 0007 0003 06AF 04BE 100D");
+            case Modbus.MASK_WRITE_REGISTER:
+                return hex("0004 00F2 0025");
+            case Modbus.READ_WRITE_MULTIPLE:
+                return hex("0003 0006 000E 0003 06 00FF 00FF 00FF");
+            case Modbus.READ_FIFO_QUEUE:
+                return hex("04DE");
+            case Modbus.READ_MEI:
+                return hex("0E 01 00");
+            default:
+                throw new IllegalArgumentException("No sample for function code " + functionCode);
+        }
+    }
+
+    /**
+     * Returns the data of a response
+     *
+     * @param functionCode the function code.
+     *
+     * @return Data bytes
+     */
+    static byte[] responseData(int functionCode) {
+        switch (functionCode) {
+            case Modbus.READ_COILS:
+            case Modbus.READ_INPUT_DISCRETES:
+                return hex("03 CD6B05");
+            case Modbus.READ_MULTIPLE_REGISTERS:
+            case Modbus.READ_INPUT_REGISTERS:
+                return registers(125);
+            case Modbus.WRITE_COIL:
+                return hex("00AC FF00");
+            case Modbus.WRITE_SINGLE_REGISTER:
+                return hex("0001 0003");
+            case Modbus.READ_EXCEPTION_STATUS:
+                return hex("6D");
+            case Modbus.READ_SERIAL_DIAGNOSTICS:
+                return hex("0000 A537");
+            case Modbus.READ_COMM_EVENT_COUNTER:
+                return hex("FFFF 0108");
+            case Modbus.READ_COMM_EVENT_LOG:
+                return hex("08 0000 0108 0121 2000");
+            case Modbus.WRITE_MULTIPLE_COILS:
+                return hex("0013 000A");
+            case Modbus.WRITE_MULTIPLE_REGISTERS:
+                return hex("0001 0002");
+            case Modbus.REPORT_SLAVE_ID:
+                return hex("05 01 FF 6A326D");
+            case Modbus.READ_FILE_RECORD:
+                return hex("0C 05 06 0DFE 0020 05 06 33CD 0040");
+            case Modbus.WRITE_FILE_RECORD:
+                return hex("0D 06 0004 0007 0003 06AF 04BE 100D");
+            case Modbus.MASK_WRITE_REGISTER:
+                return hex("0004 00F2 0025");
+            case Modbus.READ_WRITE_MULTIPLE:
+                return hex("0C 00FE 0ACD 0001 0003 000D 00FF");
+            case Modbus.READ_FIFO_QUEUE:
+                return hex("0006 0002 01B8 1284");
+            case Modbus.READ_MEI:
+                return hex("0E 01 01 00 00 01 00 05 6A326D6F64");
+            default:
+                throw new IllegalArgumentException("No sample for function code " + functionCode);
+        }
+    }
+
+    /**
+     * Returns the data of a read registers response
+     *
+     * @param count the number of registers.
+     *
+     * @return Data bytes
+     */
+    static byte[] registers(int count) {
+        byte[] data = new byte[count * 2 + 1];
+        data[0] = (byte)(count * 2);
+        for (int i = 0; i < count; i++) {
+            data[i * 2 + 1] = (byte)(i >> 8);
+            data[i * 2 + 2] = (byte)i;
+        }
+        return data;
+    }
+
+    /**
+     * Converts hex digits, ignoring spaces, into bytes
+     *
+     * @param digits the hex digits.
+     *
+     * @return Bytes
+     */
+    static byte[] hex(String digits) {
+        String compact = digits.replace(" ", "");
+        byte[] data = new byte[compact.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)Integer.parseInt(compact.substring(i * 2, i * 2 + 2), 16);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
+import com.ghgande.j2mod.modbus.io.ModbusTransaction;
+import com.ghgande.j2mod.modbus.io.ModbusUDPTransaction;
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.net.UDPMasterConnection;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One session of a <tt>LoadGenerator</tt>: a master connection of its own
+ * that sends requests until the run is over.
+ *
+ * <p>
+ * When the generator has a rate, each request is due at a fixed interval
+ * after the one before and its latency is measured from when it was due,
+ * so that a slow slave can't hide its delays by holding up the requests
+ * behind them. Without a rate, the next request goes as soon as the previous
+ * response arrives.
+ */
+final class LoadClient implements Runnable {
+
+    private final LoadGenerator generator;
+    private final LoadStatistics statistics;
+    private final Random random;
+    private final int index;
+    private TCPMasterConnection tcpConnection;
+    private UDPMasterConnection udpConnection;
+    private ModbusTransaction transaction;
+
+    /**
+     * Creates a client
+     *
+     * @param generator  Settings of the run
+     * @param statistics Statistics to record the transactions in
+     * @param index      Number of the client, from 0
+     */
+    LoadClient(LoadGenerator generator, LoadStatistics statistics, int index) {
+        this.generator = generator;
+        this.statistics = statistics;
+        this.random = new Random(index);
+        this.index = index;
+    }
+
+    @Override
+    public void run() {
+        try {
+            connect();
+            if (!generator.awaitStart()) {
+                return;
+            }
+
+            // Spread the first requests of the clients over one interval
+            long interval = generator.getInterval();
+            long due = generator.getStart() + interval * index / generator.getClients();
+            while (System.nanoTime() < generator.getEnd()) {
+                if (transaction == null && !connect()) {
+                    LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+                    continue;
+                }
+                if (interval > 0) {
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                        continue;
+                    }
+                    else if (-wait > interval) {
+                        statistics.late();
+                    }
+                }
+                else {
+                    due = System.nanoTime();
+                }
+                execute(due);
+                due += interval;
+            }
+        }
+        finally {
+            close();
+        }
+    }
+
+    /**
+     * Opens the connection to the slave
+     *
+     * @return True if connected
+     */
+    private boolean connect() {
+        try {
+            if (generator.isUdp()) {
+                udpConnection = new UDPMasterConnection(generator.getAddress());
+                udpConnection.setPort(generator.getPort());
+                udpConnection.setTimeout(generator.getTimeout());
+                udpConnection.connect();
+                transaction = new ModbusUDPTransaction(udpConnection);
+            }
+            else {
+                tcpConnection = new TCPMasterConnection(generator.getAddress());
+                tcpConnection.setPort(generator.getPort());
+                tcpConnection.setTimeout(generator.getTimeout());
+                tcpConnection.connect();
+                transaction = new ModbusTCPTransaction(tcpConnection);
+            }
+            transaction.setRetries(generator.getRetries());
+            return true;
+        }
+        catch (Exception e) {
+            statistics.failed(0, "Cannot connect - " + e.getMessage());
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Closes the connection to the slave
+     */
+    private void close() {
+        if (tcpConnection != null) {
+            tcpConnection.close();
+        }
+        if (udpConnection != null) {
+            udpConnection.close();
+        }
+        tcpConnection = null;
+        udpConnection = null;
+        transaction = null;
+    }
+
+    /**
+     * Sends the next request of the mix and records the outcome
+     *
+     * @param due Time the request was due to be sent
+     */
+    private void execute(long due) {
+        int functionCode = generator.nextFunctionCode(random);
+        ModbusRequest request = createRequest(functionCode);
+        request.setUnitID(generator.nextUnitID(random));
+        transaction.setRequest(request);
+        try {
+            transaction.execute();
+            if (transaction.getResponse() == null) {
+                statistics.failed(functionCode, "No response");
+            }
+            else {
+                statistics.completed(functionCode, System.nanoTime() - due);
+            }
+        }
+        catch (ModbusSlaveException e) {
+            statistics.failed(functionCode, "Exception response - " + e.getMessage());
+        }
+        catch (ModbusException e) {
+            statistics.failed(functionCode, (isTimeout(e) ? "Timeout - " : "I/O error - ") + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a request for the function code, somewhere in the span of
+     * addresses the generator covers
+     *
+     * @param functionCode Function code
+     *
+     * @return Request
+     */
+    private ModbusRequest createRequest(int functionCode) {
+        int count = Math.min(generator.getCount(), getMaxCount(functionCode));
+        int ref = generator.getReference() + random.nextInt(Math.max(1, generator.getSpan() - count + 1));
+        switch (functionCode) {
+            case Modbus.READ_COILS:
+                return new ReadCoilsRequest(ref, count);
+            case Modbus.READ_INPUT_DISCRETES:
+                return new ReadInputDiscretesRequest(ref, count);
+            case Modbus.READ_MULTIPLE_REGISTERS:
+                return new ReadMultipleRegistersRequest(ref, count);
+            case Modbus.READ_INPUT_REGISTERS:
+                return new ReadInputRegistersRequest(ref, count);
+            case Modbus.WRITE_COIL:
+                return new WriteCoilRequest(ref, random.nextBoolean());
+            case Modbus.WRITE_SINGLE_REGISTER:
+                return new WriteSingleRegisterRequest(ref, new SimpleRegister(random.nextInt(0x10000)));
+            case Modbus.READ_EXCEPTION_STATUS:
+                return new ReadExceptionStatusRequest();
+            case Modbus.READ_COMM_EVENT_COUNTER:
+                return new ReadCommEventCounterRequest();
+            case Modbus.READ_COMM_EVENT_LOG:
+                return new ReadCommEventLogRequest();
+            case Modbus.WRITE_MULTIPLE_COILS:
+                return new WriteMultipleCoilsRequest(ref, count);
+            case Modbus.WRITE_MULTIPLE_REGISTERS:
+                Register[] registers = new Register[count];
+                for (int i = 0; i < count; i++) {
+                    registers[i] = new SimpleRegister(random.nextInt(0x10000));
+                }
+                return new WriteMultipleRegistersRequest(ref, registers);
+            case Modbus.REPORT_SLAVE_ID:
+                return new ReportSlaveIDRequest();
+            case Modbus.MASK_WRITE_REGISTER:
+                return new MaskWriteRegisterRequest(ref, random.nextInt(0x10000), random.nextInt(0x10000));
+            case Modbus.READ_WRITE_MULTIPLE:
+                return new ReadWriteMultipleRequest(0, ref, count, ref, Math.min(count, 121));
+            default:
+                throw new IllegalArgumentException("Function code " + functionCode + " is not supported");
+        }
+    }
+
+    /**
+     * Returns true if the function code is one the clients can send
+     *
+     * @param functionCode Function code
+     *
+     * @return True if supported
+     */
+    static boolean isSupported(int functionCode) {
+        return getMaxCount(functionCode) > 0;
+    }
+
+    /**
+     * Returns the most coils or registers a request with the function code
+     * can cover
+     *
+     * @param functionCode Function code
+     *
+     * @return Most coils or registers, or 0 if the function code is not supported
+     */
+    private static int getMaxCount(int functionCode) {
+        switch (functionCode) {
+            case Modbus.READ_COILS:
+            case Modbus.READ_INPUT_DISCRETES:
+                return 2000;
+            case Modbus.WRITE_MULTIPLE_COILS:
+                return 1968;
+            case Modbus.READ_MULTIPLE_REGISTERS:
+            case Modbus.READ_INPUT_REGISTERS:
+            case Modbus.READ_WRITE_MULTIPLE:
+                return 125;
+            case Modbus.WRITE_MULTIPLE_REGISTERS:
+                return 123;
+            case Modbus.WRITE_COIL:
+            case Modbus.WRITE_SINGLE_REGISTER:
+            case Modbus.READ_EXCEPTION_STATUS:
+            case Modbus.READ_COMM_EVENT_COUNTER:
+            case Modbus.READ_COMM_EVENT_LOG:
+            case Modbus.REPORT_SLAVE_ID:
+            case Modbus.MASK_WRITE_REGISTER:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns true if the exception was caused by the slave not answering in time
+     *
+     * @param e Exception thrown by the transaction
+     *
+     * @return True if it timed out
+     */
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedIOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
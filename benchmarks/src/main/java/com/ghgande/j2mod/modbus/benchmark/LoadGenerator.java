@@ -0,0 +1,410 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.net.AbstractModbusListener;
+import com.ghgande.j2mod.modbus.net.ModbusTCPListener;
+import com.ghgande.j2mod.modbus.net.ModbusUDPListener;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line tool that puts a Modbus TCP or UDP slave under load from any
+ * number of concurrent master sessions, and reports the throughput, latency
+ * percentiles and failures it got.
+ *
+ * <p>
+ * The sessions send a weighted mix of function codes, spread over a span of
+ * addresses and unit IDs, either as fast as the slave answers (closed loop)
+ * or at a fixed total rate (open loop). With <tt>-local</tt> the tool starts
+ * a <tt>ModbusTCPListener</tt> or <tt>ModbusUDPListener</tt> of its own on the
+ * target address, so that the listener can be sized without a real device.
+ */
+public class LoadGenerator {
+
+    private boolean udp;
+    private InetAddress address;
+    private int port = Modbus.DEFAULT_PORT;
+    private int clients = 1;
+    private int duration = 10;
+    private int rate;
+    private int[] functionCodes = {Modbus.READ_MULTIPLE_REGISTERS};
+    private int[] weights = {1};
+    private int reference;
+    private int count = 1;
+    private int span;
+    private int[] unitIDs = {1};
+    private int timeout = Modbus.DEFAULT_TIMEOUT;
+    private int retries;
+    private int report = 1;
+    private int localPoolSize;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private CountDownLatch ready;
+    private volatile long start;
+    private volatile long end;
+
+    private static void printUsage() {
+        System.out.printf("%nUsage:%n    java com.ghgande.j2mod.modbus.benchmark.LoadGenerator <tcp|udp:address{:port}> {options}%n%n");
+        System.out.printf("    -clients <n>            number of concurrent sessions (1)%n");
+        System.out.printf("    -duration <seconds>     how long to apply the load for (10)%n");
+        System.out.printf("    -rate <n>               requests per second over all the sessions, 0 to send as fast as the slave answers (0)%n");
+        System.out.printf("    -mix <fc{:weight},...>  function codes to send and how often e.g. 3:80,16:20 (3)%n");
+        System.out.printf("                            supported codes are 1-7, 11, 12, 15-17, 22 and 23%n");
+        System.out.printf("    -ref <n>                first address to read or write (0)%n");
+        System.out.printf("    -count <n>              coils or registers per request, capped at the most the function allows (1)%n");
+        System.out.printf("    -span <n>               number of addresses the requests are spread over (count)%n");
+        System.out.printf("    -units <list>           unit IDs to spread the requests over e.g. 1 or 1-10 or 1,3,5 (1)%n");
+        System.out.printf("    -timeout <ms>           transaction timeout (%d)%n", Modbus.DEFAULT_TIMEOUT);
+        System.out.printf("    -retries <n>            retries of a failed transaction (0)%n");
+        System.out.printf("    -report <seconds>       interval between progress lines (1)%n");
+        System.out.printf("    -local <threads>        start a listener of our own on the address, with a TCP pool of this size%n");
+    }
+
+    public static void main(String[] args) {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.parse(args);
+        }
+        catch (Exception e) {
+            System.out.printf("%s%n", e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        try {
+            generator.run();
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the target and options from the command line
+     *
+     * @param args Command line arguments
+     *
+     * @throws Exception If the arguments are not valid
+     */
+    private void parse(String[] args) throws Exception {
+        if (args.length < 1 || args.length % 2 == 0) {
+            throw new IllegalArgumentException("Missing target or option value");
+        }
+
+        String parts[] = args[0].split(" *: *");
+        if (parts.length < 2 || !(parts[0].equalsIgnoreCase("tcp") || parts[0].equalsIgnoreCase("udp"))) {
+            throw new IllegalArgumentException("Target must be tcp:address{:port} or udp:address{:port}");
+        }
+        udp = parts[0].equalsIgnoreCase("udp");
+        address = InetAddress.getByName(parts[1]);
+        if (parts.length > 2) {
+            port = Integer.parseInt(parts[2]);
+        }
+
+        for (int i = 1; i < args.length; i += 2) {
+            String value = args[i + 1];
+            if (args[i].equals("-clients")) {
+                clients = parsePositive(args[i], value);
+            }
+            else if (args[i].equals("-duration")) {
+                duration = parsePositive(args[i], value);
+            }
+            else if (args[i].equals("-rate")) {
+                rate = Integer.parseInt(value);
+            }
+            else if (args[i].equals("-mix")) {
+                parseMix(value);
+            }
+            else if (args[i].equals("-ref")) {
+                reference = Integer.parseInt(value);
+            }
+            else if (args[i].equals("-count")) {
+                count = parsePositive(args[i], value);
+            }
+            else if (args[i].equals("-span")) {
+                span = parsePositive(args[i], value);
+            }
+            else if (args[i].equals("-units")) {
+                unitIDs = parseUnits(value);
+            }
+            else if (args[i].equals("-timeout")) {
+                timeout = parsePositive(args[i], value);
+            }
+            else if (args[i].equals("-retries")) {
+                retries = Integer.parseInt(value);
+            }
+            else if (args[i].equals("-report")) {
+                report = parsePositive(args[i], value);
+            }
+            else if (args[i].equals("-local")) {
+                localPoolSize = parsePositive(args[i], value);
+            }
+            else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        span = Math.max(span, count);
+    }
+
+    /**
+     * Parses a mix of function codes such as <tt>3:80,16:20</tt>, where a
+     * code without a weight has a weight of 1
+     *
+     * @param value Mix to parse
+     */
+    private void parseMix(String value) {
+        String[] entries = value.split(",");
+        functionCodes = new int[entries.length];
+        weights = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String[] entry = entries[i].split(":");
+            functionCodes[i] = Integer.parseInt(entry[0].trim());
+            if (!LoadClient.isSupported(functionCodes[i])) {
+                throw new IllegalArgumentException("Function code " + functionCodes[i] + " is not supported");
+            }
+            weights[i] = (i > 0 ? weights[i - 1] : 0) + (entry.length > 1 ? parsePositive("-mix", entry[1].trim()) : 1);
+        }
+    }
+
+    /**
+     * Parses a list of unit IDs such as <tt>1-10</tt> or <tt>1,3,5</tt>
+     *
+     * @param value List to parse
+     *
+     * @return Unit IDs
+     */
+    private static int[] parseUnits(String value) {
+        List<Integer> units = new ArrayList<Integer>();
+        for (String entry : value.split(",")) {
+            String[] range = entry.split("-");
+            int first = Integer.parseInt(range[0].trim());
+            int last = range.length > 1 ? Integer.parseInt(range[1].trim()) : first;
+            if (first < 0 || last > 255 || first > last) {
+                throw new IllegalArgumentException("Illegal unit IDs " + entry);
+            }
+            for (int unit = first; unit <= last; unit++) {
+                units.add(unit);
+            }
+        }
+        int[] result = new int[units.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = units.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Parses a number that must be more than zero
+     *
+     * @param option Option the number is for
+     * @param value  Number to parse
+     *
+     * @return Number
+     */
+    private static int parsePositive(String option, String value) {
+        int number = Integer.parseInt(value);
+        if (number < 1) {
+            throw new IllegalArgumentException(option + " must be more than 0");
+        }
+        return number;
+    }
+
+    /**
+     * Connects the clients, applies the load for the duration and prints what
+     * was achieved
+     *
+     * @throws Exception If the local listener cannot be started
+     */
+    private void run() throws Exception {
+        AbstractModbusListener listener = null;
+        if (localPoolSize > 0) {
+            listener = startLocalListener();
+        }
+
+        System.out.printf("Connecting %d %s clients to %s:%d%n", clients, udp ? "UDP" : "TCP", address.getHostAddress(), port);
+        LoadStatistics statistics = new LoadStatistics(functionCodes);
+        ready = new CountDownLatch(clients);
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            threads[i] = new Thread(null, new LoadClient(this, statistics, i), "LoadClient-" + i, 256 * 1024);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        ready.await();
+        if (statistics.getFailed() > 0) {
+            System.out.printf("%d clients failed to connect and will keep trying%n", statistics.getFailed());
+        }
+
+        // Let the clients go and report progress until they are done
+        start = System.nanoTime();
+        end = start + TimeUnit.SECONDS.toNanos(duration);
+        started.countDown();
+        long lastCompleted = 0;
+        long lastFailed = 0;
+        for (int second = report; second <= duration; second += report) {
+            Thread.sleep(Math.max(0, TimeUnit.NANOSECONDS.toMillis(start + TimeUnit.SECONDS.toNanos(second) - System.nanoTime())));
+            long completed = statistics.getCompleted();
+            long failed = statistics.getFailed();
+            System.out.printf("%5ds %10.1f transactions/s %10.1f failures/s%n", second,
+                    (completed - lastCompleted) / (double)report, (failed - lastFailed) / (double)report);
+            lastCompleted = completed;
+            lastFailed = failed;
+        }
+        for (Thread thread : threads) {
+            thread.join(timeout * (retries + 1) + 1000);
+        }
+        statistics.print(System.out, Math.min(System.nanoTime(), end) - start);
+
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+
+    /**
+     * Starts a listener on the target address and port, with a process image
+     * for each of the unit IDs covering all the addresses the clients use
+     *
+     * @return Listener
+     *
+     * @throws Exception If the listener cannot be started
+     */
+    private AbstractModbusListener startLocalListener() throws Exception {
+        for (int unitID : unitIDs) {
+            LoopbackFixtures.createProcessImage(unitID, reference + span);
+        }
+        AbstractModbusListener listener;
+        if (udp) {
+            listener = new ModbusUDPListener();
+            listener.setAddress(address);
+        }
+        else {
+            ModbusTCPListener tcpListener = new ModbusTCPListener(localPoolSize, address);
+            tcpListener.setBacklog(clients);
+            listener = tcpListener;
+        }
+        listener.setPort(port);
+        LoopbackFixtures.startListener(listener);
+        System.out.printf("Started %s on %s:%d%n", listener.getClass().getSimpleName(), address.getHostAddress(), port);
+        return listener;
+    }
+
+    /**
+     * Called by each client once it has tried to connect, to wait for the
+     * others before applying the load
+     *
+     * @return True if the load is to be applied
+     */
+    boolean awaitStart() {
+        ready.countDown();
+        try {
+            started.await();
+            return true;
+        }
+        catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Picks the function code of the next request from the mix
+     *
+     * @param random Random numbers of the client
+     *
+     * @return Function code
+     */
+    int nextFunctionCode(Random random) {
+        int pick = random.nextInt(weights[weights.length - 1]);
+        int i = 0;
+        while (pick >= weights[i]) {
+            i++;
+        }
+        return functionCodes[i];
+    }
+
+    /**
+     * Picks the unit ID of the next request
+     *
+     * @param random Random numbers of the client
+     *
+     * @return Unit ID
+     */
+    int nextUnitID(Random random) {
+        return unitIDs[random.nextInt(unitIDs.length)];
+    }
+
+    /**
+     * Returns the interval each client leaves between its requests to
+     * achieve the rate
+     *
+     * @return Interval in nanoseconds, or 0 to send as fast as the slave answers
+     */
+    long getInterval() {
+        return rate > 0 ? TimeUnit.SECONDS.toNanos(clients) / rate : 0;
+    }
+
+    boolean isUdp() {
+        return udp;
+    }
+
+    InetAddress getAddress() {
+        return address;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    int getClients() {
+        return clients;
+    }
+
+    int getReference() {
+        return reference;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    int getSpan() {
+        return span;
+    }
+
+    int getTimeout() {
+        return timeout;
+    }
+
+    int getRetries() {
+        return retries;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getEnd() {
+        return end;
+    }
+}
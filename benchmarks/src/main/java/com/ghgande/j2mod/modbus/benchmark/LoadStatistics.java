@@ -0,0 +1,159 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.util.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * What the clients of a <tt>LoadGenerator</tt> achieved: the latency of the
+ * transactions that succeeded by function code, and why the others failed.
+ * All the methods can be called from any number of client threads at once.
+ */
+final class LoadStatistics {
+
+    private static final int FUNCTION_CODES = 128;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final LatencyHistogram[] latency = new LatencyHistogram[FUNCTION_CODES];
+    private final AtomicLongArray failures = new AtomicLongArray(FUNCTION_CODES);
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong late = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Creates the statistics for a mix of function codes
+     *
+     * @param functionCodes Function codes the clients send
+     */
+    LoadStatistics(int[] functionCodes) {
+        for (int functionCode : functionCodes) {
+            latency[functionCode] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records a transaction that got a normal response
+     *
+     * @param functionCode Function code of the request
+     * @param nanos        Time from when the request was due to be sent until the response arrived
+     */
+    void completed(int functionCode, long nanos) {
+        latency[functionCode].record(nanos);
+        total.record(nanos);
+    }
+
+    /**
+     * Records a transaction, or a connection, that failed
+     *
+     * @param functionCode Function code of the request, or 0 if it failed to connect
+     * @param reason       Reason it failed
+     */
+    void failed(int functionCode, String reason) {
+        failures.incrementAndGet(functionCode);
+        failed.incrementAndGet();
+        AtomicLong count = errors.get(reason);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = errors.putIfAbsent(reason, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Records a request that was sent later than the rate asked for because
+     * the client was still waiting for the previous response
+     */
+    void late() {
+        late.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of transactions that got a normal response
+     *
+     * @return Count
+     */
+    long getCompleted() {
+        return total.getCount();
+    }
+
+    /**
+     * Returns the number of transactions and connections that failed
+     *
+     * @return Count
+     */
+    long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Prints the throughput, the latency percentiles of each function code
+     * and the reasons for the failures
+     *
+     * @param out          Stream to print to
+     * @param elapsedNanos Time the load was applied for
+     */
+    void print(PrintStream out, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%nCompleted %d transactions and %d failures in %.1fs - %.1f transactions/s%n",
+                getCompleted(), getFailed(), seconds, getCompleted() / seconds);
+        if (late.get() > 0) {
+            out.printf("%d requests were sent late because the slave could not keep up with the rate%n", late.get());
+        }
+
+        out.printf("%nFunction   Completed     Failed   Mean(us)    p50(us)    p90(us)    p99(us)  p99.9(us)    Max(us)%n");
+        for (int functionCode = 0; functionCode < FUNCTION_CODES; functionCode++) {
+            if (latency[functionCode] != null) {
+                printLatency(out, String.valueOf(functionCode), latency[functionCode], failures.get(functionCode));
+            }
+        }
+        printLatency(out, "All", total, failed.get());
+
+        if (!errors.isEmpty()) {
+            out.printf("%nFailures%n");
+            for (Map.Entry<String, AtomicLong> error : new TreeMap<String, AtomicLong>(errors).entrySet()) {
+                out.printf("%10d  %s%n", error.getValue().get(), error.getKey());
+            }
+        }
+    }
+
+    /**
+     * Prints a line of the latency table
+     *
+     * @param out       Stream to print to
+     * @param name      Name of the line
+     * @param histogram Latencies to print
+     * @param failures  Number of failures
+     */
+    private static void printLatency(PrintStream out, String name, LatencyHistogram histogram, long failures) {
+        out.printf("%-8s %11d %10d %10.1f", name, histogram.getCount(), failures, histogram.getMean() / 1000);
+        for (double percentile : PERCENTILES) {
+            out.printf(" %10.1f", histogram.getValueAtPercentile(percentile) / 1000.0);
+        }
+        out.printf(" %10.1f%n", histogram.getMax() / 1000.0);
+    }
+}
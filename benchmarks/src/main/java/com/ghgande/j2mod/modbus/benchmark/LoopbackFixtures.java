@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.net.AbstractModbusListener;
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
+
+import java.io.IOException;
+
+/**
+ * Settings shared by the loopback benchmarks, which run a master against a
+ * slave in the same JVM.
+ */
+final class LoopbackFixtures {
+
+    /**
+     * Unit ID of the slave
+     */
+    static final int UNIT_ID = 1;
+
+    /**
+     * Port the TCP and UDP slaves listen on, clear of the default so that a
+     * real slave on the machine doesn't get in the way
+     */
+    static final int PORT = 5502;
+
+    /**
+     * Most clients any of the benchmarks runs at once
+     */
+    static final int MAX_CLIENTS = 256;
+
+    /**
+     * Timeout of the masters and slaves in milliseconds
+     */
+    static final int TIMEOUT = Modbus.DEFAULT_TIMEOUT;
+
+    private LoopbackFixtures() {
+    }
+
+    /**
+     * Makes a process image with room for the largest read of every type and
+     * sets it as the process image of the coupler
+     */
+    static void createProcessImage() {
+        createProcessImage(UNIT_ID, 0);
+    }
+
+    /**
+     * Makes a process image for the unit with room for the largest read of
+     * every type, or for the given number of each type if that is more, and
+     * adds it to the process images of the coupler
+     *
+     * @param unitID Unit ID of the process image
+     * @param size   Number of coils, discretes and registers
+     */
+    static void createProcessImage(int unitID, int size) {
+        int bits = Math.max(size, 2000);
+        int registers = Math.max(size, 125);
+        ModbusCoupler.getReference().setProcessImage(new ArrayProcessImage(unitID, bits, bits, registers, registers));
+        ModbusCoupler.getReference().setMaster(false);
+    }
+
+    /**
+     * Runs the listener on a new thread and waits for it to start listening
+     *
+     * @param listener Listener to start
+     *
+     * @throws IOException If the listener fails to start
+     */
+    static void startListener(AbstractModbusListener listener) throws IOException {
+        Thread thread = new Thread(listener, listener.getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!listener.isListening()) {
+            if (listener.getError() != null || System.currentTimeMillis() > deadline) {
+                throw new IOException(String.format("Cannot start %s - %s", thread.getName(), listener.getError()));
+            }
+            try {
+                Thread.sleep(10);
+            }
+            catch (InterruptedException e) {
+                throw new IOException("Interrupted starting " + thread.getName());
+            }
+        }
+    }
+}
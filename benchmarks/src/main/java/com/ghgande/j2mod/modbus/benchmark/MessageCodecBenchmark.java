@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.io.BytesInputStream;
+import com.ghgande.j2mod.modbus.io.BytesOutputStream;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding and encoding the requests and responses of every
+ * function code, the way the transports do it: decoding into a new message
+ * from a reused input stream, and encoding into a reused output stream or
+ * <tt>ByteBuffer</tt>.
+ *
+ * <p>
+ * Run with <tt>-prof gc</tt> to see the bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "11", "12", "15", "16", "17", "20", "21", "22", "23", "24", "43"})
+    public int functionCode;
+
+    private byte[] requestData;
+    private byte[] responseData;
+    private ModbusRequest request;
+    private ModbusResponse response;
+    private final BytesInputStream input = new BytesInputStream(Modbus.MAX_MESSAGE_LENGTH);
+    private final BytesOutputStream output = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH + 6);
+    private final ByteBuffer frame = ByteBuffer.allocate(Modbus.MAX_MESSAGE_LENGTH + 6);
+
+    @Setup
+    public void setUp() throws IOException {
+        requestData = CodecFixtures.requestData(functionCode);
+        responseData = CodecFixtures.responseData(functionCode);
+        request = decodeRequest();
+        response = decodeResponse();
+    }
+
+    @Benchmark
+    public ModbusRequest decodeRequest() throws IOException {
+        ModbusRequest msg = ModbusRequest.createModbusRequest(functionCode);
+        input.reset(requestData);
+        msg.readData(input);
+        return msg;
+    }
+
+    @Benchmark
+    public ModbusResponse decodeResponse() throws IOException {
+        ModbusResponse msg = ModbusResponse.createModbusResponse(functionCode);
+        input.reset(responseData);
+        msg.readData(input);
+        return msg;
+    }
+
+    @Benchmark
+    public int encodeRequest() throws IOException {
+        output.reset();
+        request.writeData(output);
+        return output.size();
+    }
+
+    @Benchmark
+    public int encodeResponse() throws IOException {
+        output.reset();
+        response.writeData(output);
+        return output.size();
+    }
+
+    @Benchmark
+    public int encodeResponseFrame() throws IOException {
+        frame.clear();
+        response.writeTo(frame);
+        return frame.position();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.util.CRC16;
+import com.ghgande.j2mod.modbus.util.ModbusUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CRC, hex dump and register conversion helpers of
+ * <tt>ModbusUtil</tt> over frames of the given length.
+ *
+ * <p>
+ * Run with <tt>-prof gc</tt> to see the bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModbusUtilBenchmark {
+
+    /**
+     * Frame length, from the shortest RTU request to the longest frame
+     */
+    @Param({"8", "64", "256"})
+    public int length;
+
+    private byte[] frame;
+    private ByteBuffer directFrame;
+    private byte[] registers;
+
+    @Setup
+    public void setUp() {
+        frame = new byte[length];
+        for (int i = 0; i < length; i++) {
+            frame[i] = (byte)(i * 31 + 7);
+        }
+        directFrame = ByteBuffer.allocateDirect(length);
+        directFrame.put(frame);
+        registers = ModbusUtil.doubleToRegisters(Math.PI);
+    }
+
+    @Benchmark
+    public int[] calculateCRC() {
+        return ModbusUtil.calculateCRC(frame, 0, frame.length);
+    }
+
+    @Benchmark
+    public int crc16() {
+        return CRC16.calculate(frame, 0, frame.length);
+    }
+
+    @Benchmark
+    public int crc16ByteAtATime() {
+        int crc = CRC16.INITIAL;
+        for (byte value : frame) {
+            crc = CRC16.update(crc, value);
+        }
+        return crc;
+    }
+
+    @Benchmark
+    public int crc16DirectBuffer() {
+        directFrame.clear();
+        return CRC16.calculate(directFrame);
+    }
+
+    @Benchmark
+    public String toHex() {
+        return ModbusUtil.toHex(frame);
+    }
+
+    @Benchmark
+    public float registersToFloat() {
+        return ModbusUtil.registersToFloat(registers);
+    }
+
+    @Benchmark
+    public double registersToDouble() {
+        return ModbusUtil.registersToDouble(registers);
+    }
+
+    @Benchmark
+    public long registersToLong() {
+        return ModbusUtil.registersToLong(registers);
+    }
+
+    @Benchmark
+    public byte[] floatToRegisters() {
+        return ModbusUtil.floatToRegisters((float)length);
+    }
+
+    @Benchmark
+    public byte[] doubleToRegisters() {
+        return ModbusUtil.doubleToRegisters(length);
+    }
+
+    @Benchmark
+    public byte[] longToRegisters() {
+        return ModbusUtil.longToRegisters(length);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.msg.MaskWriteRegisterRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.WriteMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
+import com.ghgande.j2mod.modbus.procimg.ProcessImage;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures answering register requests from a process image shared by many
+ * threads, comparing the synchronized registers of a
+ * <tt>SimpleProcessImage</tt> with the lock-free table of an
+ * <tt>ArrayProcessImage</tt>.
+ *
+ * <p>
+ * <tt>read</tt> answers Read Multiple Registers (FC3) on every core. Run it
+ * with <tt>-t 1</tt>, <tt>-t 2</tt> and so on up to the number of cores to
+ * see how it scales. The <tt>mixed</tt> group answers reads on four threads
+ * while, on the same registers, a field thread sets single registers, a
+ * master writes the range with Write Multiple Registers (FC16) and another
+ * applies Mask Write Register (FC22).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessImageBenchmark {
+
+    private static final int UNIT_ID = 1;
+    private static final int IMAGE_SIZE = 1000;
+
+    @Param({"simple", "array"})
+    public String image;
+
+    @Param({"1", "16", "125"})
+    public int registers;
+
+    private ModbusCoupler coupler;
+    private Register[] fieldRegisters;
+    private ReadMultipleRegistersRequest readRequest;
+    private WriteMultipleRegistersRequest writeRequest;
+    private MaskWriteRegisterRequest maskRequest;
+
+    /**
+     * The value a field thread sets next
+     */
+    @State(Scope.Thread)
+    public static class FieldState {
+        private int value;
+    }
+
+    @Setup
+    public void setUp() {
+        ProcessImage processImage;
+        if ("array".equals(image)) {
+            processImage = new ArrayProcessImage(UNIT_ID, 0, 0, 0, IMAGE_SIZE);
+        }
+        else {
+            SimpleProcessImage simple = new SimpleProcessImage(UNIT_ID);
+            for (int i = 0; i < IMAGE_SIZE; i++) {
+                simple.addRegister(new SimpleRegister(i));
+            }
+            processImage = simple;
+        }
+        coupler = new ModbusCoupler();
+        coupler.setProcessImage(processImage);
+
+        // Field code keeps hold of the registers it updates
+        fieldRegisters = processImage.getRegisterRange(0, registers);
+
+        readRequest = new ReadMultipleRegistersRequest(0, registers);
+        readRequest.setUnitID(UNIT_ID);
+        Register[] values = new Register[registers];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new SimpleRegister(i * 3);
+        }
+        writeRequest = new WriteMultipleRegistersRequest(0, values);
+        writeRequest.setUnitID(UNIT_ID);
+        maskRequest = new MaskWriteRegisterRequest(0, 0xff00, 0x00a5);
+        maskRequest.setUnitID(UNIT_ID);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public ModbusResponse read() {
+        return readRequest.createResponse(coupler);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public ModbusResponse mixedRead() {
+        return readRequest.createResponse(coupler);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Register mixedFieldUpdate(FieldState field) {
+        Register register = fieldRegisters[field.value % fieldRegisters.length];
+        register.setValue(field.value++);
+        return register;
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public ModbusResponse mixedWriteMultiple() {
+        return writeRequest.createResponse(coupler);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public ModbusResponse mixedMaskWrite() {
+        return maskRequest.createResponse(coupler);
+    }
+}
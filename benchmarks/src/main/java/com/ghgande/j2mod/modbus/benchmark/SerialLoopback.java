@@ -0,0 +1,244 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.io.ModbusASCIITransport;
+import com.ghgande.j2mod.modbus.io.ModbusRTUTransport;
+import com.ghgande.j2mod.modbus.io.ModbusSerialTransport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * An in-memory null modem cable between a master and a slave serial
+ * transport.
+ *
+ * <p>
+ * Bytes cross the cable as soon as they are written, so there is no wire
+ * time and the transports don't wait for a baud rate either; what is left
+ * is the cost of framing and parsing the messages.
+ */
+final class SerialLoopback {
+
+    private final Line masterToSlave = new Line();
+    private final Line slaveToMaster = new Line();
+
+    /**
+     * Creates a transport for the master end of the cable
+     *
+     * @param encoding Serial encoding, RTU or ASCII
+     *
+     * @return Transport
+     */
+    ModbusSerialTransport createMaster(String encoding) {
+        return createTransport(encoding, slaveToMaster, masterToSlave);
+    }
+
+    /**
+     * Creates a transport for the slave end of the cable
+     *
+     * @param encoding Serial encoding, RTU or ASCII
+     *
+     * @return Transport
+     */
+    ModbusSerialTransport createSlave(String encoding) {
+        return createTransport(encoding, masterToSlave, slaveToMaster);
+    }
+
+    /**
+     * Cuts the cable, waking up anyone waiting to read from it
+     */
+    void close() {
+        masterToSlave.close();
+        slaveToMaster.close();
+    }
+
+    /**
+     * Creates a transport that reads from one line and writes to the other
+     *
+     * @param encoding Serial encoding, RTU or ASCII
+     * @param in       Line to read from
+     * @param out      Line to write to
+     *
+     * @return Transport
+     */
+    private static ModbusSerialTransport createTransport(String encoding, final Line in, final Line out) {
+        if (Modbus.SERIAL_ENCODING_ASCII.equals(encoding)) {
+            return new ModbusASCIITransport() {
+                @Override
+                protected boolean isPortOpen() {
+                    return !in.isClosed();
+                }
+
+                @Override
+                protected int readFromPort(byte[] buffer, long bytesToRead) throws IOException {
+                    return in.read(buffer, (int)bytesToRead, timeout);
+                }
+
+                @Override
+                protected int writeToPort(byte[] buffer, long bytesToWrite) throws IOException {
+                    return out.write(buffer, (int)bytesToWrite);
+                }
+
+                @Override
+                protected int bytesAvailable() {
+                    return in.available();
+                }
+            };
+        }
+        return new ModbusRTUTransport() {
+            @Override
+            protected boolean isPortOpen() {
+                return !in.isClosed();
+            }
+
+            @Override
+            protected int readFromPort(byte[] buffer, long bytesToRead) throws IOException {
+                return in.read(buffer, (int)bytesToRead, timeout);
+            }
+
+            @Override
+            protected int writeToPort(byte[] buffer, long bytesToWrite) throws IOException {
+                return out.write(buffer, (int)bytesToWrite);
+            }
+
+            @Override
+            protected int bytesAvailable() {
+                return in.available();
+            }
+        };
+    }
+
+    /**
+     * One direction of the cable, a ring buffer that readers wait on in the
+     * way a blocking read of a <tt>SerialPort</tt> does
+     */
+    private static final class Line {
+
+        private final byte[] buffer = new byte[1024];
+        private int head;
+        private int count;
+        private boolean closed;
+
+        /**
+         * Reads the given number of bytes, waiting up to the timeout for them
+         * to arrive
+         *
+         * @param dest    Buffer to put the data into
+         * @param length  Number of bytes to read
+         * @param timeout Timeout in milliseconds
+         *
+         * @return Number of bytes read, less than asked for if it timed out
+         *
+         * @throws IOException If the thread is interrupted
+         */
+        synchronized int read(byte[] dest, int length, int timeout) throws IOException {
+            long deadline = System.currentTimeMillis() + timeout;
+            int read = 0;
+            while (read < length) {
+                if (count == 0) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (closed || wait <= 0) {
+                        break;
+                    }
+                    waitFor(wait);
+                    continue;
+                }
+                int len = Math.min(Math.min(length - read, count), buffer.length - head);
+                System.arraycopy(buffer, head, dest, read, len);
+                head = (head + len) % buffer.length;
+                count -= len;
+                read += len;
+                notifyAll();
+            }
+            return read;
+        }
+
+        /**
+         * Writes the bytes, waiting for room if the reader is behind
+         *
+         * @param src    Bytes to write
+         * @param length Number of bytes to write
+         *
+         * @return Number of bytes written
+         *
+         * @throws IOException If the line has been closed or the thread is interrupted
+         */
+        synchronized int write(byte[] src, int length) throws IOException {
+            int written = 0;
+            while (written < length) {
+                if (closed) {
+                    throw new IOException("Serial loopback is closed");
+                }
+                if (count == buffer.length) {
+                    waitFor(0);
+                    continue;
+                }
+                int tail = (head + count) % buffer.length;
+                int len = Math.min(Math.min(length - written, buffer.length - count), buffer.length - tail);
+                System.arraycopy(src, written, buffer, tail, len);
+                count += len;
+                written += len;
+                notifyAll();
+            }
+            return written;
+        }
+
+        /**
+         * Returns the number of bytes waiting to be read
+         *
+         * @return Number of bytes
+         */
+        synchronized int available() {
+            return count;
+        }
+
+        /**
+         * Returns true if the line has been closed
+         *
+         * @return True if closed
+         */
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Closes the line, waking up any waiting reader or writer
+         */
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits to be notified of a change to the line
+         *
+         * @param millis Longest time to wait, or 0 to wait until notified
+         *
+         * @throws InterruptedIOException If the thread is interrupted
+         */
+        private void waitFor(long millis) throws InterruptedIOException {
+            try {
+                wait(millis);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting on serial loopback");
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.io.ModbusSerialTransport;
+import com.ghgande.j2mod.modbus.io.ModbusTransaction;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.net.AbstractModbusListener;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.ghgande.j2mod.modbus.benchmark.LoopbackFixtures.*;
+
+/**
+ * Measures whole read transactions of an RTU or ASCII master against a slave
+ * over an in-memory serial line.
+ *
+ * <p>
+ * A serial line only has the one master, so every client thread gets a line
+ * and a slave of its own; more clients measure how the serial transports
+ * scale rather than the contention of a shared bus. The throughput mode
+ * gives the transactions per microsecond of all the clients together and the
+ * sample time mode gives the latency percentiles of a transaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerialLoopbackBenchmark {
+
+    @Param({"rtu", "ascii"})
+    public String encoding;
+
+    /**
+     * Number of holding registers read by each transaction
+     */
+    @Param({"1", "10", "60", "125"})
+    public int registers;
+
+    @Setup
+    public void createSlaveImage() {
+        createProcessImage();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        private SerialLoopback loopback;
+        private SerialLoopbackListener listener;
+        private ModbusTransaction transaction;
+
+        /**
+         * Starts a slave on a line of its own and makes the request to send it
+         *
+         * @param settings Benchmark holding the encoding and register count
+         *
+         * @throws IOException If the slave cannot be started
+         */
+        @Setup
+        public void connect(SerialLoopbackBenchmark settings) throws IOException {
+            loopback = new SerialLoopback();
+            listener = new SerialLoopbackListener(loopback.createSlave(settings.encoding));
+            startListener(listener);
+
+            ModbusSerialTransport transport = loopback.createMaster(settings.encoding);
+            transport.setTimeout(TIMEOUT);
+            ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(0, settings.registers);
+            request.setUnitID(UNIT_ID);
+            transaction = transport.createTransaction();
+            transaction.setRequest(request);
+        }
+
+        @TearDown
+        public void disconnect() {
+            listener.stop();
+            loopback.close();
+        }
+
+        /**
+         * Runs one read transaction
+         *
+         * @return Number of registers read
+         *
+         * @throws ModbusException If the transaction fails
+         */
+        int read() throws ModbusException {
+            transaction.execute();
+            return ((ReadMultipleRegistersResponse)transaction.getResponse()).getWordCount();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int oneClient(Client client) throws ModbusException {
+        return client.read();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int sixteenClients(Client client) throws ModbusException {
+        return client.read();
+    }
+
+    @Benchmark
+    @Threads(MAX_CLIENTS)
+    public int manyClients(Client client) throws ModbusException {
+        return client.read();
+    }
+
+    /**
+     * Serial slave that answers requests arriving on one end of a
+     * <tt>SerialLoopback</tt>, the way a <tt>ModbusSerialListener</tt> does
+     * for a serial port
+     */
+    private static class SerialLoopbackListener extends AbstractModbusListener {
+
+        private final ModbusSerialTransport transport;
+
+        SerialLoopbackListener(ModbusSerialTransport transport) {
+            this.transport = transport;
+            transport.setTimeout(timeout);
+        }
+
+        @Override
+        public void run() {
+            transport.setMessagePool(createMessagePool());
+            transport.setMetrics(metrics);
+            transport.setCoupler(coupler);
+            listening = true;
+            while (listening) {
+                try {
+                    handleRequest(transport);
+                }
+                catch (ModbusIOException ex) {
+                    // Carry on listening, as ModbusSerialListener does
+                }
+            }
+        }
+
+        @Override
+        public void stop() {
+            listening = false;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.net.ModbusTCPListener;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import static com.ghgande.j2mod.modbus.benchmark.LoopbackFixtures.*;
+
+/**
+ * Measures whole read transactions of a <tt>ModbusTCPMaster</tt> against a
+ * <tt>ModbusTCPListener</tt> on the loopback interface.
+ *
+ * <p>
+ * Every client thread has its own master and connection. The throughput mode
+ * gives the transactions per microsecond of all the clients together and the
+ * sample time mode gives the latency percentiles of a transaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TCPLoopbackBenchmark {
+
+    /**
+     * Number of holding registers read by each transaction
+     */
+    @Param({"1", "10", "60", "125"})
+    public int registers;
+
+    private ModbusTCPListener listener;
+
+    @Setup
+    public void startSlave() throws Exception {
+        createProcessImage();
+        listener = new ModbusTCPListener(MAX_CLIENTS, InetAddress.getLoopbackAddress());
+        listener.setPort(PORT);
+        startListener(listener);
+    }
+
+    @TearDown
+    public void stopSlave() {
+        listener.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        private ModbusTCPMaster master;
+        private final int[] values = new int[125];
+
+        /**
+         * Connects once the slave has started
+         *
+         * @param slave Benchmark holding the slave
+         *
+         * @throws Exception If the master cannot connect
+         */
+        @Setup
+        public void connect(TCPLoopbackBenchmark slave) throws Exception {
+            master = new ModbusTCPMaster(InetAddress.getLoopbackAddress().getHostAddress(), PORT, TIMEOUT, false);
+            master.connect();
+        }
+
+        @TearDown
+        public void disconnect() {
+            master.disconnect();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int oneClient(Client client) throws ModbusException {
+        return client.master.readMultipleRegisters(UNIT_ID, 0, registers, client.values, 0);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int sixteenClients(Client client) throws ModbusException {
+        return client.master.readMultipleRegisters(UNIT_ID, 0, registers, client.values, 0);
+    }
+
+    @Benchmark
+    @Threads(MAX_CLIENTS)
+    public int manyClients(Client client) throws ModbusException {
+        return client.master.readMultipleRegisters(UNIT_ID, 0, registers, client.values, 0);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.facade.ModbusUDPMaster;
+import com.ghgande.j2mod.modbus.net.ModbusUDPListener;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import static com.ghgande.j2mod.modbus.benchmark.LoopbackFixtures.*;
+
+/**
+ * Measures whole read transactions of a <tt>ModbusUDPMaster</tt> against a
+ * <tt>ModbusUDPListener</tt> on the loopback interface.
+ *
+ * <p>
+ * Every client thread has its own master and socket, all sending to the one
+ * socket of the listener. The throughput mode
+ * gives the transactions per microsecond of all the clients together and the
+ * sample time mode gives the latency percentiles of a transaction.
+ *
+ * <p>
+ * The listener remembers who to answer by transaction ID alone, so with many
+ * clients two requests can share an ID and one of the answers goes astray.
+ * Rather than end the run, a transaction that gets no answer returns no
+ * registers and shows up in the tail of the latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UDPLoopbackBenchmark {
+
+    /**
+     * Number of holding registers read by each transaction
+     */
+    @Param({"1", "10", "60", "125"})
+    public int registers;
+
+    private ModbusUDPListener listener;
+
+    @Setup
+    public void startSlave() throws Exception {
+        createProcessImage();
+        listener = new ModbusUDPListener();
+        listener.setAddress(InetAddress.getLoopbackAddress());
+        listener.setPort(PORT);
+        startListener(listener);
+    }
+
+    @TearDown
+    public void stopSlave() {
+        listener.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        private ModbusUDPMaster master;
+        private final int[] values = new int[125];
+
+        /**
+         * Connects once the slave has started
+         *
+         * @param slave Benchmark holding the slave
+         *
+         * @throws Exception If the master cannot connect
+         */
+        @Setup
+        public void connect(UDPLoopbackBenchmark slave) throws Exception {
+            master = new ModbusUDPMaster(InetAddress.getLoopbackAddress().getHostAddress(), PORT, TIMEOUT);
+            master.connect();
+        }
+
+        @TearDown
+        public void disconnect() {
+            master.disconnect();
+        }
+
+        /**
+         * Runs one read transaction
+         *
+         * @param registers Number of registers to read
+         *
+         * @return Number of registers read, or 0 if the slave didn't answer
+         */
+        int read(int registers) {
+            try {
+                return master.readMultipleRegisters(UNIT_ID, 0, registers, values, 0);
+            }
+            catch (ModbusException e) {
+                return 0;
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int oneClient(Client client) {
+        return client.read(registers);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int sixteenClients(Client client) {
+        return client.read(registers);
+    }
+
+    @Benchmark
+    @Threads(MAX_CLIENTS)
+    public int manyClients(Client client) {
+        return client.read(registers);
+    }
+}
@@ -179,6 +179,24 @@ public interface Modbus {
      */
     int MAX_BITS = 2000;
 
+    /**
+     * Defines the maximum number of bits in a single write
+     * of multiple coils (<b>1968</b>).
+     */
+    int MAX_WRITE_BITS = 1968;
+
+    /**
+     * Defines the maximum number of registers in a single read
+     * of holding or input registers (<b>125</b>).
+     */
+    int MAX_REGISTERS = 125;
+
+    /**
+     * Defines the maximum number of registers in a single write
+     * of multiple registers (<b>123</b>).
+     */
+    int MAX_WRITE_REGISTERS = 123;
+
     /**
      * Defines the Modbus slave exception offset that is added to the
      * function code, to flag an exception.
@@ -249,6 +267,12 @@ public interface Modbus {
      */
     int DEFAULT_PORT = 502;
 
+    /**
+     * Defines the default length of the queue of incoming connections
+     * waiting to be accepted by a TCP listener (=<tt>5</tt>).
+     */
+    int DEFAULT_BACKLOG = 5;
+
     /**
      * Defines the maximum message length in bytes
      * (=<tt>256</tt>).
@@ -304,11 +328,41 @@ public interface Modbus {
      * Defines the maximum value of the transaction identifier.
      *
      * <p><b>Note:</b> The standard requires that the server copy whatever
-     * value the client provides. However, the transaction ID is being
-     * limited to signed 16-bit integers to prevent problems with servers
-     * that might incorrectly assume the value is a signed value.
+     * value the client provides, so the full unsigned 16-bit range is used.
+     * This gives pipelined connections the largest possible space of
+     * distinct identifiers for outstanding transactions.
+     */
+    int MAX_TRANSACTION_ID = 65535;
+
+    /**
+     * Defines the default number of transactions that may be outstanding
+     * on a single Modbus/TCP connection (=<tt>1</tt>, no pipelining).
+     */
+    int DEFAULT_PIPELINE_WINDOW = 1;
+
+    /**
+     * Defines the number of threads shared by all the master facades to
+     * run their asynchronous requests (=<tt>8</tt>).
+     */
+    int DEFAULT_ASYNC_POOL_SIZE = 8;
+
+    /**
+     * Defines the default number of connections a connection pool opens to
+     * a single device (=<tt>1</tt>), many devices only accept a few.
+     */
+    int DEFAULT_POOL_MAX_CONNECTIONS = 1;
+
+    /**
+     * Defines the default time in milliseconds a pooled connection may sit
+     * unused before it is closed (=<tt>60000</tt>).
+     */
+    int DEFAULT_POOL_IDLE_TIMEOUT = 60000;
+
+    /**
+     * Defines the default number of requests a UDP multiplexer may have
+     * waiting for responses across all of its devices (=<tt>4096</tt>).
      */
-    int MAX_TRANSACTION_ID = Short.MAX_VALUE;
+    int DEFAULT_UDP_MAX_OUTSTANDING = 4096;
 
     /**
      * Defines the serial encoding "ASCII".
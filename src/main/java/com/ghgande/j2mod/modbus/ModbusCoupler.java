@@ -21,25 +21,25 @@ import com.ghgande.j2mod.modbus.procimg.ProcessImageFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-<<<<<<< HEAD
-import java.util.HashMap;
-import java.util.Map;
-
-=======
-<<<<<<< HEAD
-=======
-import java.util.HashMap;
-import java.util.Map;
-
->>>>>>> refs/remotes/steveohara/development
->>>>>>> origin/master
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * Class implemented following a Singleton pattern, to couple the slave side
  * with a master side or with a device.
  *
  * <p>
  * At the moment it only provides a reference to the OO model of the process
- * image.
+ * image of each unit.
+ *
+ * <p>
+ * The process images are held in a table indexed by unit ID, so that the
+ * listeners can look them up on every request without taking a lock and an
+ * image can be replaced or removed while they are serving requests.
+ *
+ * <p>
+ * Listeners use the shared instance from {@link #getReference()} unless they
+ * are given one of their own, so that independent slaves, each with their
+ * own process images, can run in the same JVM.
  *
  * @author Dieter Wimberger
  * @author Steve O'Hara (4energy)
@@ -49,44 +49,59 @@ public class ModbusCoupler {
 
     private static final Logger logger = LoggerFactory.getLogger(ModbusCoupler.class);
 
+    /**
+     * Number of unit IDs a Modbus address can hold
+     */
+    public static final int MAX_UNITS = 256;
+
     // class attributes
-    private static ModbusCoupler modbusCoupler; // Singleton reference
+    private static volatile ModbusCoupler modbusCoupler; // Singleton reference
 
     // instance attributes
-<<<<<<< HEAD
-    private Map<Integer, ProcessImage> processImages = new HashMap<Integer, ProcessImage>();
-=======
-<<<<<<< HEAD
-    private ProcessImage processImage;
-    private int unitID = Modbus.DEFAULT_UNIT_ID;
-=======
-    private Map<Integer, ProcessImage> processImages = new HashMap<Integer, ProcessImage>();
->>>>>>> refs/remotes/steveohara/development
->>>>>>> origin/master
-    private boolean master = true;
-    private ProcessImageFactory processImageFactory;
+    private final AtomicReferenceArray<ProcessImage> processImages = new AtomicReferenceArray<ProcessImage>(MAX_UNITS);
+    private volatile boolean master;
+    private volatile ProcessImageFactory processImageFactory;
 
     /**
-     * A private constructor which creates a default process image.
+     * Creates a slave coupler with no process images, separate from the
+     * shared instance, to give to a listener.
+     */
+    public ModbusCoupler() {
+        this(false);
+    }
+
+    /**
+     * Creates a coupler with no process images and a default process image
+     * factory.
+     *
+     * @param master true if master device, false otherwise.
      */
-    private ModbusCoupler() {
+    private ModbusCoupler(boolean master) {
+        this.master = master;
         processImageFactory = new DefaultProcessImageFactory();
     }
 
-    public static synchronized boolean isInitialized() {
+    public static boolean isInitialized() {
         return modbusCoupler != null;
     }
 
     /**
-     * Returns a reference to the singleton instance.
+     * Returns a reference to the shared instance.
      *
      * @return the <tt>ModbusCoupler</tt> instance reference.
      */
-    public static synchronized ModbusCoupler getReference() {
-        if (modbusCoupler == null) {
-            modbusCoupler = new ModbusCoupler();
+    public static ModbusCoupler getReference() {
+        ModbusCoupler coupler = modbusCoupler;
+        if (coupler == null) {
+            synchronized (ModbusCoupler.class) {
+                coupler = modbusCoupler;
+                if (coupler == null) {
+                    coupler = new ModbusCoupler(true);
+                    modbusCoupler = coupler;
+                }
+            }
         }
-        return modbusCoupler;
+        return coupler;
     }
 
     /**
@@ -108,57 +123,50 @@ public class ModbusCoupler {
     }
 
     /**
-<<<<<<< HEAD
      * Returns a reference to the <tt>ProcessImage</tt> by <tt>unitID</tt> of this
-=======
-<<<<<<< HEAD
-     * Returns a reference to the <tt>ProcessImage</tt> of this
->>>>>>> origin/master
      * <tt>ModbusCoupler</tt>.
      *
      * @param unitID the <tt>unitID</tt> of the <tt>ProcessImage</tt> to fetch.
-     * @return the <tt>ProcessImage</tt>.
+     * @return the <tt>ProcessImage</tt>, or null if the unit has none.
      */
-    public synchronized ProcessImage getProcessImage(int unitID) {
+    public ProcessImage getProcessImage(int unitID) {
+        if (unitID < 0 || unitID >= MAX_UNITS) {
+            return null;
+        }
         return processImages.get(unitID);
     }
 
     /**
-<<<<<<< HEAD
      * Sets the reference to the <tt>ProcessImage</tt> by the <tt>unitID</tt>
-     * specified in the <tt>ProcessImage</tt> of this <tt>ModbusCoupler</tt>.
-=======
-     * Sets the reference to the <tt>ProcessImage</tt> of this
-     * <tt>ModbusCoupler</tt>.
-=======
-     * Returns a reference to the <tt>ProcessImage</tt> by <tt>unitID</tt> of this
-     * <tt>ModbusCoupler</tt>.
+     * specified in the <tt>ProcessImage</tt> of this <tt>ModbusCoupler</tt>,
+     * replacing any image the unit already has.
      *
-     * @param unitID the <tt>unitID</tt> of the <tt>ProcessImage</tt> to fetch.
-     * @return the <tt>ProcessImage</tt>.
+     * @param procimg the <tt>ProcessImage</tt> to be set.
+     * @throws IllegalArgumentException if the unit ID of the image is not 0 to 255
      */
-    public synchronized ProcessImage getProcessImage(int unitID) {
-        return processImages.get(unitID);
+    public void setProcessImage(ProcessImage procimg) {
+        int unitID = procimg.getUnitID();
+        if (unitID < 0 || unitID >= MAX_UNITS) {
+            throw new IllegalArgumentException(String.format("Unit ID %d is not in the range 0 to %d", unitID, MAX_UNITS - 1));
+        }
+        ProcessImage previous = processImages.getAndSet(unitID, procimg);
+        if (previous != null && previous != procimg) {
+            logger.debug("Replaced the process image of unit {}", unitID);
+        }
     }
 
     /**
-     * Sets the reference to the <tt>ProcessImage</tt> by the <tt>unitID</tt>
-     * specified in the <tt>ProcessImage</tt> of this <tt>ModbusCoupler</tt>.
->>>>>>> refs/remotes/steveohara/development
->>>>>>> origin/master
+     * Removes the <tt>ProcessImage</tt> of a unit, so that its requests are
+     * no longer answered.
      *
-     * @param procimg the <tt>ProcessImage</tt> to be set.
+     * @param unitID the <tt>unitID</tt> of the <tt>ProcessImage</tt> to remove.
+     * @return the <tt>ProcessImage</tt> that was removed, or null if the unit had none.
      */
-    public synchronized void setProcessImage(ProcessImage procimg) {
-<<<<<<< HEAD
-        processImages.put(procimg.getUnitID(), procimg);
-=======
-<<<<<<< HEAD
-        processImage = procimg;
-=======
-        processImages.put(procimg.getUnitID(), procimg);
->>>>>>> refs/remotes/steveohara/development
->>>>>>> origin/master
+    public ProcessImage removeProcessImage(int unitID) {
+        if (unitID < 0 || unitID >= MAX_UNITS) {
+            return null;
+        }
+        return processImages.getAndSet(unitID, null);
     }
 
     /**
@@ -17,18 +17,44 @@ package com.ghgande.j2mod.modbus.facade;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
 import com.ghgande.j2mod.modbus.io.ModbusTransaction;
 import com.ghgande.j2mod.modbus.msg.*;
 import com.ghgande.j2mod.modbus.procimg.InputRegister;
 import com.ghgande.j2mod.modbus.procimg.Register;
 import com.ghgande.j2mod.modbus.util.BitVector;
+import com.ghgande.j2mod.modbus.util.ModbusExecutors;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  * Modbus/TCP Master facade - common methods for all the facade implementations
  * The emphasis is in making callas to Modbus devices as simple as possible
  * for the most common Function Codes.
  * This class makes sure that no NPE is raised and that the methods are thread-safe.
+ * They are serialised with a lock rather than a monitor, so that a virtual
+ * thread blocked waiting for a response gives up its carrier thread.
+ *
+ * <p>
+ * Each operation also has an asynchronous form (e.g. {@link #readCoilsAsync(int, int, int)})
+ * that returns straight away with a <tt>CompletableFuture</tt>. Asynchronous
+ * requests are run one at a time per master on a shared pool of threads, or
+ * on any other executor such as
+ * {@link ModbusExecutors#newThreadPerTaskExecutor(String)} (see
+ * {@link #setAsyncExecutor(Executor)}), so that a few threads can poll many
+ * devices. The future fails with a <tt>ModbusIOException</tt> if the response
+ * does not arrive within the timeout, and cancelling it drops the request if
+ * it hasn't been sent yet.
  *
  * @author Steve O'Hara (4energy)
  * @version 2.0 (March 2016)
@@ -37,6 +63,16 @@ abstract public class AbstractModbusMaster {
 
     private static final int DEFAULT_UNIT_ID = 1;
 
+    /**
+     * Discards the response of a write whose result is of no interest
+     */
+    private static final Function<ModbusResponse, Void> IGNORE_RESPONSE = new Function<ModbusResponse, Void>() {
+        public Void apply(ModbusResponse response) {
+            return null;
+        }
+    };
+
+    protected final ReentrantLock lock = new ReentrantLock();
     protected ModbusTransaction transaction;
     private ReadCoilsRequest readCoilsRequest;
     private ReadInputDiscretesRequest readInputDiscretesRequest;
@@ -47,14 +83,25 @@ abstract public class AbstractModbusMaster {
     private WriteSingleRegisterRequest writeSingleRegisterRequest;
     private WriteMultipleRegistersRequest writeMultipleRegistersRequest;
     protected int timeout = Modbus.DEFAULT_TIMEOUT;
+    private static ExecutorService defaultAsyncExecutor;
+    private static ScheduledExecutorService asyncTimer;
+    private Executor asyncExecutor;
+    private final Object asyncLock = new Object();
+    private CompletableFuture<Void> asyncTail = CompletableFuture.completedFuture(null);
 
     /**
      * Sets the transaction to use
      *
      * @param transaction Transaction to use
      */
-    protected synchronized void setTransaction(ModbusTransaction transaction) {
-        this.transaction = transaction;
+    protected void setTransaction(ModbusTransaction transaction) {
+        lock.lock();
+        try {
+            this.transaction = transaction;
+        }
+        finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -85,19 +132,25 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized BitVector readCoils(int unitId, int ref, int count) throws ModbusException {
-        checkTransaction();
-        if (readCoilsRequest == null) {
-            readCoilsRequest = new ReadCoilsRequest();
+    public BitVector readCoils(int unitId, int ref, int count) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (readCoilsRequest == null) {
+                readCoilsRequest = new ReadCoilsRequest();
+            }
+            readCoilsRequest.setUnitID(unitId);
+            readCoilsRequest.setReference(ref);
+            readCoilsRequest.setBitCount(count);
+            transaction.setRequest(readCoilsRequest);
+            transaction.execute();
+            BitVector bv = ((ReadCoilsResponse)getAndCheckResponse()).getCoils();
+            bv.forceSize(count);
+            return bv;
+        }
+        finally {
+            lock.unlock();
         }
-        readCoilsRequest.setUnitID(unitId);
-        readCoilsRequest.setReference(ref);
-        readCoilsRequest.setBitCount(count);
-        transaction.setRequest(readCoilsRequest);
-        transaction.execute();
-        BitVector bv = ((ReadCoilsResponse)getAndCheckResponse()).getCoils();
-        bv.forceSize(count);
-        return bv;
     }
 
     /**
@@ -112,17 +165,23 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized boolean writeCoil(int unitId, int ref, boolean state) throws ModbusException {
-        checkTransaction();
-        if (writeCoilRequest == null) {
-            writeCoilRequest = new WriteCoilRequest();
+    public boolean writeCoil(int unitId, int ref, boolean state) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (writeCoilRequest == null) {
+                writeCoilRequest = new WriteCoilRequest();
+            }
+            writeCoilRequest.setUnitID(unitId);
+            writeCoilRequest.setReference(ref);
+            writeCoilRequest.setCoil(state);
+            transaction.setRequest(writeCoilRequest);
+            transaction.execute();
+            return ((WriteCoilResponse)getAndCheckResponse()).getCoil();
+        }
+        finally {
+            lock.unlock();
         }
-        writeCoilRequest.setUnitID(unitId);
-        writeCoilRequest.setReference(ref);
-        writeCoilRequest.setCoil(state);
-        transaction.setRequest(writeCoilRequest);
-        transaction.execute();
-        return ((WriteCoilResponse)getAndCheckResponse()).getCoil();
     }
 
     /**
@@ -138,16 +197,22 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized void writeMultipleCoils(int unitId, int ref, BitVector coils) throws ModbusException {
-        checkTransaction();
-        if (writeMultipleCoilsRequest == null) {
-            writeMultipleCoilsRequest = new WriteMultipleCoilsRequest();
+    public void writeMultipleCoils(int unitId, int ref, BitVector coils) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (writeMultipleCoilsRequest == null) {
+                writeMultipleCoilsRequest = new WriteMultipleCoilsRequest();
+            }
+            writeMultipleCoilsRequest.setUnitID(unitId);
+            writeMultipleCoilsRequest.setReference(ref);
+            writeMultipleCoilsRequest.setCoils(coils);
+            transaction.setRequest(writeMultipleCoilsRequest);
+            transaction.execute();
+        }
+        finally {
+            lock.unlock();
         }
-        writeMultipleCoilsRequest.setUnitID(unitId);
-        writeMultipleCoilsRequest.setReference(ref);
-        writeMultipleCoilsRequest.setCoils(coils);
-        transaction.setRequest(writeMultipleCoilsRequest);
-        transaction.execute();
     }
 
     /**
@@ -166,19 +231,25 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized BitVector readInputDiscretes(int unitId, int ref, int count) throws ModbusException {
-        checkTransaction();
-        if (readInputDiscretesRequest == null) {
-            readInputDiscretesRequest = new ReadInputDiscretesRequest();
+    public BitVector readInputDiscretes(int unitId, int ref, int count) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (readInputDiscretesRequest == null) {
+                readInputDiscretesRequest = new ReadInputDiscretesRequest();
+            }
+            readInputDiscretesRequest.setUnitID(unitId);
+            readInputDiscretesRequest.setReference(ref);
+            readInputDiscretesRequest.setBitCount(count);
+            transaction.setRequest(readInputDiscretesRequest);
+            transaction.execute();
+            BitVector bv = ((ReadInputDiscretesResponse)getAndCheckResponse()).getDiscretes();
+            bv.forceSize(count);
+            return bv;
+        }
+        finally {
+            lock.unlock();
         }
-        readInputDiscretesRequest.setUnitID(unitId);
-        readInputDiscretesRequest.setReference(ref);
-        readInputDiscretesRequest.setBitCount(count);
-        transaction.setRequest(readInputDiscretesRequest);
-        transaction.execute();
-        BitVector bv = ((ReadInputDiscretesResponse)getAndCheckResponse()).getDiscretes();
-        bv.forceSize(count);
-        return bv;
     }
 
     /**
@@ -196,17 +267,23 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized InputRegister[] readInputRegisters(int unitId, int ref, int count) throws ModbusException {
-        checkTransaction();
-        if (readInputRegistersRequest == null) {
-            readInputRegistersRequest = new ReadInputRegistersRequest();
+    public InputRegister[] readInputRegisters(int unitId, int ref, int count) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (readInputRegistersRequest == null) {
+                readInputRegistersRequest = new ReadInputRegistersRequest();
+            }
+            readInputRegistersRequest.setUnitID(unitId);
+            readInputRegistersRequest.setReference(ref);
+            readInputRegistersRequest.setWordCount(count);
+            transaction.setRequest(readInputRegistersRequest);
+            transaction.execute();
+            return ((ReadInputRegistersResponse)getAndCheckResponse()).getRegisters();
+        }
+        finally {
+            lock.unlock();
         }
-        readInputRegistersRequest.setUnitID(unitId);
-        readInputRegistersRequest.setReference(ref);
-        readInputRegistersRequest.setWordCount(count);
-        transaction.setRequest(readInputRegistersRequest);
-        transaction.execute();
-        return ((ReadInputRegistersResponse)getAndCheckResponse()).getRegisters();
     }
 
     /**
@@ -224,17 +301,23 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized Register[] readMultipleRegisters(int unitId, int ref, int count) throws ModbusException {
-        checkTransaction();
-        if (readMultipleRegistersRequest == null) {
-            readMultipleRegistersRequest = new ReadMultipleRegistersRequest();
+    public Register[] readMultipleRegisters(int unitId, int ref, int count) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (readMultipleRegistersRequest == null) {
+                readMultipleRegistersRequest = new ReadMultipleRegistersRequest();
+            }
+            readMultipleRegistersRequest.setUnitID(unitId);
+            readMultipleRegistersRequest.setReference(ref);
+            readMultipleRegistersRequest.setWordCount(count);
+            transaction.setRequest(readMultipleRegistersRequest);
+            transaction.execute();
+            return ((ReadMultipleRegistersResponse)getAndCheckResponse()).getRegisters();
+        }
+        finally {
+            lock.unlock();
         }
-        readMultipleRegistersRequest.setUnitID(unitId);
-        readMultipleRegistersRequest.setReference(ref);
-        readMultipleRegistersRequest.setWordCount(count);
-        transaction.setRequest(readMultipleRegistersRequest);
-        transaction.execute();
-        return ((ReadMultipleRegistersResponse)getAndCheckResponse()).getRegisters();
     }
 
     /**
@@ -248,16 +331,22 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized void writeSingleRegister(int unitId, int ref, Register register) throws ModbusException {
-        checkTransaction();
-        if (writeSingleRegisterRequest == null) {
-            writeSingleRegisterRequest = new WriteSingleRegisterRequest();
+    public void writeSingleRegister(int unitId, int ref, Register register) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (writeSingleRegisterRequest == null) {
+                writeSingleRegisterRequest = new WriteSingleRegisterRequest();
+            }
+            writeSingleRegisterRequest.setUnitID(unitId);
+            writeSingleRegisterRequest.setReference(ref);
+            writeSingleRegisterRequest.setRegister(register);
+            transaction.setRequest(writeSingleRegisterRequest);
+            transaction.execute();
+        }
+        finally {
+            lock.unlock();
         }
-        writeSingleRegisterRequest.setUnitID(unitId);
-        writeSingleRegisterRequest.setReference(ref);
-        writeSingleRegisterRequest.setRegister(register);
-        transaction.setRequest(writeSingleRegisterRequest);
-        transaction.execute();
     }
 
     /**
@@ -271,16 +360,162 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized void writeMultipleRegisters(int unitId, int ref, Register[] registers) throws ModbusException {
-        checkTransaction();
-        if (writeMultipleRegistersRequest == null) {
-            writeMultipleRegistersRequest = new WriteMultipleRegistersRequest();
+    public void writeMultipleRegisters(int unitId, int ref, Register[] registers) throws ModbusException {
+        lock.lock();
+        try {
+            checkTransaction();
+            if (writeMultipleRegistersRequest == null) {
+                writeMultipleRegistersRequest = new WriteMultipleRegistersRequest();
+            }
+            writeMultipleRegistersRequest.setUnitID(unitId);
+            writeMultipleRegistersRequest.setReference(ref);
+            writeMultipleRegistersRequest.setRegisters(registers);
+            transaction.setRequest(writeMultipleRegistersRequest);
+            transaction.execute();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a given number of coil states from the slave into an array of
+     * <tt>long</tt>, coil <tt>i</tt> going to bit <tt>i % 64</tt> of element
+     * <tt>i / 64</tt>.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the coil to start reading from.
+     * @param count  the number of coil states to be read.
+     * @param bits   the array to read into, at least <tt>(count + 63) / 64</tt> long.
+     *
+     * @return the number of coil states read.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int readCoils(int unitId, int ref, int count, long[] bits) throws ModbusException {
+        lock.lock();
+        try {
+            checkBitRoom(bits, count);
+            checkTransaction();
+            if (readCoilsRequest == null) {
+                readCoilsRequest = new ReadCoilsRequest();
+            }
+            readCoilsRequest.setUnitID(unitId);
+            readCoilsRequest.setReference(ref);
+            readCoilsRequest.setBitCount(count);
+            transaction.setRequest(readCoilsRequest);
+            transaction.execute();
+            return ((ReadCoilsResponse)getAndCheckResponse()).getView().getBits(bits, count);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a given number of input discrete states from the slave into an
+     * array of <tt>long</tt>, discrete <tt>i</tt> going to bit <tt>i % 64</tt>
+     * of element <tt>i / 64</tt>.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the input discrete to start reading from.
+     * @param count  the number of input discrete states to be read.
+     * @param bits   the array to read into, at least <tt>(count + 63) / 64</tt> long.
+     *
+     * @return the number of input discrete states read.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int readInputDiscretes(int unitId, int ref, int count, long[] bits) throws ModbusException {
+        lock.lock();
+        try {
+            checkBitRoom(bits, count);
+            checkTransaction();
+            if (readInputDiscretesRequest == null) {
+                readInputDiscretesRequest = new ReadInputDiscretesRequest();
+            }
+            readInputDiscretesRequest.setUnitID(unitId);
+            readInputDiscretesRequest.setReference(ref);
+            readInputDiscretesRequest.setBitCount(count);
+            transaction.setRequest(readInputDiscretesRequest);
+            transaction.execute();
+            return ((ReadInputDiscretesResponse)getAndCheckResponse()).getView().getBits(bits, count);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a given number of input registers from the slave into an array
+     * of unsigned values, without creating a register object for each.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the input register to start reading from.
+     * @param count  the number of input registers to be read.
+     * @param dest   the array to read into.
+     * @param off    the index in the array of the first register.
+     *
+     * @return the number of input registers read.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int readInputRegisters(int unitId, int ref, int count, int[] dest, int off) throws ModbusException {
+        lock.lock();
+        try {
+            checkRegisterRoom(dest, off, count);
+            checkTransaction();
+            if (readInputRegistersRequest == null) {
+                readInputRegistersRequest = new ReadInputRegistersRequest();
+            }
+            readInputRegistersRequest.setUnitID(unitId);
+            readInputRegistersRequest.setReference(ref);
+            readInputRegistersRequest.setWordCount(count);
+            transaction.setRequest(readInputRegistersRequest);
+            transaction.execute();
+            return ((ReadInputRegistersResponse)getAndCheckResponse()).getRegisterValues(dest, off);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a given number of registers from the slave into an array of
+     * unsigned values, without creating a register object for each.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the register to start reading from.
+     * @param count  the number of registers to be read.
+     * @param dest   the array to read into.
+     * @param off    the index in the array of the first register.
+     *
+     * @return the number of registers read.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public int readMultipleRegisters(int unitId, int ref, int count, int[] dest, int off) throws ModbusException {
+        lock.lock();
+        try {
+            checkRegisterRoom(dest, off, count);
+            checkTransaction();
+            if (readMultipleRegistersRequest == null) {
+                readMultipleRegistersRequest = new ReadMultipleRegistersRequest();
+            }
+            readMultipleRegistersRequest.setUnitID(unitId);
+            readMultipleRegistersRequest.setReference(ref);
+            readMultipleRegistersRequest.setWordCount(count);
+            transaction.setRequest(readMultipleRegistersRequest);
+            transaction.execute();
+            return ((ReadMultipleRegistersResponse)getAndCheckResponse()).getRegisterValues(dest, off);
+        }
+        finally {
+            lock.unlock();
         }
-        writeMultipleRegistersRequest.setUnitID(unitId);
-        writeMultipleRegistersRequest.setReference(ref);
-        writeMultipleRegistersRequest.setRegisters(registers);
-        transaction.setRequest(writeMultipleRegistersRequest);
-        transaction.execute();
     }
 
     /**
@@ -298,7 +533,7 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized BitVector readCoils(int ref, int count) throws ModbusException {
+    public BitVector readCoils(int ref, int count) throws ModbusException {
         return readCoils(DEFAULT_UNIT_ID, ref, count);
     }
 
@@ -313,7 +548,7 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized boolean writeCoil(int ref, boolean state) throws ModbusException {
+    public boolean writeCoil(int ref, boolean state) throws ModbusException {
         return writeCoil(DEFAULT_UNIT_ID, ref, state);
     }
 
@@ -329,7 +564,7 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized void writeMultipleCoils(int ref, BitVector coils) throws ModbusException {
+    public void writeMultipleCoils(int ref, BitVector coils) throws ModbusException {
         writeMultipleCoils(DEFAULT_UNIT_ID, ref, coils);
     }
 
@@ -348,7 +583,7 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized BitVector readInputDiscretes(int ref, int count) throws ModbusException {
+    public BitVector readInputDiscretes(int ref, int count) throws ModbusException {
         return readInputDiscretes(DEFAULT_UNIT_ID, ref, count);
     }
 
@@ -366,7 +601,7 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized InputRegister[] readInputRegisters(int ref, int count) throws ModbusException {
+    public InputRegister[] readInputRegisters(int ref, int count) throws ModbusException {
         return readInputRegisters(DEFAULT_UNIT_ID, ref, count);
     }
 
@@ -384,7 +619,7 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized Register[] readMultipleRegisters(int ref, int count) throws ModbusException {
+    public Register[] readMultipleRegisters(int ref, int count) throws ModbusException {
         return readMultipleRegisters(DEFAULT_UNIT_ID, ref, count);
     }
 
@@ -398,7 +633,7 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized void writeSingleRegister(int ref, Register register) throws ModbusException {
+    public void writeSingleRegister(int ref, Register register) throws ModbusException {
         writeSingleRegister(DEFAULT_UNIT_ID, ref, register);
     }
 
@@ -412,10 +647,274 @@ abstract public class AbstractModbusMaster {
      * @throws ModbusException if an I/O error, a slave exception or
      *                         a transaction error occurs.
      */
-    public synchronized void writeMultipleRegisters(int ref, Register[] registers) throws ModbusException {
+    public void writeMultipleRegisters(int ref, Register[] registers) throws ModbusException {
         writeMultipleRegisters(DEFAULT_UNIT_ID, ref, registers);
     }
 
+    /**
+     * Reads a given number of coil states from the slave without blocking.
+     * <p/>
+     * Note that the number of bits in the bit vector will be
+     * forced to the number originally requested.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the coil to start reading from.
+     * @param count  the number of coil states to be read.
+     *
+     * @return a future <tt>BitVector</tt> instance holding the
+     * received coil states.
+     */
+    public CompletableFuture<BitVector> readCoilsAsync(int unitId, int ref, final int count) {
+        ReadCoilsRequest request = new ReadCoilsRequest(ref, count);
+        request.setUnitID(unitId);
+        return convert(executeAsync(request, timeout), new Function<ModbusResponse, BitVector>() {
+            public BitVector apply(ModbusResponse response) {
+                BitVector bv = ((ReadCoilsResponse)response).getCoils();
+                bv.forceSize(count);
+                return bv;
+            }
+        });
+    }
+
+    /**
+     * Writes a coil state to the slave without blocking.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the coil to be written.
+     * @param state  the coil state to be written.
+     *
+     * @return the future state of the coil as returned from the slave.
+     */
+    public CompletableFuture<Boolean> writeCoilAsync(int unitId, int ref, boolean state) {
+        WriteCoilRequest request = new WriteCoilRequest(ref, state);
+        request.setUnitID(unitId);
+        return convert(executeAsync(request, timeout), new Function<ModbusResponse, Boolean>() {
+            public Boolean apply(ModbusResponse response) {
+                return ((WriteCoilResponse)response).getCoil();
+            }
+        });
+    }
+
+    /**
+     * Writes a given number of coil states to the slave without blocking.
+     * <p/>
+     * Note that the number of coils to be written is given
+     * implicitly, through {@link BitVector#size()}.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the coil to start writing to.
+     * @param coils  a <tt>BitVector</tt> which holds the coil states to be written.
+     *
+     * @return a future that completes when the slave has responded.
+     */
+    public CompletableFuture<Void> writeMultipleCoilsAsync(int unitId, int ref, BitVector coils) {
+        WriteMultipleCoilsRequest request = new WriteMultipleCoilsRequest(ref, coils);
+        request.setUnitID(unitId);
+        return convert(executeAsync(request, timeout), IGNORE_RESPONSE);
+    }
+
+    /**
+     * Reads a given number of input discrete states from the slave without
+     * blocking.
+     * <p/>
+     * Note that the number of bits in the bit vector will be
+     * forced to the number originally requested.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the input discrete to start reading from.
+     * @param count  the number of input discrete states to be read.
+     *
+     * @return a future <tt>BitVector</tt> instance holding the received input
+     * discrete states.
+     */
+    public CompletableFuture<BitVector> readInputDiscretesAsync(int unitId, int ref, final int count) {
+        ReadInputDiscretesRequest request = new ReadInputDiscretesRequest(ref, count);
+        request.setUnitID(unitId);
+        return convert(executeAsync(request, timeout), new Function<ModbusResponse, BitVector>() {
+            public BitVector apply(ModbusResponse response) {
+                BitVector bv = ((ReadInputDiscretesResponse)response).getDiscretes();
+                bv.forceSize(count);
+                return bv;
+            }
+        });
+    }
+
+    /**
+     * Reads a given number of input registers from the slave without blocking.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the input register to start reading from.
+     * @param count  the number of input registers to be read.
+     *
+     * @return a future <tt>InputRegister[]</tt> with the received input registers.
+     */
+    public CompletableFuture<InputRegister[]> readInputRegistersAsync(int unitId, int ref, int count) {
+        ReadInputRegistersRequest request = new ReadInputRegistersRequest(ref, count);
+        request.setUnitID(unitId);
+        return convert(executeAsync(request, timeout), new Function<ModbusResponse, InputRegister[]>() {
+            public InputRegister[] apply(ModbusResponse response) {
+                return ((ReadInputRegistersResponse)response).getRegisters();
+            }
+        });
+    }
+
+    /**
+     * Reads a given number of registers from the slave without blocking.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the register to start reading from.
+     * @param count  the number of registers to be read.
+     *
+     * @return a future <tt>Register[]</tt> holding the received registers.
+     */
+    public CompletableFuture<Register[]> readMultipleRegistersAsync(int unitId, int ref, int count) {
+        ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(ref, count);
+        request.setUnitID(unitId);
+        return convert(executeAsync(request, timeout), new Function<ModbusResponse, Register[]>() {
+            public Register[] apply(ModbusResponse response) {
+                return ((ReadMultipleRegistersResponse)response).getRegisters();
+            }
+        });
+    }
+
+    /**
+     * Writes a single register to the slave without blocking.
+     *
+     * @param unitId   the slave unit id.
+     * @param ref      the offset of the register to be written.
+     * @param register a <tt>Register</tt> holding the value of the register
+     *                 to be written.
+     *
+     * @return a future that completes when the slave has responded.
+     */
+    public CompletableFuture<Void> writeSingleRegisterAsync(int unitId, int ref, Register register) {
+        WriteSingleRegisterRequest request = new WriteSingleRegisterRequest(ref, register);
+        request.setUnitID(unitId);
+        return convert(executeAsync(request, timeout), IGNORE_RESPONSE);
+    }
+
+    /**
+     * Writes a number of registers to the slave without blocking.
+     *
+     * @param unitId    the slave unit id.
+     * @param ref       the offset of the register to start writing to.
+     * @param registers a <tt>Register[]</tt> holding the values of
+     *                  the registers to be written.
+     *
+     * @return a future that completes when the slave has responded.
+     */
+    public CompletableFuture<Void> writeMultipleRegistersAsync(int unitId, int ref, Register[] registers) {
+        WriteMultipleRegistersRequest request = new WriteMultipleRegistersRequest(ref, registers);
+        request.setUnitID(unitId);
+        return convert(executeAsync(request, timeout), IGNORE_RESPONSE);
+    }
+
+    /**
+     * Sends any request to the slave without blocking.
+     * <p/>
+     * The future fails with a <tt>ModbusSlaveException</tt> if the slave
+     * returns an exception response, and with a <tt>ModbusIOException</tt>
+     * if the response hasn't arrived within the timeout, measured from
+     * now. Cancelling the future drops the request if it hasn't been sent
+     * yet, a request already sent is left to run its course and its
+     * response is discarded.
+     *
+     * @param request the request to send, which must not be reused until
+     *                the future has completed.
+     * @param timeout the time to wait for the response in milliseconds, 0 or
+     *                less to rely on the transport timeout alone.
+     *
+     * @return the future response.
+     */
+    public CompletableFuture<ModbusResponse> executeAsync(ModbusRequest request, final int timeout) {
+        final CompletableFuture<ModbusResponse> result = sendAsync(request);
+        if (timeout > 0 && !result.isDone()) {
+            final ScheduledFuture<?> timer = getAsyncTimer().schedule(new Runnable() {
+                public void run() {
+                    result.completeExceptionally(new ModbusIOException("Timeout waiting %d ms for response", timeout));
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            result.whenComplete(new BiConsumer<ModbusResponse, Throwable>() {
+                public void accept(ModbusResponse response, Throwable failure) {
+                    timer.cancel(false);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Sends the request and returns a future for its response. This
+     * implementation queues the request behind the other asynchronous
+     * requests of this master and runs it as a normal blocking transaction
+     * on the asynchronous executor. Masters whose transport can have several
+     * requests in flight may override it to avoid tying up a thread for the
+     * whole round trip.
+     *
+     * @param request Request to send
+     *
+     * @return Future response, completed exceptionally if the transaction fails
+     */
+    protected CompletableFuture<ModbusResponse> sendAsync(final ModbusRequest request) {
+        final CompletableFuture<ModbusResponse> result = new CompletableFuture<ModbusResponse>();
+        Runnable task = new Runnable() {
+            public void run() {
+                if (result.isDone()) {
+                    // Cancelled or timed out while queued
+                    return;
+                }
+                try {
+                    ModbusResponse response;
+                    lock.lock();
+                    try {
+                        checkTransaction();
+                        transaction.setRequest(request);
+                        transaction.execute();
+                        response = getAndCheckResponse();
+                    }
+                    finally {
+                        lock.unlock();
+                    }
+                    result.complete(response);
+                }
+                catch (Throwable ex) {
+                    result.completeExceptionally(ex);
+                }
+            }
+        };
+        synchronized (asyncLock) {
+            asyncTail = asyncTail.thenRunAsync(task, getAsyncExecutor());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the executor used to run asynchronous requests
+     *
+     * @return Executor, a pool shared by all masters unless one has been set
+     */
+    public Executor getAsyncExecutor() {
+        synchronized (asyncLock) {
+            if (asyncExecutor == null) {
+                asyncExecutor = getDefaultAsyncExecutor();
+            }
+            return asyncExecutor;
+        }
+    }
+
+    /**
+     * Sets the executor used to run asynchronous requests. Requests of the
+     * same master never run at the same time, so one thread per master
+     * is all that can be used.
+     *
+     * @param asyncExecutor Executor, null to use the shared pool
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        synchronized (asyncLock) {
+            this.asyncExecutor = asyncExecutor;
+        }
+    }
+
     /**
      * Reads the response from the transaction
      * If there is no response, then it throws an error
@@ -443,6 +942,32 @@ abstract public class AbstractModbusMaster {
         }
     }
 
+    /**
+     * Checks that the array has room for the registers before anything is
+     * sent
+     *
+     * @param dest  Array to read into
+     * @param off   Index of the first register
+     * @param count Number of registers
+     */
+    private static void checkRegisterRoom(int[] dest, int off, int count) {
+        if (off < 0 || count < 0 || off + count > dest.length) {
+            throw new IndexOutOfBoundsException(String.format("No room for %d registers at %d", count, off));
+        }
+    }
+
+    /**
+     * Checks that the array has room for the bits before anything is sent
+     *
+     * @param bits  Array to read into
+     * @param count Number of bits
+     */
+    private static void checkBitRoom(long[] bits, int count) {
+        if (count < 0 || (count + 63) / 64 > bits.length) {
+            throw new IndexOutOfBoundsException(String.format("No room for %d bits", count));
+        }
+    }
+
     /**
      * Returns the receive timeout in milliseconds
      *
@@ -462,12 +987,56 @@ abstract public class AbstractModbusMaster {
     }
 
     /**
-     * Returns the transport being used by the
+     * Converts the response into the result of a facade method, passing a
+     * cancellation of the result back to the request
      *
-     * @return ModbusTransport
+     * @param response  Future response
+     * @param converter Conversion of the response
+     * @param <T>       Type of the result
+     *
+     * @return Future result
      */
-    public abstract AbstractModbusTransport getTransport();
+    private static <T> CompletableFuture<T> convert(final CompletableFuture<ModbusResponse> response, Function<ModbusResponse, T> converter) {
+        final CompletableFuture<T> result = response.thenApply(converter);
+        result.whenComplete(new BiConsumer<T, Throwable>() {
+            public void accept(T value, Throwable failure) {
+                if (result.isCancelled()) {
+                    response.cancel(false);
+                }
+            }
+        });
+        return result;
+    }
 
+    /**
+     * Returns the executor shared by the masters that haven't been given one
+     * of their own, a pool of daemon threads
+     *
+     * @return Executor
+     */
+    private static synchronized ExecutorService getDefaultAsyncExecutor() {
+        if (defaultAsyncExecutor == null) {
+            defaultAsyncExecutor = Executors.newFixedThreadPool(Modbus.DEFAULT_ASYNC_POOL_SIZE, ModbusExecutors.newDaemonThreadFactory("Modbus async"));
+        }
+        return defaultAsyncExecutor;
+    }
 
+    /**
+     * Returns the timer used to fail asynchronous requests that take too long
+     *
+     * @return Timer
+     */
+    private static synchronized ScheduledExecutorService getAsyncTimer() {
+        if (asyncTimer == null) {
+            asyncTimer = Executors.newSingleThreadScheduledExecutor(ModbusExecutors.newDaemonThreadFactory("Modbus async timer"));
+        }
+        return asyncTimer;
+    }
 
+    /**
+     * Returns the transport being used by the
+     *
+     * @return ModbusTransport
+     */
+    public abstract AbstractModbusTransport getTransport();
 }
\ No newline at end of file
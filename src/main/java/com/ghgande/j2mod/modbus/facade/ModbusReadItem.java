@@ -0,0 +1,187 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+
+/**
+ * A run of coils, input discretes, input registers or holding registers to
+ * be read by a <tt>ModbusReadPlanner</tt>, which holds the values read.
+ *
+ * <p>
+ * The table is given by the function code used to read it, one of
+ * <tt>Modbus.READ_COILS</tt>, <tt>Modbus.READ_INPUT_DISCRETES</tt>,
+ * <tt>Modbus.READ_HOLDING_REGISTERS</tt> or <tt>Modbus.READ_INPUT_REGISTERS</tt>.
+ */
+public class ModbusReadItem {
+
+    private final int unitId;
+    private final int functionCode;
+    private final int reference;
+    private final int count;
+    private int[] values;
+    private ModbusException exception;
+
+    /**
+     * Constructs an item
+     *
+     * @param unitId       the slave unit id.
+     * @param functionCode the read function code identifying the table.
+     * @param reference    the offset of the first coil, discrete or register.
+     * @param count        the number of coils, discretes or registers.
+     */
+    public ModbusReadItem(int unitId, int functionCode, int reference, int count) {
+        if (functionCode < Modbus.READ_COILS || functionCode > Modbus.READ_INPUT_REGISTERS) {
+            throw new IllegalArgumentException("Invalid read function code: " + functionCode);
+        }
+        if (reference < 0 || count < 1 || reference + count > 65536) {
+            throw new IllegalArgumentException(String.format("Invalid range %d to %d", reference, reference + count - 1));
+        }
+        this.unitId = unitId;
+        this.functionCode = functionCode;
+        this.reference = reference;
+        this.count = count;
+    }
+
+    /**
+     * Returns the slave unit id
+     *
+     * @return Unit id
+     */
+    public int getUnitId() {
+        return unitId;
+    }
+
+    /**
+     * Returns the read function code identifying the table
+     *
+     * @return Function code
+     */
+    public int getFunctionCode() {
+        return functionCode;
+    }
+
+    /**
+     * Returns the offset of the first coil, discrete or register
+     *
+     * @return Reference
+     */
+    public int getReference() {
+        return reference;
+    }
+
+    /**
+     * Returns the number of coils, discretes or registers
+     *
+     * @return Count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Tests if the item is made of bits rather than registers
+     *
+     * @return True for coils and input discretes
+     */
+    public boolean isBits() {
+        return functionCode == Modbus.READ_COILS || functionCode == Modbus.READ_INPUT_DISCRETES;
+    }
+
+    /**
+     * Tests if the values of the last read are available
+     *
+     * @return True if read without error
+     */
+    public boolean isValid() {
+        return values != null && exception == null;
+    }
+
+    /**
+     * Returns the values of the last read, unsigned register values or 0/1
+     * for bits
+     *
+     * @return Values, null if not read
+     */
+    public int[] getValues() {
+        return values;
+    }
+
+    /**
+     * Returns a single value of the last read
+     *
+     * @param index the index within the item.
+     *
+     * @return Unsigned register value, or 0/1 for bits
+     */
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns a single bit of the last read
+     *
+     * @param index the index within the item.
+     *
+     * @return Bit state
+     */
+    public boolean getBit(int index) {
+        return values[index] != 0;
+    }
+
+    /**
+     * Returns the exception returned by the slave for this item in the last
+     * read
+     *
+     * @return Exception, null if read successfully
+     */
+    public ModbusException getException() {
+        return exception;
+    }
+
+    /**
+     * Clears the result of any previous read
+     */
+    void reset() {
+        values = new int[count];
+        exception = null;
+    }
+
+    /**
+     * Sets a single value
+     *
+     * @param index the index within the item.
+     * @param value the value.
+     */
+    void setValue(int index, int value) {
+        values[index] = value;
+    }
+
+    /**
+     * Records that the slave refused to return this item
+     *
+     * @param exception the exception returned.
+     */
+    void setException(ModbusException exception) {
+        this.exception = exception;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("unit %d FC%d %d-%d", unitId, functionCode, reference, reference + count - 1);
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.util.BitVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Plans the reads of a set of <tt>ModbusReadItem</tt> instances so that they
+ * take as few requests as possible.
+ *
+ * <p>
+ * Items of the same unit and table are merged into blocks, bridging gaps of
+ * up to the gap tolerance between them, and no block is longer than a
+ * single request allows (<tt>Modbus.MAX_REGISTERS</tt> registers or
+ * <tt>Modbus.MAX_BITS</tt> bits). An item that is too long for one request
+ * is split over several blocks. After reading, the values of each block are
+ * copied back to the items it covers.
+ *
+ * <p>
+ * A gap may contain addresses the slave doesn't have, so a block that the
+ * slave refuses is read again one item at a time. An item the slave still
+ * refuses carries the exception rather than failing the whole read.
+ */
+public class ModbusReadPlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusReadPlanner.class);
+
+    private int registerGap = 0;
+    private int bitGap = 0;
+    private int maxRegisters = Modbus.MAX_REGISTERS;
+    private int maxBits = Modbus.MAX_BITS;
+
+    /**
+     * Returns the largest number of unwanted registers read to join two items
+     *
+     * @return Register gap tolerance
+     */
+    public int getRegisterGap() {
+        return registerGap;
+    }
+
+    /**
+     * Sets the largest number of unwanted registers read to join two items
+     * into the same request
+     *
+     * @param registerGap Register gap tolerance
+     */
+    public void setRegisterGap(int registerGap) {
+        this.registerGap = Math.max(0, registerGap);
+    }
+
+    /**
+     * Returns the largest number of unwanted bits read to join two items
+     *
+     * @return Bit gap tolerance
+     */
+    public int getBitGap() {
+        return bitGap;
+    }
+
+    /**
+     * Sets the largest number of unwanted bits read to join two items into
+     * the same request
+     *
+     * @param bitGap Bit gap tolerance
+     */
+    public void setBitGap(int bitGap) {
+        this.bitGap = Math.max(0, bitGap);
+    }
+
+    /**
+     * Returns the maximum number of registers read by one request
+     *
+     * @return Maximum registers
+     */
+    public int getMaxRegisters() {
+        return maxRegisters;
+    }
+
+    /**
+     * Sets the maximum number of registers read by one request, for devices
+     * that accept less than the protocol allows
+     *
+     * @param maxRegisters Maximum registers, 1 to <tt>Modbus.MAX_REGISTERS</tt>
+     */
+    public void setMaxRegisters(int maxRegisters) {
+        if (maxRegisters < 1 || maxRegisters > Modbus.MAX_REGISTERS) {
+            throw new IllegalArgumentException("Invalid maximum number of registers: " + maxRegisters);
+        }
+        this.maxRegisters = maxRegisters;
+    }
+
+    /**
+     * Returns the maximum number of bits read by one request
+     *
+     * @return Maximum bits
+     */
+    public int getMaxBits() {
+        return maxBits;
+    }
+
+    /**
+     * Sets the maximum number of bits read by one request, for devices that
+     * accept less than the protocol allows
+     *
+     * @param maxBits Maximum bits, 1 to <tt>Modbus.MAX_BITS</tt>
+     */
+    public void setMaxBits(int maxBits) {
+        if (maxBits < 1 || maxBits > Modbus.MAX_BITS) {
+            throw new IllegalArgumentException("Invalid maximum number of bits: " + maxBits);
+        }
+        this.maxBits = maxBits;
+    }
+
+    /**
+     * Works out the requests needed to read the items
+     *
+     * @param items Items to read
+     *
+     * @return Blocks to read, one request each
+     */
+    public List<Block> plan(Collection<ModbusReadItem> items) {
+        List<ModbusReadItem> sorted = new ArrayList<ModbusReadItem>(items);
+        Collections.sort(sorted, ITEM_ORDER);
+
+        List<Block> blocks = new ArrayList<Block>();
+        Block block = null;
+        for (ModbusReadItem item : sorted) {
+            int max = item.isBits() ? maxBits : maxRegisters;
+            int gap = item.isBits() ? bitGap : registerGap;
+            int start = item.getReference();
+            int end = start + item.getCount();
+            while (start < end) {
+                boolean joins = block != null
+                        && block.unitId == item.getUnitId()
+                        && block.functionCode == item.getFunctionCode()
+                        && start <= block.getEnd() + gap
+                        && start < block.reference + max;
+                if (!joins) {
+                    block = new Block(item.getUnitId(), item.getFunctionCode(), start);
+                    blocks.add(block);
+                }
+                block.count = Math.max(block.count, Math.min(end, block.reference + max) - block.reference);
+                if (!block.items.contains(item)) {
+                    block.items.add(item);
+                }
+                start = block.getEnd();
+            }
+        }
+        logger.debug("Planned {} items into {} requests", sorted.size(), blocks.size());
+        return blocks;
+    }
+
+    /**
+     * Reads the items using as few requests as possible and copies the
+     * values back to each item
+     *
+     * @param master Master to read with
+     * @param items  Items to read
+     *
+     * @throws ModbusException if an I/O error or a transaction error occurs
+     */
+    public void read(AbstractModbusMaster master, Collection<ModbusReadItem> items) throws ModbusException {
+        for (ModbusReadItem item : items) {
+            item.reset();
+        }
+        for (Block block : plan(items)) {
+            try {
+                scatter(block.reference, readValues(master, block.unitId, block.functionCode, block.reference, block.count), block.items);
+            }
+            catch (ModbusSlaveException ex) {
+                logger.debug("Slave refused {}, reading its items one at a time - {}", block, ex.getMessage());
+                readItemsOfBlock(master, block, ex);
+            }
+        }
+    }
+
+    /**
+     * Writes any number of registers, splitting them into as many requests
+     * as needed
+     *
+     * @param master    Master to write with
+     * @param unitId    the slave unit id.
+     * @param ref       the offset of the register to start writing to.
+     * @param registers the registers to write.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public static void writeMultipleRegisters(AbstractModbusMaster master, int unitId, int ref, Register[] registers) throws ModbusException {
+        for (int offset = 0; offset < registers.length; offset += Modbus.MAX_WRITE_REGISTERS) {
+            int count = Math.min(Modbus.MAX_WRITE_REGISTERS, registers.length - offset);
+            Register[] chunk = new Register[count];
+            System.arraycopy(registers, offset, chunk, 0, count);
+            master.writeMultipleRegisters(unitId, ref + offset, chunk);
+        }
+    }
+
+    /**
+     * Writes any number of coils, splitting them into as many requests as
+     * needed
+     *
+     * @param master Master to write with
+     * @param unitId the slave unit id.
+     * @param ref    the offset of the coil to start writing to.
+     * @param coils  the coil states to write.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public static void writeMultipleCoils(AbstractModbusMaster master, int unitId, int ref, BitVector coils) throws ModbusException {
+        for (int offset = 0; offset < coils.size(); offset += Modbus.MAX_WRITE_BITS) {
+            int count = Math.min(Modbus.MAX_WRITE_BITS, coils.size() - offset);
+            BitVector chunk = new BitVector(count);
+            for (int i = 0; i < count; i++) {
+                chunk.setBit(i, coils.getBit(offset + i));
+            }
+            master.writeMultipleCoils(unitId, ref + offset, chunk);
+        }
+    }
+
+    /**
+     * Reads the part of each item covered by a refused block on its own,
+     * marking the items the slave still refuses
+     *
+     * @param master    Master to read with
+     * @param block     Refused block
+     * @param exception Exception returned for the block
+     *
+     * @throws ModbusException if an I/O error or a transaction error occurs
+     */
+    private void readItemsOfBlock(AbstractModbusMaster master, Block block, ModbusSlaveException exception) throws ModbusException {
+        if (block.items.size() == 1 && block.items.get(0).getReference() <= block.reference
+                && block.items.get(0).getReference() + block.items.get(0).getCount() >= block.getEnd()) {
+
+            // Nothing but the item itself was read
+            block.items.get(0).setException(exception);
+            return;
+        }
+        for (ModbusReadItem item : block.items) {
+            int start = Math.max(item.getReference(), block.reference);
+            int end = Math.min(item.getReference() + item.getCount(), block.getEnd());
+            try {
+                scatter(start, readValues(master, block.unitId, block.functionCode, start, end - start), Collections.singletonList(item));
+            }
+            catch (ModbusSlaveException ex) {
+                item.setException(ex);
+            }
+        }
+    }
+
+    /**
+     * Reads a range of a table
+     *
+     * @param master       Master to read with
+     * @param unitId       Slave unit id
+     * @param functionCode Read function code of the table
+     * @param ref          First reference
+     * @param count        Number of values
+     *
+     * @return Values read, 0/1 for bits
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    private static int[] readValues(AbstractModbusMaster master, int unitId, int functionCode, int ref, int count) throws ModbusException {
+        int[] values = new int[count];
+        switch (functionCode) {
+            case Modbus.READ_COILS:
+            case Modbus.READ_INPUT_DISCRETES:
+                long[] bits = new long[(count + 63) / 64];
+                if (functionCode == Modbus.READ_COILS) {
+                    master.readCoils(unitId, ref, count, bits);
+                }
+                else {
+                    master.readInputDiscretes(unitId, ref, count, bits);
+                }
+                for (int i = 0; i < count; i++) {
+                    values[i] = (int)(bits[i >>> 6] >>> (i & 63)) & 1;
+                }
+                break;
+            case Modbus.READ_HOLDING_REGISTERS:
+                master.readMultipleRegisters(unitId, ref, count, values, 0);
+                break;
+            default:
+                master.readInputRegisters(unitId, ref, count, values, 0);
+        }
+        return values;
+    }
+
+    /**
+     * Copies the values read from a range to the items overlapping it
+     *
+     * @param ref    First reference of the range
+     * @param values Values read
+     * @param items  Items to copy to
+     */
+    private static void scatter(int ref, int[] values, List<ModbusReadItem> items) {
+        for (ModbusReadItem item : items) {
+            int start = Math.max(item.getReference(), ref);
+            int end = Math.min(item.getReference() + item.getCount(), ref + values.length);
+            for (int i = start; i < end; i++) {
+                item.setValue(i - item.getReference(), values[i - ref]);
+            }
+        }
+    }
+
+    /**
+     * Orders the items by unit, table and reference
+     */
+    private static final Comparator<ModbusReadItem> ITEM_ORDER = new Comparator<ModbusReadItem>() {
+        public int compare(ModbusReadItem a, ModbusReadItem b) {
+            if (a.getUnitId() != b.getUnitId()) {
+                return a.getUnitId() < b.getUnitId() ? -1 : 1;
+            }
+            if (a.getFunctionCode() != b.getFunctionCode()) {
+                return a.getFunctionCode() < b.getFunctionCode() ? -1 : 1;
+            }
+            if (a.getReference() != b.getReference()) {
+                return a.getReference() < b.getReference() ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
+    /**
+     * A range of a table read by a single request, and the items it covers
+     */
+    public static class Block {
+
+        private final int unitId;
+        private final int functionCode;
+        private final int reference;
+        private int count;
+        private final List<ModbusReadItem> items = new ArrayList<ModbusReadItem>();
+
+        /**
+         * Creates an empty block
+         *
+         * @param unitId       Slave unit id
+         * @param functionCode Read function code of the table
+         * @param reference    First reference
+         */
+        Block(int unitId, int functionCode, int reference) {
+            this.unitId = unitId;
+            this.functionCode = functionCode;
+            this.reference = reference;
+        }
+
+        /**
+         * Returns the slave unit id
+         *
+         * @return Unit id
+         */
+        public int getUnitId() {
+            return unitId;
+        }
+
+        /**
+         * Returns the read function code
+         *
+         * @return Function code
+         */
+        public int getFunctionCode() {
+            return functionCode;
+        }
+
+        /**
+         * Returns the first reference read
+         *
+         * @return Reference
+         */
+        public int getReference() {
+            return reference;
+        }
+
+        /**
+         * Returns the number of values read
+         *
+         * @return Count
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the items covered, wholly or partly, by this block
+         *
+         * @return Items
+         */
+        public List<ModbusReadItem> getItems() {
+            return Collections.unmodifiableList(items);
+        }
+
+        /**
+         * Returns the reference after the last one read
+         *
+         * @return End reference
+         */
+        int getEnd() {
+            return reference + count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("unit %d FC%d %d-%d", unitId, functionCode, reference, reference + count - 1);
+        }
+    }
+}
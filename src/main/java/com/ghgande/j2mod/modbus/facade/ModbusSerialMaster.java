@@ -69,22 +69,34 @@ public class ModbusSerialMaster extends AbstractModbusMaster {
      *
      * @throws Exception if the connection cannot be established.
      */
-    public synchronized void connect() throws Exception {
-        if (connection != null && !connection.isOpen()) {
-            connection.open(timeout);
-            transaction = connection.getModbusTransport().createTransaction();
-            setTransaction(transaction);
+    public void connect() throws Exception {
+        lock.lock();
+        try {
+            if (connection != null && !connection.isOpen()) {
+                connection.open(timeout);
+                transaction = connection.getModbusTransport().createTransaction();
+                setTransaction(transaction);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
     /**
      * Disconnects this <tt>ModbusSerialMaster</tt> from the slave.
      */
-    public synchronized void disconnect() {
-        if (connection != null && connection.isOpen()) {
-            connection.close();
-            transaction = null;
-            setTransaction(null);
+    public void disconnect() {
+        lock.lock();
+        try {
+            if (connection != null && connection.isOpen()) {
+                connection.close();
+                transaction = null;
+                setTransaction(null);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
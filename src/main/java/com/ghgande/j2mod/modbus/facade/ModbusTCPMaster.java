@@ -16,16 +16,34 @@
 package com.ghgande.j2mod.modbus.facade;
 
 import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
 import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
 import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransport;
+import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
 import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnectionPool;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 /**
  * Modbus/TCP Master facade.
  *
+ * <p>
+ * When the transport is pipelined (see {@link ModbusTCPTransport#setPipelineWindow(int)}),
+ * asynchronous requests are sent without waiting for the previous response
+ * and no thread is held while a request is in flight.
+ *
+ * <p>
+ * A master constructed with a <tt>TCPMasterConnectionPool</tt> holds no
+ * connection of its own, it borrows one from the pool for each transaction
+ * so that many masters and threads can share a few sockets per device.
+ *
  * @author Dieter Wimberger
  * @author Steve O'Hara (4energy)
  * @version 2.0 (March 2016)
@@ -33,6 +51,9 @@ import java.net.UnknownHostException;
 public class ModbusTCPMaster extends AbstractModbusMaster {
 
     private TCPMasterConnection connection;
+    private TCPMasterConnectionPool pool;
+    private InetAddress slaveAddress;
+    private int port;
     private boolean reconnecting = false;
 
     /**
@@ -71,7 +92,8 @@ public class ModbusTCPMaster extends AbstractModbusMaster {
     public ModbusTCPMaster(String addr, int port, int timeout, boolean reconnect) {
         super();
         try {
-            InetAddress slaveAddress = InetAddress.getByName(addr);
+            slaveAddress = InetAddress.getByName(addr);
+            this.port = port;
             connection = new TCPMasterConnection(slaveAddress);
             connection.setPort(port);
             connection.setTimeout(timeout);
@@ -92,27 +114,72 @@ public class ModbusTCPMaster extends AbstractModbusMaster {
     }
 
     /**
-     * Connects this <tt>ModbusTCPMaster</tt> with the slave.
+     * Constructs a new master facade instance for communication
+     * with a given slave, using connections borrowed from a pool.
+     *
+     * @param addr an internet address as resolvable IP name or IP number,
+     *             specifying the slave to communicate with.
+     * @param port the port the slave is listening to.
+     * @param pool the pool to borrow connections from, which may be
+     *             shared with other masters.
+     */
+    public ModbusTCPMaster(String addr, int port, TCPMasterConnectionPool pool) {
+        super();
+        try {
+            slaveAddress = InetAddress.getByName(addr);
+            this.port = port;
+            this.pool = pool;
+            this.timeout = pool.getTimeout();
+        }
+        catch (UnknownHostException e) {
+            throw new RuntimeException("Failed to contruct ModbusTCPMaster instance.", e);
+        }
+    }
+
+    /**
+     * Connects this <tt>ModbusTCPMaster</tt> with the slave. A pooled master
+     * only prepares its transaction, the connections are opened by the pool.
      *
      * @throws Exception if the connection cannot be established.
      */
-    public synchronized void connect() throws Exception {
-        if (connection != null && !connection.isConnected()) {
-            connection.connect();
-            transaction = connection.getModbusTransport().createTransaction();
-            ((ModbusTCPTransaction)transaction).setReconnecting(reconnecting);
-            setTransaction(transaction);
+    public void connect() throws Exception {
+        lock.lock();
+        try {
+            if (pool != null && transaction == null) {
+                transaction = new ModbusTCPTransaction(pool, slaveAddress, port);
+                ((ModbusTCPTransaction)transaction).setReconnecting(reconnecting);
+                setTransaction(transaction);
+            }
+            else if (connection != null && !connection.isConnected()) {
+                connection.connect();
+                transaction = connection.getModbusTransport().createTransaction();
+                ((ModbusTCPTransaction)transaction).setReconnecting(reconnecting);
+                setTransaction(transaction);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
     /**
      * Disconnects this <tt>ModbusTCPMaster</tt> from the slave.
      */
-    public synchronized void disconnect() {
-        if (connection != null && connection.isConnected()) {
-            connection.close();
-            transaction = null;
-            setTransaction(null);
+    public void disconnect() {
+        lock.lock();
+        try {
+            if (pool != null) {
+                transaction = null;
+                setTransaction(null);
+            }
+            else if (connection != null && connection.isConnected()) {
+                connection.close();
+                transaction = null;
+                setTransaction(null);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
@@ -134,13 +201,24 @@ public class ModbusTCPMaster extends AbstractModbusMaster {
      * @param b true if a new connection should be established for each
      *          transaction, false otherwise.
      */
-    public synchronized void setReconnecting(boolean b) {
-        reconnecting = b;
-        if (transaction != null) {
-            ((ModbusTCPTransaction)transaction).setReconnecting(b);
+    public void setReconnecting(boolean b) {
+        lock.lock();
+        try {
+            reconnecting = b;
+            if (transaction != null) {
+                ((ModbusTCPTransaction)transaction).setReconnecting(b);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Sets the receive timeout. A pooled master uses the timeout of the pool.
+     *
+     * @param timeout Timeout in milliseconds
+     */
     @Override
     public void setTimeout(int timeout) {
         super.setTimeout(timeout);
@@ -153,4 +231,61 @@ public class ModbusTCPMaster extends AbstractModbusMaster {
     public AbstractModbusTransport getTransport() {
         return connection == null ? null : connection.getModbusTransport();
     }
+
+    /**
+     * Sends the request straight down a pipelined transport, otherwise falls
+     * back to the blocking transaction. An asynchronous executor thread is
+     * only held while the request is written, or while it waits for a free
+     * slot in the pipeline window.
+     *
+     * @param request Request to send
+     *
+     * @return Future response
+     */
+    @Override
+    protected CompletableFuture<ModbusResponse> sendAsync(final ModbusRequest request) {
+        AbstractModbusTransport transport = getTransport();
+        if (!(transport instanceof ModbusTCPTransport) || !((ModbusTCPTransport)transport).isPipelined() || connection == null || !connection.isConnected()) {
+            return super.sendAsync(request);
+        }
+        final ModbusTCPTransport tcpTransport = (ModbusTCPTransport)transport;
+        final CompletableFuture<ModbusResponse> result = new CompletableFuture<ModbusResponse>();
+        getAsyncExecutor().execute(new Runnable() {
+            public void run() {
+                if (result.isDone()) {
+                    // Cancelled or timed out while queued
+                    return;
+                }
+                try {
+                    final CompletableFuture<ModbusResponse> response = tcpTransport.sendPipelined(request);
+
+                    // Give the pipeline slot back as soon as nobody is waiting for the response
+                    result.whenComplete(new BiConsumer<ModbusResponse, Throwable>() {
+                        public void accept(ModbusResponse res, Throwable failure) {
+                            response.cancel(false);
+                        }
+                    });
+
+                    // Complete off the receiver thread so callers can't stall it
+                    response.whenCompleteAsync(new BiConsumer<ModbusResponse, Throwable>() {
+                        public void accept(ModbusResponse res, Throwable failure) {
+                            if (failure != null) {
+                                result.completeExceptionally(failure);
+                            }
+                            else if (res instanceof ExceptionResponse) {
+                                result.completeExceptionally(new ModbusSlaveException(((ExceptionResponse)res).getExceptionCode()));
+                            }
+                            else {
+                                result.complete(res);
+                            }
+                        }
+                    }, getAsyncExecutor());
+                }
+                catch (Throwable ex) {
+                    result.completeExceptionally(ex);
+                }
+            }
+        });
+        return result;
+    }
 }
\ No newline at end of file
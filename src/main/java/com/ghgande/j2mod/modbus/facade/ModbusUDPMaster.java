@@ -95,22 +95,34 @@ public class ModbusUDPMaster extends AbstractModbusMaster {
      *
      * @throws Exception if the connection cannot be established.
      */
-    public synchronized void connect() throws Exception {
-        if (connection != null && !connection.isConnected()) {
-            connection.connect();
-            transaction = connection.getModbusTransport().createTransaction();
-            setTransaction(transaction);
+    public void connect() throws Exception {
+        lock.lock();
+        try {
+            if (connection != null && !connection.isConnected()) {
+                connection.connect();
+                transaction = connection.getModbusTransport().createTransaction();
+                setTransaction(transaction);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
     /**
      * Disconnects this <tt>ModbusTCPMaster</tt> from the slave.
      */
-    public synchronized void disconnect() {
-        if (connection != null && connection.isConnected()) {
-            connection.close();
-            transaction = null;
-            setTransaction(null);
+    public void disconnect() {
+        lock.lock();
+        try {
+            if (connection != null && connection.isConnected()) {
+                connection.close();
+                transaction = null;
+                setTransaction(null);
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
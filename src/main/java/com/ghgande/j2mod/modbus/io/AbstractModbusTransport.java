@@ -16,10 +16,13 @@
 package com.ghgande.j2mod.modbus.io;
 
 import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusCoupler;
 import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.msg.ModbusMessage;
+import com.ghgande.j2mod.modbus.msg.ModbusMessagePool;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
 
 import java.io.IOException;
 
@@ -34,6 +37,9 @@ import java.io.IOException;
 public abstract class AbstractModbusTransport {
 
     protected int timeout = Modbus.DEFAULT_TIMEOUT;
+    protected ModbusMessagePool messagePool;
+    protected ModbusMetrics metrics = ModbusMetrics.NONE;
+    protected ModbusCoupler coupler;
 
     /**
      * Set the socket timeout
@@ -44,6 +50,78 @@ public abstract class AbstractModbusTransport {
         timeout = time;
     }
 
+    /**
+     * Returns the pool messages read by this transport are taken from
+     *
+     * @return the pool, or null if messages are not pooled.
+     */
+    public ModbusMessagePool getMessagePool() {
+        return messagePool;
+    }
+
+    /**
+     * Sets a pool for the messages read by this transport to be taken from,
+     * so that they can be reused once released back to it. The pool is not
+     * thread-safe, so the transport must only be used by one thread at a
+     * time.
+     *
+     * @param messagePool the pool, or null to create a new message each
+     *                    time.
+     */
+    public void setMessagePool(ModbusMessagePool messagePool) {
+        this.messagePool = messagePool;
+    }
+
+    /**
+     * Returns the metrics requests handled by a slave over this transport
+     * are reported to
+     *
+     * @return the metrics, {@link ModbusMetrics#NONE} by default.
+     */
+    public ModbusMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics requests handled by a slave over this transport are
+     * reported to. Masters report through their transaction instead.
+     *
+     * @param metrics the metrics, or null for none.
+     */
+    public void setMetrics(ModbusMetrics metrics) {
+        this.metrics = metrics == null ? ModbusMetrics.NONE : metrics;
+    }
+
+    /**
+     * Returns the coupler holding the process images requests read by a
+     * slave over this transport are answered from
+     *
+     * @return the coupler, the shared instance unless another has been set.
+     */
+    public ModbusCoupler getCoupler() {
+        return coupler == null ? ModbusCoupler.getReference() : coupler;
+    }
+
+    /**
+     * Sets the coupler holding the process images requests read by a slave
+     * over this transport are answered from
+     *
+     * @param coupler the coupler, or null to use the shared instance.
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+        this.coupler = coupler;
+    }
+
+    /**
+     * Returns a name for the device at the other end of this transport, used
+     * when reporting metrics
+     *
+     * @return the name, empty if there is nothing to tell devices apart.
+     */
+    public String getDeviceName() {
+        return "";
+    }
+
     /**
      * Closes the raw input and output streams of
      * this <tt>ModbusTransport</tt>.
@@ -100,4 +178,33 @@ public abstract class AbstractModbusTransport {
      */
     public abstract ModbusResponse readResponse() throws ModbusIOException;
 
+    /**
+     * Returns an empty request for the given function code, taken from the
+     * pool if there is one
+     *
+     * @param functionCode the function code of the request.
+     *
+     * @return the request.
+     */
+    protected ModbusRequest newRequest(int functionCode) {
+        if (messagePool != null) {
+            return messagePool.getRequest(functionCode);
+        }
+        return ModbusRequest.createModbusRequest(functionCode);
+    }
+
+    /**
+     * Returns an empty response for the given function code, taken from the
+     * pool if there is one
+     *
+     * @param functionCode the function code of the response.
+     *
+     * @return the response.
+     */
+    protected ModbusResponse newResponse(int functionCode) {
+        if (messagePool != null) {
+            return messagePool.getResponse(functionCode);
+        }
+        return ModbusResponse.createModbusResponse(functionCode);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Class implementing a <tt>DataInput</tt> that reads straight from a
+ * <tt>ByteBuffer</tt>, heap or direct, starting at its position.
+ *
+ * <p>
+ * Unlike {@link BytesInputStream} nothing is synchronized and nothing is
+ * copied; it is meant to be used by one thread at a time. Multi-byte values
+ * are read in the order of the buffer, which must be left big-endian (the
+ * default) for Modbus messages.
+ */
+public final class ByteBufferInput implements DataInput {
+
+    private ByteBuffer buffer;
+
+    /**
+     * Constructs a new <tt>ByteBufferInput</tt> reading from the given
+     * buffer.
+     *
+     * @param buffer the buffer to read from.
+     */
+    public ByteBufferInput(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns the buffer being read
+     *
+     * @return the buffer.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Resets this <tt>ByteBufferInput</tt> to read from another buffer.
+     *
+     * @param buffer the buffer to read from.
+     */
+    public void reset(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        require(len);
+        buffer.get(b, off, len);
+    }
+
+    public int skipBytes(int n) {
+        int skip = Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skip);
+        return skip;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public byte readByte() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    public short readShort() throws IOException {
+        require(2);
+        return buffer.getShort();
+    }
+
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    public char readChar() throws IOException {
+        require(2);
+        return buffer.getChar();
+    }
+
+    public int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    public float readFloat() throws IOException {
+        require(4);
+        return buffer.getFloat();
+    }
+
+    public double readDouble() throws IOException {
+        require(8);
+        return buffer.getDouble();
+    }
+
+    public String readLine() throws IOException {
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+        StringBuilder line = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            char c = (char)(buffer.get() & 0xFF);
+            if (c == '\n') {
+                break;
+            }
+            if (c == '\r') {
+                if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+                    buffer.get();
+                }
+                break;
+            }
+            line.append(c);
+        }
+        return line.toString();
+    }
+
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+    /**
+     * Checks that the given number of bytes remain to be read
+     *
+     * @param count the number of bytes needed.
+     *
+     * @throws EOFException if the buffer holds fewer bytes.
+     */
+    private void require(int count) throws EOFException {
+        if (buffer.remaining() < count) {
+            throw new EOFException();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Class implementing a <tt>DataOutput</tt> that writes straight into a
+ * <tt>ByteBuffer</tt>, heap or direct, starting at its position.
+ *
+ * <p>
+ * Unlike {@link BytesOutputStream} nothing is synchronized and the buffer
+ * never grows; writing past its limit fails with an <tt>IOException</tt>.
+ * It is meant to be used by one thread at a time. Multi-byte values are
+ * written in the order of the buffer, which must be left big-endian (the
+ * default) for Modbus messages.
+ */
+public final class ByteBufferOutput implements DataOutput {
+
+    private ByteBuffer buffer;
+
+    /**
+     * Constructs a new <tt>ByteBufferOutput</tt> writing into the given
+     * buffer.
+     *
+     * @param buffer the buffer to write into.
+     */
+    public ByteBufferOutput(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns the buffer being written
+     *
+     * @return the buffer.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Resets this <tt>ByteBufferOutput</tt> to write into another buffer.
+     *
+     * @param buffer the buffer to write into.
+     */
+    public void reset(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public void write(int b) throws IOException {
+        writeByte(b);
+    }
+
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        require(len);
+        buffer.put(b, off, len);
+    }
+
+    public void writeBoolean(boolean v) throws IOException {
+        writeByte(v ? 1 : 0);
+    }
+
+    public void writeByte(int v) throws IOException {
+        require(1);
+        buffer.put((byte)v);
+    }
+
+    public void writeShort(int v) throws IOException {
+        require(2);
+        buffer.putShort((short)v);
+    }
+
+    public void writeChar(int v) throws IOException {
+        require(2);
+        buffer.putChar((char)v);
+    }
+
+    public void writeInt(int v) throws IOException {
+        require(4);
+        buffer.putInt(v);
+    }
+
+    public void writeLong(long v) throws IOException {
+        require(8);
+        buffer.putLong(v);
+    }
+
+    public void writeFloat(float v) throws IOException {
+        require(4);
+        buffer.putFloat(v);
+    }
+
+    public void writeDouble(double v) throws IOException {
+        require(8);
+        buffer.putDouble(v);
+    }
+
+    public void writeBytes(String s) throws IOException {
+        int len = s.length();
+        require(len);
+        for (int i = 0; i < len; i++) {
+            buffer.put((byte)s.charAt(i));
+        }
+    }
+
+    public void writeChars(String s) throws IOException {
+        int len = s.length();
+        require(len * 2);
+        for (int i = 0; i < len; i++) {
+            buffer.putChar(s.charAt(i));
+        }
+    }
+
+    public void writeUTF(String str) throws IOException {
+        ByteArrayOutputStream utf = new ByteArrayOutputStream(str.length() + 2);
+        new DataOutputStream(utf).writeUTF(str);
+        write(utf.toByteArray());
+    }
+
+    /**
+     * Checks that there is room for the given number of bytes
+     *
+     * @param count the number of bytes to be written.
+     *
+     * @throws IOException if the buffer has less room.
+     */
+    private void require(int count) throws IOException {
+        if (buffer.remaining() < count) {
+            throw new IOException(String.format("Buffer overflow - %d bytes needed, %d remaining", count, buffer.remaining()));
+        }
+    }
+}
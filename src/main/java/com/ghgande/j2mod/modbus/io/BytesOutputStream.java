@@ -65,6 +65,33 @@ public class BytesOutputStream extends FastByteArrayOutputStream implements Data
         return dest;
     }
 
+    /**
+     * Returns the output buffer itself rather than a copy, so that the
+     * transports can send and checksum a frame without copying it. Only the
+     * first <tt>size()</tt> bytes are valid.
+     *
+     * @return the <tt>byte[]</tt> output buffer.
+     */
+    byte[] getInternalBuffer() {
+        return buf;
+    }
+
+    /**
+     * Overwrites two bytes already written with a 16-bit value, high byte
+     * first. Used for frame lengths that are only known once the rest of
+     * the frame has been written.
+     *
+     * @param pos the position of the first byte.
+     * @param v   the value to write.
+     */
+    public void writeShortAt(int pos, int v) {
+        if (pos < 0 || pos + 2 > count) {
+            throw new IndexOutOfBoundsException("Invalid position: " + pos);
+        }
+        buf[pos] = (byte)(v >> 8);
+        buf[pos + 1] = (byte)v;
+    }
+
     public void reset() {
         count = 0;
     }
@@ -16,7 +16,6 @@
 package com.ghgande.j2mod.modbus.io;
 
 import com.ghgande.j2mod.modbus.Modbus;
-import com.ghgande.j2mod.modbus.ModbusCoupler;
 import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.msg.ModbusMessage;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
@@ -57,8 +56,9 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
             synchronized (byteOutputStream) {
                 //write message to byte out
                 msg.setHeadless();
+                byteOutputStream.reset();
                 msg.writeTo(byteOutputStream);
-                byte[] buf = byteOutputStream.getBuffer();
+                byte[] buf = byteOutputStream.getInternalBuffer();
                 int len = byteOutputStream.size();
 
                 //write message
@@ -120,7 +120,7 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
 >>>>>>> origin/master
 
                     //check message with this slave unit identifier
-                    ProcessImage spi = ModbusCoupler.getReference().getProcessImage(unitID);
+                    ProcessImage spi = getCoupler().getProcessImage(unitID);
                     if (spi == null) {
                         continue;
                     }
@@ -130,14 +130,14 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
                     int functionCode = byteInputStream.readUnsignedByte();
                     //create request
 <<<<<<< HEAD
-                    request = ModbusRequest.createModbusRequest(functionCode);
+                    request = newRequest(functionCode);
 =======
                     request = ModbusRequest.createModbusRequest(in);
 =======
                     int unitID = byteInputStream.readUnsignedByte();
 
                     //check message with this slave unit identifier
-                    ProcessImage spi = ModbusCoupler.getReference().getProcessImage(unitID);
+                    ProcessImage spi = getCoupler().getProcessImage(unitID);
                     if (spi == null) {
                         continue;
                     }
@@ -208,7 +208,7 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
                     // response message is from the slave responding to the last request.
                     in = byteInputStream.readUnsignedByte();
                     //create request
-                    response = ModbusResponse.createModbusResponse(in);
+                    response = newResponse(in);
                     response.setHeadless();
                     //read message
                     byteInputStream.reset(inBuffer, byteInputOutputStream.size());
@@ -21,6 +21,7 @@ import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.msg.ModbusMessage;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.util.CRC16;
 import com.ghgande.j2mod.modbus.util.ModbusUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +46,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
     private final BytesOutputStream byteInputOutputStream = new BytesOutputStream(inBuffer); // to buffer message to
     private final BytesOutputStream byteOutputStream = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH); // write frames
     private byte[] lastRequest = null;
+    private int lastRequestLength = 0;
 
     /**
      * Read the data for a request of a given fixed size
@@ -257,19 +259,26 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                 msg.setHeadless();
                 msg.writeTo(byteOutputStream);
                 len = byteOutputStream.size();
-                int[] crc = ModbusUtil.calculateCRC(byteOutputStream.getBuffer(), 0, len);
-                byteOutputStream.writeByte(crc[0]);
-                byteOutputStream.writeByte(crc[1]);
-                // write message
-                writeBytes(byteOutputStream.getBuffer(), byteOutputStream.size());
-                logger.debug("Sent: {}", ModbusUtil.toHex(byteOutputStream.getBuffer(), 0, byteOutputStream.size()));
+                int crc = CRC16.calculate(byteOutputStream.getInternalBuffer(), 0, len);
+                byteOutputStream.writeByte(crc & 0xFF);
+                byteOutputStream.writeByte(crc >>> 8);
+                // write message straight from the buffer
+                byte[] frame = byteOutputStream.getInternalBuffer();
+                writeBytes(frame, byteOutputStream.size());
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Sent: {}", ModbusUtil.toHex(frame, 0, byteOutputStream.size()));
+                }
                 // clears out the echoed message
                 // for RS485
                 if (echo) {
                     readEcho(len);
                 }
-                lastRequest = new byte[len];
-                System.arraycopy(byteOutputStream.getBuffer(), 0, lastRequest, 0, len);
+                // keep a copy for error reporting, reusing the array where possible
+                if (lastRequest == null || lastRequest.length < len) {
+                    lastRequest = new byte[Math.max(len, Modbus.MAX_MESSAGE_LENGTH)];
+                }
+                System.arraycopy(frame, 0, lastRequest, 0, len);
+                lastRequestLength = len;
             }
         }
         catch (IOException ex) {
@@ -283,7 +292,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
      * @return a <tt>ModbusRequest</tt> to be processed by the slave simulator
      */
     protected ModbusRequest readRequestIn() throws ModbusIOException {
-        ModbusCoupler coupler = ModbusCoupler.getReference();
+        ModbusCoupler coupler = getCoupler();
 
         if (coupler == null || coupler.isMaster()) {
             throw new RuntimeException("Operation not supported");
@@ -306,7 +315,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                         byteInputOutputStream.writeByte(fc);
 
                         // create response to acquire length of message
-                        request = ModbusRequest.createModbusRequest(fc);
+                        request = newRequest(fc);
                         request.setHeadless();
 
                         /*
@@ -324,10 +333,9 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                         byteInputStream.reset(inBuffer, dlength);
 
                         // check CRC
-                        int[] crc = ModbusUtil.calculateCRC(inBuffer, 0, dlength); // does not include CRC
-                        if (ModbusUtil.unsignedByteToInt(inBuffer[dlength]) != crc[0] &&
-                                ModbusUtil.unsignedByteToInt(inBuffer[dlength + 1]) != crc[1]) {
-                            logger.debug("CRC should be {}, {}", crc[0], crc[1]);
+                        int crc = CRC16.calculate(inBuffer, 0, dlength); // does not include CRC
+                        if (ModbusUtil.makeWord(inBuffer[dlength + 1], inBuffer[dlength]) != crc) {
+                            logger.debug("CRC should be {}, {}", crc & 0xFF, crc >>> 8);
 
                             // Drain the input in case the frame was misread and more
                             // was to follow.
@@ -377,7 +385,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                         byteInputOutputStream.writeByte(fc);
 
                         // create response to acquire length of message
-                        response = ModbusResponse.createModbusResponse(fc);
+                        response = newResponse(fc);
                         response.setHeadless();
 
                         /*
@@ -394,9 +402,9 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                         byteInputStream.reset(inBuffer, dlength);
 
                         // check CRC
-                        int[] crc = ModbusUtil.calculateCRC(inBuffer, 0, dlength); // does not include CRC
-                        if (ModbusUtil.unsignedByteToInt(inBuffer[dlength]) != crc[0] && ModbusUtil.unsignedByteToInt(inBuffer[dlength + 1]) != crc[1]) {
-                            logger.debug("CRC should be {}, {}", crc[0], crc[1]);
+                        int crc = CRC16.calculate(inBuffer, 0, dlength); // does not include CRC
+                        if (ModbusUtil.makeWord(inBuffer[dlength + 1], inBuffer[dlength]) != crc) {
+                            logger.debug("CRC should be {}, {}", crc & 0xFF, crc >>> 8);
                             throw new IOException("CRC Error in received frame: " + dlength + " bytes: " + ModbusUtil.toHex(byteInputStream.getBuffer(), 0, dlength));
                         }
                     }
@@ -413,7 +421,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
             return response;
         }
         catch (IOException ex) {
-            throw new ModbusIOException("I/O exception - failed to read response for request [%s] - %s", ModbusUtil.toHex(lastRequest), ex.getMessage());
+            throw new ModbusIOException("I/O exception - failed to read response for request [%s] - %s", ModbusUtil.toHex(lastRequest, 0, lastRequestLength), ex.getMessage());
         }
     }
 }
@@ -102,6 +102,9 @@ public class ModbusSerialTransaction extends ModbusTransaction {
 
     /**
      * Set the TransDelayMS value.
+     * This is waited before each request on top of the silent interval
+     * between frames, which the transport keeps by itself, so it is only
+     * needed for devices that want longer.
      *
      * @param newTransDelayMS The new TransDelayMS value.
      */
@@ -125,6 +128,7 @@ public class ModbusSerialTransaction extends ModbusTransaction {
     public void execute() throws ModbusException {
         //1. assert executeability
         assertExecutable();
+        startTiming();
 
         //3. write request, and read response,
         //   while holding the lock on the IO object
@@ -141,6 +145,8 @@ public class ModbusSerialTransaction extends ModbusTransaction {
                     }
                 }
                 synchronized (MUTEX) {
+                    releaseResponse();
+                    transport.setMessagePool(messagePool);
                     //write request message
                     transport.writeMessage(request);
                     //read response message
@@ -150,11 +156,14 @@ public class ModbusSerialTransaction extends ModbusTransaction {
             }
             catch (ModbusIOException e) {
                 if (++tries >= retries) {
+                    recordFailure(e);
                     throw e;
                 }
                 logger.debug("Execute try {} error: {}", tries, e.getMessage());
+                recordRetry();
             }
         } while (!finished);
+        recordResponse();
 
         //4. deal with exceptions
         if (response instanceof ExceptionResponse) {
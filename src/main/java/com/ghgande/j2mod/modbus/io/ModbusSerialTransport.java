@@ -53,6 +53,8 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
 
     protected SerialPort commPort;
     protected boolean echo = false;     // require RS-485 echo processing
+    protected final SerialBusTimer busTimer = new SerialBusTimer();
+    private boolean readingEcho = false;
     private final Set<AbstractSerialTransportListener> listeners = Collections.synchronizedSet(new HashSet<AbstractSerialTransportListener>());
 
     /**
@@ -77,20 +79,16 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
     public void writeMessage(ModbusMessage msg) throws ModbusIOException {
         open();
         notifyListenersBeforeWrite(msg);
+
+        // Leave the line quiet for the silent interval since the last frame
+
+        configureBusTimer();
+        busTimer.awaitSilentInterval();
         writeMessageOut(msg);
 
         // Wait here for the message to have been sent
 
-        double bytesPerSec = commPort.getBaudRate() / (commPort.getNumDataBits() + commPort.getNumStopBits() + (commPort.getParity() == SerialPort.NO_PARITY ? 0 : 1));
-        double delay = 1000000000.0 * msg.getOutputLength() / bytesPerSec;
-        double delayMilliSeconds = Math.floor(delay / 1000000);
-        double delayNanoSeconds = delay % 1000000;
-        try {
-            Thread.sleep((int)delayMilliSeconds, (int)delayNanoSeconds);
-        }
-        catch (Exception e) {
-            logger.debug("nothing to do");
-        }
+        busTimer.awaitTransmitted();
         notifyListenersAfterWrite(msg);
     }
 
@@ -294,6 +292,11 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
         setTimeout(timeout);
     }
 
+    @Override
+    public String getDeviceName() {
+        return commPort == null ? "" : commPort.getSystemPortName();
+    }
+
     /**
      * <code>isEcho</code> method returns the output echo state.
      *
@@ -322,6 +325,42 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
         logger.debug("baud rate is now {}", commPort.getBaudRate());
     }
 
+    /**
+     * Returns the timer that keeps the silent intervals between frames and
+     * measures how busy the line is
+     *
+     * @return Timer for the serial line
+     */
+    public SerialBusTimer getBusTimer() {
+        return busTimer;
+    }
+
+    /**
+     * Brings the bus timer up to date with the speed and character size of
+     * the comms port, which can change while the transport is in use. The
+     * timer does no timing without a port.
+     */
+    protected void configureBusTimer() {
+        if (commPort == null) {
+            busTimer.configure(0, 0);
+        }
+        else {
+            double stopBits;
+            switch (commPort.getNumStopBits()) {
+                case SerialPort.ONE_POINT_FIVE_STOP_BITS:
+                    stopBits = 1.5;
+                    break;
+                case SerialPort.TWO_STOP_BITS:
+                    stopBits = 2;
+                    break;
+                default:
+                    stopBits = 1;
+            }
+            int parityBits = commPort.getParity() == SerialPort.NO_PARITY ? 0 : 1;
+            busTimer.configure(commPort.getBaudRate(), 1 + commPort.getNumDataBits() + parityBits + stopBits);
+        }
+    }
+
     /**
      * Reads the own message echo produced in RS485 Echo Mode
      * within the given time frame.
@@ -333,7 +372,17 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      */
     protected void readEcho(int len) throws IOException {
         byte echoBuf[] = new byte[len];
-        int echoLen = commPort.readBytes(echoBuf, len);
+        int echoLen;
+
+        // The echo is our own frame, which the bus timer has already counted
+
+        readingEcho = true;
+        try {
+            echoLen = readFromPort(echoBuf, len);
+        }
+        finally {
+            readingEcho = false;
+        }
         logger.debug("Echo: {}", ModbusUtil.toHex(echoBuf, 0, echoLen));
         if (echoLen != len) {
             logger.debug("Error: Transmit echo not received");
@@ -349,18 +398,13 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * @throws IOException If it cannot read or times out
      */
     protected int readByte() throws IOException {
-        if (commPort != null && commPort.isOpen()) {
-            byte[] buffer = new byte[1];
-            int cnt = commPort.readBytes(buffer, 1);
-            if (cnt != 1) {
-                throw new IOException("Cannot read from serial port");
-            }
-            else {
-                return buffer[0] & 0xff;
-            }
+        byte[] buffer = new byte[1];
+        int cnt = readFromPort(buffer, 1);
+        if (cnt != 1) {
+            throw new IOException("Cannot read from serial port");
         }
         else {
-            throw new IOException("Comm port is not valid or not open");
+            return buffer[0] & 0xff;
         }
     }
 
@@ -373,14 +417,9 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * @throws IOException If the port is invalid or if the number of bytes returned is not equal to that asked for
      */
     protected void readBytes(byte[] buffer, long bytesToRead) throws IOException {
-        if (commPort != null && commPort.isOpen()) {
-            int cnt = commPort.readBytes(buffer, bytesToRead);
-            if (cnt != bytesToRead) {
-                throw new IOException("Cannot read from serial port - truncated");
-            }
-        }
-        else {
-            throw new IOException("Comm port is not valid or not open");
+        int cnt = readFromPort(buffer, bytesToRead);
+        if (cnt != bytesToRead) {
+            throw new IOException("Cannot read from serial port - truncated");
         }
     }
 
@@ -393,12 +432,7 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * @return Number of bytes written
      */
     protected final int writeBytes(byte[] buffer, long bytesToWrite) throws IOException {
-        if (commPort != null && commPort.isOpen()) {
-            return commPort.writeBytes(buffer, bytesToWrite);
-        }
-        else {
-            throw new IOException("Comm port is not valid or not open");
-        }
+        return writeToPort(buffer, bytesToWrite);
     }
 
     /**
@@ -410,9 +444,9 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * @throws IOException
      */
     protected int readAsciiByte() throws IOException {
-        if (commPort != null && commPort.isOpen()) {
+        if (isPortOpen()) {
             byte[] buffer = new byte[1];
-            int cnt = commPort.readBytes(buffer, 1);
+            int cnt = readFromPort(buffer, 1);
 <<<<<<< HEAD
 
 =======
@@ -441,7 +475,7 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
 >>>>>>> refs/remotes/steveohara/development
 >>>>>>> origin/master
                 byte firstValue = buffer[0];
-                cnt = commPort.readBytes(buffer, 1);
+                cnt = readFromPort(buffer, 1);
                 if (cnt != 1) {
                     throw new IOException("Cannot read from serial port");
                 }
@@ -490,7 +524,7 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * @throws IOException
      */
     protected final int writeAsciiByte(int value) throws IOException {
-        if (commPort != null && commPort.isOpen()) {
+        if (isPortOpen()) {
             byte[] buffer;
 
             if (value == ModbusASCIITransport.FRAME_START) {
@@ -505,7 +539,7 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
                 buffer = ModbusUtil.toHex(value);
                 logger.debug("Wrote byte {}={}", value, ModbusUtil.toHex(value));
             }
-            return commPort.writeBytes(buffer, buffer.length);
+            return writeToPort(buffer, buffer.length);
         }
         else {
             throw new IOException("Comm port is not valid or not open");
@@ -523,7 +557,7 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * @throws IOException
      */
     protected int writeAsciiBytes(byte[] buffer, long bytesToWrite) throws IOException {
-        if (commPort != null && commPort.isOpen()) {
+        if (isPortOpen()) {
             int cnt = 0;
             for (int i = 0; i < bytesToWrite; i++) {
                 if (writeAsciiByte(buffer[i]) != 2) {
@@ -544,8 +578,8 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * @throws IOException
      */
     public void clearInput() throws IOException {
-        if (commPort.bytesAvailable() > 0) {
-            int len = commPort.bytesAvailable();
+        if (bytesAvailable() > 0) {
+            int len = bytesAvailable();
             byte buf[] = new byte[len];
             readBytes(buf, len);
             logger.debug("Clear input: {}", ModbusUtil.toHex(buf, 0, len));
@@ -558,7 +592,78 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * @throws IOException
      */
     public void close() throws IOException {
-        commPort.closePort();
+        if (commPort != null) {
+            commPort.closePort();
+        }
+    }
+
+    /**
+     * Returns true if the comms port is there and open.
+     * The transport only touches the port through this method,
+     * {@link #readFromPort(byte[], long)}, {@link #writeToPort(byte[], long)}
+     * and {@link #bytesAvailable()}, so a subclass can override them to run
+     * the transport over something other than a <tt>SerialPort</tt>
+     *
+     * @return True if the port can be read from and written to
+     */
+    protected boolean isPortOpen() {
+        return commPort != null && commPort.isOpen();
+    }
+
+    /**
+     * Reads up to the given number of bytes from the comms port, waiting no
+     * longer than the timeout for them to arrive
+     *
+     * @param buffer      Buffer to put data into
+     * @param bytesToRead Number of bytes to read
+     *
+     * @return Number of bytes read
+     *
+     * @throws IOException If the port is not valid or not open
+     */
+    protected int readFromPort(byte[] buffer, long bytesToRead) throws IOException {
+        if (isPortOpen()) {
+            int cnt = commPort.readBytes(buffer, bytesToRead);
+            if (!readingEcho) {
+                configureBusTimer();
+                busTimer.bytesReceived(cnt);
+            }
+            return cnt;
+        }
+        else {
+            throw new IOException("Comm port is not valid or not open");
+        }
+    }
+
+    /**
+     * Writes the bytes to the comms port
+     *
+     * @param buffer       Buffer to write
+     * @param bytesToWrite Number of bytes to write
+     *
+     * @return Number of bytes written
+     *
+     * @throws IOException If the port is not valid or not open
+     */
+    protected int writeToPort(byte[] buffer, long bytesToWrite) throws IOException {
+        if (isPortOpen()) {
+            int cnt = commPort.writeBytes(buffer, bytesToWrite);
+            configureBusTimer();
+            busTimer.bytesSent(cnt);
+            return cnt;
+        }
+        else {
+            throw new IOException("Comm port is not valid or not open");
+        }
+    }
+
+    /**
+     * Returns the number of bytes waiting to be read from the comms port
+     *
+     * @return Number of bytes available, or 0 if there is no port
+     */
+    protected int bytesAvailable() {
+        return commPort == null ? 0 : commPort.bytesAvailable();
     }
 
 }
@@ -22,12 +22,25 @@ import com.ghgande.j2mod.modbus.ModbusSlaveException;
 import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnectionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.InetAddress;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Class implementing the <tt>ModbusTransaction</tt> interface.
  *
+ * <p>
+ * If the transport of the connection is pipelined, several instances of this
+ * class may be executed concurrently against the same connection, one per
+ * calling thread.
+ *
+ * <p>
+ * A transaction created with a <tt>TCPMasterConnectionPool</tt> borrows a
+ * connection to the device for each execution and gives it back afterwards.
+ *
  * @author Dieter Wimberger
  * @author Steve O'Hara (4energy)
  * @version 2.0 (March 2016)
@@ -38,7 +51,11 @@ public class ModbusTCPTransaction extends ModbusTransaction {
 
     // instance attributes and associations
     private TCPMasterConnection connection;
+    private TCPMasterConnectionPool pool;
+    private InetAddress address;
+    private int port;
     protected boolean reconnecting = Modbus.DEFAULT_RECONNECTING;
+    private final ReentrantLock executeLock = new ReentrantLock();
 
     /**
      * Constructs a new <tt>ModbusTCPTransaction</tt> instance.
@@ -69,6 +86,21 @@ public class ModbusTCPTransaction extends ModbusTransaction {
         transport = con.getModbusTransport();
     }
 
+    /**
+     * Constructs a new <tt>ModbusTCPTransaction</tt> instance that borrows a
+     * connection from the pool for each execution.
+     * <p>
+     *
+     * @param pool    the pool to borrow connections from.
+     * @param address the address of the slave.
+     * @param port    the port of the slave.
+     */
+    public ModbusTCPTransaction(TCPMasterConnectionPool pool, InetAddress address, int port) {
+        this.pool = pool;
+        this.address = address;
+        this.port = port;
+    }
+
     /**
      * Sets the connection on which this <tt>ModbusTransaction</tt> should be
      * executed.
@@ -107,11 +139,54 @@ public class ModbusTCPTransaction extends ModbusTransaction {
     }
 
     @Override
-    public synchronized void execute() throws ModbusException {
+    public void execute() throws ModbusException {
+        // Held across the whole round trip, so not a monitor (see ModbusTCPTransport)
+        executeLock.lock();
+        try {
+            if (pool == null) {
+                executeOnConnection();
+                return;
+            }
+            if (request == null) {
+                throw new ModbusException("Invalid request");
+            }
+
+            // Borrow a connection for this execution only, dropping it if it fails
+            TCPMasterConnection borrowed = pool.borrow(address, port);
+            setConnection(borrowed);
+            try {
+                executeOnConnection();
+            }
+            catch (ModbusIOException ex) {
+                pool.invalidate(borrowed);
+                borrowed = null;
+                throw ex;
+            }
+            finally {
+                connection = null;
+                transport = null;
+                if (borrowed != null) {
+                    pool.release(borrowed);
+                }
+            }
+        }
+        finally {
+            executeLock.unlock();
+        }
+    }
+
+    /**
+     * Executes the request on the current connection
+     *
+     * @throws ModbusException if the transaction fails or the slave returns
+     *                         an exception
+     */
+    private void executeOnConnection() throws ModbusException {
 
         if (request == null || connection == null) {
             throw new ModbusException("Invalid request or connection");
         }
+        startTiming();
 
         // Automatically re-connect if disconnected.
         if (!connection.isConnected()) {
@@ -121,6 +196,7 @@ public class ModbusTCPTransaction extends ModbusTransaction {
             }
             catch (Exception ex) {
 <<<<<<< HEAD
+                recordFailure(ex);
                 throw new ModbusIOException("Connection failed", ex);
 =======
 <<<<<<< HEAD
@@ -132,6 +208,12 @@ public class ModbusTCPTransaction extends ModbusTransaction {
             }
         }
 
+        // Pipelined transports match up the responses themselves
+        if (transport instanceof ModbusTCPTransport && ((ModbusTCPTransport)transport).isPipelined()) {
+            executePipelined();
+            return;
+        }
+
         // Try sending the message up to retries time. Note that the message
         // is read immediately after being written, with no flushing of buffers.
         int retryCounter = 0;
@@ -140,9 +222,11 @@ public class ModbusTCPTransaction extends ModbusTransaction {
         while (retryCounter < retryLimit) {
             try {
                 logger.debug("request transaction ID = {}", request.getTransactionID());
+                releaseResponse();
+                transport.setMessagePool(messagePool);
                 transport.writeMessage(request);
-                response = null;
                 do {
+                    releaseResponse();
                     response = transport.readResponse();
                     if (logger.isDebugEnabled()) {
                         logger.debug("response transaction ID = {}", response.getTransactionID());
@@ -170,6 +254,7 @@ public class ModbusTCPTransaction extends ModbusTransaction {
                     catch (Exception e) {
                         // Nope, fail this transaction.
 <<<<<<< HEAD
+                        recordFailure(e);
                         throw new ModbusIOException("Connection lost", e);
 =======
 <<<<<<< HEAD
@@ -183,6 +268,7 @@ public class ModbusTCPTransaction extends ModbusTransaction {
                 retryCounter++;
                 if (retryCounter >= retryLimit) {
 <<<<<<< HEAD
+                    recordFailure(ex);
                     throw new ModbusIOException("Executing transaction failed (tried " + retries + " times)", ex);
 =======
 <<<<<<< HEAD
@@ -192,8 +278,10 @@ public class ModbusTCPTransaction extends ModbusTransaction {
 >>>>>>> refs/remotes/steveohara/development
 >>>>>>> origin/master
                 }
+                recordRetry();
             }
         }
+        recordResponse();
 
         // The slave may have returned an exception -- check for that.
         if (response instanceof ExceptionResponse) {
@@ -212,6 +300,53 @@ public class ModbusTCPTransaction extends ModbusTransaction {
         incrementTransactionID();
     }
 
+    /**
+     * Executes the request on a pipelined transport. The transport allocates
+     * the transaction ID and only hands back the response carrying that ID, so
+     * there is no need to check validity or increment the ID afterwards.
+     * Reconnecting is ignored because closing the connection would abort the
+     * transactions of every other thread sharing it.
+     *
+     * @throws ModbusException if the transaction fails or the slave returns
+     *                         an exception
+     */
+    private void executePipelined() throws ModbusException {
+        int retryCounter = 0;
+        int retryLimit = (retries > 0 ? retries : 1);
+
+        while (true) {
+            try {
+                response = ((ModbusTCPTransport)transport).executePipelined(request);
+                logger.debug("response transaction ID = {}", response.getTransactionID());
+                break;
+            }
+            catch (ModbusIOException ex) {
+                if (!connection.isConnected()) {
+                    try {
+                        connection.connect();
+                        transport = connection.getModbusTransport();
+                    }
+                    catch (Exception e) {
+                        recordFailure(e);
+                        throw new ModbusIOException("Connection lost", e);
+                    }
+                }
+                retryCounter++;
+                if (retryCounter >= retryLimit) {
+                    recordFailure(ex);
+                    throw new ModbusIOException("Executing transaction failed (tried " + retries + " times)", ex);
+                }
+                recordRetry();
+            }
+        }
+        recordResponse();
+
+        // The slave may have returned an exception -- check for that.
+        if (response instanceof ExceptionResponse) {
+            throw new ModbusSlaveException(((ExceptionResponse)response).getExceptionCode());
+        }
+    }
+
     /**
      * checkValidity -- Verify the transaction IDs match or are zero.
      *
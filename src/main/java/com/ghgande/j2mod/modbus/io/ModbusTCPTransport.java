@@ -29,10 +29,30 @@ import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
 /**
  * Class that implements the Modbus transport flavor.
  *
+ * <p>
+ * The transport can optionally be pipelined (see {@link #setPipelineWindow(int)}),
+ * in which case several transactions may be outstanding on the connection at
+ * once and responses are matched back to their requests by the MBAP
+ * transaction identifier.
+ *
+ * <p>
+ * Reads and writes are serialised with locks rather than monitors, so that a
+ * virtual thread blocked on the socket gives up its carrier thread.
+ *
  * @author Dieter Wimberger
  * @author Steve O'Hara (4energy)
  * @version 2.0 (March 2016)
@@ -47,8 +67,18 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
     private final BytesInputStream byteInputStream = new BytesInputStream(Modbus.MAX_MESSAGE_LENGTH + 6);
     private final BytesOutputStream byteOutputStream = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH + 6); // write frames
     private Socket socket = null;
+    private String deviceName = null;
     private TCPMasterConnection master = null;
     private boolean headless = false; // Some TCP implementations are.
+    private final ReentrantLock readLock = new ReentrantLock();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // pipelining
+    private int pipelineWindow = Modbus.DEFAULT_PIPELINE_WINDOW;
+    private Semaphore pipelineSlots = new Semaphore(Modbus.DEFAULT_PIPELINE_WINDOW, true);
+    private final ConcurrentMap<Integer, PendingTransaction> outstanding = new ConcurrentHashMap<Integer, PendingTransaction>();
+    private final AtomicInteger pipelineTransactionID = new AtomicInteger(Modbus.DEFAULT_TRANSACTION_ID);
+    private volatile PipelineReceiver pipelineReceiver = null;
 
     /**
      * Constructs a new <tt>ModbusTransport</tt> instance, for a given
@@ -86,15 +116,37 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
      * @throws IOException if an I/O related error occurs.
      */
     public void setSocket(Socket socket) throws IOException {
+        stopPipelineReceiver();
         if (this.socket != null) {
             this.socket.close();
             this.socket = null;
         }
         this.socket = socket;
+        deviceName = null;
         setTimeout(timeout);
         prepareStreams(socket);
     }
 
+    @Override
+    public String getDeviceName() {
+        Socket current = socket;
+        if (deviceName == null && current != null && current.getInetAddress() != null) {
+            deviceName = current.getInetAddress().getHostAddress() + ":" + current.getPort();
+        }
+        return deviceName == null ? "" : deviceName;
+    }
+
+    /**
+     * Sets the master connection that owns this transport, so that the
+     * transactions created by {@link #createTransaction()} use it rather than
+     * a connection of their own.
+     *
+     * @param master Master connection using this transport
+     */
+    public void setMaster(TCPMasterConnection master) {
+        this.master = master;
+    }
+
     /**
      * Set the transport to be headless
      */
@@ -102,6 +154,70 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
         headless = true;
     }
 
+    /**
+     * Returns the maximum number of transactions that may be outstanding on
+     * this transport at the same time.
+     *
+     * @return Pipeline window, 1 if pipelining is disabled
+     */
+    public int getPipelineWindow() {
+        return pipelineWindow;
+    }
+
+    /**
+     * Sets the maximum number of transactions that may be outstanding on this
+     * transport at the same time.
+     *
+     * <p>
+     * A window greater than 1 puts the transport into pipelined mode. Each
+     * request sent through {@link #executePipelined(ModbusRequest)} is given a
+     * transaction ID that is unique amongst the outstanding transactions, and
+     * a background receiver hands each response to the caller waiting for
+     * that ID. In pipelined mode the receiver owns the input stream, so
+     * {@link #readResponse()} must not be used. Once started, the receiver
+     * stays in charge of the socket until it is closed or replaced, so
+     * reducing the window to 1 afterwards only limits the transport to one
+     * outstanding transaction at a time.
+     *
+     * <p>
+     * Many slaves and gateways only accept a limited number of concurrent
+     * transactions per connection, so the window should not exceed what the
+     * device supports.
+     *
+     * @param window Number of outstanding transactions, 1 to disable pipelining
+     */
+    public synchronized void setPipelineWindow(int window) {
+        if (window < 1 || window > Modbus.MAX_TRANSACTION_ID) {
+            throw new IllegalArgumentException("Invalid pipeline window: " + window);
+        }
+        if (!outstanding.isEmpty()) {
+            throw new IllegalStateException("Cannot change the pipeline window while transactions are outstanding");
+        }
+        pipelineWindow = window;
+        pipelineSlots = new Semaphore(window, true);
+    }
+
+    /**
+     * Tests if this transport is in pipelined mode, either because it allows
+     * more than one outstanding transaction or because the receiver is
+     * already reading the current socket. Headless transports have no
+     * transaction ID, so they are never pipelined.
+     *
+     * @return True if pipelined
+     */
+    public boolean isPipelined() {
+        return !headless && (pipelineWindow > 1 || pipelineReceiver != null);
+    }
+
+    /**
+     * Returns the number of transactions currently awaiting a response.
+     *
+     * @return Number of outstanding transactions
+     */
+    public int getOutstandingCount() {
+        return outstanding.size();
+    }
+
     @Override
     public void setTimeout(int time) {
         super.setTimeout(time);
@@ -125,6 +241,7 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
 
     @Override
     public void close() throws IOException {
+        stopPipelineReceiver();
         dataInputStream.close();
         dataOutputStream.close();
         socket.close();
@@ -142,24 +259,27 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
 
     @Override
     public void writeMessage(ModbusMessage msg) throws ModbusIOException {
+        writeLock.lock();
         try {
-            byte message[] = msg.getMessage();
-
+            // Build the frame in place, filling in the length once the data is written
             byteOutputStream.reset();
             if (!headless) {
                 byteOutputStream.writeShort(msg.getTransactionID());
                 byteOutputStream.writeShort(msg.getProtocolID());
-                byteOutputStream.writeShort((message != null ? message.length : 0) + 2);
+                byteOutputStream.writeShort(0);
             }
             byteOutputStream.writeByte(msg.getUnitID());
             byteOutputStream.writeByte(msg.getFunctionCode());
-            if (message != null && message.length > 0) {
-                byteOutputStream.write(message);
+            msg.writeData(byteOutputStream);
+            if (!headless) {
+                byteOutputStream.writeShortAt(4, byteOutputStream.size() - 6);
             }
 
-            dataOutputStream.write(byteOutputStream.toByteArray());
+            dataOutputStream.write(byteOutputStream.getInternalBuffer(), 0, byteOutputStream.size());
             dataOutputStream.flush();
-            logger.debug("Sent: {}", ModbusUtil.toHex(byteOutputStream.toByteArray()));
+            if (logger.isDebugEnabled()) {
+                logger.debug("Sent: {}", ModbusUtil.toHex(byteOutputStream.getInternalBuffer(), 0, byteOutputStream.size()));
+            }
             // write more sophisticated exception handling
         }
 <<<<<<< HEAD
@@ -198,6 +318,163 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
 >>>>>>> refs/remotes/steveohara/development
 >>>>>>> origin/master
         }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sends the request and waits for the response carrying the same
+     * transaction ID, while allowing other threads to have their own
+     * transactions outstanding on this transport at the same time.
+     *
+     * <p>
+     * The caller blocks for at most the transport timeout waiting for a free
+     * slot in the pipeline window, and for at most the transport timeout
+     * waiting for the response. The transaction ID of the request is
+     * overwritten with one allocated by this transport.
+     *
+     * @param request Request to send
+     *
+     * @return Response matching the request
+     *
+     * @throws ModbusIOException if the request cannot be sent, the connection
+     *                           fails or the response does not arrive in time
+     */
+    public ModbusResponse executePipelined(ModbusRequest request) throws ModbusIOException {
+        CompletableFuture<ModbusResponse> pending = sendPipelined(request);
+        try {
+            return pending.get(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ex) {
+            pending.cancel(false);
+            throw new ModbusIOException("Timeout reading response");
+        }
+        catch (InterruptedException ex) {
+            pending.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new ModbusIOException("Interrupted waiting for response");
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof ModbusIOException) {
+                ModbusIOException failure = (ModbusIOException)ex.getCause();
+                throw new ModbusIOException(failure.getMessage(), failure.isEOF());
+            }
+            throw new ModbusIOException("I/O exception - %s", ex.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Sends the request without waiting for the response. The returned
+     * future is completed by the background receiver when the response
+     * carrying the same transaction ID arrives, or exceptionally with a
+     * <tt>ModbusIOException</tt> if the connection fails.
+     *
+     * <p>
+     * The caller blocks for at most the transport timeout waiting for a free
+     * slot in the pipeline window, the slot is given back when the future
+     * completes. Nothing times out the response itself, so the caller must
+     * complete or cancel the future if it stops waiting, otherwise the slot
+     * is held until the connection is closed. Dependent actions run on the
+     * receiver thread and should not block.
+     *
+     * @param request Request to send
+     *
+     * @return Future response matching the request
+     *
+     * @throws ModbusIOException if no slot becomes free in time or the
+     *                           request cannot be sent
+     */
+    public CompletableFuture<ModbusResponse> sendPipelined(ModbusRequest request) throws ModbusIOException {
+        final Semaphore slots = pipelineSlots;
+        try {
+            if (!slots.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new ModbusIOException("Timeout waiting for a free pipeline slot");
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ModbusIOException("Interrupted waiting for a free pipeline slot");
+        }
+
+        final PendingTransaction pending = new PendingTransaction();
+        pending.whenComplete(new BiConsumer<ModbusResponse, Throwable>() {
+            public void accept(ModbusResponse response, Throwable failure) {
+                if (pending.transactionID != 0) {
+                    outstanding.remove(pending.transactionID, pending);
+                }
+                slots.release();
+            }
+        });
+        try {
+            startPipelineReceiver();
+
+            // Find an ID that isn't already in flight - the window is always
+            // smaller than the ID space so this terminates
+            int transactionID;
+            do {
+                transactionID = nextPipelineTransactionID();
+                pending.transactionID = transactionID;
+            } while (outstanding.putIfAbsent(transactionID, pending) != null);
+
+            request.setTransactionID(transactionID);
+            logger.debug("Pipelined request transaction ID = {}", transactionID);
+            writeMessage(request);
+        }
+        catch (ModbusIOException ex) {
+            pending.completeExceptionally(ex);
+            throw ex;
+        }
+        catch (RuntimeException ex) {
+            pending.completeExceptionally(ex);
+            throw ex;
+        }
+        return pending;
+    }
+
+    /**
+     * Returns the next transaction ID in the range 1 to
+     * <tt>Modbus.MAX_TRANSACTION_ID</tt>
+     *
+     * @return Transaction ID
+     */
+    private int nextPipelineTransactionID() {
+        return ((pipelineTransactionID.incrementAndGet() & 0x7FFFFFFF) % Modbus.MAX_TRANSACTION_ID) + 1;
+    }
+
+    /**
+     * Starts the background receiver if it isn't already running on the
+     * current socket
+     */
+    private synchronized void startPipelineReceiver() {
+        if (pipelineReceiver == null || !pipelineReceiver.isRunning()) {
+            pipelineReceiver = new PipelineReceiver(socket, dataInputStream);
+            Thread thread = new Thread(pipelineReceiver, "Modbus TCP pipeline " + socket.getRemoteSocketAddress());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the background receiver and fails anything still outstanding
+     */
+    private synchronized void stopPipelineReceiver() {
+        if (pipelineReceiver != null) {
+            pipelineReceiver.stop();
+            pipelineReceiver = null;
+            failOutstanding(new ModbusIOException("Connection closed", true));
+        }
+    }
+
+    /**
+     * Wakes up every caller waiting for a response with the given failure
+     *
+     * @param failure Reason for the failure
+     */
+    private void failOutstanding(ModbusIOException failure) {
+        for (PendingTransaction pending : outstanding.values()) {
+            pending.completeExceptionally(failure);
+        }
     }
 
     /**
@@ -213,9 +490,9 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
 
         ModbusRequest req;
         try {
-            byteInputStream.reset();
-
-            synchronized (byteInputStream) {
+            readLock.lock();
+            try {
+                byteInputStream.reset();
                 byte[] buffer = byteInputStream.getBuffer();
 
                 if (!headless) {
@@ -234,7 +511,9 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
                         throw new ModbusIOException("Premature end of stream (Message truncated)");
                     }
 
-                    logger.debug("Read: {}", ModbusUtil.toHex(buffer, 0, count + 6));
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Read: {}", ModbusUtil.toHex(buffer, 0, count + 6));
+                    }
 
                     byteInputStream.reset(buffer, (6 + count));
                     byteInputStream.skip(6);
@@ -243,7 +522,7 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
                     int functionCode = byteInputStream.readUnsignedByte();
 
                     byteInputStream.reset();
-                    req = ModbusRequest.createModbusRequest(functionCode);
+                    req = newRequest(functionCode);
                     req.setUnitID(unit);
                     req.setHeadless(false);
 
@@ -260,7 +539,7 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
                     int unit = dataInputStream.readByte();
                     int function = dataInputStream.readByte();
 
-                    req = ModbusRequest.createModbusRequest(function);
+                    req = newRequest(function);
                     req.setUnitID(unit);
                     req.setHeadless(true);
                     req.readData(dataInputStream);
@@ -272,6 +551,9 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
                     logger.debug("Read: {}", req.getHexMessage());
                 }
             }
+            finally {
+                readLock.unlock();
+            }
             return req;
         }
         catch (EOFException eoex) {
@@ -313,10 +595,13 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
 
             ModbusResponse response;
 
-            synchronized (byteInputStream) {
+            readLock.lock();
+            try {
                 // use same buffer
                 byte[] buffer = byteInputStream.getBuffer();
-                logger.debug("Read: {}", ModbusUtil.toHex(buffer, 0, byteInputStream.count));
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Read: {}", ModbusUtil.toHex(buffer, 0, byteInputStream.count));
+                }
                 if (!headless) {
                     // All Modbus TCP transactions start with 6 bytes. Get them.
                     if (dataInputStream.read(buffer, 0, 6) == -1) {
@@ -346,7 +631,7 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
                     byteInputStream.reset();
                     byteInputStream.skip(7);
                     int function = byteInputStream.readUnsignedByte();
-                    response = ModbusResponse.createModbusResponse(function);
+                    response = newResponse(function);
 
                     // Rewind the input buffer, then read the data into the
                     // response.
@@ -362,7 +647,7 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
                     int unit = dataInputStream.readByte();
                     int function = dataInputStream.readByte();
 
-                    response = ModbusResponse.createModbusResponse(function);
+                    response = newResponse(function);
                     response.setUnitID(unit);
                     response.setHeadless();
                     response.readData(dataInputStream);
@@ -372,6 +657,9 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
                     dataInputStream.readShort();
                 }
             }
+            finally {
+                readLock.unlock();
+            }
             return response;
         }
 <<<<<<< HEAD
@@ -425,4 +713,147 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
         dataInputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
         dataOutputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
     }
-}
\ No newline at end of file
+
+    /**
+     * A transaction that has been sent on a pipelined transport and is
+     * waiting for its response
+     */
+    private static class PendingTransaction extends CompletableFuture<ModbusResponse> {
+
+        private volatile int transactionID;
+    }
+
+    /**
+     * The background thread that reads responses from a pipelined connection
+     * and hands them to the callers waiting for their transaction ID
+     */
+    private class PipelineReceiver implements Runnable {
+
+        private final Socket socket;
+        private final DataInputStream input;
+        private volatile boolean running = true;
+
+        /**
+         * Creates a receiver reading from the given stream
+         *
+         * @param socket Current socket
+         * @param input  Stream of the current socket
+         */
+        PipelineReceiver(Socket socket, DataInputStream input) {
+            this.socket = socket;
+            this.input = input;
+        }
+
+        /**
+         * Tests if this receiver is still reading responses
+         *
+         * @return True if running
+         */
+        boolean isRunning() {
+            return running;
+        }
+
+        /**
+         * Stops the receiver, the read it is blocked on is ended by closing
+         * the socket
+         */
+        void stop() {
+            running = false;
+        }
+
+        /**
+         * Background loop reading MBAP framed responses
+         */
+        public void run() {
+            byte[] buffer = new byte[Modbus.MAX_MESSAGE_LENGTH + 6];
+            BytesInputStream frame = new BytesInputStream(buffer);
+            try {
+                while (running) {
+                    readFully(buffer, 0, 6);
+                    int transaction = ModbusUtil.registerToShort(buffer, 0) & 0x0000FFFF;
+                    int protocol = ModbusUtil.registerToShort(buffer, 2);
+                    int count = ModbusUtil.registerToShort(buffer, 4);
+                    if (count < 2 || count > buffer.length - 6) {
+                        throw new IOException("Invalid message length " + count);
+                    }
+                    readFully(buffer, 6, count);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Read: {}", ModbusUtil.toHex(buffer, 0, count + 6));
+                    }
+
+                    ModbusResponse response = ModbusResponse.createModbusResponse(buffer[7] & 0xFF);
+                    frame.reset(buffer, 6 + count);
+                    response.readFrom(frame);
+                    response.setTransactionID(transaction);
+                    response.setProtocolID(protocol);
+
+                    PendingTransaction pending = outstanding.get(transaction);
+                    if (pending == null) {
+                        // Most likely the caller has already given up waiting
+                        logger.debug("Discarding response for unknown transaction ID {}", transaction);
+                    }
+                    else {
+                        pending.complete(response);
+                    }
+                }
+            }
+            catch (EOFException ex) {
+                if (running) {
+                    abort(new ModbusIOException("End of File", true));
+                }
+            }
+            catch (Exception ex) {
+                if (running) {
+                    logger.debug("Pipelined read failed - {}", ex.getMessage());
+                    abort(new ModbusIOException("I/O exception - failed to read"));
+                }
+            }
+            running = false;
+        }
+
+        /**
+         * Closes the broken socket so that the connection is re-established
+         * by the next transaction, and fails everything still outstanding
+         *
+         * @param failure Reason for the failure
+         */
+        private void abort(ModbusIOException failure) {
+            running = false;
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                // Do nothing.
+            }
+            failOutstanding(failure);
+        }
+
+        /**
+         * Reads exactly the given number of bytes, carrying on through socket
+         * timeouts so that a partially received frame is never lost
+         *
+         * @param buffer Buffer to read into
+         * @param offset Offset within the buffer
+         * @param length Number of bytes to read
+         *
+         * @throws IOException if the stream ends or fails
+         */
+        private void readFully(byte[] buffer, int offset, int length) throws IOException {
+            while (length > 0) {
+                try {
+                    int read = input.read(buffer, offset, length);
+                    if (read < 0) {
+                        throw new EOFException("Premature end of stream");
+                    }
+                    offset += read;
+                    length -= read;
+                }
+                catch (SocketTimeoutException ex) {
+                    if (!running) {
+                        throw ex;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -17,8 +17,12 @@ package com.ghgande.j2mod.modbus.io;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.msg.ModbusMessagePool;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+
+import java.io.InterruptedIOException;
 
 /**
  * Interface defining a ModbusTransaction.
@@ -36,9 +40,12 @@ public abstract class ModbusTransaction {
     protected AbstractModbusTransport transport;
     protected ModbusRequest request;
     protected ModbusResponse response;
+    protected ModbusMessagePool messagePool;
+    protected ModbusMetrics metrics = ModbusMetrics.NONE;
     protected boolean validityCheck = Modbus.DEFAULT_VALIDITYCHECK;
     protected int retries = Modbus.DEFAULT_RETRIES;
     protected static int transactionID = Modbus.DEFAULT_TRANSACTION_ID;
+    private long startTime;
 
     /**
      * Returns the <tt>ModbusRequest</tt> instance
@@ -75,6 +82,124 @@ public abstract class ModbusTransaction {
         return response;
     }
 
+    /**
+     * Returns the pool responses are taken from
+     *
+     * @return the pool, or null if responses are not pooled.
+     */
+    public ModbusMessagePool getMessagePool() {
+        return messagePool;
+    }
+
+    /**
+     * Sets a pool for responses to be taken from. The transport is given the
+     * pool for each exchange, and the response of an execution goes back to
+     * it at the start of the next, so a response must not be used after the
+     * transaction has been executed again. The pool is not thread-safe, so
+     * the transaction must only be executed by one thread at a time.
+     *
+     * @param messagePool the pool, or null to create a new response each
+     *                    time.
+     */
+    public void setMessagePool(ModbusMessagePool messagePool) {
+        this.messagePool = messagePool;
+    }
+
+    /**
+     * Returns the metrics the executions of this transaction are reported to
+     *
+     * @return the metrics, {@link ModbusMetrics#NONE} by default.
+     */
+    public ModbusMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics the executions of this transaction are reported to.
+     * With the default of {@link ModbusMetrics#NONE} nothing is timed.
+     *
+     * @param metrics the metrics, or null for none.
+     */
+    public void setMetrics(ModbusMetrics metrics) {
+        this.metrics = metrics == null ? ModbusMetrics.NONE : metrics;
+    }
+
+    /**
+     * Notes the time an execution starts, if there are metrics to report to
+     */
+    protected void startTiming() {
+        if (metrics != ModbusMetrics.NONE) {
+            startTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Reports the response received, if there is one, to the metrics
+     */
+    protected void recordResponse() {
+        if (metrics != ModbusMetrics.NONE && response != null) {
+            metrics.transactionCompleted(getDeviceName(), request, response, System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Reports a failed execution to the metrics
+     *
+     * @param ex the reason for the failure.
+     */
+    protected void recordFailure(Exception ex) {
+        if (metrics != ModbusMetrics.NONE) {
+            metrics.transactionFailed(getDeviceName(), request, isTimeout(ex), System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Reports to the metrics that the request is being sent again
+     */
+    protected void recordRetry() {
+        if (metrics != ModbusMetrics.NONE) {
+            metrics.transactionRetried(getDeviceName(), request);
+        }
+    }
+
+    /**
+     * Returns the name of the slave, as given by the transport
+     *
+     * @return Device name
+     */
+    private String getDeviceName() {
+        return transport == null ? "" : transport.getDeviceName();
+    }
+
+    /**
+     * Tests whether a failure was caused by a timeout, which the transports
+     * report either as an <tt>InterruptedIOException</tt> or in the message
+     *
+     * @param ex the failure.
+     *
+     * @return true if it timed out.
+     */
+    private static boolean isTimeout(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedIOException ||
+                    (cause.getMessage() != null && cause.getMessage().toLowerCase().contains("timeout"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hands the current response back to the pool, if there is one, and
+     * clears it
+     */
+    protected void releaseResponse() {
+        if (messagePool != null && response != null) {
+            messagePool.release(response);
+        }
+        response = null;
+    }
+
     /**
      * Returns the amount of retries for opening
      * the connection for executing the transaction.
@@ -125,13 +250,13 @@ public abstract class ModbusTransaction {
     public int getTransactionID() {
         /*
          * Ensure that the transaction ID is in the valid range between
-         * 1 and MAX_TRANSACTION_ID (65534).  If not, the value will be forced
+         * 1 and MAX_TRANSACTION_ID (65535).  If not, the value will be forced
          * to 1.
          */
         if (transactionID <= 0 && isCheckingValidity()) {
             transactionID = 1;
         }
-        if (transactionID >= Modbus.MAX_TRANSACTION_ID) {
+        if (transactionID > Modbus.MAX_TRANSACTION_ID) {
             transactionID = 1;
         }
         return transactionID;
@@ -103,6 +103,7 @@ public class ModbusUDPTransaction extends ModbusTransaction {
 
         //1. assert executeability
         assertExecutable();
+        startTiming();
         //2. open the connection if not connected
         if (!terminal.isActive()) {
             try {
@@ -134,6 +135,8 @@ public class ModbusUDPTransaction extends ModbusTransaction {
                 //3. write request, and read response,
                 //   while holding the lock on the IO object
                 synchronized (MUTEX) {
+                    releaseResponse();
+                    transport.setMessagePool(messagePool);
                     //write request message
                     transport.writeMessage(request);
                     //read response message
@@ -146,6 +149,7 @@ public class ModbusUDPTransaction extends ModbusTransaction {
                 if (retryCount > retries) {
 <<<<<<< HEAD
                     logger.error("Cannot send UDP message", ex);
+                    recordFailure(ex);
 =======
 <<<<<<< HEAD
                     logger.error("Cannot send UDP message {}", ex.getMessage());
@@ -154,8 +158,12 @@ public class ModbusUDPTransaction extends ModbusTransaction {
 >>>>>>> refs/remotes/steveohara/development
 >>>>>>> origin/master
                 }
+                else {
+                    recordRetry();
+                }
             }
         }
+        recordResponse();
 
         //4. deal with "application level" exceptions
         if (response instanceof ExceptionResponse) {
@@ -26,7 +26,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
-import java.util.Arrays;
 
 /**
  * Class that implements the Modbus UDP transport
@@ -64,6 +63,14 @@ public class ModbusUDPTransport extends AbstractModbusTransport {
         }
     }
 
+    @Override
+    public String getDeviceName() {
+        if (terminal == null || terminal.getAddress() == null) {
+            return "";
+        }
+        return terminal.getAddress().getHostAddress() + ":" + terminal.getPort();
+    }
+
     @Override
     public void close() throws IOException {
         //?
@@ -80,12 +87,16 @@ public class ModbusUDPTransport extends AbstractModbusTransport {
     public void writeMessage(ModbusMessage msg) throws ModbusIOException {
         try {
             synchronized (byteOutputStream) {
-                int len = msg.getOutputLength();
+                // Build the frame in place, filling in the length once the data is written
                 byteOutputStream.reset();
-                msg.writeTo(byteOutputStream);
-                byte data[] = byteOutputStream.getBuffer();
-                data = Arrays.copyOf(data, len);
-                terminal.sendMessage(data);
+                byteOutputStream.writeShort(msg.getTransactionID());
+                byteOutputStream.writeShort(msg.getProtocolID());
+                byteOutputStream.writeShort(0);
+                byteOutputStream.writeByte(msg.getUnitID());
+                byteOutputStream.writeByte(msg.getFunctionCode());
+                msg.writeData(byteOutputStream);
+                byteOutputStream.writeShortAt(4, byteOutputStream.size() - 6);
+                terminal.sendMessage(byteOutputStream.getInternalBuffer(), byteOutputStream.size());
             }
         }
         catch (Exception ex) {
@@ -110,7 +121,7 @@ public class ModbusUDPTransport extends AbstractModbusTransport {
                 byteInputStream.skip(7);
                 int functionCode = byteInputStream.readUnsignedByte();
                 byteInputStream.reset();
-                req = ModbusRequest.createModbusRequest(functionCode);
+                req = newRequest(functionCode);
                 req.readFrom(byteInputStream);
             }
             return req;
@@ -138,7 +149,7 @@ public class ModbusUDPTransport extends AbstractModbusTransport {
                 byteInputStream.skip(7);
                 int functionCode = byteInputStream.readUnsignedByte();
                 byteInputStream.reset();
-                res = ModbusResponse.createModbusResponse(functionCode);
+                res = newResponse(functionCode);
                 res.readFrom(byteInputStream);
             }
             return res;
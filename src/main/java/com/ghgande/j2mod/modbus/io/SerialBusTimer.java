@@ -0,0 +1,247 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps the timing of a serial line, so that a transport waits exactly as
+ * long as the bytes on the wire need rather than as long as
+ * <tt>Thread.sleep</tt> happens to take.
+ *
+ * <p>
+ * The timer works out when the bytes written will have left the port from
+ * the baud rate and character size, and when the line was last busy in
+ * either direction. Before a frame is sent it waits for the silent interval
+ * of 3.5 characters the Modbus RTU framing needs after the last frame, and
+ * after a frame is sent it waits for it to have been transmitted. Above
+ * 19200 baud the fixed intervals of the specification, 750us between
+ * characters and 1750us between frames, are used.
+ *
+ * <p>
+ * Waits are timed with <tt>System.nanoTime</tt>. The thread is parked until
+ * shortly before the deadline, then spins, so a wait of a few hundred
+ * microseconds isn't rounded up to a millisecond or more by the scheduler.
+ *
+ * <p>
+ * The time the line has spent carrying bytes is added up, so that the
+ * utilisation actually achieved can be compared to what the baud rate
+ * allows.
+ */
+public class SerialBusTimer {
+
+    /**
+     * Default time before a deadline to stop parking and start spinning
+     */
+    public static final long DEFAULT_SPIN_NANOS = 100000;
+
+    /**
+     * Baud rate above which the intervals are fixed
+     */
+    private static final int FIXED_INTERVAL_BAUD = 19200;
+    private static final long FIXED_INTER_CHARACTER_NANOS = 750000;
+    private static final long FIXED_INTER_FRAME_NANOS = 1750000;
+
+    private int baudRate;
+    private double bitsPerCharacter;
+    private long characterNanos;
+    private long interCharacterNanos;
+    private long interFrameNanos;
+    private long spinNanos = DEFAULT_SPIN_NANOS;
+    private long transmittedAt = System.nanoTime();
+    private long quietFrom = transmittedAt;
+    private long busyNanos;
+    private long statisticsFrom = transmittedAt;
+
+    /**
+     * Sets the line speed and character size the intervals are worked out
+     * from. Does nothing if they are unchanged.
+     *
+     * @param baudRate         Baud rate, 0 or less to do no timing at all
+     * @param bitsPerCharacter Bits sent for each character, including the
+     *                         start, parity and stop bits
+     */
+    public synchronized void configure(int baudRate, double bitsPerCharacter) {
+        if (baudRate == this.baudRate && bitsPerCharacter == this.bitsPerCharacter) {
+            return;
+        }
+        this.baudRate = baudRate;
+        this.bitsPerCharacter = bitsPerCharacter;
+        if (baudRate <= 0 || bitsPerCharacter <= 0) {
+            characterNanos = 0;
+            interCharacterNanos = 0;
+            interFrameNanos = 0;
+        }
+        else {
+            characterNanos = Math.round(1000000000.0 * bitsPerCharacter / baudRate);
+            if (baudRate > FIXED_INTERVAL_BAUD) {
+                interCharacterNanos = FIXED_INTER_CHARACTER_NANOS;
+                interFrameNanos = FIXED_INTER_FRAME_NANOS;
+            }
+            else {
+                interCharacterNanos = characterNanos * 3 / 2;
+                interFrameNanos = characterNanos * 7 / 2;
+            }
+        }
+    }
+
+    /**
+     * Returns the time one character takes on the wire
+     *
+     * @return Time in nanoseconds, 0 if not configured
+     */
+    public synchronized long getCharacterNanos() {
+        return characterNanos;
+    }
+
+    /**
+     * Returns the longest gap allowed between the characters of a frame, 1.5
+     * characters
+     *
+     * @return Time in nanoseconds, 0 if not configured
+     */
+    public synchronized long getInterCharacterNanos() {
+        return interCharacterNanos;
+    }
+
+    /**
+     * Returns the silence needed between frames, 3.5 characters
+     *
+     * @return Time in nanoseconds, 0 if not configured
+     */
+    public synchronized long getInterFrameNanos() {
+        return interFrameNanos;
+    }
+
+    /**
+     * Returns how long before a deadline waiting threads stop parking and
+     * start spinning
+     *
+     * @return Time in nanoseconds
+     */
+    public synchronized long getSpinNanos() {
+        return spinNanos;
+    }
+
+    /**
+     * Sets how long before a deadline waiting threads stop parking and start
+     * spinning. Longer is more precise but burns more CPU.
+     *
+     * @param spinNanos Time in nanoseconds, 0 to only park
+     */
+    public synchronized void setSpinNanos(long spinNanos) {
+        this.spinNanos = spinNanos > 0 ? spinNanos : 0;
+    }
+
+    /**
+     * Records bytes written to the port, which are on the wire after any
+     * still being sent
+     *
+     * @param count Number of bytes
+     */
+    public synchronized void bytesSent(int count) {
+        if (count <= 0 || characterNanos == 0) {
+            return;
+        }
+        long duration = count * characterNanos;
+        transmittedAt = Math.max(System.nanoTime(), transmittedAt) + duration;
+        quietFrom = Math.max(quietFrom, transmittedAt);
+        busyNanos += duration;
+    }
+
+    /**
+     * Records bytes read from the port, which have just finished arriving
+     *
+     * @param count Number of bytes
+     */
+    public synchronized void bytesReceived(int count) {
+        if (count <= 0 || characterNanos == 0) {
+            return;
+        }
+        quietFrom = Math.max(quietFrom, System.nanoTime());
+        busyNanos += count * characterNanos;
+    }
+
+    /**
+     * Waits for the bytes written so far to have been transmitted
+     */
+    public void awaitTransmitted() {
+        long deadline;
+        synchronized (this) {
+            deadline = transmittedAt;
+        }
+        awaitDeadline(deadline);
+    }
+
+    /**
+     * Waits for the line to have been quiet for the silent interval between
+     * frames, so that the next frame can be sent
+     */
+    public void awaitSilentInterval() {
+        long deadline;
+        synchronized (this) {
+            deadline = quietFrom + interFrameNanos;
+        }
+        awaitDeadline(deadline);
+    }
+
+    /**
+     * Returns the share of the time since the statistics were reset that the
+     * line has spent carrying bytes
+     *
+     * @return Utilisation between 0 and 1
+     */
+    public synchronized double getBusUtilization() {
+        long elapsed = Math.max(System.nanoTime(), transmittedAt) - statisticsFrom;
+        return elapsed <= 0 ? 0 : Math.min(1.0, (double)busyNanos / elapsed);
+    }
+
+    /**
+     * Returns the time the line has spent carrying bytes since the
+     * statistics were reset
+     *
+     * @return Time in nanoseconds
+     */
+    public synchronized long getBusyNanos() {
+        return busyNanos;
+    }
+
+    /**
+     * Starts measuring the utilisation afresh
+     */
+    public synchronized void resetStatistics() {
+        busyNanos = 0;
+        statisticsFrom = System.nanoTime();
+    }
+
+    /**
+     * Waits until the given time, parking until shortly before it and then
+     * spinning. Returns early, with the interrupt flag set, if the thread is
+     * interrupted.
+     *
+     * @param deadline Time to wait for, as given by <tt>System.nanoTime</tt>
+     */
+    private void awaitDeadline(long deadline) {
+        long spin = getSpinNanos();
+        long remaining = deadline - System.nanoTime();
+        while (remaining > 0 && !Thread.currentThread().isInterrupted()) {
+            if (remaining > spin) {
+                LockSupport.parkNanos(remaining - spin);
+            }
+            remaining = deadline - System.nanoTime();
+        }
+    }
+}
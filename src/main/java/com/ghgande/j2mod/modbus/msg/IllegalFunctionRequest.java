@@ -16,6 +16,7 @@
 package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusCoupler;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -74,6 +75,10 @@ public class IllegalFunctionRequest extends ModbusRequest {
     }
 
     public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         return createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
     }
 
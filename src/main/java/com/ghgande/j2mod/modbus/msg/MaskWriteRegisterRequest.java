@@ -17,6 +17,7 @@ package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
 import com.ghgande.j2mod.modbus.procimg.Register;
@@ -119,7 +120,7 @@ public final class MaskWriteRegisterRequest extends ModbusRequest {
     public ModbusResponse getResponse() {
         MaskWriteRegisterResponse response;
 
-        response = new MaskWriteRegisterResponse();
+        response = (MaskWriteRegisterResponse)newResponse();
 
         // Copy any header data from the request.
         response.setHeadless(isHeadless());
@@ -135,16 +136,20 @@ public final class MaskWriteRegisterRequest extends ModbusRequest {
         return response;
     }
 
+    public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
     /**
      * The ModbusCoupler doesn't have a means of reporting the slave
      * state or ID information.
      */
-    public ModbusResponse createResponse() {
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         MaskWriteRegisterResponse response;
 
         // Get the process image.
 <<<<<<< HEAD
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
+        ProcessImage procimg = coupler.getProcessImage(getUnitID());
 =======
 <<<<<<< HEAD
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
@@ -153,19 +158,28 @@ public final class MaskWriteRegisterRequest extends ModbusRequest {
 >>>>>>> refs/remotes/steveohara/development
 >>>>>>> origin/master
         try {
-            Register register = procimg.getRegister(reference);
-
-            /*
-             * Get the original value.  The AND mask will first be
-             * applied to clear any bits, then the OR mask will be
-             * applied to set them.
-             */
-            int value = register.getValue();
-
-            value = (value & andMask) | (orMask & ~andMask);
-
-            // Store the modified value back where it came from.
-            register.setValue(value);
+            if (procimg instanceof ArrayProcessImage) {
+                // Applied as a compare and set, without locking the image
+                ((ArrayProcessImage)procimg).maskWriteRegister(reference, andMask, orMask);
+            }
+            else {
+                Register register = procimg.getRegister(reference);
+
+                /*
+                 * Get the original value.  The AND mask will first be
+                 * applied to clear any bits, then the OR mask will be
+                 * applied to set them. Holding the register's lock keeps
+                 * the update whole for the synchronized registers.
+                 */
+                synchronized (register) {
+                    int value = register.getValue();
+
+                    value = (value & andMask) | (orMask & ~andMask);
+
+                    // Store the modified value back where it came from.
+                    register.setValue(value);
+                }
+            }
         }
         catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
@@ -183,7 +197,9 @@ public final class MaskWriteRegisterRequest extends ModbusRequest {
      * writeData -- output this Modbus message to dout.
      */
     public void writeData(DataOutput dout) throws IOException {
-        dout.write(getMessage());
+        dout.writeShort(reference);
+        dout.writeShort(andMask);
+        dout.writeShort(orMask);
     }
 
     /**
@@ -97,7 +97,9 @@ public final class MaskWriteRegisterResponse
      * writeData -- output the completed Modbus message to dout
      */
     public void writeData(DataOutput dout) throws IOException {
-        dout.write(getMessage());
+        dout.writeShort(reference);
+        dout.writeShort(andMask);
+        dout.writeShort(orMask);
     }
 
     /**
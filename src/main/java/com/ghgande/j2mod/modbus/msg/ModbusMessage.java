@@ -17,6 +17,10 @@ package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.io.Transportable;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 /**
  * Interface defining a ModbusMessage.
  *
@@ -105,6 +109,45 @@ public interface ModbusMessage extends Transportable {
      */
     byte[] getMessage();
 
+    /**
+     * Writes the data of this message, everything after the function code,
+     * to the given <tt>DataOutput</tt>.
+     *
+     * <p>
+     * The transports build their frames by writing the header and then
+     * calling this method on their own reusable buffer. By default the bytes
+     * of {@link #getMessage()} are written; implementations should override
+     * it to write their fields directly, as <tt>ModbusMessageImpl</tt> does.
+     *
+     * @param dout the <tt>DataOutput</tt> to write to.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    default void writeData(DataOutput dout) throws IOException {
+        dout.write(getMessage());
+    }
+
+    /**
+     * Writes the data of this message, everything after the function code,
+     * into the given <tt>ByteBuffer</tt> at its position, which is advanced
+     * past the data.
+     *
+     * <p>
+     * The buffer may be heap or direct, and must be big-endian. By default
+     * the bytes of {@link #getMessage()} are put into it.
+     *
+     * @param buffer the <tt>ByteBuffer</tt> to write into.
+     *
+     * @throws IOException if the buffer is too small.
+     */
+    default void writeData(ByteBuffer buffer) throws IOException {
+        byte[] data = getMessage();
+        if (buffer.remaining() < data.length) {
+            throw new IOException("Buffer overflow writing message");
+        }
+        buffer.put(data);
+    }
+
     /**
      * Returns the <i>raw</i> message as <tt>String</tt> containing a
      * hexadecimal series of bytes.
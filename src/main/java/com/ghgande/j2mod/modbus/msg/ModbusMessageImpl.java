@@ -16,11 +16,14 @@
 package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.io.ByteBufferInput;
+import com.ghgande.j2mod.modbus.io.ByteBufferOutput;
 import com.ghgande.j2mod.modbus.util.ModbusUtil;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Abstract class implementing a <tt>ModbusMessage</tt>. This class provides
@@ -169,6 +172,25 @@ public abstract class ModbusMessageImpl implements ModbusMessage {
         headless = b;
     }
 
+    /**
+     * Returns this message to the state it had when it was created, ready to
+     * be reused for another message of the same function code. The header is
+     * set back to its defaults; the function code and data length are kept,
+     * since they are set by the constructor.
+     *
+     * <p>
+     * Subclasses holding data beyond the header override this to drop it,
+     * calling this implementation first.
+     *
+     * @see ModbusMessagePool
+     */
+    public void reset() {
+        transactionID = Modbus.DEFAULT_TRANSACTION_ID;
+        protocolID = Modbus.DEFAULT_PROTOCOL_ID;
+        unitID = Modbus.DEFAULT_UNIT_ID;
+        headless = false;
+    }
+
     /**
      * Writes the subclass specific data to the given DataOutput.
      *
@@ -187,6 +209,57 @@ public abstract class ModbusMessageImpl implements ModbusMessage {
      */
     public abstract void readData(DataInput din) throws IOException;
 
+    /**
+     * Writes the subclass specific data into the given ByteBuffer.
+     *
+     * <p>
+     * By default the data is written through {@link #writeData(DataOutput)}
+     * by an unsynchronized adapter over the buffer, so every function code
+     * can be encoded this way. Messages carrying blocks of data override it
+     * to put them directly.
+     *
+     * @param buffer the ByteBuffer to write into.
+     *
+     * @throws IOException if the buffer is too small.
+     */
+    public void writeData(ByteBuffer buffer) throws IOException {
+        writeData((DataOutput)new ByteBufferOutput(buffer));
+    }
+
+    /**
+     * Reads the subclass specific data from the given ByteBuffer.
+     *
+     * <p>
+     * By default the data is read through {@link #readData(DataInput)} by an
+     * unsynchronized adapter over the buffer. Nothing read is left referring
+     * to the buffer, so it can be reused as soon as this returns.
+     *
+     * @param buffer the ByteBuffer to read from.
+     *
+     * @throws IOException if the buffer holds too little data or the data is
+     *                     invalid.
+     */
+    public void readData(ByteBuffer buffer) throws IOException {
+        readData(new ByteBufferInput(buffer));
+    }
+
+    /**
+     * Writes the subclass specific data into the buffer of the given
+     * adapter, which is reused rather than one being created for the message.
+     *
+     * <p>
+     * By default the data is written through {@link #writeData(DataOutput)}.
+     * Messages that override {@link #writeData(ByteBuffer)} override this
+     * too, to put their data directly into {@link ByteBufferOutput#getBuffer()}.
+     *
+     * @param output the adapter over the ByteBuffer to write into.
+     *
+     * @throws IOException if the buffer is too small.
+     */
+    public void writeData(ByteBufferOutput output) throws IOException {
+        writeData((DataOutput)output);
+    }
+
     /**
      * getOutputLength -- Return the actual packet size in bytes
      *
@@ -243,4 +316,125 @@ public abstract class ModbusMessageImpl implements ModbusMessage {
         readData(din);
     }
 
+    /**
+     * Writes this message into the given ByteBuffer at its position. Unless
+     * the message is headless, the length in the header is that of the data
+     * actually written rather than {@link #getDataLength()}.
+     *
+     * @param buffer the ByteBuffer to write into.
+     *
+     * @throws IOException if the buffer is too small.
+     */
+    public void writeTo(ByteBuffer buffer) throws IOException {
+        int start = writeHeader(buffer);
+        writeData(buffer);
+        writeLength(buffer, start);
+    }
+
+    /**
+     * Writes this message into the buffer of the given adapter at its
+     * position, as {@link #writeTo(ByteBuffer)} does. Callers encoding many
+     * messages into the same buffer keep one adapter over it, so that none
+     * is created per message.
+     *
+     * @param output the adapter over the ByteBuffer to write into.
+     *
+     * @throws IOException if the buffer is too small.
+     */
+    public void writeTo(ByteBufferOutput output) throws IOException {
+        ByteBuffer buffer = output.getBuffer();
+        int start = writeHeader(buffer);
+        writeData(output);
+        writeLength(buffer, start);
+    }
+
+    /**
+     * Reads the headers and data for a message from the given ByteBuffer,
+     * as {@link #readFrom(DataInput)} does.
+     *
+     * @param buffer the ByteBuffer to read from.
+     *
+     * @throws IOException if the buffer holds too little data or the data is
+     *                     invalid.
+     */
+    public void readFrom(ByteBuffer buffer) throws IOException {
+        readHeader(buffer);
+        readData(buffer);
+    }
+
+    /**
+     * Reads the headers and data for a message from the buffer of the given
+     * adapter, as {@link #readFrom(ByteBuffer)} does, reusing the adapter
+     * rather than creating one for the message.
+     *
+     * @param input the adapter over the ByteBuffer to read from.
+     *
+     * @throws IOException if the buffer holds too little data or the data is
+     *                     invalid.
+     */
+    public void readFrom(ByteBufferInput input) throws IOException {
+        readHeader(input.getBuffer());
+        readData((DataInput)input);
+    }
+
+    /**
+     * Puts the header, up to and including the function code, with a length
+     * of 0 to be filled in by {@link #writeLength(ByteBuffer, int)}
+     *
+     * @param buffer the ByteBuffer to write into
+     *
+     * @return Position the message starts at
+     *
+     * @throws IOException if the buffer is too small
+     */
+    private int writeHeader(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        if (!isHeadless()) {
+            if (buffer.remaining() < 6) {
+                throw new IOException("Buffer overflow writing header");
+            }
+            buffer.putShort((short)getTransactionID());
+            buffer.putShort((short)getProtocolID());
+            buffer.putShort((short)0);
+        }
+        if (buffer.remaining() < 2) {
+            throw new IOException("Buffer overflow writing header");
+        }
+        buffer.put((byte)getUnitID());
+        buffer.put((byte)getFunctionCode());
+        return start;
+    }
+
+    /**
+     * Patches the length in the header with that of the data written since
+     *
+     * @param buffer the ByteBuffer written into
+     * @param start  Position the message starts at
+     */
+    private void writeLength(ByteBuffer buffer, int start) {
+        if (!isHeadless()) {
+            buffer.putShort(start + 4, (short)(buffer.position() - start - 6));
+        }
+    }
+
+    /**
+     * Gets the header, up to and including the function code
+     *
+     * @param buffer the ByteBuffer to read from
+     *
+     * @throws IOException if the buffer is too short for a header
+     */
+    private void readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < (isHeadless() ? 2 : 8)) {
+            throw new IOException("Message too short");
+        }
+        if (!isHeadless()) {
+            setTransactionID(buffer.getShort() & 0xFFFF);
+            setProtocolID(buffer.getShort() & 0xFFFF);
+            dataLength = buffer.getShort() & 0xFFFF;
+        }
+        setUnitID(buffer.get() & 0xFF);
+        setFunctionCode(buffer.get() & 0xFF);
+    }
+
 }
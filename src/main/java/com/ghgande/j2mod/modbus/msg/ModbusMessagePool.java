@@ -0,0 +1,169 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.msg;
+
+/**
+ * Pool of reusable requests and responses, kept by function code.
+ *
+ * <p>
+ * A pool belongs to a single connection and is not thread-safe; it must only
+ * be used by the thread serving that connection. Messages are taken with
+ * {@link #getRequest(int)} and {@link #getResponse(int)} in place of the
+ * factory methods of {@link ModbusRequest} and {@link ModbusResponse}, and
+ * handed back with {@link #release(ModbusMessage)} once nothing refers to
+ * them any more, at which point they are {@link ModbusMessageImpl#reset()
+ * reset}. A request taken from a pool builds its response from the same
+ * pool.
+ *
+ * <p>
+ * Messages that are never released are simply garbage collected, and at
+ * most {@link #DEFAULT_SIZE} idle messages are kept for each function code
+ * unless another size is given.
+ */
+public final class ModbusMessagePool {
+
+    /**
+     * The default number of idle messages kept for each function code
+     */
+    public static final int DEFAULT_SIZE = 4;
+
+    private static final int CODES = 256;
+
+    private final int size;
+    private final FreeList[] requests = new FreeList[CODES];
+    private final FreeList[] responses = new FreeList[CODES];
+
+    /**
+     * Constructs a pool keeping {@link #DEFAULT_SIZE} idle messages for each
+     * function code
+     */
+    public ModbusMessagePool() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructs a pool keeping the given number of idle messages for each
+     * function code
+     *
+     * @param size the number of idle messages to keep.
+     */
+    public ModbusMessagePool(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.size = size;
+    }
+
+    /**
+     * Returns a request for the given function code, reusing an idle one if
+     * there is one
+     *
+     * @param functionCode the function code of the request.
+     *
+     * @return a request as created by {@link ModbusRequest#createModbusRequest(int)}.
+     */
+    public ModbusRequest getRequest(int functionCode) {
+        int code = functionCode & 0xFF;
+        ModbusRequest request = requests[code] != null ? (ModbusRequest)requests[code].take() : null;
+        if (request == null) {
+            request = ModbusRequest.createModbusRequest(functionCode);
+            if (requests[code] == null) {
+                requests[code] = new FreeList(request.getClass(), size);
+            }
+        }
+        request.setMessagePool(this);
+        return request;
+    }
+
+    /**
+     * Returns a response for the given function code, reusing an idle one if
+     * there is one
+     *
+     * @param functionCode the function code of the response.
+     *
+     * @return a response as created by {@link ModbusResponse#createModbusResponse(int)}.
+     */
+    public ModbusResponse getResponse(int functionCode) {
+        int code = functionCode & 0xFF;
+        ModbusResponse response = responses[code] != null ? (ModbusResponse)responses[code].take() : null;
+        if (response == null) {
+            response = ModbusResponse.createModbusResponse(functionCode);
+            if (responses[code] == null) {
+                responses[code] = new FreeList(response.getClass(), size);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Resets a message and keeps it for reuse. Messages this pool doesn't
+     * hand out, and any beyond the number kept, are ignored.
+     *
+     * @param msg the message, which must not be used again by the caller.
+     */
+    public void release(ModbusMessage msg) {
+        if (!(msg instanceof ModbusMessageImpl)) {
+            return;
+        }
+        FreeList[] lists = msg instanceof ModbusRequest ? requests : responses;
+        FreeList list = lists[msg.getFunctionCode() & 0xFF];
+        if (list != null && list.type == msg.getClass() && !list.isFull() && !list.contains(msg)) {
+            ((ModbusMessageImpl)msg).reset();
+            list.add((ModbusMessageImpl)msg);
+        }
+    }
+
+    /**
+     * Idle messages of a single class
+     */
+    private static final class FreeList {
+
+        private final Class<?> type;
+        private final ModbusMessageImpl[] messages;
+        private int count;
+
+        FreeList(Class<?> type, int size) {
+            this.type = type;
+            messages = new ModbusMessageImpl[size];
+        }
+
+        boolean isFull() {
+            return count == messages.length;
+        }
+
+        boolean contains(ModbusMessage msg) {
+            for (int i = 0; i < count; i++) {
+                if (messages[i] == msg) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(ModbusMessageImpl msg) {
+            messages[count++] = msg;
+        }
+
+        ModbusMessageImpl take() {
+            if (count == 0) {
+                return null;
+            }
+            ModbusMessageImpl msg = messages[--count];
+            messages[count] = null;
+            return msg;
+        }
+    }
+}
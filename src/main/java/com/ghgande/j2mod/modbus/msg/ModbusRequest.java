@@ -16,6 +16,7 @@
 package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusCoupler;
 
 /**
  * Abstract class implementing a <tt>ModbusRequest</tt>. This class provides
@@ -28,6 +29,8 @@ import com.ghgande.j2mod.modbus.Modbus;
  */
 public abstract class ModbusRequest extends ModbusMessageImpl {
 
+    private ModbusMessagePool messagePool;
+
     /**
      * Factory method creating the required specialized <tt>ModbusRequest</tt>
      * instance.
@@ -104,6 +107,38 @@ public abstract class ModbusRequest extends ModbusMessageImpl {
         return request;
     }
 
+    /**
+     * Returns the pool this request was taken from, which its response
+     * should also be taken from
+     *
+     * @return the pool, or null if the request was created directly.
+     */
+    ModbusMessagePool getMessagePool() {
+        return messagePool;
+    }
+
+    /**
+     * Sets the pool this request was taken from
+     *
+     * @param pool the pool.
+     */
+    void setMessagePool(ModbusMessagePool pool) {
+        messagePool = pool;
+    }
+
+    /**
+     * Returns an empty response for the function code of this request, taken
+     * from the pool the request came from if it has one
+     *
+     * @return the response, with its header still to be filled in.
+     */
+    ModbusResponse newResponse() {
+        if (messagePool != null) {
+            return messagePool.getResponse(getFunctionCode());
+        }
+        return ModbusResponse.createModbusResponse(getFunctionCode());
+    }
+
     /**
      * Returns the <tt>ModbusResponse</tt> that correlates with this
      * <tt>ModbusRequest</tt>.
@@ -131,13 +166,41 @@ public abstract class ModbusRequest extends ModbusMessageImpl {
      *
      * <p>
      * This method is used to create responses from the process image associated
-     * with the ModbusCoupler. It is commonly used to implement Modbus slave
-     * instances.
+     * with the shared <tt>ModbusCoupler</tt>. It is commonly used to implement
+     * Modbus slave instances.
+     *
+     * <p>
+     * Requests answering from any coupler implement this as
+     * <tt>createResponse(ModbusCoupler.getReference())</tt> and override
+     * {@link #createResponse(ModbusCoupler)}.
      *
      * @return the corresponding <tt>ModbusResponse</tt>.
      */
     public abstract ModbusResponse createResponse();
 
+    /**
+     * Returns the <tt>ModbusResponse</tt> that represents the answer to this
+     * <tt>ModbusRequest</tt>, from the process image the given
+     * <tt>ModbusCoupler</tt> holds for the unit ID of this request.
+     *
+     * <p>
+     * Listeners pass their own coupler, so that slaves with process images of
+     * their own can run side by side.
+     *
+     * <p>
+     * Requests written before couplers could be passed only override
+     * {@link #createResponse()}. For those this falls back to it, so they
+     * still answer from the shared <tt>ModbusCoupler</tt> whatever coupler
+     * is given.
+     *
+     * @param coupler the <tt>ModbusCoupler</tt> holding the process images.
+     *
+     * @return the corresponding <tt>ModbusResponse</tt>.
+     */
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
+        return createResponse();
+    }
+
     /**
      * Factory method for creating exception responses with the given exception
      * code.
@@ -17,6 +17,7 @@ package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
 import com.ghgande.j2mod.modbus.procimg.DigitalOut;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
@@ -92,12 +93,17 @@ public final class ReadCoilsRequest extends ModbusRequest {
 
     @Override
     public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
+    @Override
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         ModbusResponse response;
         DigitalOut[] douts;
 
         // 1. get process image
 <<<<<<< HEAD
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
+        ProcessImage procimg = coupler.getProcessImage(getUnitID());
 =======
 <<<<<<< HEAD
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
@@ -105,6 +111,20 @@ public final class ReadCoilsRequest extends ModbusRequest {
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
 >>>>>>> refs/remotes/steveohara/development
 >>>>>>> origin/master
+        // Copy straight into the response bytes when the image allows it
+        if (procimg instanceof ArrayProcessImage) {
+            byte[] bytes = new byte[(getBitCount() + 7) / 8];
+            try {
+                ((ArrayProcessImage)procimg).getCoilBytes(getReference(), getBitCount(), bytes, 0);
+            }
+            catch (IllegalAddressException e) {
+                return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+            }
+            response = getResponse();
+            ((ReadCoilsResponse)response).getCoils().setBytes(bytes);
+
+            return response;
+        }
         // 2. get input discretes range
         try {
             douts = procimg.getDigitalOutRange(getReference(), getBitCount());
@@ -178,7 +198,8 @@ public final class ReadCoilsRequest extends ModbusRequest {
 
     @Override
     public void writeData(DataOutput dout) throws IOException {
-        dout.write(getMessage());
+        dout.writeShort(reference);
+        dout.writeShort(bitCount);
     }
 
     @Override
@@ -48,6 +48,15 @@ import java.io.IOException;
 public final class ReadCoilsResponse extends ModbusResponse {
     private BitVector coils;
 
+    // Coil bytes as received, only turned into a bit vector on demand
+    private byte[] data;
+
+    // Array owned by this response for the bytes received
+    private byte[] buffer;
+
+    // Flyweight view over the coil bytes
+    private ResponseView view;
+
     /**
      * ReadCoilsResponse -- create an empty response message to be
      * filled in later.
@@ -76,11 +85,12 @@ public final class ReadCoilsResponse extends ModbusResponse {
      * @return number of defined coils
      */
     public int getBitCount() {
-        if (coils == null) {
+        BitVector bits = getCoilVector();
+        if (bits == null) {
             return 0;
         }
         else {
-            return coils.size();
+            return bits.size();
         }
     }
 
@@ -93,7 +103,7 @@ public final class ReadCoilsResponse extends ModbusResponse {
      * @return BitVector containing the coils.
      */
     public BitVector getCoils() {
-        return coils;
+        return getCoilVector();
     }
 
     /**
@@ -110,6 +120,7 @@ public final class ReadCoilsResponse extends ModbusResponse {
      *                                   index is out of bounds
      */
     public boolean getCoilStatus(int index) throws IndexOutOfBoundsException {
+        BitVector coils = getCoilVector();
 
         if (index < 0) {
             throw new IllegalArgumentException(index + " < 0");
@@ -129,6 +140,7 @@ public final class ReadCoilsResponse extends ModbusResponse {
      * @param b     true if to be set, false for reset.
      */
     public void setCoilStatus(int index, boolean b) {
+        BitVector coils = getCoilVector();
         if (index < 0) {
             throw new IllegalArgumentException(index + " < 0");
         }
@@ -140,22 +152,53 @@ public final class ReadCoilsResponse extends ModbusResponse {
         coils.setBit(index, b);
     }
 
-    public void writeData(DataOutput output) throws IOException {
-        byte result[] = getMessage();
+    /**
+     * Returns a read-only view of the coils that reads them straight from
+     * the bytes received, without creating a bit vector. The view is only
+     * valid until this response is read into again.
+     *
+     * @return the view.
+     */
+    public synchronized ResponseView getView() {
+        if (view == null) {
+            view = new ResponseView();
+        }
+        if (data != null) {
+            return view.reset(data, data.length);
+        }
+        byte[] raw = coils != null ? coils.getBytes() : new byte[0];
+        return view.reset(raw, raw.length);
+    }
+
+    public void reset() {
+        super.reset();
+        data = null;
+        coils = null;
+    }
 
-        output.write(result);
+    public void writeData(DataOutput output) throws IOException {
+        BitVector coils = getCoilVector();
+        output.writeByte(coils.byteSize());
+        coils.writeBytes(output);
     }
 
     public void readData(DataInput input) throws IOException {
         int count = input.readUnsignedByte();
-        byte[] data = new byte[count];
-
-        input.readFully(data, 0, count);
-        coils = BitVector.createBitVector(data);
+        byte[] raw = getBitBuffer(count);
+
+        input.readFully(raw, 0, count);
+        synchronized (this) {
+            data = raw;
+            coils = null;
+            if (view != null) {
+                view.reset(raw, raw.length);
+            }
+        }
         setDataLength(count + 1);
     }
 
     public byte[] getMessage() {
+        BitVector coils = getCoilVector();
         int len = 1 + coils.byteSize();
         byte result[] = new byte[len];
 
@@ -164,4 +207,33 @@ public final class ReadCoilsResponse extends ModbusResponse {
 
         return result;
     }
+
+    /**
+     * Returns the coils, creating the bit vector from the bytes received
+     * if this hasn't been done already.
+     *
+     * @return Bit vector
+     */
+    private synchronized BitVector getCoilVector() {
+        if (data != null) {
+            coils = BitVector.createBitVector(data);
+            data = null;
+        }
+        return coils;
+    }
+
+    /**
+     * Returns an array of the given length for the bytes received, reusing
+     * the one this response last used if it is the right size
+     *
+     * @param length the number of bytes.
+     *
+     * @return the array.
+     */
+    private byte[] getBitBuffer(int length) {
+        if (buffer == null || buffer.length != length) {
+            buffer = new byte[length];
+        }
+        return buffer;
+    }
 }
@@ -16,6 +16,7 @@
 package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusCoupler;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -65,10 +66,14 @@ public final class ReadCommEventCounterRequest extends ModbusRequest {
         return response;
     }
 
+    public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
     /**
      * The ModbusCoupler doesn't have a means of reporting the event counters.
      */
-    public ModbusResponse createResponse() {
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         return createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
     }
 
@@ -16,6 +16,7 @@
 package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusCoupler;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -66,11 +67,15 @@ public final class ReadExceptionStatusRequest extends ModbusRequest {
         return response;
     }
 
+    public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
     /**
      * The ModbusCoupler doesn't have a means of reporting the serial
      * device exception status.
      */
-    public ModbusResponse createResponse() {
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         return createExceptionResponse(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
     }
 
@@ -78,7 +83,7 @@ public final class ReadExceptionStatusRequest extends ModbusRequest {
      * writeData -- output this Modbus message to dout.
      */
     public void writeData(DataOutput dout) throws IOException {
-        dout.write(getMessage());
+        // No data
     }
 
     /**
@@ -65,7 +65,7 @@ public final class ReadExceptionStatusResponse extends ModbusResponse {
      * writeData -- output the completed Modbus message to dout
      */
     public void writeData(DataOutput dout) throws IOException {
-        dout.write(getMessage());
+        dout.writeByte(status);
     }
 
     /**
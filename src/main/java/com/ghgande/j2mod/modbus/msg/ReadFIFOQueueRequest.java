@@ -88,16 +88,20 @@ public final class ReadFIFOQueueRequest extends ModbusRequest {
         return response;
     }
 
+    public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
     /**
      * Create a response using the named register as the queue length count.
      */
-    public ModbusResponse createResponse() {
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         ReadFIFOQueueResponse response;
         InputRegister[] registers;
 
         // Get the process image.
 <<<<<<< HEAD
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
+        ProcessImage procimg = coupler.getProcessImage(getUnitID());
 =======
 <<<<<<< HEAD
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
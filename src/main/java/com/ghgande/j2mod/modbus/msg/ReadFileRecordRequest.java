@@ -127,17 +127,21 @@ public final class ReadFileRecordRequest extends ModbusRequest {
         return response;
     }
 
+    public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
     /**
      * The ModbusCoupler doesn't have a means of reporting the slave state or ID
      * information.
      */
-    public ModbusResponse createResponse() {
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         ReadFileRecordResponse response;
         response = (ReadFileRecordResponse)getResponse();
 
         // Get the process image.
 <<<<<<< HEAD
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
+        ProcessImage procimg = coupler.getProcessImage(getUnitID());
 =======
 <<<<<<< HEAD
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
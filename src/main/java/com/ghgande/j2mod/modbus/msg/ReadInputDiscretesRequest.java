@@ -17,6 +17,7 @@ package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
 import com.ghgande.j2mod.modbus.procimg.DigitalIn;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
@@ -97,12 +98,16 @@ public final class ReadInputDiscretesRequest extends ModbusRequest {
     }
 
     public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         ReadInputDiscretesResponse response;
         DigitalIn[] dins;
 
         // 1. get process image
 <<<<<<< HEAD
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
+        ProcessImage procimg = coupler.getProcessImage(getUnitID());
 =======
 <<<<<<< HEAD
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
@@ -110,6 +115,20 @@ public final class ReadInputDiscretesRequest extends ModbusRequest {
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
 >>>>>>> refs/remotes/steveohara/development
 >>>>>>> origin/master
+        // Copy straight into the response bytes when the image allows it
+        if (procimg instanceof ArrayProcessImage) {
+            byte[] bytes = new byte[(getBitCount() + 7) / 8];
+            try {
+                ((ArrayProcessImage)procimg).getDiscreteBytes(getReference(), getBitCount(), bytes, 0);
+            }
+            catch (IllegalAddressException e) {
+                return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+            }
+            response = getResponse();
+            response.getDiscretes().setBytes(bytes);
+
+            return response;
+        }
         // 2. get input discretes range
         try {
             dins = procimg.getDigitalInRange(getReference(), getBitCount());
@@ -42,6 +42,15 @@ public final class ReadInputDiscretesResponse
     private int bitCount;
     private BitVector discretes;
 
+    // Discrete bytes as received, only turned into a bit vector on demand
+    private byte[] data;
+
+    // Array owned by this response for the bytes received
+    private byte[] buffer;
+
+    // Flyweight view over the discrete bytes
+    private ResponseView view;
+
     /**
      * Constructs a new <tt>ReadInputDiscretesResponse</tt>
      * instance.
@@ -97,7 +106,7 @@ public final class ReadInputDiscretesResponse
      * bits that have been read.
      */
     public BitVector getDiscretes() {
-        return discretes;
+        return getDiscreteVector();
     }
 
     /**
@@ -115,7 +124,7 @@ public final class ReadInputDiscretesResponse
      */
     public boolean getDiscreteStatus(int index) throws IndexOutOfBoundsException {
 
-        return discretes.getBit(index);
+        return getDiscreteVector().getBit(index);
     }
 
     /**
@@ -127,30 +136,61 @@ public final class ReadInputDiscretesResponse
      * @throws IndexOutOfBoundsException if the given index exceeds bounds.
      */
     public void setDiscreteStatus(int index, boolean b) throws IndexOutOfBoundsException {
-        discretes.setBit(index, b);
+        getDiscreteVector().setBit(index, b);
+    }
+
+    /**
+     * Returns a read-only view of the discretes that reads them straight from
+     * the bytes received, without creating a bit vector. The view is only
+     * valid until this response is read into again.
+     *
+     * @return the view.
+     */
+    public synchronized ResponseView getView() {
+        if (view == null) {
+            view = new ResponseView();
+        }
+        if (data != null) {
+            return view.reset(data, data.length);
+        }
+        byte[] raw = discretes != null ? discretes.getBytes() : new byte[0];
+        return view.reset(raw, raw.length);
+    }
+
+    public void reset() {
+        super.reset();
+        data = null;
+        bitCount = 0;
+        discretes = null;
     }
 
     public void writeData(DataOutput dout) throws IOException {
+        BitVector discretes = getDiscreteVector();
         dout.writeByte(discretes.byteSize());
-        dout.write(discretes.getBytes(), 0, discretes.byteSize());
+        discretes.writeBytes(dout);
     }
 
     public void readData(DataInput din) throws IOException {
 
         int count = din.readUnsignedByte();
-        byte[] data = new byte[count];
-        for (int k = 0; k < count; k++) {
-            data[k] = din.readByte();
+        byte[] raw = getBitBuffer(count);
+        din.readFully(raw, 0, count);
+
+        //keep the bytes, they are decoded into a bitvector on demand
+        synchronized (this) {
+            data = raw;
+            discretes = null;
+            if (view != null) {
+                view.reset(raw, raw.length);
+            }
         }
 
-        //decode bytes into bitvector
-        discretes = BitVector.createBitVector(data);
-
         //update data length
         setDataLength(count + 1);
     }
 
     public byte[] getMessage() {
+        BitVector discretes = getDiscreteVector();
         byte result[];
         int len = 1 + discretes.byteSize();
 
@@ -161,4 +201,33 @@ public final class ReadInputDiscretesResponse
         return result;
     }
 
+    /**
+     * Returns the discretes, creating the bit vector from the bytes received
+     * if this hasn't been done already.
+     *
+     * @return Bit vector
+     */
+    private synchronized BitVector getDiscreteVector() {
+        if (data != null) {
+            discretes = BitVector.createBitVector(data);
+            data = null;
+        }
+        return discretes;
+    }
+
+    /**
+     * Returns an array of the given length for the bytes received, reusing
+     * the one this response last used if it is the right size
+     *
+     * @param length the number of bytes.
+     *
+     * @return the array.
+     */
+    private byte[] getBitBuffer(int length) {
+        if (buffer == null || buffer.length != length) {
+            buffer = new byte[length];
+        }
+        return buffer;
+    }
+
 }
\ No newline at end of file
@@ -17,6 +17,7 @@ package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.InputRegister;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
@@ -71,7 +72,7 @@ public final class ReadInputRegistersRequest extends ModbusRequest {
     }
 
     public ReadInputRegistersResponse getResponse() {
-        ReadInputRegistersResponse response = new ReadInputRegistersResponse();
+        ReadInputRegistersResponse response = (ReadInputRegistersResponse)newResponse();
 
         response.setUnitID(getUnitID());
         response.setHeadless(isHeadless());
@@ -85,12 +86,16 @@ public final class ReadInputRegistersRequest extends ModbusRequest {
     }
 
     public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         ReadInputRegistersResponse response;
         InputRegister[] inpregs;
 
         // 1. get process image
 <<<<<<< HEAD
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
+        ProcessImage procimg = coupler.getProcessImage(getUnitID());
 =======
 <<<<<<< HEAD
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
@@ -98,6 +103,20 @@ public final class ReadInputRegistersRequest extends ModbusRequest {
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
 >>>>>>> refs/remotes/steveohara/development
 >>>>>>> origin/master
+        // Copy straight into the response bytes when the image allows it
+        if (procimg instanceof ArrayProcessImage) {
+            response = getResponse();
+            byte[] bytes = response.getRegisterBuffer(getWordCount() * 2);
+            try {
+                ((ArrayProcessImage)procimg).getInputRegisterBytes(getReference(), getWordCount(), bytes, 0);
+            }
+            catch (IllegalAddressException e) {
+                return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+            }
+            response.setRegisterBytes(bytes);
+
+            return response;
+        }
         // 2. get input registers range
         try {
             inpregs = procimg.getInputRegisterRange(getReference(), getWordCount());
@@ -17,6 +17,7 @@ package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
 import com.ghgande.j2mod.modbus.procimg.Register;
@@ -73,7 +74,7 @@ public final class ReadMultipleRegistersRequest extends ModbusRequest {
     public ModbusResponse getResponse() {
         ReadMultipleRegistersResponse response;
 
-        response = new ReadMultipleRegistersResponse();
+        response = (ReadMultipleRegistersResponse)newResponse();
 
         response.setUnitID(getUnitID());
         response.setHeadless(isHeadless());
@@ -85,12 +86,16 @@ public final class ReadMultipleRegistersRequest extends ModbusRequest {
     }
 
     public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         ReadMultipleRegistersResponse response;
         Register[] regs;
 
         // 1. get process image
 <<<<<<< HEAD
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
+        ProcessImage procimg = coupler.getProcessImage(getUnitID());
 =======
 <<<<<<< HEAD
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
@@ -98,6 +103,20 @@ public final class ReadMultipleRegistersRequest extends ModbusRequest {
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
 >>>>>>> refs/remotes/steveohara/development
 >>>>>>> origin/master
+        // Copy straight into the response bytes when the image allows it
+        if (procimg instanceof ArrayProcessImage) {
+            response = (ReadMultipleRegistersResponse)getResponse();
+            byte[] bytes = response.getRegisterBuffer(getWordCount() * 2);
+            try {
+                ((ArrayProcessImage)procimg).getRegisterBytes(getReference(), getWordCount(), bytes, 0);
+            }
+            catch (IllegalAddressException e) {
+                return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
+            }
+            response.setRegisterBytes(bytes);
+
+            return response;
+        }
         // 2. get input registers range
         try {
             regs = procimg.getRegisterRange(getReference(), getWordCount());
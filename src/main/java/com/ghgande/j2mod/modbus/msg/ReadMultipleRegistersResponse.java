@@ -16,12 +16,14 @@
 package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.io.ByteBufferOutput;
 import com.ghgande.j2mod.modbus.procimg.Register;
 import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>ReadMultipleRegistersResponse</tt>. The
@@ -39,6 +41,15 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
     private int byteCount;
     private Register[] registers;
 
+    // Register bytes as received, only turned into register objects on demand
+    private byte[] data;
+
+    // Array owned by this response for register bytes, kept when it is reset
+    private byte[] buffer;
+
+    // Flyweight view over the register bytes
+    private ResponseView view;
+
     /**
      * Constructs a new <tt>ReadMultipleRegistersResponse</tt> instance.
      */
@@ -93,7 +104,7 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
      * @throws IndexOutOfBoundsException if the index is out of bounds.
      */
     public Register getRegister(int index) {
-        if (registers == null) {
+        if (registers == null && data == null) {
             throw new IndexOutOfBoundsException("No registers defined!");
         }
 
@@ -105,7 +116,7 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
             throw new IndexOutOfBoundsException(index + " > " + getWordCount());
         }
 
-        return registers[index];
+        return getRegisterArray()[index];
     }
 
     /**
@@ -120,15 +131,45 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
      * @throws IndexOutOfBoundsException if the index is out of bounds.
      */
     public int getRegisterValue(int index) throws IndexOutOfBoundsException {
+        byte[] raw = data;
+        if (raw != null && index >= 0 && index < getWordCount()) {
+            return ((raw[index * 2] & 0xff) << 8) | (raw[index * 2 + 1] & 0xff);
+        }
         return getRegister(index).toUnsignedShort();
     }
 
+    /**
+     * Copies the unsigned values of the registers read into an array,
+     * without creating a register object for each of them.
+     *
+     * @param dest the array to copy the values to.
+     * @param off  the index in the array of the first value.
+     *
+     * @return the number of values copied, limited by the room in the array.
+     */
+    public int getRegisterValues(int[] dest, int off) {
+        int count = Math.min(getWordCount(), dest.length - off);
+        byte[] raw = data;
+        if (raw != null) {
+            for (int i = 0, j = 0; i < count; i++, j += 2) {
+                dest[off + i] = ((raw[j] & 0xff) << 8) | (raw[j + 1] & 0xff);
+            }
+        }
+        else {
+            for (int i = 0; i < count; i++) {
+                dest[off + i] = registers[i].toUnsignedShort();
+            }
+        }
+        return count;
+    }
+
     /**
      * Returns the reference to the array of registers read.
      *
      * @return a <tt>Register[]</tt> instance.
      */
     public synchronized Register[] getRegisters() {
+        Register[] registers = getRegisterArray();
         Register[] dest = new Register[registers.length];
         System.arraycopy(registers, 0, dest, 0, dest.length);
         return dest;
@@ -138,26 +179,118 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
      * Sets the entire block of registers for this response
      */
     public void setRegisters(Register[] registers) {
+        data = null;
         byteCount = registers.length * 2;
         setDataLength(byteCount + 1);
         this.registers = registers;
     }
 
+    /**
+     * Sets the entire block of registers for this response from their raw
+     * bytes, two per register with the high byte first. The array is kept
+     * rather than copied.
+     *
+     * @param bytes the register bytes.
+     */
+    public synchronized void setRegisterBytes(byte[] bytes) {
+        data = bytes;
+        registers = null;
+        byteCount = bytes.length;
+        setDataLength(bytes.length + 1);
+    }
+
+    /**
+     * Returns a read-only view of the registers that decodes them straight
+     * from the bytes received, without creating a register object for each.
+     * The view is only valid until this response is read into again.
+     *
+     * @return the view.
+     */
+    public synchronized ResponseView getView() {
+        if (view == null) {
+            view = new ResponseView();
+        }
+        byte[] raw = data;
+        if (raw == null) {
+            // Registers have been created, so view a copy of their values
+            int count = registers != null ? registers.length : 0;
+            raw = getRegisterBuffer(count * 2);
+            for (int k = 0; k < count; k++) {
+                int value = registers[k].getValue();
+                raw[k * 2] = (byte)(value >> 8);
+                raw[k * 2 + 1] = (byte)value;
+            }
+        }
+        return view.reset(raw, raw.length);
+    }
+
+    /**
+     * Returns an array of the given length for register bytes, reusing the
+     * one this response last used if it is the right size. Only a response
+     * that has been reset may have its array reused.
+     *
+     * @param length the number of bytes.
+     *
+     * @return the array.
+     */
+    synchronized byte[] getRegisterBuffer(int length) {
+        if (buffer == null || buffer.length != length) {
+            buffer = new byte[length];
+        }
+        return buffer;
+    }
+
+    public synchronized void reset() {
+        super.reset();
+        byteCount = 0;
+        registers = null;
+        data = null;
+    }
+
     public void writeData(DataOutput dout) throws IOException {
         dout.writeByte(byteCount);
 
+        byte[] raw = data;
+        if (raw != null) {
+            dout.write(raw, 0, raw.length);
+            return;
+        }
         for (int k = 0; k < getWordCount(); k++) {
-            dout.write(registers[k].toBytes());
+            dout.writeShort(registers[k].getValue());
         }
     }
 
+    public void writeData(ByteBuffer buffer) throws IOException {
+        byte[] raw = data;
+        int length = raw != null ? raw.length : getWordCount() * 2;
+        if (buffer.remaining() < length + 1) {
+            throw new IOException("Buffer overflow writing registers");
+        }
+        buffer.put((byte)byteCount);
+        if (raw != null) {
+            buffer.put(raw, 0, raw.length);
+            return;
+        }
+        for (int k = 0; k < getWordCount(); k++) {
+            buffer.putShort((short)registers[k].getValue());
+        }
+    }
+
+    public void writeData(ByteBufferOutput output) throws IOException {
+        writeData(output.getBuffer());
+    }
+
     public void readData(DataInput din) throws IOException {
         byteCount = din.readUnsignedByte();
 
-        registers = new Register[getWordCount()];
-
-        for (int k = 0; k < getWordCount(); k++) {
-            registers[k] = new SimpleRegister(din.readByte(), din.readByte());
+        byte[] raw = getRegisterBuffer(getWordCount() * 2);
+        din.readFully(raw);
+        synchronized (this) {
+            data = raw;
+            registers = null;
+            if (view != null) {
+                view.reset(raw, raw.length);
+            }
         }
 
         setDataLength(byteCount + 1);
@@ -171,6 +304,11 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
         int offset = 0;
         result[offset++] = (byte)byteCount;
 
+        byte[] raw = data;
+        if (raw != null) {
+            System.arraycopy(raw, 0, result, offset, raw.length);
+            return result;
+        }
         for (Register register : registers) {
             byte[] data = register.toBytes();
 
@@ -179,4 +317,22 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
         }
         return result;
     }
+
+    /**
+     * Returns the registers, creating them from the bytes received if this
+     * hasn't been done already. From then on the register objects hold the
+     * values, so that changes made to them are not lost.
+     *
+     * @return Registers
+     */
+    private synchronized Register[] getRegisterArray() {
+        if (data != null) {
+            registers = new Register[data.length / 2];
+            for (int k = 0; k < registers.length; k++) {
+                registers[k] = new SimpleRegister(data[k * 2], data[k * 2 + 1]);
+            }
+            data = null;
+        }
+        return registers;
+    }
 }
\ No newline at end of file
@@ -93,7 +93,7 @@ public final class ReadWriteMultipleRequest extends ModbusRequest {
     public ModbusResponse getResponse() {
         ReadWriteMultipleResponse response;
 
-        response = new ReadWriteMultipleResponse();
+        response = (ReadWriteMultipleResponse)newResponse();
 
         // Copy any header data from the request.
         response.setHeadless(isHeadless());
@@ -110,13 +110,17 @@ public final class ReadWriteMultipleRequest extends ModbusRequest {
     }
 
     public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         ReadWriteMultipleResponse response;
         InputRegister[] readRegs;
         Register[] writeRegs;
 
         // 1. get process image
 <<<<<<< HEAD
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
+        ProcessImage procimg = coupler.getProcessImage(getUnitID());
 =======
 <<<<<<< HEAD
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
@@ -135,10 +139,20 @@ public final class ReadWriteMultipleRequest extends ModbusRequest {
 
             readRegs = dummy;
 
-            writeRegs = procimg.getRegisterRange(getWriteReference(), getWriteWordCount());
+            if (procimg instanceof ArrayProcessImage) {
+                // Written as one range, never interleaved with another
+                int[] values = new int[getWriteWordCount()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = getRegister(i).getValue();
+                }
+                ((ArrayProcessImage)procimg).setRegisterValues(getWriteReference(), values, 0, values.length);
+            }
+            else {
+                writeRegs = procimg.getRegisterRange(getWriteReference(), getWriteWordCount());
 
-            for (int i = 0; i < writeRegs.length; i++) {
-                writeRegs[i].setValue(getRegister(i).getValue());
+                for (int i = 0; i < writeRegs.length; i++) {
+                    writeRegs[i].setValue(getRegister(i).getValue());
+                }
             }
         }
         catch (IllegalAddressException e) {
@@ -328,8 +342,25 @@ public final class ReadWriteMultipleRequest extends ModbusRequest {
     /**
      * writeData -- output this Modbus message to dout.
      */
+    public void reset() {
+        super.reset();
+        readReference = 0;
+        readCount = 0;
+        writeReference = 0;
+        writeCount = 0;
+        registers = null;
+    }
+
     public void writeData(DataOutput dout) throws IOException {
-        dout.write(getMessage());
+        dout.writeShort(readReference);
+        dout.writeShort(readCount);
+        dout.writeShort(writeReference);
+        dout.writeShort(writeCount);
+        dout.writeByte(writeCount * 2);
+
+        for (int i = 0; i < writeCount; i++) {
+            dout.writeShort(getRegister(i).getValue());
+        }
     }
 
     /**
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.msg;
+
+/**
+ * Read-only view over the data bytes of a read response, decoding values
+ * only when they are asked for.
+ *
+ * <p>
+ * Register responses are viewed as 16-bit words, high byte first, and bit
+ * responses as bits packed least significant first, as they are sent.
+ * Values spanning two registers are decoded in the given word order, with
+ * the bytes of each register always high byte first.
+ *
+ * <p>
+ * Each response has a single view that is repointed whenever the response
+ * is read again, so a view is only valid until the next transaction that
+ * reuses the response, which with a {@link ModbusMessagePool} is the next
+ * transaction on the same connection. Copy out any values that must be
+ * kept.
+ */
+public final class ResponseView {
+
+    /**
+     * Word order with the most significant register first
+     */
+    public static final int HIGH_WORD_FIRST = 0;
+
+    /**
+     * Word order with the least significant register first
+     */
+    public static final int LOW_WORD_FIRST = 1;
+
+    private byte[] data;
+    private int length;
+
+    /**
+     * Constructs an empty view
+     */
+    ResponseView() {
+        data = new byte[0];
+    }
+
+    /**
+     * Points this view at the given bytes
+     *
+     * @param data   the array holding the response data.
+     * @param length the number of bytes of data.
+     *
+     * @return this view.
+     */
+    ResponseView reset(byte[] data, int length) {
+        this.data = data;
+        this.length = length;
+        return this;
+    }
+
+    /**
+     * Returns the number of data bytes in the response
+     *
+     * @return Byte count
+     */
+    public int getByteCount() {
+        return length;
+    }
+
+    /**
+     * Returns the number of registers in the response
+     *
+     * @return Register count
+     */
+    public int getWordCount() {
+        return length / 2;
+    }
+
+    /**
+     * Returns the number of bits in the response, which is a whole number of
+     * bytes and so may be more than were asked for
+     *
+     * @return Bit count
+     */
+    public int getBitCount() {
+        return length * 8;
+    }
+
+    /**
+     * Returns the unsigned value of a register
+     *
+     * @param index the index of the register.
+     *
+     * @return Value from 0 to 65535
+     *
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public int getUnsignedShort(int index) throws IndexOutOfBoundsException {
+        checkWords(index, 1);
+        return ((data[index * 2] & 0xff) << 8) | (data[index * 2 + 1] & 0xff);
+    }
+
+    /**
+     * Returns the signed value of a register
+     *
+     * @param index the index of the register.
+     *
+     * @return Value from -32768 to 32767
+     *
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public short getShort(int index) throws IndexOutOfBoundsException {
+        return (short)getUnsignedShort(index);
+    }
+
+    /**
+     * Returns the 32-bit value held in two registers
+     *
+     * @param index     the index of the first register.
+     * @param wordOrder {@link #HIGH_WORD_FIRST} or {@link #LOW_WORD_FIRST}.
+     *
+     * @return Value
+     *
+     * @throws IndexOutOfBoundsException if either register is out of bounds.
+     */
+    public int getInt32(int index, int wordOrder) throws IndexOutOfBoundsException {
+        checkWords(index, 2);
+        int first = ((data[index * 2] & 0xff) << 8) | (data[index * 2 + 1] & 0xff);
+        int second = ((data[index * 2 + 2] & 0xff) << 8) | (data[index * 2 + 3] & 0xff);
+        if (wordOrder == LOW_WORD_FIRST) {
+            return (second << 16) | first;
+        }
+        return (first << 16) | second;
+    }
+
+    /**
+     * Returns the IEEE 754 single precision value held in two registers
+     *
+     * @param index     the index of the first register.
+     * @param wordOrder {@link #HIGH_WORD_FIRST} or {@link #LOW_WORD_FIRST}.
+     *
+     * @return Value
+     *
+     * @throws IndexOutOfBoundsException if either register is out of bounds.
+     */
+    public float getFloat(int index, int wordOrder) throws IndexOutOfBoundsException {
+        return Float.intBitsToFloat(getInt32(index, wordOrder));
+    }
+
+    /**
+     * Returns the state of a bit
+     *
+     * @param index the index of the bit.
+     *
+     * @return True if set
+     *
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public boolean getBit(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= length * 8) {
+            throw new IndexOutOfBoundsException(index + " >= " + length * 8);
+        }
+        return (data[index >>> 3] & (1 << (index & 7))) != 0;
+    }
+
+    /**
+     * Copies bits into an array of <tt>long</tt>, bit <tt>i</tt> going to
+     * bit <tt>i % 64</tt> of element <tt>i / 64</tt>
+     *
+     * @param dest  the array to copy into, at least <tt>(count + 63) / 64</tt> long.
+     * @param count the number of bits to copy.
+     *
+     * @return the number of bits copied.
+     *
+     * @throws IndexOutOfBoundsException if there are fewer bits or the array is too small.
+     */
+    public int getBits(long[] dest, int count) throws IndexOutOfBoundsException {
+        if (count < 0 || count > length * 8) {
+            throw new IndexOutOfBoundsException(count + " > " + length * 8);
+        }
+        int bytes = (count + 7) >>> 3;
+        for (int i = 0; i < (count + 63) >>> 6; i++) {
+            dest[i] = 0;
+        }
+        for (int i = 0; i < bytes; i++) {
+            long value = data[i] & 0xff;
+            if (i == bytes - 1 && (count & 7) != 0) {
+                value &= (1 << (count & 7)) - 1;
+            }
+            dest[i >>> 3] |= value << ((i & 7) * 8);
+        }
+        return count;
+    }
+
+    /**
+     * Checks that a run of registers lies within the data
+     */
+    private void checkWords(int index, int count) throws IndexOutOfBoundsException {
+        if (index < 0 || index + count > length / 2) {
+            throw new IndexOutOfBoundsException(index + " > " + (length / 2 - count));
+        }
+    }
+}
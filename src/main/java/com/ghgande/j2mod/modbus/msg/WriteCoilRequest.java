@@ -68,7 +68,7 @@ public final class WriteCoilRequest extends ModbusRequest {
     }
 
     public ModbusResponse getResponse() {
-        WriteCoilResponse response = new WriteCoilResponse();
+        WriteCoilResponse response = (WriteCoilResponse)newResponse();
 
         response.setHeadless(isHeadless());
         if (!isHeadless()) {
@@ -82,12 +82,16 @@ public final class WriteCoilRequest extends ModbusRequest {
     }
 
     public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         WriteCoilResponse response;
         DigitalOut dout;
 
         // 1. get process image
 <<<<<<< HEAD
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
+        ProcessImage procimg = coupler.getProcessImage(getUnitID());
 =======
 <<<<<<< HEAD
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
@@ -101,7 +101,14 @@ public final class WriteCoilResponse extends ModbusResponse {
     }
 
     public void writeData(DataOutput dout) throws IOException {
-        dout.write(getMessage());
+        dout.writeShort(reference);
+
+        if (coil) {
+            dout.write(Modbus.COIL_ON_BYTES, 0, 2);
+        }
+        else {
+            dout.write(Modbus.COIL_OFF_BYTES, 0, 2);
+        }
     }
 
     public void readData(DataInput din) throws IOException {
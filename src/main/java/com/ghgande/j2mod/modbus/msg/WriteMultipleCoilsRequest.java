@@ -97,7 +97,7 @@ public final class WriteMultipleCoilsRequest extends ModbusRequest {
     }
 
     public ModbusResponse getResponse() {
-        WriteMultipleCoilsResponse response = new WriteMultipleCoilsResponse();
+        WriteMultipleCoilsResponse response = (WriteMultipleCoilsResponse)newResponse();
 
         response.setHeadless(isHeadless());
         if (!isHeadless()) {
@@ -111,12 +111,16 @@ public final class WriteMultipleCoilsRequest extends ModbusRequest {
     }
 
     public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         WriteMultipleCoilsResponse response;
         DigitalOut douts[];
 
         // 1. get process image
 <<<<<<< HEAD
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
+        ProcessImage procimg = coupler.getProcessImage(getUnitID());
 =======
 <<<<<<< HEAD
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
@@ -238,7 +242,7 @@ public final class WriteMultipleCoilsRequest extends ModbusRequest {
         dout.writeShort(coils.size());
 
         dout.writeByte(coils.byteSize());
-        dout.write(coils.getBytes());
+        coils.writeBytes(dout);
     }
 
     public void readData(DataInput din) throws IOException {
@@ -17,7 +17,9 @@ package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.io.ByteBufferOutput;
 import com.ghgande.j2mod.modbus.io.NonWordDataHandler;
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
 import com.ghgande.j2mod.modbus.procimg.Register;
@@ -26,6 +28,7 @@ import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>WriteMultipleRegistersRequest</tt>. The
@@ -66,7 +69,7 @@ public final class WriteMultipleRegistersRequest extends ModbusRequest {
     }
 
     public ModbusResponse getResponse() {
-        WriteMultipleRegistersResponse response = new WriteMultipleRegistersResponse();
+        WriteMultipleRegistersResponse response = (WriteMultipleRegistersResponse)newResponse();
 
         response.setHeadless(isHeadless());
         if (!isHeadless()) {
@@ -79,6 +82,10 @@ public final class WriteMultipleRegistersRequest extends ModbusRequest {
         return response;
     }
 
+    public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
     /**
      * createResponse - Returns the <tt>WriteMultipleRegistersResponse</tt> that
      * represents the answer to this <tt>WriteMultipleRegistersRequest</tt>.
@@ -98,14 +105,14 @@ public final class WriteMultipleRegistersRequest extends ModbusRequest {
      * where the slave device has data which are not actually
      * <tt>short</tt> values in the range of registers being processed.
      */
-    public ModbusResponse createResponse() {
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         WriteMultipleRegistersResponse response;
 
         if (nonWordDataHandler == null) {
             Register[] regs;
             // 1. get process image
 <<<<<<< HEAD
-            ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
+            ProcessImage procimg = coupler.getProcessImage(getUnitID());
 =======
 <<<<<<< HEAD
             ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
@@ -115,10 +122,20 @@ public final class WriteMultipleRegistersRequest extends ModbusRequest {
 >>>>>>> origin/master
             // 2. get registers
             try {
-                regs = procimg.getRegisterRange(getReference(), getWordCount());
-                // 3. set Register values
-                for (int i = 0; i < regs.length; i++) {
-                    regs[i].setValue(this.getRegister(i).getValue());
+                if (procimg instanceof ArrayProcessImage) {
+                    // Written as one range, never interleaved with another
+                    int[] values = new int[getWordCount()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = getRegister(i).getValue();
+                    }
+                    ((ArrayProcessImage)procimg).setRegisterValues(getReference(), values, 0, values.length);
+                }
+                else {
+                    regs = procimg.getRegisterRange(getReference(), getWordCount());
+                    // 3. set Register values
+                    for (int i = 0; i < regs.length; i++) {
+                        regs[i].setValue(this.getRegister(i).getValue());
+                    }
                 }
             }
             catch (IllegalAddressException iaex) {
@@ -271,8 +288,62 @@ public final class WriteMultipleRegistersRequest extends ModbusRequest {
         nonWordDataHandler = dhandler;
     }
 
+    public void reset() {
+        super.reset();
+        reference = 0;
+        registers = null;
+    }
+
     public void writeData(DataOutput output) throws IOException {
-        output.write(getMessage());
+        int registerCount = registers != null ? registers.length : 0;
+
+        output.writeShort(reference);
+        output.writeShort(registerCount);
+        output.writeByte(registerCount * 2);
+
+        if (nonWordDataHandler == null) {
+            for (int i = 0; i < registerCount; i++) {
+                output.writeShort(registers[i].getValue());
+            }
+        }
+        else {
+            nonWordDataHandler.prepareData(reference, registerCount);
+            byte bytes[] = nonWordDataHandler.getData();
+            int nonWordBytes = 0;
+            if (bytes != null) {
+                nonWordBytes = Math.min(bytes.length, registerCount * 2);
+                output.write(bytes, 0, nonWordBytes);
+            }
+            for (int i = nonWordBytes; i < registerCount * 2; i++) {
+                output.writeByte(0);
+            }
+        }
+    }
+
+    public void writeData(ByteBuffer buffer) throws IOException {
+        if (nonWordDataHandler != null) {
+            super.writeData(buffer);
+            return;
+        }
+        int registerCount = registers != null ? registers.length : 0;
+        if (buffer.remaining() < 5 + registerCount * 2) {
+            throw new IOException("Buffer overflow writing registers");
+        }
+        buffer.putShort((short)reference);
+        buffer.putShort((short)registerCount);
+        buffer.put((byte)(registerCount * 2));
+        for (int i = 0; i < registerCount; i++) {
+            buffer.putShort((short)registers[i].getValue());
+        }
+    }
+
+    public void writeData(ByteBufferOutput output) throws IOException {
+        if (nonWordDataHandler != null) {
+            super.writeData(output);
+        }
+        else {
+            writeData(output.getBuffer());
+        }
     }
 
     public void readData(DataInput input) throws IOException {
@@ -115,7 +115,8 @@ public final class WriteMultipleRegistersResponse extends ModbusResponse {
     }
 
     public void writeData(DataOutput dout) throws IOException {
-        dout.write(getMessage());
+        dout.writeShort(reference);
+        dout.writeShort(wordCount);
     }
 
     public void readData(DataInput din) throws IOException {
@@ -69,7 +69,7 @@ public final class WriteSingleRegisterRequest extends ModbusRequest {
     }
 
     public ModbusResponse getResponse() {
-        WriteSingleRegisterResponse response = new WriteSingleRegisterResponse();
+        WriteSingleRegisterResponse response = (WriteSingleRegisterResponse)newResponse();
 
         response.setHeadless(isHeadless());
         if (!isHeadless()) {
@@ -83,12 +83,16 @@ public final class WriteSingleRegisterRequest extends ModbusRequest {
     }
 
     public ModbusResponse createResponse() {
+        return createResponse(ModbusCoupler.getReference());
+    }
+
+    public ModbusResponse createResponse(ModbusCoupler coupler) {
         WriteSingleRegisterResponse response;
         Register reg;
 
         // 1. get process image
 <<<<<<< HEAD
-        ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
+        ProcessImage procimg = coupler.getProcessImage(getUnitID());
 =======
 <<<<<<< HEAD
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage();
@@ -162,7 +166,7 @@ public final class WriteSingleRegisterRequest extends ModbusRequest {
 
     public void writeData(DataOutput dout) throws IOException {
         dout.writeShort(reference);
-        dout.write(register.toBytes());
+        dout.writeShort(register.getValue());
     }
 
     public void readData(DataInput din) throws IOException {
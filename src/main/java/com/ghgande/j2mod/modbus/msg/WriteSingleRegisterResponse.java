@@ -109,7 +109,8 @@ public final class WriteSingleRegisterResponse
     }
 
     public void writeData(DataOutput dout) throws IOException {
-        dout.write(getMessage());
+        dout.writeShort(reference);
+        dout.writeShort(registerValue);
     }
 
     public void readData(DataInput din) throws IOException {
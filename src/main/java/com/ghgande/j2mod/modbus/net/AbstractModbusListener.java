@@ -19,9 +19,11 @@ import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusCoupler;
 import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
+import com.ghgande.j2mod.modbus.msg.ModbusMessagePool;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +43,9 @@ public abstract class AbstractModbusListener implements Runnable {
     protected InetAddress address;
     protected String error;
     protected int timeout = Modbus.DEFAULT_TIMEOUT;
+    protected boolean messagePooling;
+    protected ModbusMetrics metrics = ModbusMetrics.NONE;
+    protected ModbusCoupler coupler;
 
     /**
      * Main execution loop for this Modbus interface listener - this is called by
@@ -118,6 +123,79 @@ public abstract class AbstractModbusListener implements Runnable {
         this.timeout = timeout;
     }
 
+    /**
+     * Tests if requests and responses are reused
+     *
+     * @return True if each connection keeps a pool of messages
+     */
+    public boolean isMessagePooling() {
+        return messagePooling;
+    }
+
+    /**
+     * Sets whether each connection keeps a pool of requests and responses
+     * to reuse, rather than creating new ones for every request. It takes
+     * effect for connections made after it is set.
+     *
+     * @param messagePooling True to reuse messages
+     */
+    public void setMessagePooling(boolean messagePooling) {
+        this.messagePooling = messagePooling;
+    }
+
+    /**
+     * Returns a new pool for a connection to reuse its messages from, if
+     * pooling is enabled
+     *
+     * @return Pool, or null if messages are not reused
+     */
+    protected ModbusMessagePool createMessagePool() {
+        return messagePooling ? new ModbusMessagePool() : null;
+    }
+
+    /**
+     * Returns the metrics the requests handled by this listener are reported
+     * to
+     *
+     * @return Metrics, {@link ModbusMetrics#NONE} by default
+     */
+    public ModbusMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics the requests handled by this listener are reported
+     * to. It takes effect for connections made after it is set.
+     *
+     * @param metrics Metrics, or null for none
+     */
+    public void setMetrics(ModbusMetrics metrics) {
+        this.metrics = metrics == null ? ModbusMetrics.NONE : metrics;
+    }
+
+    /**
+     * Returns the coupler holding the process images this listener answers
+     * requests from
+     *
+     * @return Coupler, the shared {@link ModbusCoupler#getReference()} unless
+     * another has been set
+     */
+    public ModbusCoupler getCoupler() {
+        return coupler == null ? ModbusCoupler.getReference() : coupler;
+    }
+
+    /**
+     * Sets the coupler holding the process images this listener answers
+     * requests from, so that it can serve units of its own without sharing
+     * them with other listeners. It takes effect for connections made after
+     * it is set.
+     *
+     * @param coupler Coupler, or null to use the shared one
+     */
+    public void setCoupler(ModbusCoupler coupler) {
+        this.coupler = coupler;
+    }
+
     /**
      * Reads the request, checks it is valid and that the unit ID is ok
      * and sends back a response
@@ -138,11 +216,57 @@ public abstract class AbstractModbusListener implements Runnable {
         // Get the request from the transport. It will be processed
         // using an associated process image.
         ModbusRequest request = transport.readRequest();
+        if (request == null) {
+            // The serial transports return nothing when the read times out
+            // on an idle line
+            return;
+        }
+        handleRequest(transport, request);
+    }
+
+    /**
+     * Builds the response to a request that has already been read and sends
+     * it back
+     *
+     * @param transport Transport the request was read from
+     * @param request   Request to answer
+     * @throws ModbusIOException If the response cannot be written
+     */
+    protected static void handleRequest(AbstractModbusTransport transport, ModbusRequest request) throws ModbusIOException {
+        ModbusMetrics metrics = transport.getMetrics();
+        long start = metrics != ModbusMetrics.NONE ? System.nanoTime() : 0;
+        ModbusResponse response = createResponse(request, transport.getCoupler());
+
+        // Write the response
+        transport.writeMessage(response);
+        if (metrics != ModbusMetrics.NONE) {
+            metrics.requestHandled(transport.getDeviceName(), request, response, System.nanoTime() - start);
+        }
+
+        // Both messages can be reused once the response has been sent
+        ModbusMessagePool pool = transport.getMessagePool();
+        if (pool != null) {
+            pool.release(request);
+            pool.release(response);
+        }
+    }
+
+    /**
+     * Checks the request is valid and that the unit ID is ok and builds the
+     * response to send back
+     *
+     * @param request Request received from the master
+     * @param coupler Coupler holding the process images to answer from
+     *
+     * @return Response to the request, or an exception response if there is
+     * no process image for the unit ID
+     */
+    protected static ModbusResponse createResponse(ModbusRequest request, ModbusCoupler coupler) {
         ModbusResponse response;
 
         // Test if Process image exists and has a correct unit ID
 <<<<<<< HEAD
-        ProcessImage spi = ModbusCoupler.getReference().getProcessImage(request.getUnitID());
+        ProcessImage spi = coupler.getProcessImage(request.getUnitID());
 =======
 <<<<<<< HEAD
         ProcessImage spi = ModbusCoupler.getReference().getProcessImage();
@@ -155,13 +279,13 @@ public abstract class AbstractModbusListener implements Runnable {
             response = request.createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
         else {
-            response = request.createResponse();
+            response = request.createResponse(coupler);
         }
-        logger.debug("Request:{}", request.getHexMessage());
-        logger.debug("Response:{}", response.getHexMessage());
-
-        // Write the response
-        transport.writeMessage(response);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Request:{}", request.getHexMessage());
+            logger.debug("Response:{}", response.getHexMessage());
+        }
+        return response;
     }
 
 }
@@ -20,6 +20,7 @@ import com.ghgande.j2mod.modbus.io.ModbusUDPTransport;
 
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.util.Arrays;
 
 /**
  * Interface defining a <tt>UDPTerminal</tt>.
@@ -111,6 +112,20 @@ public abstract class AbstractUDPTerminal {
      */
     public abstract void sendMessage(byte[] msg) throws Exception;
 
+    /**
+     * Sends the first bytes of the given array. The array may be reused by
+     * the caller as soon as this returns, so terminals that send later must
+     * take a copy, which is what this implementation does.
+     *
+     * @param msg    the array holding the message.
+     * @param length the number of bytes to send.
+     *
+     * @throws Exception if sending fails
+     */
+    public void sendMessage(byte[] msg, int length) throws Exception {
+        sendMessage(Arrays.copyOf(msg, length));
+    }
+
     /**
      * Receives and returns a message.
      *
@@ -70,6 +70,9 @@ public class ModbusSerialListener extends AbstractModbusListener {
         }
 
         listening = true;
+        serialCon.getModbusTransport().setMessagePool(createMessagePool());
+        serialCon.getModbusTransport().setMetrics(metrics);
+        serialCon.getModbusTransport().setCoupler(coupler);
         try {
             while (listening) {
                 AbstractModbusTransport transport = serialCon.getModbusTransport();
@@ -15,12 +15,23 @@
  */
 package com.ghgande.j2mod.modbus.net;
 
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.util.ModbusExecutors;
 import com.ghgande.j2mod.modbus.util.ThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class that implements a ModbusTCPListener.
@@ -29,6 +40,34 @@ import java.net.*;
  * If listening, it accepts incoming requests passing them on to be handled.
  * If not listening, silently drops the requests.
  *
+ * <p>
+ * Each connection is served by a task of its own that blocks reading
+ * requests, so the listener serves as many connections at once as its
+ * executor has threads. Given the executor from
+ * {@link com.ghgande.j2mod.modbus.util.ModbusExecutors#newThreadPerTaskExecutor(String)}
+ * it serves every connection on a virtual thread of its own on Java 21 and
+ * later.
+ *
+ * <p>
+ * A connection is turned away if it would take the listener over its limit
+ * of connections in all or from one address, or if the queue of connections
+ * waiting for a thread is full. None of these are bounded by default: the
+ * connection limits are 0 until set, and the queue of a listener built with
+ * just a pool size holds any number of connections, so a listener that must
+ * shed load should be given limits or a queue size. The limits are checked
+ * as soon as a connection is accepted, and a connection is only set up once
+ * a thread starts serving it. Depending on the rejection policy it is then
+ * closed straight away, or its first request is answered with a
+ * <tt>SLAVE_BUSY_EXCEPTION</tt> before it is closed, so that a flood of
+ * connections is shed rather than left waiting until the clients time out
+ * and reconnect.
+ *
+ * <p>
+ * With a pipeline window of more than one, a connection keeps reading the
+ * requests a master sends without waiting for their responses and answers
+ * them on the pipeline executor, those for different unit IDs side by side,
+ * see {@link TCPConnectionHandler}.
+ *
  * @author Dieter Wimberger
  * @author Julie Haugh
  * @author Steve O'Hara (4energy)
@@ -38,19 +77,86 @@ public class ModbusTCPListener extends AbstractModbusListener {
 
     private static final Logger logger = LoggerFactory.getLogger(ModbusTCPListener.class);
 
+    /**
+     * Rejection policy that closes a rejected connection straight away
+     */
+    public static final int REJECT_CLOSE = 0;
+
+    /**
+     * Rejection policy that answers the first request of a rejected
+     * connection with a <tt>SLAVE_BUSY_EXCEPTION</tt> and then closes it
+     */
+    public static final int REJECT_BUSY = 1;
+
+    /**
+     * Most milliseconds a rejected connection is given to send the request
+     * to answer as busy
+     */
+    private static final int BUSY_TIMEOUT = 1000;
+
+    /**
+     * Threads and queued connections used to answer rejected connections as
+     * busy, beyond which they are closed instead
+     */
+    private static final int BUSY_THREADS = 2;
+    private static final int BUSY_QUEUE_SIZE = 64;
+
     private ServerSocket serverSocket = null;
-    private ThreadPool threadPool;
+    private final Executor executor;
+    private final ThreadPool threadPool;
+    private ThreadPool busyPool;
     private Thread listener;
+    private int backlog = Modbus.DEFAULT_BACKLOG;
+    private volatile int maxConnections;
+    private volatile int maxConnectionsPerAddress;
+    private volatile int rejectionPolicy = REJECT_CLOSE;
+    private int connectionCount;
+    private final Map<InetAddress, Integer> addressConnectionCounts = new HashMap<InetAddress, Integer>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile int pipelineWindow = Modbus.DEFAULT_PIPELINE_WINDOW;
+    private volatile Executor pipelineExecutor;
+    private ExecutorService defaultPipelineExecutor;
 
     /**
-     * Constructs a ModbusTCPListener instance.<br>
+     * Constructs a ModbusTCPListener instance whose <tt>ThreadPool</tt> queue
+     * of connections waiting for a thread is unbounded.<br>
      *
      * @param poolsize the size of the <tt>ThreadPool</tt> used to handle incoming
      *                 requests.
      * @param addr     the interface to use for listening.
      */
     public ModbusTCPListener(int poolsize, InetAddress addr) {
-        threadPool = new ThreadPool(poolsize);
+        this(poolsize, Integer.MAX_VALUE, addr);
+    }
+
+    /**
+     * Constructs a ModbusTCPListener instance whose <tt>ThreadPool</tt> has a
+     * bounded queue of connections waiting for a thread. Connections that
+     * arrive when the queue is full are rejected.<br>
+     *
+     * @param poolsize  the size of the <tt>ThreadPool</tt> used to handle incoming
+     *                  requests.
+     * @param queueSize the number of connections that can wait for a thread,
+     *                  at least 1.
+     * @param addr      the interface to use for listening.
+     */
+    public ModbusTCPListener(int poolsize, int queueSize, InetAddress addr) {
+        threadPool = new ThreadPool(poolsize, queueSize);
+        executor = threadPool;
+        address = addr;
+    }
+
+    /**
+     * Constructs a ModbusTCPListener instance that handles each connection on
+     * the given executor. The executor is not shut down when the listener is
+     * stopped.<br>
+     *
+     * @param executor the <tt>Executor</tt> used to handle incoming requests.
+     * @param addr     the interface to use for listening.
+     */
+    public ModbusTCPListener(Executor executor, InetAddress addr) {
+        this.executor = executor;
+        threadPool = null;
         address = addr;
     }
 
@@ -64,7 +170,24 @@ public class ModbusTCPListener extends AbstractModbusListener {
      *                 requests.
      */
     public ModbusTCPListener(int poolsize) {
-        threadPool = new ThreadPool(poolsize);
+        this(poolsize, null);
+        try {
+            address = InetAddress.getByAddress(new byte[]{0, 0, 0, 0});
+        }
+        catch (UnknownHostException ex) {
+            // Can't happen -- size is fixed.
+        }
+    }
+
+    /**
+     * Constructs a ModbusTCPListener instance that handles each connection on
+     * the given executor and listens on the wildcard address (0.0.0.0). The
+     * executor is not shut down when the listener is stopped.
+     *
+     * @param executor the <tt>Executor</tt> used to handle incoming requests.
+     */
+    public ModbusTCPListener(Executor executor) {
+        this(executor, null);
         try {
             address = InetAddress.getByAddress(new byte[]{0, 0, 0, 0});
         }
@@ -94,18 +217,167 @@ public class ModbusTCPListener extends AbstractModbusListener {
         }
     }
 
+    /**
+     * Returns the length of the queue of incoming connections waiting to be
+     * accepted
+     *
+     * @return Backlog
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Sets the length of the queue of incoming connections waiting to be
+     * accepted. Must be set before the listener is started.
+     *
+     * @param backlog Backlog, values less than 1 use the default
+     */
+    public void setBacklog(int backlog) {
+        this.backlog = backlog > 0 ? backlog : Modbus.DEFAULT_BACKLOG;
+    }
+
+    /**
+     * Returns the most connections served at once
+     *
+     * @return Limit, 0 if there is none
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the most connections served at once, beyond which new connections
+     * are rejected. Setting it to the pool size stops connections waiting in
+     * the queue for a thread.
+     *
+     * @param maxConnections Limit, 0 for none
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(0, maxConnections);
+    }
+
+    /**
+     * Returns the most connections served at once from a single address
+     *
+     * @return Limit, 0 if there is none
+     */
+    public int getMaxConnectionsPerAddress() {
+        return maxConnectionsPerAddress;
+    }
+
+    /**
+     * Sets the most connections served at once from a single address, so
+     * that one misbehaving client cannot take all of them
+     *
+     * @param maxConnectionsPerAddress Limit, 0 for none
+     */
+    public void setMaxConnectionsPerAddress(int maxConnectionsPerAddress) {
+        this.maxConnectionsPerAddress = Math.max(0, maxConnectionsPerAddress);
+    }
+
+    /**
+     * Returns what is done with rejected connections
+     *
+     * @return {@link #REJECT_CLOSE} or {@link #REJECT_BUSY}
+     */
+    public int getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    /**
+     * Sets what is done with rejected connections
+     *
+     * @param rejectionPolicy {@link #REJECT_CLOSE} to close them or
+     *                        {@link #REJECT_BUSY} to answer their first
+     *                        request with a <tt>SLAVE_BUSY_EXCEPTION</tt>
+     */
+    public void setRejectionPolicy(int rejectionPolicy) {
+        if (rejectionPolicy != REJECT_CLOSE && rejectionPolicy != REJECT_BUSY) {
+            throw new IllegalArgumentException("Unknown rejection policy " + rejectionPolicy);
+        }
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Returns the number of connections being served or waiting for a thread
+     *
+     * @return Count
+     */
+    public synchronized int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Returns the number of connections rejected since the listener was
+     * created
+     *
+     * @return Count
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Returns the number of connections waiting for a thread of the
+     * <tt>ThreadPool</tt>
+     *
+     * @return Depth of the queue, 0 if the listener was given an executor
+     */
+    public int getQueueDepth() {
+        return threadPool == null ? 0 : threadPool.getQueueDepth();
+    }
+
+    /**
+     * Returns the most requests each connection reads ahead of its responses
+     *
+     * @return Window, 1 if the requests are answered one at a time
+     */
+    public int getPipelineWindow() {
+        return pipelineWindow;
+    }
+
+    /**
+     * Sets the most requests each connection reads ahead of its responses.
+     * With a window of more than one, the requests are answered on the
+     * pipeline executor and message pooling is not used. Applies to the
+     * connections made after it is set.
+     *
+     * @param pipelineWindow Window, 1 to answer the requests one at a time
+     */
+    public void setPipelineWindow(int pipelineWindow) {
+        if (pipelineWindow < 1) {
+            throw new IllegalArgumentException("Pipeline window must be at least 1");
+        }
+        this.pipelineWindow = pipelineWindow;
+    }
+
+    /**
+     * Sets the executor that answers the requests of pipelined connections.
+     * If none is set, a thread is started for each of them, see
+     * {@link ModbusExecutors#newThreadPerTaskExecutor(String)}.
+     *
+     * <p>
+     * It should not be the executor the connections are served on, as each
+     * connection keeps one of its threads busy reading.
+     *
+     * @param pipelineExecutor Executor, which the caller shuts down
+     */
+    public void setPipelineExecutor(Executor pipelineExecutor) {
+        this.pipelineExecutor = pipelineExecutor;
+    }
+
     @Override
     public void run() {
         try {
             /*
-             * A server socket is opened with a connectivity queue of a size
-             * specified in int floodProtection. Concurrent login handling under
+             * A server socket is opened with a connectivity queue of the
+             * size given by the backlog. Concurrent login handling under
              * normal circumstances should be alright, denial of service
              * attacks via massive parallel program logins can probably be
              * prevented.
              */
-            int floodProtection = 5;
-            serverSocket = new ServerSocket(port, floodProtection, address);
+            serverSocket = new ServerSocket(port, backlog, address);
             serverSocket.setSoTimeout(timeout);
             logger.debug("Listening to {} (Port {})", serverSocket.toString(), port);
         }
@@ -128,7 +400,18 @@ public class ModbusTCPListener extends AbstractModbusListener {
                 Socket incoming = serverSocket.accept();
                 logger.debug("Making new connection {}", incoming.toString());
                 if (listening) {
-                    threadPool.execute(new TCPConnectionHandler(new TCPSlaveConnection(incoming)));
+                    InetAddress remoteAddress = incoming.getInetAddress();
+                    if (!addConnection(remoteAddress)) {
+                        reject(incoming, "too many connections");
+                        continue;
+                    }
+                    try {
+                        executor.execute(new ConnectionTask(incoming, remoteAddress, pipelineWindow));
+                    }
+                    catch (RejectedExecutionException ex) {
+                        removeConnection(remoteAddress);
+                        reject(incoming, ex.getMessage());
+                    }
                 }
                 else {
                     incoming.close();
@@ -153,6 +436,16 @@ public class ModbusTCPListener extends AbstractModbusListener {
             if (threadPool != null) {
                 threadPool.close();
             }
+            synchronized (this) {
+                if (busyPool != null) {
+                    busyPool.close();
+                    busyPool = null;
+                }
+                if (defaultPipelineExecutor != null) {
+                    defaultPipelineExecutor.shutdown();
+                    defaultPipelineExecutor = null;
+                }
+            }
         }
         catch (Exception ex) {
 <<<<<<< HEAD
@@ -167,4 +460,181 @@ public class ModbusTCPListener extends AbstractModbusListener {
         }
     }
 
+    /**
+     * Counts a new connection if it is within the limits
+     *
+     * @param remoteAddress Address the connection is from
+     *
+     * @return True if the connection can be served
+     */
+    private synchronized boolean addConnection(InetAddress remoteAddress) {
+        Integer count = addressConnectionCounts.get(remoteAddress);
+        int addressCount = count == null ? 0 : count;
+        if ((maxConnections > 0 && connectionCount >= maxConnections) ||
+            (maxConnectionsPerAddress > 0 && addressCount >= maxConnectionsPerAddress)) {
+            return false;
+        }
+        connectionCount++;
+        addressConnectionCounts.put(remoteAddress, addressCount + 1);
+        return true;
+    }
+
+    /**
+     * Stops counting a connection that has finished
+     *
+     * @param remoteAddress Address the connection is from
+     */
+    private synchronized void removeConnection(InetAddress remoteAddress) {
+        connectionCount--;
+        Integer count = addressConnectionCounts.get(remoteAddress);
+        if (count == null || count <= 1) {
+            addressConnectionCounts.remove(remoteAddress);
+        }
+        else {
+            addressConnectionCounts.put(remoteAddress, count - 1);
+        }
+    }
+
+    /**
+     * Turns a connection away according to the rejection policy
+     *
+     * @param incoming Socket of the connection to reject
+     * @param reason   Why it is rejected
+     */
+    private void reject(Socket incoming, String reason) {
+        rejectedCount.incrementAndGet();
+        logger.debug("Rejected connection - {}", reason);
+        if (rejectionPolicy == REJECT_BUSY) {
+            try {
+                getBusyPool().execute(new BusyResponder(incoming));
+                return;
+            }
+            catch (RejectedExecutionException ex) {
+                logger.debug("Cannot answer rejected connection as busy - {}", ex.getMessage());
+            }
+        }
+        closeSocket(incoming);
+    }
+
+    /**
+     * Closes the socket of a connection that won't be served
+     *
+     * @param incoming Socket to close
+     */
+    private static void closeSocket(Socket incoming) {
+        try {
+            incoming.close();
+        }
+        catch (IOException ex) {
+            logger.debug("Cannot close rejected connection - {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Returns the threads that answer rejected connections as busy, starting
+     * them the first time they are needed
+     *
+     * @return Pool
+     */
+    private synchronized ThreadPool getBusyPool() {
+        if (busyPool == null) {
+            busyPool = new ThreadPool(BUSY_THREADS, BUSY_QUEUE_SIZE);
+        }
+        return busyPool;
+    }
+
+    /**
+     * Returns the executor that answers the requests of pipelined connections,
+     * starting the default one the first time it is needed
+     *
+     * @param window Pipeline window of the connection
+     *
+     * @return Executor, null if the requests are answered one at a time
+     */
+    private synchronized Executor getPipelineExecutor(int window) {
+        if (window <= 1) {
+            return null;
+        }
+        if (pipelineExecutor != null) {
+            return pipelineExecutor;
+        }
+        if (defaultPipelineExecutor == null) {
+            defaultPipelineExecutor = ModbusExecutors.newThreadPerTaskExecutor("Modbus TCP request");
+        }
+        return defaultPipelineExecutor;
+    }
+
+    /**
+     * Sets up a connection once a thread is free to serve it, serves it and
+     * stops counting it once it has finished
+     */
+    private class ConnectionTask implements Runnable {
+
+        private final Socket incoming;
+        private final InetAddress remoteAddress;
+        private final int window;
+
+        ConnectionTask(Socket incoming, InetAddress remoteAddress, int window) {
+            this.incoming = incoming;
+            this.remoteAddress = remoteAddress;
+            this.window = window;
+        }
+
+        @Override
+        public void run() {
+            try {
+                TCPSlaveConnection connection = new TCPSlaveConnection(incoming);
+                AbstractModbusTransport transport = connection.getModbusTransport();
+                transport.setMessagePool(window > 1 ? null : createMessagePool());
+                transport.setMetrics(metrics);
+                transport.setCoupler(coupler);
+                new TCPConnectionHandler(connection, getPipelineExecutor(window), window).run();
+            }
+            catch (IllegalStateException ex) {
+                logger.debug("Cannot serve connection - {}", ex.getMessage());
+                closeSocket(incoming);
+            }
+            finally {
+                removeConnection(remoteAddress);
+            }
+        }
+    }
+
+    /**
+     * Answers the first request of a rejected connection with a
+     * <tt>SLAVE_BUSY_EXCEPTION</tt> and closes it
+     */
+    private class BusyResponder implements Runnable {
+
+        private final Socket incoming;
+
+        BusyResponder(Socket incoming) {
+            this.incoming = incoming;
+        }
+
+        @Override
+        public void run() {
+            TCPSlaveConnection connection;
+            try {
+                connection = new TCPSlaveConnection(incoming);
+            }
+            catch (IllegalStateException ex) {
+                logger.debug("Cannot answer rejected connection as busy - {}", ex.getMessage());
+                closeSocket(incoming);
+                return;
+            }
+            try {
+                AbstractModbusTransport transport = connection.getModbusTransport();
+                transport.setTimeout(Math.min(timeout, BUSY_TIMEOUT));
+                ModbusRequest request = transport.readRequest();
+                transport.writeMessage(request.createExceptionResponse(Modbus.SLAVE_BUSY_EXCEPTION));
+            }
+            catch (ModbusIOException ex) {
+                logger.debug("Cannot answer rejected connection as busy - {}", ex.getMessage());
+            }
+            finally {
+                connection.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,760 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.net;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.io.ByteBufferInput;
+import com.ghgande.j2mod.modbus.io.ByteBufferOutput;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+import com.ghgande.j2mod.modbus.util.ModbusUtil;
+import com.ghgande.j2mod.modbus.util.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Class that implements a Modbus/TCP listener using non-blocking I/O.
+ *
+ * <p>
+ * Unlike the <tt>ModbusTCPListener</tt>, which needs a pool thread for every
+ * open connection, this listener multiplexes all of its connections over a
+ * small number of selector threads (event loops). The event loops do the
+ * MBAP framing and hand each decoded request to a pool of worker threads,
+ * which build the response from the process image. Requests received on the
+ * same connection are processed in order.
+ *
+ * <p>
+ * Each connection has one input and one output buffer, which requests are
+ * decoded from and responses encoded into in place. A worker waits for the
+ * event loop to drain the output buffer before building more responses than
+ * it has room for. While the output buffer is full or too many requests are
+ * queued, the connection isn't read, so a client that sends faster than it
+ * reads is held back by TCP flow control.
+ *
+ * <p>
+ * If listening, it accepts incoming requests passing them on to be handled.
+ * If not listening, silently drops the requests.
+ */
+public class ModbusTCPNIOListener extends AbstractModbusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusTCPNIOListener.class);
+
+    /**
+     * Length of the MBAP header up to and including the length field
+     */
+    private static final int HEADER_LENGTH = 6;
+
+    /**
+     * Longest MBAP frame, header included
+     */
+    private static final int FRAME_LENGTH = Modbus.MAX_MESSAGE_LENGTH + HEADER_LENGTH;
+
+    /**
+     * Number of the longest responses the output buffer of a connection holds
+     */
+    private static final int OUTPUT_FRAMES = 4;
+
+    /**
+     * Number of requests a connection queues before it stops reading
+     */
+    private static final int MAX_QUEUED_REQUESTS = 16;
+
+    /**
+     * How often idle connections are looked for in milliseconds
+     */
+    private static final int IDLE_CHECK_INTERVAL = 1000;
+
+    private final ThreadPool threadPool;
+    private final EventLoop[] eventLoops;
+    private int backlog = Modbus.DEFAULT_BACKLOG;
+    private ServerSocketChannel serverChannel;
+    private Selector acceptSelector;
+    private Thread listener;
+    private boolean stopped;
+    private int nextEventLoop;
+
+    /**
+     * Constructs a ModbusTCPNIOListener instance.<br>
+     *
+     * @param selectors the number of event loop threads used to read and
+     *                  write the connections.
+     * @param poolsize  the size of the <tt>ThreadPool</tt> used to process
+     *                  incoming requests.
+     * @param addr      the interface to use for listening.
+     */
+    public ModbusTCPNIOListener(int selectors, int poolsize, InetAddress addr) {
+        threadPool = new ThreadPool(poolsize);
+        eventLoops = new EventLoop[selectors > 0 ? selectors : 1];
+        address = addr;
+    }
+
+    /**
+     * Constructs a ModbusTCPNIOListener instance.  This interface is created
+     * to listen on the wildcard address (0.0.0.0), which will accept TCP packets
+     * on all available adapters/interfaces
+     *
+     * @param selectors the number of event loop threads used to read and
+     *                  write the connections.
+     * @param poolsize  the size of the <tt>ThreadPool</tt> used to process
+     *                  incoming requests.
+     */
+    public ModbusTCPNIOListener(int selectors, int poolsize) {
+        this(selectors, poolsize, null);
+        try {
+            address = InetAddress.getByAddress(new byte[]{0, 0, 0, 0});
+        }
+        catch (UnknownHostException ex) {
+            // Can't happen -- size is fixed.
+        }
+    }
+
+    /**
+     * Returns the length of the queue of incoming connections waiting to be
+     * accepted
+     *
+     * @return Backlog
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Sets the length of the queue of incoming connections waiting to be
+     * accepted. Must be set before the listener is started.
+     *
+     * @param backlog Backlog, values less than 1 use the default
+     */
+    public void setBacklog(int backlog) {
+        this.backlog = backlog > 0 ? backlog : Modbus.DEFAULT_BACKLOG;
+    }
+
+    /**
+     * Returns the number of connections currently open
+     *
+     * @return Number of connections
+     */
+    public int getConnectionCount() {
+        int count = 0;
+        for (EventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                count += eventLoop.getConnectionCount();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void run() {
+        try {
+            acceptSelector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().bind(new InetSocketAddress(address, port), backlog);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new EventLoop();
+                Thread thread = new Thread(eventLoops[i], "Modbus TCP event loop " + i);
+                thread.setDaemon(true);
+                eventLoops[i].thread = thread;
+            }
+            logger.debug("Listening to {} (Port {})", serverChannel.toString(), port);
+        }
+
+        // Catch any fatal errors and set the listening flag to false to indicate an error
+        catch (Exception e) {
+            error = String.format("Cannot start TCP listener - %s", e.getMessage());
+            listening = false;
+            closeEventLoops();
+            closeServer();
+            return;
+        }
+
+        // Checked under the lock so that a stop() before now isn't undone
+        synchronized (this) {
+            if (stopped) {
+                listening = false;
+                closeEventLoops();
+                closeServer();
+                return;
+            }
+            listener = Thread.currentThread();
+            listening = true;
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.thread.start();
+        }
+        try {
+            while (listening) {
+                acceptSelector.select();
+                acceptSelector.selectedKeys().clear();
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    if (listening) {
+                        logger.debug("Making new connection {}", channel.toString());
+                        channel.configureBlocking(false);
+                        channel.socket().setTcpNoDelay(true);
+                        eventLoops[nextEventLoop++ % eventLoops.length].register(channel);
+                    }
+                    else {
+                        channel.close();
+                    }
+                }
+            }
+        }
+        catch (Exception e) {
+            if (listening) {
+                error = String.format("Problem starting listener - %s", e.getMessage());
+            }
+        }
+        finally {
+            closeServer();
+        }
+    }
+
+    @Override
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            stopped = true;
+            listening = false;
+            thread = listener;
+        }
+        try {
+            if (acceptSelector != null) {
+                acceptSelector.wakeup();
+            }
+            if (thread != null) {
+                thread.join();
+            }
+            for (EventLoop eventLoop : eventLoops) {
+                if (eventLoop != null) {
+                    eventLoop.stop();
+                }
+            }
+            threadPool.close();
+        }
+        catch (Exception ex) {
+            logger.error("Error while stopping ModbusTCPNIOListener", ex);
+        }
+    }
+
+    /**
+     * Closes the selectors of the event loops opened by run(), before any of
+     * them has been started
+     */
+    private void closeEventLoops() {
+        for (int i = 0; i < eventLoops.length; i++) {
+            if (eventLoops[i] != null) {
+                eventLoops[i].close();
+                eventLoops[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Closes the server channel and the accept selector
+     */
+    private void closeServer() {
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            if (acceptSelector != null) {
+                acceptSelector.close();
+            }
+        }
+        catch (IOException ex) {
+            logger.debug("Error closing server channel - {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * A selector thread that reads, frames and writes the messages of a share
+     * of the connections accepted by the listener
+     */
+    private class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<SocketChannel> newChannels = new ConcurrentLinkedQueue<SocketChannel>();
+        private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<Connection>();
+        private Thread thread;
+        private long lastIdleCheck = System.currentTimeMillis();
+
+        /**
+         * Creates an event loop with its own selector
+         *
+         * @throws IOException if the selector cannot be opened
+         */
+        EventLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        /**
+         * Hands a newly accepted channel to this event loop
+         *
+         * @param channel Channel to serve
+         */
+        void register(SocketChannel channel) {
+            newChannels.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Asks the event loop to flush the output buffer of the connection
+         *
+         * @param connection Connection with output waiting
+         */
+        void requestWrite(Connection connection) {
+            pendingWrites.add(connection);
+            selector.wakeup();
+        }
+
+        /**
+         * Returns the number of connections served by this event loop
+         *
+         * @return Number of connections
+         */
+        int getConnectionCount() {
+            return selector.isOpen() ? selector.keys().size() : 0;
+        }
+
+        /**
+         * Stops the event loop and waits for it to close its connections
+         *
+         * @throws InterruptedException if interrupted while waiting
+         */
+        void stop() throws InterruptedException {
+            selector.wakeup();
+            if (thread != null && thread.isAlive()) {
+                thread.join();
+            }
+        }
+
+        /**
+         * Closes the selector of the event loop
+         */
+        void close() {
+            try {
+                selector.close();
+            }
+            catch (IOException ex) {
+                logger.debug("Error closing selector - {}", ex.getMessage());
+            }
+        }
+
+        /**
+         * Event loop
+         */
+        public void run() {
+            try {
+                while (listening) {
+                    selector.select(IDLE_CHECK_INTERVAL);
+                    registerNewChannels();
+                    flushPendingWrites();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection)key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write();
+                            }
+                        }
+                        catch (Exception ex) {
+                            logger.debug("Closing connection {} - {}", connection, ex.getMessage());
+                            connection.close();
+                        }
+                    }
+                    closeIdleConnections();
+                }
+            }
+            catch (Exception ex) {
+                if (listening) {
+                    logger.error("Problem in TCP event loop", ex);
+                }
+            }
+            finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection)key.attachment()).close();
+                }
+                SocketChannel channel;
+                while ((channel = newChannels.poll()) != null) {
+                    closeChannel(channel);
+                }
+                close();
+            }
+        }
+
+        /**
+         * Registers the channels handed over by the accepting thread
+         */
+        private void registerNewChannels() {
+            SocketChannel channel;
+            while ((channel = newChannels.poll()) != null) {
+                try {
+                    Connection connection = new Connection(this, channel);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                }
+                catch (IOException ex) {
+                    logger.debug("Cannot register connection - {}", ex.getMessage());
+                    closeChannel(channel);
+                }
+            }
+        }
+
+        /**
+         * Writes the responses queued by the worker threads
+         */
+        private void flushPendingWrites() {
+            Connection connection;
+            while ((connection = pendingWrites.poll()) != null) {
+                try {
+                    if (connection.key.isValid()) {
+                        connection.write();
+                    }
+                }
+                catch (Exception ex) {
+                    logger.debug("Closing connection {} - {}", connection, ex.getMessage());
+                    connection.close();
+                }
+            }
+        }
+
+        /**
+         * Closes the connections that have been idle for longer than the
+         * listener timeout
+         */
+        private void closeIdleConnections() {
+            long now = System.currentTimeMillis();
+            if (timeout > 0 && now - lastIdleCheck >= IDLE_CHECK_INTERVAL) {
+                lastIdleCheck = now;
+                for (SelectionKey key : selector.keys()) {
+                    Connection connection = (Connection)key.attachment();
+                    if (now - connection.lastActivity > timeout && !connection.isBusy()) {
+                        logger.debug("Closing idle connection {}", connection);
+                        connection.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The state of a single client connection
+     */
+    private class Connection implements Runnable {
+
+        private final EventLoop eventLoop;
+        private final SocketChannel channel;
+        private final ByteBuffer input = ByteBuffer.allocate(FRAME_LENGTH);
+        private final ByteBufferInput decoder = new ByteBufferInput(input);
+        private final ByteBuffer output = ByteBuffer.allocate(OUTPUT_FRAMES * FRAME_LENGTH);
+        private final ByteBufferOutput encoder = new ByteBufferOutput(output);
+        private final Queue<ModbusRequest> requests = new LinkedList<ModbusRequest>();
+        private SelectionKey key;
+        private boolean processing;
+        private boolean paused;
+        private boolean pending;
+        private volatile long lastActivity = System.currentTimeMillis();
+        private final ModbusMetrics connectionMetrics = metrics;
+        private final ModbusCoupler connectionCoupler = getCoupler();
+        private String deviceName;
+
+        /**
+         * Creates the state for a new connection
+         *
+         * @param eventLoop Event loop serving the connection
+         * @param channel   Channel of the connection
+         */
+        Connection(EventLoop eventLoop, SocketChannel channel) {
+            this.eventLoop = eventLoop;
+            this.channel = channel;
+        }
+
+        /**
+         * Reads whatever is available from the channel and hands each
+         * complete frame to the worker pool
+         *
+         * @throws IOException if the channel fails or the framing is invalid
+         */
+        void read() throws IOException {
+            if (channel.read(input) < 0) {
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            decodeFrames();
+            updateInterest();
+        }
+
+        /**
+         * Hands each complete frame in the input buffer to the worker pool,
+         * leaving the rest there and pausing reading once the connection is
+         * full
+         *
+         * @throws IOException if the framing is invalid
+         */
+        private void decodeFrames() throws IOException {
+            input.flip();
+            boolean full = isFull();
+            while (!full && input.remaining() >= HEADER_LENGTH) {
+                int start = input.position();
+                int length = input.getShort(start + 4) & 0xFFFF;
+                if (length < 2 || length > input.capacity() - HEADER_LENGTH) {
+                    throw new IOException("Invalid message length " + length);
+                }
+                if (input.remaining() < HEADER_LENGTH + length) {
+                    break;
+                }
+                int end = start + HEADER_LENGTH + length;
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Read: {}", ModbusUtil.toHex(input.array(), start, end));
+                }
+                int limit = input.limit();
+                input.limit(end);
+                ModbusRequest request = decode();
+                input.limit(limit);
+                input.position(end);
+                submit(request);
+                full = isFull();
+            }
+            input.compact();
+            paused = full;
+        }
+
+        /**
+         * Writes as much of the buffered output as the channel will take, and
+         * asks to be told when the channel can take the rest
+         *
+         * @throws IOException if the channel fails
+         */
+        void write() throws IOException {
+            boolean restart;
+            synchronized (this) {
+                output.flip();
+                channel.write(output);
+                output.compact();
+                pending = output.position() > 0;
+
+                // Carry on with the requests the worker left for lack of room
+                restart = !processing && !requests.isEmpty() && output.remaining() >= FRAME_LENGTH;
+                if (restart) {
+                    processing = true;
+                }
+            }
+            if (restart) {
+                startWorker();
+            }
+
+            // Pick up the frames left in the input before reading any more
+            if (paused && !isFull()) {
+                decodeFrames();
+            }
+            updateInterest();
+        }
+
+        /**
+         * Reads while the connection has room for more requests, and writes
+         * while there is output waiting
+         */
+        private void updateInterest() {
+            int ops = (paused ? 0 : SelectionKey.OP_READ) | (pending ? SelectionKey.OP_WRITE : 0);
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        }
+
+        /**
+         * Tests if the connection has as many requests queued as it takes,
+         * or no room for another response
+         *
+         * @return True if full
+         */
+        private synchronized boolean isFull() {
+            return requests.size() >= MAX_QUEUED_REQUESTS || output.remaining() < FRAME_LENGTH;
+        }
+
+        /**
+         * Closes the connection
+         */
+        void close() {
+            if (key != null) {
+                key.cancel();
+            }
+            closeChannel(channel);
+            synchronized (this) {
+                requests.clear();
+                output.clear();
+            }
+        }
+
+        /**
+         * Tests if the connection has requests being processed or responses
+         * waiting to be written
+         *
+         * @return True if busy
+         */
+        synchronized boolean isBusy() {
+            return processing || !requests.isEmpty() || output.position() > 0;
+        }
+
+        /**
+         * Decodes the complete MBAP frame between the position and limit of
+         * the input buffer into a request, reading it in place
+         *
+         * @return Request
+         *
+         * @throws IOException if the request cannot be decoded
+         */
+        private ModbusRequest decode() throws IOException {
+            ModbusRequest request = ModbusRequest.createModbusRequest(input.get(input.position() + HEADER_LENGTH + 1) & 0xFF);
+            request.setHeadless(false);
+            request.readFrom(decoder);
+            return request;
+        }
+
+        /**
+         * Queues a request for processing, starting a worker if this
+         * connection hasn't already got one and there is room for its
+         * response
+         *
+         * @param request Request to process
+         */
+        private void submit(ModbusRequest request) {
+            synchronized (this) {
+                requests.add(request);
+                if (processing || output.remaining() < FRAME_LENGTH) {
+                    return;
+                }
+                processing = true;
+            }
+            startWorker();
+        }
+
+        /**
+         * Hands this connection to a worker thread
+         */
+        private void startWorker() {
+            try {
+                threadPool.execute(this);
+            }
+            catch (RejectedExecutionException ex) {
+                // Only happens once the listener is stopping
+                logger.debug("Dropped request - {}", ex.getMessage());
+                synchronized (this) {
+                    requests.clear();
+                    processing = false;
+                }
+            }
+        }
+
+        /**
+         * Processes the queued requests of this connection in order on a
+         * worker thread
+         */
+        public void run() {
+            while (true) {
+                ModbusRequest request;
+                synchronized (this) {
+
+                    // Without room for the response, the event loop carries
+                    // on once it has written some of the output
+                    if (requests.isEmpty() || output.remaining() < FRAME_LENGTH) {
+                        processing = false;
+                        return;
+                    }
+                    request = requests.poll();
+                }
+                try {
+                    if (listening) {
+                        long start = connectionMetrics != ModbusMetrics.NONE ? System.nanoTime() : 0;
+                        ModbusResponse response = createResponse(request, connectionCoupler);
+                        response.setHeadless(false);
+                        synchronized (this) {
+                            response.writeTo(encoder);
+                        }
+                        eventLoop.requestWrite(this);
+                        if (connectionMetrics != ModbusMetrics.NONE) {
+                            connectionMetrics.requestHandled(getDeviceName(), request, response, System.nanoTime() - start);
+                        }
+                    }
+                }
+                catch (Exception ex) {
+                    logger.error("Cannot process request", ex);
+                    synchronized (this) {
+                        processing = false;
+                    }
+                    close();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Returns the address and port of the master at the other end
+         *
+         * @return Device name
+         */
+        private String getDeviceName() {
+            if (deviceName == null) {
+                deviceName = channel.socket().getInetAddress().getHostAddress() + ":" + channel.socket().getPort();
+            }
+            return deviceName;
+        }
+
+        @Override
+        public String toString() {
+            return channel.socket().toString();
+        }
+    }
+
+    /**
+     * Closes a channel, ignoring any errors
+     *
+     * @param channel Channel to close
+     */
+    private static void closeChannel(SocketChannel channel) {
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+            logger.debug("Error closing channel - {}", ex.getMessage());
+        }
+    }
+}
@@ -17,15 +17,23 @@ package com.ghgande.j2mod.modbus.net;
 
 import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.io.ModbusUDPTransport;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Class that implements a ModbusUDPListener.<br>
  *
+ * <p>
+ * Requests are answered one at a time on the listening thread unless the
+ * listener is given an executor, in which case the listening thread only
+ * reads them and each is answered by a task on the executor.
+ *
  * @author Dieter Wimberger
  * @author Julie Haugh
  * @author Steve O'Hara (4energy)
@@ -35,6 +43,7 @@ public class ModbusUDPListener extends AbstractModbusListener {
 
     private static final Logger logger = LoggerFactory.getLogger(ModbusUDPListener.class);
     private UDPSlaveTerminal terminal;
+    private Executor executor;
 
     /**
      * Create a new <tt>ModbusUDPListener</tt> instance listening to the given
@@ -47,6 +56,20 @@ public class ModbusUDPListener extends AbstractModbusListener {
         listening = true;
     }
 
+    /**
+     * Create a new <tt>ModbusUDPListener</tt> instance listening to the given
+     * interface address and answering the requests on the given executor.
+     * Messages are not pooled when requests are answered on an executor, and
+     * the executor is not shut down when the listener is stopped.
+     *
+     * @param ifc      an <tt>InetAddress</tt> instance.
+     * @param executor the <tt>Executor</tt> used to answer requests.
+     */
+    public ModbusUDPListener(InetAddress ifc, Executor executor) {
+        this(ifc);
+        this.executor = executor;
+    }
+
     /**
      * Constructs a new ModbusUDPListener instance. The address will be set to a
      * default value of the wildcard local address and the default Modbus port.
@@ -85,6 +108,9 @@ public class ModbusUDPListener extends AbstractModbusListener {
             terminal.setPort(port);
             terminal.activate();
             transport = new ModbusUDPTransport(terminal);
+            transport.setMessagePool(executor == null ? createMessagePool() : null);
+            transport.setMetrics(metrics);
+            transport.setCoupler(coupler);
         }
 
         // Catch any fatal errors and set the listening flag to false to indicate an error
@@ -97,7 +123,12 @@ public class ModbusUDPListener extends AbstractModbusListener {
         listening = true;
         try {
             while (listening) {
-                handleRequest(transport);
+                if (executor == null) {
+                    handleRequest(transport);
+                }
+                else {
+                    dispatchRequest(transport, transport.readRequest());
+                }
             }
         }
 <<<<<<< HEAD
@@ -133,4 +164,30 @@ public class ModbusUDPListener extends AbstractModbusListener {
         terminal.deactivate();
         listening = false;
     }
+
+    /**
+     * Answers a request on the executor, dropping it if the executor cannot
+     * take it so that the master retries
+     *
+     * @param transport Transport the request was read from
+     * @param request   Request to answer
+     */
+    private void dispatchRequest(final ModbusUDPTransport transport, final ModbusRequest request) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handleRequest(transport, request);
+                    }
+                    catch (ModbusIOException ex) {
+                        logger.debug("Cannot send response - {}", ex.getMessage());
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException ex) {
+            logger.warn("Dropped request {} - {}", request.getTransactionID(), ex.getMessage());
+        }
+    }
 }
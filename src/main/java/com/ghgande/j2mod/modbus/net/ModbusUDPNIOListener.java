@@ -0,0 +1,296 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.net;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.io.ByteBufferInput;
+import com.ghgande.j2mod.modbus.io.ByteBufferOutput;
+import com.ghgande.j2mod.modbus.msg.ModbusMessagePool;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.util.ByteBufferPool;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that implements a Modbus/UDP listener on a <tt>DatagramChannel</tt>.
+ *
+ * <p>
+ * Unlike the <tt>ModbusUDPListener</tt>, which hands each datagram between a
+ * receiving thread, the listening thread and a sending thread, each of the
+ * worker threads of this listener receives a datagram, answers it and sends
+ * the response itself, so that as many datagrams are answered at once as
+ * there are workers. The address of the master travels with its request, so
+ * masters that happen to use the same transaction IDs are each answered
+ * correctly. Datagrams are read into and written from pooled direct buffers
+ * and decoded straight from them. Each worker keeps one pair of adapters
+ * over the buffers and, if message pooling is enabled, its own pool of
+ * requests and responses.
+ *
+ * <p>
+ * Datagrams that are not a single well formed request are dropped, leaving
+ * the master to retry.
+ */
+public class ModbusUDPNIOListener extends AbstractModbusListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusUDPNIOListener.class);
+
+    /**
+     * Length of the MBAP header up to and including the length field
+     */
+    private static final int HEADER_LENGTH = 6;
+
+    private final Thread[] workers;
+    private final ByteBufferPool bufferPool;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private int receiveBufferSize;
+    private volatile DatagramChannel channel;
+
+    /**
+     * Constructs a ModbusUDPNIOListener instance.<br>
+     *
+     * @param workers the number of threads that receive and answer requests.
+     * @param addr    the interface to use for listening.
+     */
+    public ModbusUDPNIOListener(int workers, InetAddress addr) {
+        this.workers = new Thread[workers > 0 ? workers : 1];
+        bufferPool = new ByteBufferPool(Modbus.MAX_MESSAGE_LENGTH + HEADER_LENGTH, this.workers.length * 2, true);
+        address = addr;
+    }
+
+    /**
+     * Constructs a ModbusUDPNIOListener instance.  This interface is created
+     * to listen on the wildcard address (0.0.0.0), which will accept UDP
+     * packets on all available adapters/interfaces
+     *
+     * @param workers the number of threads that receive and answer requests.
+     */
+    public ModbusUDPNIOListener(int workers) {
+        this(workers, null);
+        try {
+            address = InetAddress.getByAddress(new byte[]{0, 0, 0, 0});
+        }
+        catch (UnknownHostException ex) {
+            // Can't happen -- size is fixed.
+        }
+    }
+
+    /**
+     * Returns the size of the socket receive buffer asked for
+     *
+     * @return Size in bytes, 0 for the system default
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Sets the size of the socket receive buffer, which holds the datagrams
+     * that arrive while all the workers are busy. Must be set before the
+     * listener is started.
+     *
+     * @param receiveBufferSize Size in bytes, 0 for the system default
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize > 0 ? receiveBufferSize : 0;
+    }
+
+    /**
+     * Returns the number of datagrams dropped because they could not be
+     * decoded or answered
+     *
+     * @return Number of datagrams
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public void run() {
+        try {
+            channel = DatagramChannel.open();
+            if (receiveBufferSize > 0) {
+                channel.socket().setReceiveBufferSize(receiveBufferSize);
+            }
+            channel.socket().bind(new InetSocketAddress(address, port));
+            logger.debug("Listening to {} (Port {})", channel.toString(), port);
+        }
+
+        // Catch any fatal errors and set the listening flag to false to indicate an error
+        catch (Exception e) {
+            error = String.format("Cannot start UDP listener - %s", e.getMessage());
+            listening = false;
+            closeChannel();
+            return;
+        }
+
+        listening = true;
+        final ModbusCoupler listenerCoupler = getCoupler();
+        workers[0] = Thread.currentThread();
+        for (int i = 1; i < workers.length; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(listenerCoupler);
+                }
+            }, "Modbus UDP worker " + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        try {
+            serve(listenerCoupler);
+        }
+        finally {
+            closeChannel();
+        }
+    }
+
+    @Override
+    public void stop() {
+        listening = false;
+        closeChannel();
+        try {
+            for (Thread worker : workers) {
+                if (worker != null && worker != Thread.currentThread()) {
+                    worker.join();
+                }
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Receives and answers datagrams until the channel is closed
+     *
+     * @param listenerCoupler Coupler holding the process images to answer from
+     */
+    private void serve(ModbusCoupler listenerCoupler) {
+        ModbusMetrics listenerMetrics = metrics;
+        ModbusMessagePool messagePool = createMessagePool();
+        ByteBufferInput decoder = new ByteBufferInput(null);
+        ByteBufferOutput encoder = new ByteBufferOutput(null);
+        while (listening) {
+            ByteBuffer buffer = bufferPool.acquire();
+            ModbusRequest request = null;
+            ModbusResponse response = null;
+            try {
+                SocketAddress master = channel.receive(buffer);
+                buffer.flip();
+                decoder.reset(buffer);
+                request = decode(decoder, messagePool);
+                long start = listenerMetrics != ModbusMetrics.NONE ? System.nanoTime() : 0;
+                response = createResponse(request, listenerCoupler);
+
+                // The response goes out of the buffer the request came in
+                buffer.clear();
+                response.setHeadless(false);
+                encoder.reset(buffer);
+                response.writeTo(encoder);
+                buffer.flip();
+                channel.send(buffer, master);
+                if (listenerMetrics != ModbusMetrics.NONE) {
+                    listenerMetrics.requestHandled(getDeviceName(master), request, response, System.nanoTime() - start);
+                }
+            }
+            catch (ClosedChannelException ex) {
+                break;
+            }
+            catch (Exception ex) {
+                droppedCount.incrementAndGet();
+                logger.debug("Dropped datagram - {}", ex.getMessage());
+            }
+            finally {
+                bufferPool.release(buffer);
+                if (messagePool != null) {
+                    messagePool.release(request);
+                    messagePool.release(response);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes a datagram holding a single MBAP frame into a request, reading
+     * straight from the buffer
+     *
+     * @param decoder     Adapter over the datagram, which is between the
+     *                    position and limit of the buffer
+     * @param messagePool Pool to take the request from, null to create it
+     *
+     * @return Request
+     *
+     * @throws IOException if the datagram is not a valid request
+     */
+    private static ModbusRequest decode(ByteBufferInput decoder, ModbusMessagePool messagePool) throws IOException {
+        ByteBuffer frame = decoder.getBuffer();
+        if (frame.remaining() < HEADER_LENGTH + 2) {
+            throw new IOException("Datagram too short");
+        }
+        int length = frame.getShort(frame.position() + 4) & 0xFFFF;
+        if (length < 2 || length > frame.remaining() - HEADER_LENGTH) {
+            throw new IOException("Invalid message length " + length);
+        }
+        frame.limit(frame.position() + HEADER_LENGTH + length);
+        int functionCode = frame.get(frame.position() + HEADER_LENGTH + 1) & 0xFF;
+        ModbusRequest request = messagePool != null ? messagePool.getRequest(functionCode) : ModbusRequest.createModbusRequest(functionCode);
+        request.setHeadless(false);
+        request.readFrom(decoder);
+        return request;
+    }
+
+    /**
+     * Returns the address and port of a master
+     *
+     * @param master Socket address of the master
+     *
+     * @return Device name
+     */
+    private static String getDeviceName(SocketAddress master) {
+        if (master instanceof InetSocketAddress) {
+            InetSocketAddress socketAddress = (InetSocketAddress)master;
+            return socketAddress.getAddress().getHostAddress() + ":" + socketAddress.getPort();
+        }
+        return String.valueOf(master);
+    }
+
+    /**
+     * Closes the channel, which stops the workers, ignoring any errors
+     */
+    private void closeChannel() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        catch (IOException ex) {
+            logger.debug("Error closing channel - {}", ex.getMessage());
+        }
+    }
+}
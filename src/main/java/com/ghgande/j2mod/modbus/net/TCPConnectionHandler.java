@@ -16,8 +16,11 @@
 package com.ghgande.j2mod.modbus.net;
 
 <<<<<<< HEAD
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusCoupler;
 import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 =======
 <<<<<<< HEAD
 import com.ghgande.j2mod.modbus.Modbus;
@@ -35,9 +38,26 @@ import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Class implementing a handler for incoming Modbus/TCP requests.
  *
+ * <p>
+ * By default each request is answered before the next one is read. Given an
+ * executor and a pipeline window of more than one, the handler keeps reading
+ * requests while earlier ones are still being answered, up to the window,
+ * and answers them on the executor. The requests for each unit ID are
+ * answered in the order they arrived, but those for different units run
+ * side by side, and each response is written as soon as it is ready with
+ * the transaction ID of its request, so a master must match the responses
+ * to its requests by transaction ID.
+ *
  * @author Dieter Wimberger
  * @author Steve O'Hara (4energy)
  * @version 2.0 (March 2016)
@@ -48,6 +68,10 @@ public class TCPConnectionHandler implements Runnable {
 
     private TCPSlaveConnection connection;
     private AbstractModbusTransport transport;
+    private final Executor requestExecutor;
+    private final int pipelineWindow;
+    private Semaphore pipelineSlots;
+    private UnitQueue[] unitQueues;
 
     /**
      * Constructs a new <tt>TCPConnectionHandler</tt> instance.
@@ -60,9 +84,41 @@ public class TCPConnectionHandler implements Runnable {
      * @param con an incoming connection.
      */
     public TCPConnectionHandler(TCPSlaveConnection con) {
+        this(con, null, Modbus.DEFAULT_PIPELINE_WINDOW);
+    }
+
+    /**
+     * Constructs a new <tt>TCPConnectionHandler</tt> instance that answers
+     * up to <tt>pipelineWindow</tt> requests at once on the executor.
+     *
+     * <p>
+     * The transport of the connection must not have a message pool, as the
+     * requests are answered on several threads at once.
+     *
+     * @param con             an incoming connection.
+     * @param requestExecutor Executor to answer the requests on, null to
+     *                        answer them one at a time on the calling thread
+     * @param pipelineWindow  Most requests read but not yet answered
+     */
+    public TCPConnectionHandler(TCPSlaveConnection con, Executor requestExecutor, int pipelineWindow) {
+        if (pipelineWindow < 1) {
+            throw new IllegalArgumentException("Pipeline window must be at least 1");
+        }
+        this.requestExecutor = requestExecutor;
+        this.pipelineWindow = pipelineWindow;
         setConnection(con);
     }
 
+    /**
+     * Tests if the requests are read ahead of the responses and answered on
+     * the executor
+     *
+     * @return True if they are
+     */
+    public boolean isPipelined() {
+        return requestExecutor != null && pipelineWindow > 1;
+    }
+
     /**
      * Sets a connection to be handled by this <tt>
      * TCPConnectionHandler</tt>.
@@ -78,9 +134,14 @@ public class TCPConnectionHandler implements Runnable {
     @Override
     public void run() {
         try {
-            do {
-                AbstractModbusListener.handleRequest(transport);
-            } while (!Thread.currentThread().isInterrupted());
+            if (isPipelined()) {
+                handlePipelinedRequests();
+            }
+            else {
+                do {
+                    AbstractModbusListener.handleRequest(transport);
+                } while (!Thread.currentThread().isInterrupted());
+            }
 =======
 <<<<<<< HEAD
     public void run() {
@@ -137,4 +198,114 @@ public class TCPConnectionHandler implements Runnable {
 >>>>>>> origin/master
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads requests and queues them to be answered until the connection is
+     * closed or times out, waiting for a free slot in the pipeline window
+     * before reading each one. Once reading stops it waits for the requests already read to be
+     * answered.
+     *
+     * @throws ModbusIOException If a request cannot be read
+     */
+    private void handlePipelinedRequests() throws ModbusIOException {
+        pipelineSlots = new Semaphore(pipelineWindow);
+        unitQueues = new UnitQueue[ModbusCoupler.MAX_UNITS];
+        try {
+            do {
+                // Take the slot before reading so no more than the window is
+                // ever read and not yet answered
+                pipelineSlots.acquire();
+                ModbusRequest request = null;
+                try {
+                    request = transport.readRequest();
+                }
+                finally {
+                    if (request == null) {
+                        pipelineSlots.release();
+                    }
+                }
+                int unitID = request.getUnitID() & 0xFF;
+                if (unitQueues[unitID] == null) {
+                    unitQueues[unitID] = new UnitQueue();
+                }
+                unitQueues[unitID].add(request);
+            } while (!Thread.currentThread().isInterrupted());
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            try {
+                if (!pipelineSlots.tryAcquire(pipelineWindow, Math.max(connection.getTimeout(), Modbus.DEFAULT_TIMEOUT), TimeUnit.MILLISECONDS)) {
+                    logger.debug("Closing connection with {} requests unanswered", pipelineWindow - pipelineSlots.availablePermits());
+                }
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Requests for one unit ID waiting to be answered, in the order they were
+     * read. At most one task answers them at a time.
+     */
+    private class UnitQueue implements Runnable {
+
+        private final Queue<ModbusRequest> requests = new ArrayDeque<ModbusRequest>();
+        private boolean processing;
+
+        /**
+         * Queues a request and starts a task to answer the queue if there
+         * isn't one running already
+         *
+         * @param request Request to answer
+         */
+        void add(ModbusRequest request) {
+            synchronized (this) {
+                requests.add(request);
+                if (processing) {
+                    return;
+                }
+                processing = true;
+            }
+            try {
+                requestExecutor.execute(this);
+            }
+            catch (RejectedExecutionException ex) {
+                // Answer on the reading thread, which holds off reading until they are done
+                logger.debug("Answering requests on the reading thread - {}", ex.getMessage());
+                run();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                ModbusRequest request;
+                synchronized (this) {
+                    request = requests.poll();
+                    if (request == null) {
+                        processing = false;
+                        return;
+                    }
+                }
+                try {
+                    AbstractModbusListener.handleRequest(transport, request);
+                }
+                catch (ModbusIOException ex) {
+                    // Closing the connection also stops the reading thread
+                    logger.debug("Cannot answer request - {}", ex.getMessage());
+                    connection.close();
+                }
+                catch (RuntimeException ex) {
+                    logger.error("Error answering request", ex);
+                    connection.close();
+                }
+                finally {
+                    pipelineSlots.release();
+                }
+            }
+        }
+    }
+}
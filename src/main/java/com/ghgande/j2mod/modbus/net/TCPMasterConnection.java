@@ -24,10 +24,15 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Class that implements a TCPMasterConnection.
  *
+ * <p>
+ * Connecting and testing the connection are serialised with a
+ * <tt>ReentrantLock</tt>, for the same reason as in {@link ModbusTCPTransport}.
+ *
  * @author Dieter Wimberger
  * @author Julie Haugh
  * @author Steve O'Hara (4energy)
@@ -41,6 +46,7 @@ public class TCPMasterConnection {
     private Socket socket;
     private int timeout = Modbus.DEFAULT_TIMEOUT;
     private boolean connected;
+    private final ReentrantLock lock = new ReentrantLock();
 
     private InetAddress address;
     private int port = Modbus.DEFAULT_PORT;
@@ -72,6 +78,7 @@ public class TCPMasterConnection {
     private void prepareTransport() throws IOException {
         if (transport == null) {
             transport = new ModbusTCPTransport(socket);
+            transport.setMaster(this);
         }
         else {
             transport.setSocket(socket);
@@ -83,19 +90,25 @@ public class TCPMasterConnection {
      *
      * @throws Exception if there is a network failure.
      */
-    public synchronized void connect() throws Exception {
-        if (!isConnected()) {
-            logger.debug("connect()");
+    public void connect() throws Exception {
+        lock.lock();
+        try {
+            if (!isConnected()) {
+                logger.debug("connect()");
 
-            socket = new Socket(address, port);
-            socket.setReuseAddress(true);
-            socket.setSoLinger(true, 1);
-            socket.setKeepAlive(true);
+                socket = new Socket(address, port);
+                socket.setReuseAddress(true);
+                socket.setSoLinger(true, 1);
+                socket.setKeepAlive(true);
 
-            setTimeout(timeout);
-            prepareTransport();
+                setTimeout(timeout);
+                prepareTransport();
 
-            connected = true;
+                connected = true;
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
@@ -104,7 +117,23 @@ public class TCPMasterConnection {
      *
      * @return <tt>true</tt> if connected, <tt>false</tt> otherwise.
      */
-    public synchronized boolean isConnected() {
+    public boolean isConnected() {
+        lock.lock();
+        try {
+            return testConnection();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks the socket and closes it if it has failed, the caller holding
+     * the lock
+     *
+     * @return <tt>true</tt> if connected, <tt>false</tt> otherwise.
+     */
+    private boolean testConnection() {
         if (connected && socket != null) {
             if (!socket.isConnected() || socket.isClosed()
                     || socket.isInputShutdown()
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.net;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that implements a pool of <tt>TCPMasterConnection</tt> instances
+ * keyed by the address and port of the device.
+ *
+ * <p>
+ * A connection is borrowed for the duration of a transaction and released
+ * straight afterwards, so that any number of facades and threads can share
+ * a small number of sockets to each device. The pool limits the number of
+ * connections open to a device at the same time, makes a borrower wait up
+ * to the borrow timeout for one to become free, checks that an idle
+ * connection is still usable before handing it out, and closes connections
+ * that have been idle for longer than the idle timeout.
+ */
+public class TCPMasterConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(TCPMasterConnectionPool.class);
+
+    /**
+     * How often idle connections are looked for in milliseconds
+     */
+    private static final int EVICTION_INTERVAL = 1000;
+
+    private final ConcurrentMap<DeviceKey, DevicePool> devices = new ConcurrentHashMap<DeviceKey, DevicePool>();
+    private final ConcurrentMap<TCPMasterConnection, DevicePool> borrowed = new ConcurrentHashMap<TCPMasterConnection, DevicePool>();
+    private int maxConnections = Modbus.DEFAULT_POOL_MAX_CONNECTIONS;
+    private int idleTimeout = Modbus.DEFAULT_POOL_IDLE_TIMEOUT;
+    private int borrowTimeout = Modbus.DEFAULT_TIMEOUT;
+    private int timeout = Modbus.DEFAULT_TIMEOUT;
+    private boolean validating = true;
+    private boolean useUrgentData = false;
+    private Thread evictor;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a pool allowing <tt>Modbus.DEFAULT_POOL_MAX_CONNECTIONS</tt>
+     * connections per device
+     */
+    public TCPMasterConnectionPool() {
+    }
+
+    /**
+     * Constructs a pool
+     *
+     * @param maxConnections the maximum number of connections open to a
+     *                       single device at the same time.
+     */
+    public TCPMasterConnectionPool(int maxConnections) {
+        setMaxConnections(maxConnections);
+    }
+
+    /**
+     * Returns the maximum number of connections open to a single device
+     *
+     * @return Maximum connections per device
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum number of connections open to a single device. The
+     * limit is fixed for a device when it is first used.
+     *
+     * @param maxConnections Maximum connections per device
+     */
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Invalid maximum number of connections: " + maxConnections);
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Returns the time a connection may be idle before it is closed
+     *
+     * @return Idle timeout in milliseconds
+     */
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the time a connection may be idle before it is closed
+     *
+     * @param idleTimeout Idle timeout in milliseconds, 0 or less to keep idle
+     *                    connections open
+     */
+    public void setIdleTimeout(int idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns the time a borrower waits for a connection to become free
+     *
+     * @return Borrow timeout in milliseconds
+     */
+    public int getBorrowTimeout() {
+        return borrowTimeout;
+    }
+
+    /**
+     * Sets the time a borrower waits for a connection to become free
+     *
+     * @param borrowTimeout Borrow timeout in milliseconds
+     */
+    public void setBorrowTimeout(int borrowTimeout) {
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    /**
+     * Returns the socket timeout given to new connections
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the socket timeout given to new connections
+     *
+     * @param timeout Timeout in milliseconds
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Tests if idle connections are checked before they are handed out
+     *
+     * @return True if validating
+     */
+    public boolean isValidating() {
+        return validating;
+    }
+
+    /**
+     * Sets whether idle connections are checked before they are handed out.
+     * A connection that fails the check is closed and another one used.
+     *
+     * @param validating True to validate
+     */
+    public void setValidating(boolean validating) {
+        this.validating = validating;
+    }
+
+    /**
+     * Tests if new connections send a byte of urgent data to test the
+     * connection when validated
+     *
+     * @return True if urgent data is used
+     */
+    public boolean getUseUrgentData() {
+        return useUrgentData;
+    }
+
+    /**
+     * Sets whether new connections send a byte of urgent data to test the
+     * connection when validated. This detects a connection dropped by the
+     * device, but not all devices tolerate urgent data.
+     *
+     * @param useUrgentData True to use urgent data
+     */
+    public void setUseUrgentData(boolean useUrgentData) {
+        this.useUrgentData = useUrgentData;
+    }
+
+    /**
+     * Borrows a connection to the device, opening a new one if none is idle
+     * and the device limit hasn't been reached. The connection must be given
+     * back with {@link #release(TCPMasterConnection)}, or with
+     * {@link #invalidate(TCPMasterConnection)} if it has failed.
+     *
+     * @param address Address of the device
+     * @param port    Port of the device
+     *
+     * @return Open connection
+     *
+     * @throws ModbusIOException if the pool is closed, no connection becomes
+     *                           free within the borrow timeout or the
+     *                           connection cannot be opened
+     */
+    public TCPMasterConnection borrow(InetAddress address, int port) throws ModbusIOException {
+        if (closed) {
+            throw new ModbusIOException("Connection pool is closed");
+        }
+        startEvictor();
+
+        DeviceKey key = new DeviceKey(address, port);
+        DevicePool device = devices.get(key);
+        if (device == null) {
+            DevicePool newDevice = new DevicePool(maxConnections);
+            device = devices.putIfAbsent(key, newDevice);
+            if (device == null) {
+                device = newDevice;
+            }
+        }
+
+        try {
+            if (!device.permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                throw new ModbusIOException("Timeout waiting for a connection to %s:%d", address.getHostAddress(), port);
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ModbusIOException("Interrupted waiting for a connection to %s:%d", address.getHostAddress(), port);
+        }
+
+        // Most recently used first, so the rest can age out
+        IdleConnection idle;
+        while ((idle = device.idle.pollFirst()) != null) {
+            if (!validating || idle.connection.isConnected()) {
+                borrowed.put(idle.connection, device);
+                return idle.connection;
+            }
+            logger.debug("Discarding broken connection to {}:{}", address.getHostAddress(), port);
+            idle.connection.close();
+        }
+
+        TCPMasterConnection connection = new TCPMasterConnection(address);
+        connection.setPort(port);
+        connection.setTimeout(timeout);
+        connection.setUseUrgentData(useUrgentData);
+        try {
+            connection.connect();
+        }
+        catch (Exception ex) {
+            device.permits.release();
+            throw new ModbusIOException("Cannot connect to %s:%d - %s", address.getHostAddress(), port, ex.getMessage());
+        }
+        logger.debug("Opened pooled connection to {}:{}", address.getHostAddress(), port);
+        borrowed.put(connection, device);
+        return connection;
+    }
+
+    /**
+     * Gives back a borrowed connection so that it can be used again. A
+     * connection that has been closed is dropped.
+     *
+     * @param connection Connection to give back
+     */
+    public void release(TCPMasterConnection connection) {
+        DevicePool device = borrowed.remove(connection);
+        if (device == null) {
+            logger.warn("Connection was not borrowed from this pool");
+            return;
+        }
+        if (closed || !connection.isConnected()) {
+            connection.close();
+        }
+        else {
+            device.idle.offerFirst(new IdleConnection(connection));
+        }
+        device.permits.release();
+    }
+
+    /**
+     * Gives back a borrowed connection that has failed, it is closed rather
+     * than used again
+     *
+     * @param connection Connection to close
+     */
+    public void invalidate(TCPMasterConnection connection) {
+        DevicePool device = borrowed.remove(connection);
+        connection.close();
+        if (device != null) {
+            device.permits.release();
+        }
+    }
+
+    /**
+     * Returns the number of connections currently borrowed
+     *
+     * @return Number of borrowed connections
+     */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * Returns the number of open connections waiting to be borrowed
+     *
+     * @return Number of idle connections
+     */
+    public int getIdleCount() {
+        int count = 0;
+        for (DevicePool device : devices.values()) {
+            count += device.idle.size();
+        }
+        return count;
+    }
+
+    /**
+     * Closes the connections that have been idle for longer than the idle
+     * timeout. This is done regularly in the background, but may be called
+     * at any time.
+     */
+    public void evictIdle() {
+        if (idleTimeout <= 0) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - idleTimeout;
+        for (DevicePool device : devices.values()) {
+
+            // The least recently used connections are at the end
+            Iterator<IdleConnection> iterator = device.idle.descendingIterator();
+            while (iterator.hasNext()) {
+                IdleConnection idle = iterator.next();
+                if (idle.since > oldest) {
+                    break;
+                }
+                if (device.idle.removeFirstOccurrence(idle)) {
+                    logger.debug("Closing idle connection to {}:{}", idle.connection.getAddress().getHostAddress(), idle.connection.getPort());
+                    idle.connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the pool and all its idle connections. Borrowed connections are
+     * closed when they are given back.
+     */
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            if (evictor != null) {
+                evictor.interrupt();
+                evictor = null;
+            }
+        }
+        for (DevicePool device : devices.values()) {
+            IdleConnection idle;
+            while ((idle = device.idle.pollFirst()) != null) {
+                idle.connection.close();
+            }
+        }
+    }
+
+    /**
+     * Starts the background thread that closes idle connections
+     */
+    private synchronized void startEvictor() {
+        if (evictor == null && !closed) {
+            evictor = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        while (!closed) {
+                            Thread.sleep(EVICTION_INTERVAL);
+                            evictIdle();
+                        }
+                    }
+                    catch (InterruptedException ex) {
+                        // Pool closed
+                    }
+                }
+            }, "Modbus TCP connection pool evictor");
+            evictor.setDaemon(true);
+            evictor.start();
+        }
+    }
+
+    /**
+     * Identifies a device by its address and port
+     */
+    private static class DeviceKey {
+
+        private final InetAddress address;
+        private final int port;
+
+        DeviceKey(InetAddress address, int port) {
+            this.address = address;
+            this.port = port;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DeviceKey)) {
+                return false;
+            }
+            DeviceKey key = (DeviceKey)o;
+            return port == key.port && address.equals(key.address);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * address.hashCode() + port;
+        }
+    }
+
+    /**
+     * The connections of a single device
+     */
+    private static class DevicePool {
+
+        private final Semaphore permits;
+        private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<IdleConnection>();
+
+        DevicePool(int maxConnections) {
+            permits = new Semaphore(maxConnections, true);
+        }
+    }
+
+    /**
+     * A connection waiting to be borrowed and when it was given back
+     */
+    private static class IdleConnection {
+
+        private final TCPMasterConnection connection;
+        private final long since = System.currentTimeMillis();
+
+        IdleConnection(TCPMasterConnection connection) {
+            this.connection = connection;
+        }
+    }
+}
@@ -0,0 +1,616 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.net;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.util.ByteBufferPool;
+import com.ghgande.j2mod.modbus.util.ModbusExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Class that implements a Modbus/UDP master that talks to any number of
+ * devices over a single <tt>DatagramChannel</tt>.
+ *
+ * <p>
+ * Unlike a <tt>ModbusUDPMaster</tt>, which has a socket of its own and waits
+ * for each response before sending the next request, the multiplexer sends
+ * requests to any device as soon as they are given to it and has one thread
+ * receive the responses of them all, matching each to its request by the
+ * address it came from and its transaction ID. A request that isn't answered
+ * within the timeout is sent again, up to the number of retries, after which
+ * it fails. So polling thousands of devices needs neither a socket nor a
+ * thread for each of them.
+ *
+ * <p>
+ * The requests waiting for responses are limited to the most outstanding,
+ * beyond which senders wait for a response to make room.
+ */
+public class UDPMasterMultiplexer {
+
+    private static final Logger logger = LoggerFactory.getLogger(UDPMasterMultiplexer.class);
+
+    /**
+     * Length of the MBAP header up to and including the length field
+     */
+    private static final int HEADER_LENGTH = 6;
+
+    private final InetSocketAddress localAddress;
+    private final ConcurrentMap<TransactionKey, PendingRequest> outstanding = new ConcurrentHashMap<TransactionKey, PendingRequest>();
+    private final AtomicInteger nextTransactionID = new AtomicInteger(Modbus.DEFAULT_TRANSACTION_ID);
+    private final AtomicLong retransmitCount = new AtomicLong();
+    private final ByteBufferPool bufferPool = new ByteBufferPool(Modbus.MAX_MESSAGE_LENGTH + HEADER_LENGTH, 256, true);
+    private int timeout = Modbus.DEFAULT_TIMEOUT;
+    private int retries = Modbus.DEFAULT_RETRIES;
+    private int maxOutstanding = Modbus.DEFAULT_UDP_MAX_OUTSTANDING;
+    private volatile DatagramChannel channel;
+    private volatile Semaphore outstandingSlots;
+    private ScheduledThreadPoolExecutor timer;
+    private Thread receiver;
+
+    /**
+     * Creates a multiplexer that sends from an ephemeral port on all the
+     * local interfaces
+     */
+    public UDPMasterMultiplexer() {
+        this(null);
+    }
+
+    /**
+     * Creates a multiplexer that sends from the given local address
+     *
+     * @param localAddress Local address and port to bind to, null for an
+     *                     ephemeral port on all the local interfaces
+     */
+    public UDPMasterMultiplexer(InetSocketAddress localAddress) {
+        this.localAddress = localAddress;
+    }
+
+    /**
+     * Returns the time to wait for a response before sending the request
+     * again
+     *
+     * @return Timeout in milliseconds
+     */
+    public synchronized int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the time to wait for a response before sending the request again.
+     * Applies to the requests sent after it is set.
+     *
+     * @param timeout Timeout in milliseconds
+     */
+    public synchronized void setTimeout(int timeout) {
+        if (timeout < 1) {
+            throw new IllegalArgumentException("Timeout must be at least 1");
+        }
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the number of times a request is sent again before it fails
+     *
+     * @return Number of retries
+     */
+    public synchronized int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Sets the number of times a request is sent again before it fails.
+     * Applies to the requests sent after it is set.
+     *
+     * @param retries Number of retries, 0 to send each request only once
+     */
+    public synchronized void setRetries(int retries) {
+        this.retries = retries > 0 ? retries : 0;
+    }
+
+    /**
+     * Returns the most requests that may be waiting for responses at once
+     *
+     * @return Limit
+     */
+    public synchronized int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    /**
+     * Sets the most requests that may be waiting for responses at once. Must
+     * be set before the multiplexer is opened.
+     *
+     * @param maxOutstanding Limit, at least 1
+     */
+    public synchronized void setMaxOutstanding(int maxOutstanding) {
+        if (maxOutstanding < 1) {
+            throw new IllegalArgumentException("Most outstanding requests must be at least 1");
+        }
+        this.maxOutstanding = maxOutstanding;
+    }
+
+    /**
+     * Returns the number of requests waiting for responses
+     *
+     * @return Number of requests
+     */
+    public int getOutstandingCount() {
+        return outstanding.size();
+    }
+
+    /**
+     * Returns the number of times a request has been sent again because its
+     * response did not arrive in time
+     *
+     * @return Number of retransmissions
+     */
+    public long getRetransmitCount() {
+        return retransmitCount.get();
+    }
+
+    /**
+     * Tests if the multiplexer is open
+     *
+     * @return True if open
+     */
+    public boolean isOpen() {
+        DatagramChannel current = channel;
+        return current != null && current.isOpen();
+    }
+
+    /**
+     * Returns the local address the requests are sent from
+     *
+     * @return Address, null if not open
+     */
+    public InetSocketAddress getLocalAddress() {
+        DatagramChannel current = channel;
+        return current == null ? null : (InetSocketAddress)current.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * Opens the channel and starts the threads that receive the responses and
+     * send requests again
+     *
+     * @throws ModbusIOException If the channel cannot be opened
+     */
+    public synchronized void open() throws ModbusIOException {
+        if (isOpen()) {
+            return;
+        }
+        try {
+            DatagramChannel newChannel = DatagramChannel.open();
+            newChannel.socket().bind(localAddress);
+            channel = newChannel;
+        }
+        catch (IOException ex) {
+            throw new ModbusIOException("Cannot open UDP channel - %s", ex.getMessage());
+        }
+        outstandingSlots = new Semaphore(maxOutstanding);
+        timer = new ScheduledThreadPoolExecutor(1, ModbusExecutors.newDaemonThreadFactory("Modbus UDP retransmit"));
+        timer.setRemoveOnCancelPolicy(true);
+        receiver = new Thread(new Receiver(channel), "Modbus UDP receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+        logger.debug("Opened UDP multiplexer on {}", getLocalAddress());
+    }
+
+    /**
+     * Closes the channel, failing any requests still waiting for responses
+     */
+    public synchronized void close() {
+        DatagramChannel current = channel;
+        if (current == null) {
+            return;
+        }
+        channel = null;
+        try {
+            current.close();
+        }
+        catch (IOException ex) {
+            logger.debug("Error closing channel - {}", ex.getMessage());
+        }
+        try {
+            receiver.join();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        timer.shutdownNow();
+        for (PendingRequest pending : outstanding.values()) {
+            pending.completeExceptionally(new ModbusIOException("Multiplexer closed"));
+        }
+    }
+
+    /**
+     * Sends a request to a device and waits for its response, sending it
+     * again if need be
+     *
+     * @param device  Address and port of the device
+     * @param request Request to send, which isn't changed
+     *
+     * @return Response
+     *
+     * @throws ModbusSlaveException If the device answers with an exception
+     * @throws ModbusException      If the request cannot be sent or is not
+     *                              answered in time
+     */
+    public ModbusResponse execute(InetSocketAddress device, ModbusRequest request) throws ModbusException {
+        CompletableFuture<ModbusResponse> pending = send(device, request);
+        ModbusResponse response;
+        try {
+            // The retransmit timer fails the request in time, this is only a backstop
+            response = pending.get((long)getTimeout() * (getRetries() + 2), TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ex) {
+            pending.cancel(false);
+            throw new ModbusIOException("Timeout reading response");
+        }
+        catch (InterruptedException ex) {
+            pending.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new ModbusIOException("Interrupted waiting for response");
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof ModbusIOException) {
+                ModbusIOException failure = (ModbusIOException)ex.getCause();
+                throw new ModbusIOException(failure.getMessage(), failure.isEOF());
+            }
+            throw new ModbusIOException("I/O exception - %s", ex.getCause().getMessage());
+        }
+        if (response instanceof ExceptionResponse) {
+            throw new ModbusSlaveException(((ExceptionResponse)response).getExceptionCode());
+        }
+        return response;
+    }
+
+    /**
+     * Sends a request to a device without waiting for the response. The
+     * returned future is completed when the response arrives, or
+     * exceptionally with a <tt>ModbusIOException</tt> once the request has
+     * been sent the retries more times without an answer or the multiplexer
+     * is closed. Dependent actions run on the receiving thread and should
+     * not block.
+     *
+     * <p>
+     * The caller blocks for at most the timeout waiting for room among the
+     * outstanding requests. The request is encoded under a transaction ID
+     * chosen by the multiplexer before this returns, and isn't changed
+     * itself, so the same request can be sent to several devices at once and
+     * reused as soon as this returns.
+     *
+     * @param device  Address and port of the device
+     * @param request Request to send, which isn't changed
+     *
+     * @return Future response, which may be an <tt>ExceptionResponse</tt>
+     *
+     * @throws ModbusIOException If the multiplexer is not open, there is no
+     *                           room in time or the request cannot be sent
+     */
+    public CompletableFuture<ModbusResponse> send(InetSocketAddress device, ModbusRequest request) throws ModbusIOException {
+        if (device == null || device.isUnresolved()) {
+            throw new ModbusIOException("Cannot resolve device address %s", device);
+        }
+        final DatagramChannel current = channel;
+        final Semaphore slots = outstandingSlots;
+        if (current == null || slots == null) {
+            throw new ModbusIOException("Multiplexer is not open");
+        }
+        int requestTimeout;
+        int requestRetries;
+        synchronized (this) {
+            requestTimeout = timeout;
+            requestRetries = retries;
+        }
+        try {
+            if (!slots.tryAcquire(requestTimeout, TimeUnit.MILLISECONDS)) {
+                throw new ModbusIOException("Timeout waiting for room among the outstanding requests");
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ModbusIOException("Interrupted waiting for room among the outstanding requests");
+        }
+
+        final PendingRequest pending = new PendingRequest(current, device, requestTimeout, requestRetries);
+        pending.whenComplete(new BiConsumer<ModbusResponse, Throwable>() {
+            @Override
+            public void accept(ModbusResponse response, Throwable failure) {
+                if (pending.key != null) {
+                    outstanding.remove(pending.key, pending);
+                }
+                pending.finish();
+                slots.release();
+            }
+        });
+
+        // Find a transaction ID that isn't already waiting on this device
+        TransactionKey key;
+        do {
+            key = new TransactionKey(device, nextTransactionID());
+        } while (outstanding.putIfAbsent(key, pending) != null);
+        pending.key = key;
+
+        try {
+            pending.start(request);
+        }
+        catch (IOException ex) {
+            pending.completeExceptionally(new ModbusIOException("I/O exception - %s", ex.getMessage()));
+            throw new ModbusIOException("Cannot send request - %s", ex.getMessage());
+        }
+        return pending;
+    }
+
+    /**
+     * Allocates the next transaction ID, skipping 0 and wrapping after
+     * {@link Modbus#MAX_TRANSACTION_ID}
+     *
+     * @return Transaction ID
+     */
+    private int nextTransactionID() {
+        while (true) {
+            int current = nextTransactionID.get();
+            int next = current >= Modbus.MAX_TRANSACTION_ID ? 1 : current + 1;
+            if (nextTransactionID.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Decodes a response datagram and completes the request it answers
+     *
+     * @param device Address the datagram came from
+     * @param frame  Datagram, between the position and limit of the buffer
+     */
+    private void dispatch(SocketAddress device, ByteBuffer frame) {
+        if (frame.remaining() < HEADER_LENGTH + 2) {
+            logger.debug("Discarding short datagram from {}", device);
+            return;
+        }
+        int transactionID = frame.getShort(frame.position()) & 0xFFFF;
+        PendingRequest pending = outstanding.get(new TransactionKey(device, transactionID));
+        if (pending == null) {
+            // Most likely a late answer to a request that has been sent again or given up on
+            logger.debug("Discarding response from {} for unknown transaction ID {}", device, transactionID);
+            return;
+        }
+        try {
+            int length = frame.getShort(frame.position() + 4) & 0xFFFF;
+            if (length < 2 || length > frame.remaining() - HEADER_LENGTH) {
+                throw new IOException("Invalid message length " + length);
+            }
+            frame.limit(frame.position() + HEADER_LENGTH + length);
+            ModbusResponse response = ModbusResponse.createModbusResponse(frame.get(frame.position() + HEADER_LENGTH + 1) & 0xFF);
+            response.setHeadless(false);
+            response.readFrom(frame);
+            pending.complete(response);
+        }
+        catch (IOException ex) {
+            // The request will be sent again
+            logger.debug("Discarding invalid response from {} - {}", device, ex.getMessage());
+        }
+    }
+
+    /**
+     * A request waiting for its response, which sends itself again each time
+     * its timer goes off until it runs out of retries
+     */
+    private class PendingRequest extends CompletableFuture<ModbusResponse> implements Runnable {
+
+        private final DatagramChannel requestChannel;
+        private final InetSocketAddress device;
+        private final int requestTimeout;
+        private int retriesLeft;
+        private ByteBuffer frame;
+        private ScheduledFuture<?> timerTask;
+        private volatile TransactionKey key;
+
+        /**
+         * Creates a request waiting to be sent
+         *
+         * @param requestChannel Channel to send it on
+         * @param device         Device to send it to
+         * @param requestTimeout Time to wait for each response
+         * @param retries        Number of times to send it again
+         */
+        PendingRequest(DatagramChannel requestChannel, InetSocketAddress device, int requestTimeout, int retries) {
+            this.requestChannel = requestChannel;
+            this.device = device;
+            this.requestTimeout = requestTimeout;
+            this.retriesLeft = retries;
+            frame = bufferPool.acquire();
+        }
+
+        /**
+         * Encodes the request into the frame, with the transaction ID of this
+         * pending request rather than its own, and sends it
+         *
+         * @param request Request to send, which isn't changed
+         *
+         * @throws IOException If it cannot be encoded or sent
+         */
+        synchronized void start(ModbusRequest request) throws IOException {
+            if (isDone()) {
+                return;
+            }
+            frame.clear();
+            frame.putShort((short)key.transactionID);
+            frame.putShort((short)request.getProtocolID());
+            frame.putShort((short)0);
+            frame.put((byte)request.getUnitID());
+            frame.put((byte)request.getFunctionCode());
+            request.writeData(frame);
+            frame.putShort(4, (short)(frame.position() - HEADER_LENGTH));
+            frame.flip();
+            transmit();
+        }
+
+        /**
+         * Sends the frame and sets the timer for its response
+         *
+         * @throws IOException If it cannot be sent
+         */
+        synchronized void transmit() throws IOException {
+            if (isDone()) {
+                return;
+            }
+            frame.rewind();
+            requestChannel.send(frame, device);
+            try {
+                timerTask = timer.schedule(this, requestTimeout, TimeUnit.MILLISECONDS);
+            }
+            catch (RuntimeException ex) {
+                // The multiplexer is closing
+                completeExceptionally(new ModbusIOException("Multiplexer closed"));
+            }
+        }
+
+        /**
+         * Stops the timer and gives back the buffer once the request is complete
+         */
+        synchronized void finish() {
+            if (timerTask != null) {
+                timerTask.cancel(false);
+            }
+            bufferPool.release(frame);
+            frame = null;
+        }
+
+        /**
+         * Called by the timer when the response has not arrived in time
+         */
+        @Override
+        public synchronized void run() {
+            if (isDone()) {
+                return;
+            }
+            if (retriesLeft <= 0) {
+                completeExceptionally(new ModbusIOException("Timeout reading response"));
+                return;
+            }
+            retriesLeft--;
+            retransmitCount.incrementAndGet();
+            logger.debug("Sending transaction {} to {} again", key.transactionID, device);
+            try {
+                transmit();
+            }
+            catch (IOException ex) {
+                completeExceptionally(new ModbusIOException("I/O exception - %s", ex.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * The background thread that receives the responses from all the devices
+     */
+    private class Receiver implements Runnable {
+
+        private final DatagramChannel receiverChannel;
+
+        /**
+         * Creates a receiver reading from the given channel
+         *
+         * @param receiverChannel Channel to read
+         */
+        Receiver(DatagramChannel receiverChannel) {
+            this.receiverChannel = receiverChannel;
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Modbus.MAX_MESSAGE_LENGTH + HEADER_LENGTH);
+            while (receiverChannel.isOpen()) {
+                try {
+                    buffer.clear();
+                    SocketAddress device = receiverChannel.receive(buffer);
+                    buffer.flip();
+                    dispatch(device, buffer);
+                }
+                catch (ClosedChannelException ex) {
+                    break;
+                }
+                catch (Exception ex) {
+                    logger.debug("Cannot receive response - {}", ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Key of an outstanding request, the device it was sent to and its
+     * transaction ID
+     */
+    private static final class TransactionKey {
+
+        private final SocketAddress device;
+        private final int transactionID;
+
+        /**
+         * Creates a key
+         *
+         * @param device        Address and port of the device
+         * @param transactionID Transaction ID of the request
+         */
+        TransactionKey(SocketAddress device, int transactionID) {
+            this.device = device;
+            this.transactionID = transactionID;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TransactionKey)) {
+                return false;
+            }
+            TransactionKey other = (TransactionKey)o;
+            return transactionID == other.transactionID && device.equals(other.device);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * device.hashCode() + transactionID;
+        }
+    }
+}
@@ -93,7 +93,12 @@ class UDPMasterTerminal extends AbstractUDPTerminal {
 
     @Override
     public synchronized void sendMessage(byte[] msg) throws Exception {
-        DatagramPacket req = new DatagramPacket(msg, msg.length, address, port);
+        sendMessage(msg, msg.length);
+    }
+
+    @Override
+    public synchronized void sendMessage(byte[] msg, int length) throws Exception {
+        DatagramPacket req = new DatagramPacket(msg, length, address, port);
         socket.send(req);
     }
 
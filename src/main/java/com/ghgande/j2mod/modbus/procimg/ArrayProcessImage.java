@@ -0,0 +1,834 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.procimg;
+
+import java.util.Arrays;
+
+/**
+ * Class implementing a process image that holds its values in primitive
+ * arrays rather than one object per register or bit.
+ *
+ * <p>
+ * Registers and input registers are kept in an <tt>AtomicIntegerArray</tt>,
+ * coils and input discretes in a <tt>long[]</tt> holding 64 bits per element,
+ * so that a full 65536 register table costs 256KB. The objects returned by the
+ * <tt>ProcessImage</tt> getters are views onto the arrays, created on demand,
+ * which read and write the image directly. The objects given to the
+ * <tt>set</tt> and <tt>add</tt> methods only have their value copied in;
+ * later changes made to them are not seen by the image.
+ *
+ * <p>
+ * The bulk accessors copy a range of values straight into, or out of, the
+ * Modbus wire format, which the read requests use in place of the view
+ * objects when serving this image.
+ *
+ * <p>
+ * Registers are read without locking, so a slave serving many clients does
+ * not hold up the thread updating the values. Writes of a single register and
+ * masked writes are atomic, writes of a range are never interleaved with
+ * other range writes but may be seen part done by readers. Adding and
+ * removing objects is meant for setting the image up; removing registers
+ * while requests are being served may lose concurrent writes.
+ *
+ * <p>
+ * Unlike <tt>SimpleProcessImage</tt> the address space has no holes, adding
+ * an object past the end fills the gap with zeros. Files and FIFOs are held
+ * as in <tt>SimpleProcessImage</tt>.
+ */
+public class ArrayProcessImage extends SimpleProcessImage {
+
+    private static final int MAX_SIZE = 65536;
+
+    private volatile AtomicRegisterTable registerTable;
+    private volatile AtomicRegisterTable inputRegisterTable;
+    private long[] coilBits;
+    private int coilCount;
+    private long[] discreteBits;
+    private int discreteCount;
+
+    /**
+     * Constructs a new, empty <tt>ArrayProcessImage</tt> instance.
+     */
+    public ArrayProcessImage() {
+        this(0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Constructs a new <tt>ArrayProcessImage</tt> instance with the given
+     * number of zeroed coils, discretes and registers.
+     *
+     * @param unit           the unit ID of the image.
+     * @param coils          the number of coils.
+     * @param discretes      the number of input discretes.
+     * @param inputRegisters the number of input registers.
+     * @param registers      the number of holding registers.
+     */
+    public ArrayProcessImage(int unit, int coils, int discretes, int inputRegisters, int registers) {
+        super(unit);
+        checkSize(coils);
+        checkSize(discretes);
+        checkSize(inputRegisters);
+        checkSize(registers);
+        coilBits = new long[(coils + 63) >>> 6];
+        coilCount = coils;
+        discreteBits = new long[(discretes + 63) >>> 6];
+        discreteCount = discretes;
+        inputRegisterTable = new AtomicRegisterTable(inputRegisters, inputRegisters);
+        registerTable = new AtomicRegisterTable(registers, registers);
+    }
+
+    /**
+     * Returns the unsigned value of a holding register
+     *
+     * @param ref the reference of the register.
+     *
+     * @return Value
+     *
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public int getRegisterValue(int ref) throws IllegalAddressException {
+        return registerTable.get(ref);
+    }
+
+    /**
+     * Sets the value of a holding register
+     *
+     * @param ref   the reference of the register.
+     * @param value the value, of which the low 16 bits are kept.
+     *
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public void setRegisterValue(int ref, int value) throws IllegalAddressException {
+        AtomicRegisterTable table;
+        do {
+            table = registerTable;
+            table.set(ref, value);
+        } while (table.isRetired());
+    }
+
+    /**
+     * Clears the bits of a holding register not set in the AND mask, then
+     * sets those given by the OR mask, atomically
+     *
+     * @param ref     the reference of the register.
+     * @param andMask the bits to keep.
+     * @param orMask  the bits to set, of those not kept.
+     *
+     * @return the new value.
+     *
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public int maskWriteRegister(int ref, int andMask, int orMask) throws IllegalAddressException {
+        AtomicRegisterTable table;
+        int value;
+        do {
+            table = registerTable;
+            value = table.maskWrite(ref, andMask, orMask);
+        } while (table.isRetired());
+        return value;
+    }
+
+    /**
+     * Sets a range of holding registers
+     *
+     * @param ref    the reference of the first register.
+     * @param values the values, of which the low 16 bits are kept.
+     * @param off    the index in the array of the first value.
+     * @param count  the number of registers to set.
+     *
+     * @throws IllegalAddressException if the range is invalid.
+     */
+    public void setRegisterValues(int ref, int[] values, int off, int count) throws IllegalAddressException {
+        while (!registerTable.setAll(ref, values, off, count)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Copies a range of holding registers, two bytes each with the high byte
+     * first, as they appear in a response frame
+     *
+     * @param ref   the reference of the first register.
+     * @param count the number of registers.
+     * @param dest  the array to copy to.
+     * @param off   the index in the array of the first byte.
+     *
+     * @throws IllegalAddressException if the range is invalid.
+     */
+    public void getRegisterBytes(int ref, int count, byte[] dest, int off) throws IllegalAddressException {
+        registerTable.getBytes(ref, count, dest, off);
+    }
+
+    /**
+     * Sets a range of holding registers from two bytes each, with the high
+     * byte first, as they appear in a request frame
+     *
+     * @param ref   the reference of the first register.
+     * @param count the number of registers.
+     * @param src   the array to copy from.
+     * @param off   the index in the array of the first byte.
+     *
+     * @throws IllegalAddressException if the range is invalid.
+     */
+    public void setRegisterBytes(int ref, int count, byte[] src, int off) throws IllegalAddressException {
+        while (!registerTable.setBytes(ref, count, src, off)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Returns the unsigned value of an input register
+     *
+     * @param ref the reference of the register.
+     *
+     * @return Value
+     *
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public int getInputRegisterValue(int ref) throws IllegalAddressException {
+        return inputRegisterTable.get(ref);
+    }
+
+    /**
+     * Sets the value of an input register
+     *
+     * @param ref   the reference of the register.
+     * @param value the value, of which the low 16 bits are kept.
+     *
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public void setInputRegisterValue(int ref, int value) throws IllegalAddressException {
+        AtomicRegisterTable table;
+        do {
+            table = inputRegisterTable;
+            table.set(ref, value);
+        } while (table.isRetired());
+    }
+
+    /**
+     * Sets a range of input registers
+     *
+     * @param ref    the reference of the first register.
+     * @param values the values, of which the low 16 bits are kept.
+     * @param off    the index in the array of the first value.
+     * @param count  the number of registers to set.
+     *
+     * @throws IllegalAddressException if the range is invalid.
+     */
+    public void setInputRegisterValues(int ref, int[] values, int off, int count) throws IllegalAddressException {
+        while (!inputRegisterTable.setAll(ref, values, off, count)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Copies a range of input registers, two bytes each with the high byte
+     * first, as they appear in a response frame
+     *
+     * @param ref   the reference of the first register.
+     * @param count the number of registers.
+     * @param dest  the array to copy to.
+     * @param off   the index in the array of the first byte.
+     *
+     * @throws IllegalAddressException if the range is invalid.
+     */
+    public void getInputRegisterBytes(int ref, int count, byte[] dest, int off) throws IllegalAddressException {
+        inputRegisterTable.getBytes(ref, count, dest, off);
+    }
+
+    /**
+     * Returns the state of a coil
+     *
+     * @param ref the reference of the coil.
+     *
+     * @return True if set
+     *
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public synchronized boolean getCoil(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, coilCount);
+        return getBit(coilBits, ref);
+    }
+
+    /**
+     * Sets the state of a coil
+     *
+     * @param ref the reference of the coil.
+     * @param b   true to set the coil, false to clear it.
+     *
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public synchronized void setCoil(int ref, boolean b) throws IllegalAddressException {
+        checkRange(ref, 1, coilCount);
+        setBit(coilBits, ref, b);
+    }
+
+    /**
+     * Copies a range of coils packed eight to a byte, the first coil in the
+     * least significant bit, as they appear in a response frame. Unused bits
+     * of the last byte are cleared.
+     *
+     * @param ref   the reference of the first coil.
+     * @param count the number of coils.
+     * @param dest  the array to copy to.
+     * @param off   the index in the array of the first byte.
+     *
+     * @throws IllegalAddressException if the range is invalid.
+     */
+    public synchronized void getCoilBytes(int ref, int count, byte[] dest, int off) throws IllegalAddressException {
+        checkRange(ref, count, coilCount);
+        toBytes(coilBits, ref, count, dest, off);
+    }
+
+    /**
+     * Sets a range of coils from bytes packed as in a request frame, eight to
+     * a byte with the first coil in the least significant bit
+     *
+     * @param ref   the reference of the first coil.
+     * @param count the number of coils.
+     * @param src   the array to copy from.
+     * @param off   the index in the array of the first byte.
+     *
+     * @throws IllegalAddressException if the range is invalid.
+     */
+    public synchronized void setCoilBytes(int ref, int count, byte[] src, int off) throws IllegalAddressException {
+        checkRange(ref, count, coilCount);
+        for (int i = 0; i < count; i++) {
+            setBit(coilBits, ref + i, (src[off + (i >>> 3)] & (1 << (i & 7))) != 0);
+        }
+    }
+
+    /**
+     * Returns the state of an input discrete
+     *
+     * @param ref the reference of the discrete.
+     *
+     * @return True if set
+     *
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public synchronized boolean getDiscrete(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, discreteCount);
+        return getBit(discreteBits, ref);
+    }
+
+    /**
+     * Sets the state of an input discrete
+     *
+     * @param ref the reference of the discrete.
+     * @param b   true to set the discrete, false to clear it.
+     *
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    public synchronized void setDiscrete(int ref, boolean b) throws IllegalAddressException {
+        checkRange(ref, 1, discreteCount);
+        setBit(discreteBits, ref, b);
+    }
+
+    /**
+     * Copies a range of input discretes packed eight to a byte, the first
+     * discrete in the least significant bit, as they appear in a response
+     * frame. Unused bits of the last byte are cleared.
+     *
+     * @param ref   the reference of the first discrete.
+     * @param count the number of discretes.
+     * @param dest  the array to copy to.
+     * @param off   the index in the array of the first byte.
+     *
+     * @throws IllegalAddressException if the range is invalid.
+     */
+    public synchronized void getDiscreteBytes(int ref, int count, byte[] dest, int off) throws IllegalAddressException {
+        checkRange(ref, count, discreteCount);
+        toBytes(discreteBits, ref, count, dest, off);
+    }
+
+    @Override
+    public DigitalOut[] getDigitalOutRange(int ref, int count) {
+        checkRange(ref, count, getDigitalOutCount());
+        DigitalOut[] douts = new DigitalOut[count];
+        for (int i = 0; i < douts.length; i++) {
+            douts[i] = new CoilView(ref + i);
+        }
+        return douts;
+    }
+
+    @Override
+    public DigitalOut getDigitalOut(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, getDigitalOutCount());
+        return new CoilView(ref);
+    }
+
+    @Override
+    public synchronized int getDigitalOutCount() {
+        return coilCount;
+    }
+
+    @Override
+    public DigitalIn[] getDigitalInRange(int ref, int count) {
+        checkRange(ref, count, getDigitalInCount());
+        DigitalIn[] dins = new DigitalIn[count];
+        for (int i = 0; i < dins.length; i++) {
+            dins[i] = new DiscreteView(ref + i);
+        }
+        return dins;
+    }
+
+    @Override
+    public DigitalIn getDigitalIn(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, getDigitalInCount());
+        return new DiscreteView(ref);
+    }
+
+    @Override
+    public synchronized int getDigitalInCount() {
+        return discreteCount;
+    }
+
+    @Override
+    public InputRegister[] getInputRegisterRange(int ref, int count) {
+        checkRange(ref, count, getInputRegisterCount());
+        InputRegister[] iregs = new InputRegister[count];
+        for (int i = 0; i < iregs.length; i++) {
+            iregs[i] = new InputRegisterView(ref + i);
+        }
+        return iregs;
+    }
+
+    @Override
+    public InputRegister getInputRegister(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, getInputRegisterCount());
+        return new InputRegisterView(ref);
+    }
+
+    @Override
+    public int getInputRegisterCount() {
+        return inputRegisterTable.size();
+    }
+
+    @Override
+    public Register[] getRegisterRange(int ref, int count) {
+        checkRange(ref, count, getRegisterCount());
+        Register[] regs = new Register[count];
+        for (int i = 0; i < regs.length; i++) {
+            regs[i] = new RegisterView(ref + i);
+        }
+        return regs;
+    }
+
+    @Override
+    public Register getRegister(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, getRegisterCount());
+        return new RegisterView(ref);
+    }
+
+    @Override
+    public int getRegisterCount() {
+        return registerTable.size();
+    }
+
+    @Override
+    public synchronized void setDigitalOut(int ref, DigitalOut out) throws IllegalAddressException {
+        if (!isLocked()) {
+            setCoil(ref, out.isSet());
+        }
+    }
+
+    @Override
+    public synchronized void addDigitalOut(DigitalOut out) {
+        if (!isLocked()) {
+            addDigitalOut(coilCount, out);
+        }
+    }
+
+    @Override
+    public synchronized void addDigitalOut(int ref, DigitalOut out) {
+        checkReference(ref);
+        if (!isLocked()) {
+            if (ref >= coilCount) {
+                coilBits = grow(coilBits, ref + 1);
+                coilCount = ref + 1;
+            }
+            setBit(coilBits, ref, out.isSet());
+        }
+    }
+
+    /**
+     * Removes a coil obtained from this image, moving the coils above it down
+     * one place. Other objects are ignored.
+     *
+     * @param out the <tt>DigitalOut</tt> instance to be removed.
+     */
+    @Override
+    public synchronized void removeDigitalOut(DigitalOut out) {
+        if (!isLocked() && out instanceof CoilView && ((CoilView)out).image() == this && ((CoilView)out).ref < coilCount) {
+            removeBit(coilBits, ((CoilView)out).ref, coilCount--);
+        }
+    }
+
+    @Override
+    public synchronized void setDigitalIn(int ref, DigitalIn di) throws IllegalAddressException {
+        if (!isLocked()) {
+            setDiscrete(ref, di.isSet());
+        }
+    }
+
+    @Override
+    public synchronized void addDigitalIn(DigitalIn di) {
+        if (!isLocked()) {
+            addDigitalIn(discreteCount, di);
+        }
+    }
+
+    @Override
+    public synchronized void addDigitalIn(int ref, DigitalIn di) {
+        checkReference(ref);
+        if (!isLocked()) {
+            if (ref >= discreteCount) {
+                discreteBits = grow(discreteBits, ref + 1);
+                discreteCount = ref + 1;
+            }
+            setBit(discreteBits, ref, di.isSet());
+        }
+    }
+
+    /**
+     * Removes a discrete obtained from this image, moving the discretes above
+     * it down one place. Other objects are ignored.
+     *
+     * @param di the <tt>DigitalIn</tt> instance to be removed.
+     */
+    @Override
+    public synchronized void removeDigitalIn(DigitalIn di) {
+        if (!isLocked() && di instanceof DiscreteView && ((DiscreteView)di).image() == this && ((DiscreteView)di).ref < discreteCount) {
+            removeBit(discreteBits, ((DiscreteView)di).ref, discreteCount--);
+        }
+    }
+
+    @Override
+    public synchronized void setInputRegister(int ref, InputRegister reg) throws IllegalAddressException {
+        if (!isLocked()) {
+            setInputRegisterValue(ref, reg.getValue());
+        }
+    }
+
+    @Override
+    public synchronized void addInputRegister(InputRegister reg) {
+        if (!isLocked()) {
+            addInputRegister(inputRegisterTable.size(), reg);
+        }
+    }
+
+    @Override
+    public synchronized void addInputRegister(int ref, InputRegister reg) {
+        checkReference(ref);
+        if (!isLocked()) {
+            inputRegisterTable = extend(inputRegisterTable, ref + 1);
+            setInputRegisterValue(ref, reg.getValue());
+        }
+    }
+
+    /**
+     * Removes an input register obtained from this image, moving the
+     * registers above it down one place. Other objects are ignored.
+     *
+     * @param reg the <tt>InputRegister</tt> instance to be removed.
+     */
+    @Override
+    public synchronized void removeInputRegister(InputRegister reg) {
+        if (!isLocked() && reg instanceof InputRegisterView && ((InputRegisterView)reg).image() == this) {
+            int ref = ((InputRegisterView)reg).ref;
+            if (ref < inputRegisterTable.size()) {
+                inputRegisterTable.remove(ref);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void setRegister(int ref, Register reg) throws IllegalAddressException {
+        if (!isLocked()) {
+            setRegisterValue(ref, reg.getValue());
+        }
+    }
+
+    @Override
+    public synchronized void addRegister(Register reg) {
+        if (!isLocked()) {
+            addRegister(registerTable.size(), reg);
+        }
+    }
+
+    @Override
+    public synchronized void addRegister(int ref, Register reg) {
+        checkReference(ref);
+        if (!isLocked()) {
+            registerTable = extend(registerTable, ref + 1);
+            setRegisterValue(ref, reg.getValue());
+        }
+    }
+
+    /**
+     * Removes a register obtained from this image, moving the registers above
+     * it down one place. Other objects are ignored.
+     *
+     * @param reg the <tt>Register</tt> instance to be removed.
+     */
+    @Override
+    public synchronized void removeRegister(Register reg) {
+        if (!isLocked() && reg instanceof RegisterView && ((RegisterView)reg).image() == this) {
+            int ref = ((RegisterView)reg).ref;
+            if (ref < registerTable.size()) {
+                registerTable.remove(ref);
+            }
+        }
+    }
+
+    /**
+     * Checks that a size fits the Modbus address space
+     *
+     * @param size the number of objects.
+     */
+    private static void checkSize(int size) {
+        if (size < 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid size: " + size);
+        }
+    }
+
+    /**
+     * Checks that a reference given to an <tt>add</tt> method fits the Modbus
+     * address space
+     *
+     * @param ref the reference.
+     */
+    private static void checkReference(int ref) {
+        if (ref < 0 || ref >= MAX_SIZE) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Checks that a range of references lies within a table
+     *
+     * @param ref   the first reference.
+     * @param count the number of references.
+     * @param size  the size of the table.
+     *
+     * @throws IllegalAddressException if the range is invalid.
+     */
+    private static void checkRange(int ref, int count, int size) throws IllegalAddressException {
+        if (ref < 0 || count < 0 || ref + count > size) {
+            throw new IllegalAddressException();
+        }
+    }
+
+    /**
+     * Writes bits into an array eight to a byte, first bit in the least
+     * significant position, taking each byte from at most two elements of the
+     * bitset
+     */
+    private static void toBytes(long[] bits, int ref, int count, byte[] dest, int off) {
+        for (int i = 0; i < count; i += 8, off++) {
+            int bit = ref + i;
+            int word = bit >>> 6;
+            int shift = bit & 63;
+            long value = bits[word] >>> shift;
+            if (shift > 56 && word + 1 < bits.length) {
+                value |= bits[word + 1] << (64 - shift);
+            }
+            int left = count - i;
+            if (left < 8) {
+                value &= (1 << left) - 1;
+            }
+            dest[off] = (byte)value;
+        }
+    }
+
+    private static boolean getBit(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static void setBit(long[] bits, int index, boolean b) {
+        if (b) {
+            bits[index >>> 6] |= 1L << index;
+        }
+        else {
+            bits[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * Removes a bit from a bitset, moving the bits above it down one place
+     */
+    private static void removeBit(long[] bits, int index, int size) {
+        for (int i = index; i < size - 1; i++) {
+            setBit(bits, i, getBit(bits, i + 1));
+        }
+        setBit(bits, size - 1, false);
+    }
+
+    /**
+     * Grows a table to hold at least the given number of entries, doubling
+     * its capacity to keep repeated additions cheap
+     */
+    private static AtomicRegisterTable extend(AtomicRegisterTable table, int size) {
+        if (size <= table.size()) {
+            return table;
+        }
+        if (size <= table.capacity()) {
+            table.extend(size);
+            return table;
+        }
+        return table.grow(size, MAX_SIZE);
+    }
+
+    private static long[] grow(long[] bits, int size) {
+        int words = (size + 63) >>> 6;
+        if (words <= bits.length) {
+            return bits;
+        }
+        return Arrays.copyOf(bits, Math.min(MAX_SIZE >>> 6, Math.max(words, bits.length * 2)));
+    }
+
+    /**
+     * Coil backed by the image
+     */
+    private class CoilView implements DigitalOut {
+        final int ref;
+
+        CoilView(int ref) {
+            this.ref = ref;
+        }
+
+        ArrayProcessImage image() {
+            return ArrayProcessImage.this;
+        }
+
+        public boolean isSet() {
+            return getCoil(ref);
+        }
+
+        public void set(boolean b) {
+            setCoil(ref, b);
+        }
+    }
+
+    /**
+     * Input discrete backed by the image
+     */
+    private class DiscreteView implements DigitalIn {
+        final int ref;
+
+        DiscreteView(int ref) {
+            this.ref = ref;
+        }
+
+        ArrayProcessImage image() {
+            return ArrayProcessImage.this;
+        }
+
+        public boolean isSet() {
+            return getDiscrete(ref);
+        }
+    }
+
+    /**
+     * Input register backed by the image
+     */
+    private class InputRegisterView implements InputRegister {
+        final int ref;
+
+        InputRegisterView(int ref) {
+            this.ref = ref;
+        }
+
+        ArrayProcessImage image() {
+            return ArrayProcessImage.this;
+        }
+
+        public int getValue() {
+            return getInputRegisterValue(ref);
+        }
+
+        public int toUnsignedShort() {
+            return getValue();
+        }
+
+        public short toShort() {
+            return (short)getValue();
+        }
+
+        public byte[] toBytes() {
+            int value = getValue();
+            return new byte[]{(byte)(value >> 8), (byte)value};
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getValue());
+        }
+    }
+
+    /**
+     * Holding register backed by the image
+     */
+    private class RegisterView implements Register {
+        final int ref;
+
+        RegisterView(int ref) {
+            this.ref = ref;
+        }
+
+        ArrayProcessImage image() {
+            return ArrayProcessImage.this;
+        }
+
+        public int getValue() {
+            return getRegisterValue(ref);
+        }
+
+        public int toUnsignedShort() {
+            return getValue();
+        }
+
+        public short toShort() {
+            return (short)getValue();
+        }
+
+        public byte[] toBytes() {
+            int value = getValue();
+            return new byte[]{(byte)(value >> 8), (byte)value};
+        }
+
+        public void setValue(int v) {
+            setRegisterValue(ref, v);
+        }
+
+        public void setValue(short s) {
+            setRegisterValue(ref, s);
+        }
+
+        public void setValue(byte[] bytes) {
+            if (bytes.length < 2) {
+                throw new IllegalArgumentException();
+            }
+            setRegisterBytes(ref, 1, bytes, 0);
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getValue());
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.procimg;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Table of 16-bit register values that can be read and written by many
+ * threads at once.
+ *
+ * <p>
+ * Reads never lock. Single register writes are plain atomic stores and
+ * masked writes a compare and set loop. Writes of several registers take
+ * the locks of the stripes covering the range, in ascending order, so that
+ * two of them over the same registers are never interleaved. A stripe is a
+ * block of 64 registers, with the blocks dealt round a fixed set of locks.
+ *
+ * <p>
+ * A table has a fixed capacity. When the process image needs more room it
+ * copies the table into a larger one and retires the old table; writers
+ * that find the table they wrote to retired redo the write on the new one.
+ */
+final class AtomicRegisterTable {
+
+    private static final int STRIPES = 16;
+    private static final int STRIPE_SHIFT = 6;
+
+    private final AtomicIntegerArray values;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private volatile int size;
+    private volatile boolean retired;
+
+    /**
+     * Constructs a table of zeroed registers
+     *
+     * @param size     the number of registers in use.
+     * @param capacity the number of registers the table can hold.
+     */
+    AtomicRegisterTable(int size, int capacity) {
+        values = new AtomicIntegerArray(capacity);
+        this.size = size;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Returns the number of registers in use
+     *
+     * @return Size
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of registers the table can hold
+     *
+     * @return Capacity
+     */
+    int capacity() {
+        return values.length();
+    }
+
+    /**
+     * Tests if the table has been replaced by a larger one
+     *
+     * @return True if writes must be redone on the new table
+     */
+    boolean isRetired() {
+        return retired;
+    }
+
+    /**
+     * Returns the unsigned value of a register
+     *
+     * @param ref the reference of the register.
+     *
+     * @return Value
+     *
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    int get(int ref) throws IllegalAddressException {
+        checkRange(ref, 1);
+        return values.get(ref);
+    }
+
+    /**
+     * Sets the value of a register
+     *
+     * @param ref   the reference of the register.
+     * @param value the value, of which the low 16 bits are kept.
+     *
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    void set(int ref, int value) throws IllegalAddressException {
+        checkRange(ref, 1);
+        values.set(ref, value & 0xffff);
+    }
+
+    /**
+     * Clears the bits of a register not set in the AND mask, then sets those
+     * given by the OR mask, as the Mask Write Register function does
+     *
+     * @param ref     the reference of the register.
+     * @param andMask the bits to keep.
+     * @param orMask  the bits to set, of those not kept.
+     *
+     * @return the new value.
+     *
+     * @throws IllegalAddressException if the reference is invalid.
+     */
+    int maskWrite(int ref, int andMask, int orMask) throws IllegalAddressException {
+        checkRange(ref, 1);
+        int current;
+        int next;
+        do {
+            current = values.get(ref);
+            next = ((current & andMask) | (orMask & ~andMask)) & 0xffff;
+        } while (!values.compareAndSet(ref, current, next));
+        return next;
+    }
+
+    /**
+     * Sets a range of registers from an array of values, without
+     * interleaving with other range writes
+     *
+     * @param ref    the reference of the first register.
+     * @param src    the values, of which the low 16 bits are kept.
+     * @param off    the index in the array of the first value.
+     * @param count  the number of registers.
+     *
+     * @return false if the table was retired and nothing was written.
+     *
+     * @throws IllegalAddressException if the range is invalid.
+     */
+    boolean setAll(int ref, int[] src, int off, int count) throws IllegalAddressException {
+        checkRange(ref, count);
+        int stripes = lock(ref, count);
+        try {
+            if (retired) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                values.set(ref + i, src[off + i] & 0xffff);
+            }
+            return true;
+        }
+        finally {
+            unlock(stripes);
+        }
+    }
+
+    /**
+     * Sets a range of registers from two bytes each, high byte first,
+     * without interleaving with other range writes
+     *
+     * @param ref    the reference of the first register.
+     * @param count  the number of registers.
+     * @param src    the array to copy from.
+     * @param off    the index in the array of the first byte.
+     *
+     * @return false if the table was retired and nothing was written.
+     *
+     * @throws IllegalAddressException if the range is invalid.
+     */
+    boolean setBytes(int ref, int count, byte[] src, int off) throws IllegalAddressException {
+        checkRange(ref, count);
+        int stripes = lock(ref, count);
+        try {
+            if (retired) {
+                return false;
+            }
+            for (int i = 0; i < count; i++, off += 2) {
+                values.set(ref + i, ((src[off] & 0xff) << 8) | (src[off + 1] & 0xff));
+            }
+            return true;
+        }
+        finally {
+            unlock(stripes);
+        }
+    }
+
+    /**
+     * Copies a range of registers as two bytes each, high byte first
+     *
+     * @param ref   the reference of the first register.
+     * @param count the number of registers.
+     * @param dest  the array to copy to.
+     * @param off   the index in the array of the first byte.
+     *
+     * @throws IllegalAddressException if the range is invalid.
+     */
+    void getBytes(int ref, int count, byte[] dest, int off) throws IllegalAddressException {
+        checkRange(ref, count);
+        for (int i = ref; i < ref + count; i++) {
+            int value = values.get(i);
+            dest[off++] = (byte)(value >> 8);
+            dest[off++] = (byte)value;
+        }
+    }
+
+    /**
+     * Returns a copy of this table with room for at least the given number of
+     * registers, retiring this one. Called by the owning image while it holds
+     * its own lock.
+     *
+     * @param size the number of registers in use in the new table.
+     * @param max  the largest capacity allowed.
+     *
+     * @return the new table.
+     */
+    AtomicRegisterTable grow(int size, int max) {
+        AtomicRegisterTable table = new AtomicRegisterTable(size, Math.min(max, Math.max(size, capacity() * 2)));
+        int stripes = lock(0, capacity());
+        try {
+            // Retire before copying so that a write missed by the copy sees it
+            retired = true;
+            for (int i = 0; i < this.size; i++) {
+                table.values.set(i, values.get(i));
+            }
+        }
+        finally {
+            unlock(stripes);
+        }
+        return table;
+    }
+
+    /**
+     * Makes the table larger within its capacity. Called by the owning image
+     * while it holds its own lock.
+     *
+     * @param size the new number of registers in use.
+     */
+    void extend(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Removes a register, moving those above it down one place. Called by
+     * the owning image while it holds its own lock.
+     *
+     * @param ref the reference of the register.
+     */
+    void remove(int ref) {
+        int stripes = lock(0, capacity());
+        try {
+            int last = size - 1;
+            for (int i = ref; i < last; i++) {
+                values.set(i, values.get(i + 1));
+            }
+            values.set(last, 0);
+            size = last;
+        }
+        finally {
+            unlock(stripes);
+        }
+    }
+
+    /**
+     * Checks that a range of references lies within the table
+     */
+    private void checkRange(int ref, int count) throws IllegalAddressException {
+        if (ref < 0 || count < 0 || ref + count > size) {
+            throw new IllegalAddressException();
+        }
+    }
+
+    /**
+     * Takes the locks of the stripes covering a range in ascending order
+     *
+     * @return a mask of the stripes locked.
+     */
+    private int lock(int ref, int count) {
+        int stripes = 0;
+        int last = count > 0 ? (ref + count - 1) >>> STRIPE_SHIFT : ref >>> STRIPE_SHIFT;
+        for (int block = ref >>> STRIPE_SHIFT; block <= last && stripes != (1 << STRIPES) - 1; block++) {
+            stripes |= 1 << (block & (STRIPES - 1));
+        }
+        for (int i = 0; i < STRIPES; i++) {
+            if ((stripes & (1 << i)) != 0) {
+                locks[i].lock();
+            }
+        }
+        return stripes;
+    }
+
+    private void unlock(int stripes) {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            if ((stripes & (1 << i)) != 0) {
+                locks[i].unlock();
+            }
+        }
+    }
+}
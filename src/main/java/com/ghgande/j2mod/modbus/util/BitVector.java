@@ -18,6 +18,9 @@ package com.ghgande.j2mod.modbus.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Class that implements a collection for
  * bits, storing them packed into bytes.
@@ -161,6 +164,20 @@ public final class BitVector {
         return dest;
     }
 
+    /**
+     * Writes the <tt>byte[]</tt> which stores the bits
+     * of this <tt>BitVector</tt> to the given output,
+     * without copying it first.
+     * <p>
+     *
+     * @param dout the <tt>DataOutput</tt> to write to.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public synchronized final void writeBytes(DataOutput dout) throws IOException {
+        dout.write(data, 0, data.length);
+    }
+
     /**
      * Sets the <tt>byte[]</tt> which stores
      * the bits of this <tt>BitVector</tt>.
@@ -225,6 +242,46 @@ public final class BitVector {
         );
     }
 
+    /**
+     * Copies the bits of this <tt>BitVector</tt> into an array of
+     * <tt>long</tt>, bit <tt>i</tt> going to bit <tt>i % 64</tt> of
+     * element <tt>i / 64</tt>. Bits beyond the size are cleared.
+     * <p>
+     *
+     * @param dest the array to copy to, at least <tt>(size() + 63) / 64</tt> long.
+     *
+     * @return the number of bits copied.
+     *
+     * @throws IndexOutOfBoundsException if the array is too short.
+     */
+    public synchronized final int getBits(long[] dest) throws IndexOutOfBoundsException {
+        int words = (size + 63) >>> 6;
+        if (dest.length < words) {
+            throw new IndexOutOfBoundsException(dest.length + " < " + words);
+        }
+        for (int i = 0; i < words; i++) {
+            dest[i] = 0;
+        }
+        if (MSBAccess) {
+            for (int i = 0; i < size; i++) {
+                if (getBit(i)) {
+                    dest[i >>> 6] |= 1L << (i & 63);
+                }
+            }
+        }
+        else {
+            // The bytes hold the bits least significant first, just like a long
+            int bytes = Math.min((size + 7) >>> 3, data.length);
+            for (int i = 0; i < bytes; i++) {
+                dest[i >>> 3] |= (data[i] & 0xFFL) << ((i & 7) << 3);
+            }
+            if ((size & 63) != 0) {
+                dest[words - 1] &= (1L << (size & 63)) - 1;
+            }
+        }
+        return size;
+    }
+
     /**
      * Returns the number of bits in this <tt>BitVector</tt>
      * as <tt>int</tt>.
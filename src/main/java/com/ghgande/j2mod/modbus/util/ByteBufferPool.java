@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread safe pool of byte buffers of one size, so that the buffers each
+ * datagram is read into and written from are reused rather than allocated
+ * afresh.
+ *
+ * <p>
+ * Direct buffers are read and written by channels without a copy, but are
+ * expensive to allocate, so are worth pooling most of all. The pool never
+ * blocks, a new buffer is allocated whenever it is empty, and buffers
+ * released once it is full are left for the garbage collector.
+ */
+public class ByteBufferPool {
+
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+
+    /**
+     * Creates an empty pool
+     *
+     * @param bufferSize Capacity of each buffer in bytes
+     * @param maxPooled  Most buffers kept for reuse
+     * @param direct     True to allocate direct buffers
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled, boolean direct) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be at least 1");
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, allocating one if the pool is
+     * empty
+     *
+     * @return Buffer with its position at 0 and its limit at its capacity
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back to the pool. It must not be used by the caller
+     * afterwards.
+     *
+     * @param buffer Buffer taken from this pool, ignored if null
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            buffers.offer(buffer);
+        }
+        else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the capacity of the buffers in this pool
+     *
+     * @return Size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of buffers waiting in the pool to be reused
+     *
+     * @return Number of buffers
+     */
+    public int getPooledCount() {
+        return pooled.get();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helper class that calculates the CRC-16/MODBUS checksum of RTU frames.
+ *
+ * <p>
+ * The checksum is returned as an <tt>int</tt> between 0 and 0xFFFF, its low
+ * byte being the first of the two sent on the wire. Nothing is allocated, and
+ * a checksum can be built up a piece at a time by passing the result of one
+ * <tt>update</tt> to the next, starting from {@link #INITIAL}, so a streaming
+ * decoder can check a frame as it arrives.
+ *
+ * <p>
+ * Long runs of bytes are processed eight at a time (slicing-by-8) and then
+ * four at a time, each step looking up one table per byte, so that the
+ * lookups don't depend on each other and can overlap.
+ */
+public final class CRC16 {
+
+    /**
+     * Value to start a checksum from
+     */
+    public static final int INITIAL = 0xFFFF;
+
+    /**
+     * Reflected form of the polynomial 0x8005
+     */
+    private static final int POLYNOMIAL = 0xA001;
+
+    /* Eight tables of 256 entries, table k gives the effect of a byte followed by k zero bytes */
+    private static final int[] TABLES = createTables();
+
+    /**
+     * Prevent instantiation
+     */
+    private CRC16() {
+    }
+
+    /**
+     * Calculates the checksum of part of an array
+     *
+     * @param data   Array holding the bytes
+     * @param offset Index of the first byte
+     * @param length Number of bytes
+     *
+     * @return Checksum, low byte first on the wire
+     */
+    public static int calculate(byte[] data, int offset, int length) {
+        return update(INITIAL, data, offset, length);
+    }
+
+    /**
+     * Calculates the checksum of the bytes between the position and the limit
+     * of a buffer, leaving its position at its limit
+     *
+     * @param buffer Buffer holding the bytes
+     *
+     * @return Checksum, low byte first on the wire
+     */
+    public static int calculate(ByteBuffer buffer) {
+        return update(INITIAL, buffer);
+    }
+
+    /**
+     * Adds a byte to a checksum
+     *
+     * @param crc   Checksum so far, {@link #INITIAL} to start one
+     * @param value Byte to add
+     *
+     * @return Updated checksum
+     */
+    public static int update(int crc, int value) {
+        return (crc >>> 8) ^ TABLES[(crc ^ value) & 0xFF];
+    }
+
+    /**
+     * Adds part of an array to a checksum
+     *
+     * @param crc    Checksum so far, {@link #INITIAL} to start one
+     * @param data   Array holding the bytes
+     * @param offset Index of the first byte
+     * @param length Number of bytes
+     *
+     * @return Updated checksum
+     */
+    public static int update(int crc, byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > data.length - length) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " is outside an array of " + data.length);
+        }
+        int[] t = TABLES;
+        int i = offset;
+        int end = offset + length;
+        for (; i <= end - 8; i += 8) {
+            crc ^= (data[i] & 0xFF) | ((data[i + 1] & 0xFF) << 8);
+            crc = t[1792 + (crc & 0xFF)] ^ t[1536 + (crc >>> 8)]
+                    ^ t[1280 + (data[i + 2] & 0xFF)] ^ t[1024 + (data[i + 3] & 0xFF)]
+                    ^ t[768 + (data[i + 4] & 0xFF)] ^ t[512 + (data[i + 5] & 0xFF)]
+                    ^ t[256 + (data[i + 6] & 0xFF)] ^ t[data[i + 7] & 0xFF];
+        }
+        if (i <= end - 4) {
+            crc ^= (data[i] & 0xFF) | ((data[i + 1] & 0xFF) << 8);
+            crc = t[768 + (crc & 0xFF)] ^ t[512 + (crc >>> 8)]
+                    ^ t[256 + (data[i + 2] & 0xFF)] ^ t[data[i + 3] & 0xFF];
+            i += 4;
+        }
+        for (; i < end; i++) {
+            crc = (crc >>> 8) ^ t[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    /**
+     * Adds the bytes between the position and the limit of a buffer to a
+     * checksum, leaving its position at its limit
+     *
+     * @param crc    Checksum so far, {@link #INITIAL} to start one
+     * @param buffer Buffer holding the bytes
+     *
+     * @return Updated checksum
+     */
+    public static int update(int crc, ByteBuffer buffer) {
+        int position = buffer.position();
+        int end = buffer.limit();
+        if (buffer.hasArray()) {
+            crc = update(crc, buffer.array(), buffer.arrayOffset() + position, end - position);
+        }
+        else {
+            int[] t = TABLES;
+            int i = position;
+            for (; i <= end - 8; i += 8) {
+                crc ^= (buffer.get(i) & 0xFF) | ((buffer.get(i + 1) & 0xFF) << 8);
+                crc = t[1792 + (crc & 0xFF)] ^ t[1536 + (crc >>> 8)]
+                        ^ t[1280 + (buffer.get(i + 2) & 0xFF)] ^ t[1024 + (buffer.get(i + 3) & 0xFF)]
+                        ^ t[768 + (buffer.get(i + 4) & 0xFF)] ^ t[512 + (buffer.get(i + 5) & 0xFF)]
+                        ^ t[256 + (buffer.get(i + 6) & 0xFF)] ^ t[buffer.get(i + 7) & 0xFF];
+            }
+            for (; i < end; i++) {
+                crc = (crc >>> 8) ^ t[(crc ^ buffer.get(i)) & 0xFF];
+            }
+        }
+        buffer.position(end);
+        return crc;
+    }
+
+    /**
+     * Builds the lookup tables, the first for single bytes and each of the
+     * others one more zero byte further on
+     *
+     * @return Tables, one after another
+     */
+    private static int[] createTables() {
+        int[] tables = new int[8 * 256];
+        for (int n = 0; n < 256; n++) {
+            int crc = n;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            tables[n] = crc;
+        }
+        for (int k = 1; k < 8; k++) {
+            for (int n = 0; n < 256; n++) {
+                int previous = tables[(k - 1) * 256 + n];
+                tables[k * 256 + n] = (previous >>> 8) ^ tables[previous & 0xFF];
+            }
+        }
+        return tables;
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <tt>ModbusMetrics</tt> that keeps counters and a latency histogram in
+ * memory for each device, unit ID and function code, to be read back
+ * programmatically.
+ *
+ * <p>
+ * Recording is lock-free; counters are created the first time a device,
+ * unit and function code are seen and never removed until
+ * {@link #clear()}. Byte counts are the message lengths as reported by
+ * {@link com.ghgande.j2mod.modbus.msg.ModbusMessageImpl#getOutputLength()},
+ * and only responses that arrive are timed. Masters and slaves should be
+ * given separate instances, as bytes in and out are seen from the side
+ * doing the recording.
+ */
+public class InMemoryModbusMetrics implements ModbusMetrics {
+
+    private static final int UNITS = 256;
+    private static final int FUNCTION_CODES = 128;
+
+    private final ConcurrentMap<String, AtomicReferenceArray<AtomicReferenceArray<Counters>>> devices =
+            new ConcurrentHashMap<String, AtomicReferenceArray<AtomicReferenceArray<Counters>>>();
+
+    @Override
+    public void transactionCompleted(String device, ModbusRequest request, ModbusResponse response, long nanos) {
+        Counters counters = getOrCreate(device, request);
+        counters.requests.incrementAndGet();
+        counters.bytesOut.addAndGet(request.getOutputLength());
+        counters.bytesIn.addAndGet(response.getOutputLength());
+        counters.recordException(response);
+        counters.latency.record(nanos);
+    }
+
+    @Override
+    public void transactionFailed(String device, ModbusRequest request, boolean timeout, long nanos) {
+        Counters counters = getOrCreate(device, request);
+        counters.requests.incrementAndGet();
+        counters.failures.incrementAndGet();
+        if (timeout) {
+            counters.timeouts.incrementAndGet();
+        }
+        counters.bytesOut.addAndGet(request.getOutputLength());
+    }
+
+    @Override
+    public void transactionRetried(String device, ModbusRequest request) {
+        Counters counters = getOrCreate(device, request);
+        counters.retries.incrementAndGet();
+        counters.bytesOut.addAndGet(request.getOutputLength());
+    }
+
+    @Override
+    public void requestHandled(String device, ModbusRequest request, ModbusResponse response, long nanos) {
+        Counters counters = getOrCreate(device, request);
+        counters.requests.incrementAndGet();
+        counters.bytesIn.addAndGet(request.getOutputLength());
+        counters.bytesOut.addAndGet(response.getOutputLength());
+        counters.recordException(response);
+        counters.latency.record(nanos);
+    }
+
+    /**
+     * Returns the names of the devices seen so far
+     *
+     * @return Sorted set of names
+     */
+    public Set<String> getDevices() {
+        return Collections.unmodifiableSet(new TreeSet<String>(devices.keySet()));
+    }
+
+    /**
+     * Returns the counters for a device, unit ID and function code
+     *
+     * @param device       the name of the device.
+     * @param unitId       the unit ID.
+     * @param functionCode the function code.
+     *
+     * @return Counters or null if there have been no such requests
+     */
+    public Counters getCounters(String device, int unitId, int functionCode) {
+        AtomicReferenceArray<AtomicReferenceArray<Counters>> units = devices.get(device);
+        if (units == null) {
+            return null;
+        }
+        AtomicReferenceArray<Counters> codes = units.get(unitId & 0xFF);
+        return codes == null ? null : codes.get(functionCode & 0x7F);
+    }
+
+    /**
+     * Returns all the counters for a device, ordered by unit ID and then
+     * function code
+     *
+     * @param device the name of the device.
+     *
+     * @return List of counters, empty if the device hasn't been seen
+     */
+    public List<Counters> getCounters(String device) {
+        List<Counters> list = new ArrayList<Counters>();
+        AtomicReferenceArray<AtomicReferenceArray<Counters>> units = devices.get(device);
+        if (units != null) {
+            for (int unit = 0; unit < UNITS; unit++) {
+                AtomicReferenceArray<Counters> codes = units.get(unit);
+                for (int code = 0; codes != null && code < FUNCTION_CODES; code++) {
+                    if (codes.get(code) != null) {
+                        list.add(codes.get(code));
+                    }
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Forgets everything recorded so far
+     */
+    public void clear() {
+        devices.clear();
+    }
+
+    /**
+     * Returns the counters for the device, unit and function code of a
+     * request, creating them if need be
+     *
+     * @param device  the name of the device.
+     * @param request the request.
+     *
+     * @return Counters
+     */
+    private Counters getOrCreate(String device, ModbusRequest request) {
+        String name = device == null ? "" : device;
+        AtomicReferenceArray<AtomicReferenceArray<Counters>> units = devices.get(name);
+        if (units == null) {
+            units = new AtomicReferenceArray<AtomicReferenceArray<Counters>>(UNITS);
+            AtomicReferenceArray<AtomicReferenceArray<Counters>> existing = devices.putIfAbsent(name, units);
+            if (existing != null) {
+                units = existing;
+            }
+        }
+        int unitId = request.getUnitID() & 0xFF;
+        AtomicReferenceArray<Counters> codes = units.get(unitId);
+        if (codes == null) {
+            units.compareAndSet(unitId, null, new AtomicReferenceArray<Counters>(FUNCTION_CODES));
+            codes = units.get(unitId);
+        }
+        int functionCode = request.getFunctionCode() & 0x7F;
+        Counters counters = codes.get(functionCode);
+        if (counters == null) {
+            codes.compareAndSet(functionCode, null, new Counters(name, unitId, functionCode));
+            counters = codes.get(functionCode);
+        }
+        return counters;
+    }
+
+    /**
+     * Counters for a single device, unit ID and function code
+     */
+    public static final class Counters {
+
+        private final String device;
+        private final int unitId;
+        private final int functionCode;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong bytesOut = new AtomicLong();
+        private final AtomicLong bytesIn = new AtomicLong();
+        private final AtomicLongArray exceptions = new AtomicLongArray(256);
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Counters(String device, int unitId, int functionCode) {
+            this.device = device;
+            this.unitId = unitId;
+            this.functionCode = functionCode;
+        }
+
+        /**
+         * Counts the exception code of a response, if it is an exception
+         * response
+         *
+         * @param response the response.
+         */
+        void recordException(ModbusResponse response) {
+            if (response instanceof ExceptionResponse) {
+                exceptions.incrementAndGet(((ExceptionResponse)response).getExceptionCode() & 0xFF);
+            }
+        }
+
+        /**
+         * Returns the name of the device
+         *
+         * @return Device name
+         */
+        public String getDevice() {
+            return device;
+        }
+
+        /**
+         * Returns the unit ID
+         *
+         * @return Unit ID
+         */
+        public int getUnitID() {
+            return unitId;
+        }
+
+        /**
+         * Returns the function code
+         *
+         * @return Function code
+         */
+        public int getFunctionCode() {
+            return functionCode;
+        }
+
+        /**
+         * Returns the number of requests, whether or not they succeeded
+         *
+         * @return Count
+         */
+        public long getRequests() {
+            return requests.get();
+        }
+
+        /**
+         * Returns the number of requests that got no response at all
+         *
+         * @return Count
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * Returns the number of failed requests whose last attempt timed out
+         *
+         * @return Count
+         */
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        /**
+         * Returns the number of times requests were sent again
+         *
+         * @return Count
+         */
+        public long getRetries() {
+            return retries.get();
+        }
+
+        /**
+         * Returns the number of bytes sent
+         *
+         * @return Byte count
+         */
+        public long getBytesOut() {
+            return bytesOut.get();
+        }
+
+        /**
+         * Returns the number of bytes received
+         *
+         * @return Byte count
+         */
+        public long getBytesIn() {
+            return bytesIn.get();
+        }
+
+        /**
+         * Returns the number of exception responses with the given code
+         *
+         * @param exceptionCode the exception code.
+         *
+         * @return Count
+         */
+        public long getExceptions(int exceptionCode) {
+            return exceptions.get(exceptionCode & 0xFF);
+        }
+
+        /**
+         * Returns the number of exception responses of any code
+         *
+         * @return Count
+         */
+        public long getExceptions() {
+            long total = 0;
+            for (int i = 0; i < exceptions.length(); i++) {
+                total += exceptions.get(i);
+            }
+            return total;
+        }
+
+        /**
+         * Returns the histogram of response latencies
+         *
+         * @return Histogram
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helper class that creates the executors the listeners and masters can run
+ * their blocking work on.
+ *
+ * <p>
+ * On Java 21 and later {@link #newThreadPerTaskExecutor(String)} starts a
+ * virtual thread for each task, so that a listener can serve tens of
+ * thousands of connections, each blocked in a read, with a thread apiece.
+ * The library is built for Java 8, so the virtual threads are found at
+ * runtime and older JVMs get a platform thread for each task instead.
+ */
+public final class ModbusExecutors {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusExecutors.class);
+
+    private static final boolean VIRTUAL_THREADS = probeVirtualThreads();
+
+    /**
+     * Prevent instantiation
+     */
+    private ModbusExecutors() {
+    }
+
+    /**
+     * Tests if this JVM can run tasks on virtual threads
+     *
+     * @return True on Java 21 and later
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREADS;
+    }
+
+    /**
+     * Creates an executor that starts a new thread for each task, a virtual
+     * one if the JVM supports them or else a daemon platform thread, named
+     * after the prefix
+     *
+     * @param name Prefix of the thread names
+     *
+     * @return Executor, which must be shut down by the caller once finished with
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String name) {
+        if (VIRTUAL_THREADS) {
+            try {
+                return newVirtualThreadPerTaskExecutor(name);
+            }
+            catch (Exception e) {
+                logger.warn("Cannot create virtual threads, using platform threads instead", e);
+            }
+        }
+        return Executors.newCachedThreadPool(newDaemonThreadFactory(name));
+    }
+
+    /**
+     * Creates a factory of named daemon platform threads, so that the tasks
+     * run on them don't keep the application alive
+     *
+     * @param name Prefix of the thread names
+     *
+     * @return Thread factory
+     */
+    public static ThreadFactory newDaemonThreadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, name + " " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Calls <tt>Executors.newThreadPerTaskExecutor</tt> with a factory of
+     * virtual threads, through reflection so that this class still loads on
+     * older JVMs
+     *
+     * @param name Prefix of the thread names
+     *
+     * @return Executor
+     *
+     * @throws Exception If the virtual thread API is missing or disabled
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor(String name) throws Exception {
+        Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + " ", 1L);
+        ThreadFactory factory = (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+        Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        return (ExecutorService)newExecutor.invoke(null, factory);
+    }
+
+    /**
+     * Checks whether virtual threads can be created, which needs Java 21 or
+     * Java 19 and 20 with preview features enabled
+     *
+     * @return True if they can
+     */
+    private static boolean probeVirtualThreads() {
+        try {
+            newVirtualThreadPerTaskExecutor("Modbus probe").shutdown();
+            logger.debug("Virtual threads are supported");
+            return true;
+        }
+        catch (Throwable e) {
+            logger.debug("Virtual threads are not supported - {}", e.toString());
+            return false;
+        }
+    }
+}
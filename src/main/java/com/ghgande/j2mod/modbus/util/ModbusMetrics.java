@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+
+/**
+ * Interface to be implemented by anything that wants to be told about the
+ * transactions of a master or the requests handled by a slave.
+ *
+ * <p>
+ * Masters report through the <tt>ModbusMetrics</tt> of their
+ * <tt>ModbusTransaction</tt> and slaves through that of their listener.
+ * Both default to {@link #NONE}, in which case nothing is timed or
+ * reported at all. The device is named by the transport, usually as the
+ * address and port or the serial port at the other end.
+ *
+ * <p>
+ * Methods are called on the thread executing the transaction or handling
+ * the request, so they must be thread-safe and return quickly. The
+ * messages must not be kept, as they may be reused once the method returns.
+ *
+ * @see InMemoryModbusMetrics
+ */
+public interface ModbusMetrics {
+
+    /**
+     * Metrics that are never recorded
+     */
+    ModbusMetrics NONE = new ModbusMetrics() {
+        @Override
+        public void transactionCompleted(String device, ModbusRequest request, ModbusResponse response, long nanos) {
+        }
+
+        @Override
+        public void transactionFailed(String device, ModbusRequest request, boolean timeout, long nanos) {
+        }
+
+        @Override
+        public void transactionRetried(String device, ModbusRequest request) {
+        }
+
+        @Override
+        public void requestHandled(String device, ModbusRequest request, ModbusResponse response, long nanos) {
+        }
+    };
+
+    /**
+     * Called by a master when a response has been received, which may be an
+     * exception response from the slave
+     *
+     * @param device   the name of the slave.
+     * @param request  the request sent.
+     * @param response the response received.
+     * @param nanos    the time taken, including any retries, in nanoseconds.
+     */
+    void transactionCompleted(String device, ModbusRequest request, ModbusResponse response, long nanos);
+
+    /**
+     * Called by a master when a transaction fails without a response
+     *
+     * @param device  the name of the slave.
+     * @param request the request sent.
+     * @param timeout true if the last attempt timed out.
+     * @param nanos   the time taken, including any retries, in nanoseconds.
+     */
+    void transactionFailed(String device, ModbusRequest request, boolean timeout, long nanos);
+
+    /**
+     * Called by a master each time a request is about to be sent again
+     *
+     * @param device  the name of the slave.
+     * @param request the request being retried.
+     */
+    void transactionRetried(String device, ModbusRequest request);
+
+    /**
+     * Called by a slave once the response to a request has been sent
+     *
+     * @param device   the name of the master.
+     * @param request  the request received.
+     * @param response the response sent.
+     * @param nanos    the time from the request being read to the response
+     *                 being written, in nanoseconds.
+     */
+    void requestHandled(String device, ModbusRequest request, ModbusResponse response, long nanos);
+}
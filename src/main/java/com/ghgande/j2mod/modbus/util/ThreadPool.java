@@ -20,32 +20,57 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Class implementing a simple thread pool.
  *
+ * <p>
+ * Tasks wait in a queue until one of the threads is free. The queue can be
+ * bounded so that a flood of tasks is turned away straight away with a
+ * <tt>RejectedExecutionException</tt>, rather than piling up unserved.
+ *
  * @author Dieter Wimberger
  * @author Steve O'Hara (4energy)
  * @version 2.0 (March 2016)
  */
-public class ThreadPool {
+public class ThreadPool implements Executor {
 
     private static final Logger logger = LoggerFactory.getLogger(ThreadPool.class);
 
     private LinkedBlockingQueue<Runnable> taskPool;
     private List<PoolThread> threadPool = new ArrayList<PoolThread>();
     private int size = 1;
-    private boolean running;
+    private int queueSize;
+    private volatile boolean running;
 
     /**
-     * Constructs a new <tt>ThreadPool</tt> instance.
+     * Constructs a new <tt>ThreadPool</tt> instance with a queue that can
+     * hold any number of waiting tasks.
      *
      * @param size the size of the thread pool.
      */
     public ThreadPool(int size) {
+        this(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a new <tt>ThreadPool</tt> instance with a queue that holds
+     * at most <tt>queueSize</tt> tasks waiting for a thread.
+     *
+     * @param size      the size of the thread pool.
+     * @param queueSize the number of tasks that can wait for a thread, at least 1.
+     * @throws IllegalArgumentException if the queue size is less than 1.
+     */
+    public ThreadPool(int size, int queueSize) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Thread pool queue size must be at least 1");
+        }
         this.size = size;
-        taskPool = new LinkedBlockingQueue<Runnable>();
+        this.queueSize = queueSize;
+        taskPool = new LinkedBlockingQueue<Runnable>(queueSize);
         initPool();
     }
 
@@ -54,16 +79,49 @@ public class ThreadPool {
      * through a thread in this <tt>ThreadPool</tt>.
      *
      * @param task the <tt>Runnable</tt> to be executed.
+     * @throws RejectedExecutionException if the pool has been closed or the
+     *                                    queue of waiting tasks is full.
      */
-    public synchronized void execute(Runnable task) {
-        if (running) {
-            try {
-                taskPool.put(task);
-            }
-            catch (InterruptedException ex) {
-                //FIXME: Handle!?
-            }
+    @Override
+    public void execute(Runnable task) {
+        if (!running) {
+            throw new RejectedExecutionException("Thread pool is closed");
+        }
+        if (!taskPool.offer(task)) {
+            throw new RejectedExecutionException(String.format("Thread pool queue is full (%d tasks waiting)", taskPool.size()));
         }
+
+        // The pool may have been closed after the check, leaving the task unrun
+        if (!running && taskPool.remove(task)) {
+            throw new RejectedExecutionException("Thread pool is closed");
+        }
+    }
+
+    /**
+     * Returns the number of threads in this <tt>ThreadPool</tt>.
+     *
+     * @return the size of the pool.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of tasks waiting for a thread.
+     *
+     * @return the depth of the queue.
+     */
+    public int getQueueDepth() {
+        return taskPool.size();
+    }
+
+    /**
+     * Returns the number of tasks that can wait for a thread.
+     *
+     * @return the capacity of the queue.
+     */
+    public int getQueueCapacity() {
+        return queueSize;
     }
 
     /**
@@ -12,6 +12,7 @@ public final class ModbusCouplerTest {
     private static final int TESTIMAGE1_UNITID = 5;
     private static final int TESTIMAGE2_UNITID = 10;
     private static final int TESTIMAGE3_UNITID = 82;
+    private static final int TESTIMAGE4_UNITID = 200;
 
     @Test
     public void testIsInitializedAndGetReference() {
@@ -55,6 +56,35 @@ public final class ModbusCouplerTest {
         Assert.assertEquals(testImageTwo, modbusCoupler.getProcessImage(TESTIMAGE2_UNITID));
     }
 
+    @Test
+    public void testRemoveProcessImage() {
+        ModbusCoupler modbusCoupler = ModbusCoupler.getReference();
+        ProcessImage testImage = new SimpleProcessImage(TESTIMAGE4_UNITID);
+        modbusCoupler.setProcessImage(testImage);
+        Assert.assertEquals(testImage, modbusCoupler.removeProcessImage(TESTIMAGE4_UNITID));
+        Assert.assertNull("Process image should be gone once removed.", modbusCoupler.getProcessImage(TESTIMAGE4_UNITID));
+        Assert.assertNull("Removing a missing process image should return null.", modbusCoupler.removeProcessImage(TESTIMAGE4_UNITID));
+    }
+
+    @Test
+    public void testProcessImageUnitRange() {
+        ModbusCoupler modbusCoupler = ModbusCoupler.getReference();
+        ProcessImage testImage = new SimpleProcessImage(ModbusCoupler.MAX_UNITS - 1);
+        modbusCoupler.setProcessImage(testImage);
+        Assert.assertEquals(testImage, modbusCoupler.getProcessImage(ModbusCoupler.MAX_UNITS - 1));
+        modbusCoupler.removeProcessImage(ModbusCoupler.MAX_UNITS - 1);
+
+        Assert.assertNull(modbusCoupler.getProcessImage(-1));
+        Assert.assertNull(modbusCoupler.getProcessImage(ModbusCoupler.MAX_UNITS));
+        try {
+            modbusCoupler.setProcessImage(new SimpleProcessImage(ModbusCoupler.MAX_UNITS));
+            Assert.fail("Should not accept a process image with a unit ID above 255.");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
     @Test
     public void testMasterSlave() {
         ModbusCoupler modbusCoupler = ModbusCoupler.getReference();
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
+import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.util.BitVector;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests the primitive array process image, locally and served
+ * by the test slave
+ */
+public class TestModbusArrayProcessImage extends AbstractTestModbusTCPMaster {
+
+    private static final int ARRAY_UNIT_ID = UNIT_ID + 1;
+    private static final int SIZE = 65536;
+    private static final int THREADS = 16;
+    private static final int WRITES = 10000;
+    private static ArrayProcessImage image;
+
+    @BeforeClass
+    public static void setUpArrayImage() {
+        image = new ArrayProcessImage(ARRAY_UNIT_ID, SIZE, SIZE, SIZE, SIZE);
+        for (int i = 0; i < 200; i++) {
+            image.setRegisterValue(SIZE - 200 + i, 40000 + i);
+            image.setInputRegisterValue(i, i * 3);
+            image.setCoil(i, i % 3 == 0);
+            image.setDiscrete(SIZE - 200 + i, i % 5 == 0);
+        }
+        ModbusCoupler.getReference().setProcessImage(image);
+    }
+
+    @Test
+    public void testRegisterViews() {
+        ArrayProcessImage local = new ArrayProcessImage(0, 0, 0, 0, 4);
+        Register[] regs = local.getRegisterRange(1, 2);
+        regs[0].setValue(0xfedc);
+        regs[1].setValue(new byte[]{0x12, 0x34});
+        assertEquals("Incorrect register value", 0xfedc, local.getRegisterValue(1));
+        assertEquals("Incorrect register value", 0x1234, local.getRegister(2).getValue());
+        assertEquals("Incorrect signed register value", (short)0xfedc, local.getRegister(1).toShort());
+        local.addRegister(new SimpleRegister(77));
+        assertEquals("Register not added", 5, local.getRegisterCount());
+        assertEquals("Incorrect added register", 77, local.getRegisterValue(4));
+        local.removeRegister(local.getRegister(0));
+        assertEquals("Register not removed", 4, local.getRegisterCount());
+        assertEquals("Registers not moved down", 0xfedc, local.getRegisterValue(0));
+        try {
+            local.getRegisterRange(3, 2);
+            fail("Failed check for missing register 4");
+        }
+        catch (IllegalAddressException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testBitBytes() {
+        ArrayProcessImage local = new ArrayProcessImage(0, 130, 0, 0, 0);
+        for (int i = 60; i < 130; i += 2) {
+            local.setCoil(i, true);
+        }
+        byte[] bytes = new byte[3];
+        local.getCoilBytes(61, 19, bytes, 0);
+        assertEquals("Incorrect coil byte across words", (byte)0xaa, bytes[0]);
+        assertEquals("Incorrect coil byte", (byte)0xaa, bytes[1]);
+        assertEquals("Incorrect last coil byte", (byte)0x02, bytes[2]);
+        local.setCoilBytes(0, 9, new byte[]{(byte)0x81, 0x01}, 0);
+        assertTrue("Coil 0 not set", local.getCoil(0));
+        assertFalse("Coil 1 set", local.getCoil(1));
+        assertTrue("Coil 8 not set", local.getDigitalOut(8).isSet());
+    }
+
+    @Test
+    public void testConcurrentMaskWrite() {
+        final ArrayProcessImage local = new ArrayProcessImage(0, 0, 0, 0, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int i = 0; i < THREADS; i++) {
+                final int bit = 1 << i;
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() {
+                        for (int j = 0; j < WRITES; j++) {
+                            local.maskWriteRegister(0, ~bit, 0);
+                            local.maskWriteRegister(0, ~bit, bit);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> result : results) {
+                result.get();
+            }
+            assertEquals("Masked write lost", 0xffff, local.getRegisterValue(0));
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot write - %s", e.getMessage()));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentRangeWrite() {
+        final ArrayProcessImage local = new ArrayProcessImage(0, 0, 0, 0, 1000);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int i = 0; i < THREADS; i++) {
+                final int[] values = new int[125];
+                Arrays.fill(values, i);
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() {
+                        for (int j = 0; j < WRITES / 10; j++) {
+                            local.setRegisterValues(50, values, 0, values.length);
+                            local.addRegister(new SimpleRegister(j));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> result : results) {
+                result.get();
+            }
+            int first = local.getRegisterValue(50);
+            for (int i = 51; i < 175; i++) {
+                assertEquals("Range writes interleaved at register " + i, first, local.getRegisterValue(i));
+            }
+            assertEquals("Registers lost while growing", 1000 + THREADS * WRITES / 10, local.getRegisterCount());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot write - %s", e.getMessage()));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReadRegisters() {
+        try {
+            int[] values = new int[125];
+            master.readMultipleRegisters(ARRAY_UNIT_ID, SIZE - 125, 125, values, 0);
+            assertEquals("Incorrect value for last holding register", 40199, values[124]);
+            assertEquals("Incorrect value for input register 7", 21, master.readInputRegisters(ARRAY_UNIT_ID, 7, 1)[0].getValue());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testReadBits() {
+        try {
+            BitVector coils = master.readCoils(ARRAY_UNIT_ID, 1, 70);
+            for (int i = 0; i < 70; i++) {
+                assertEquals("Incorrect status for coil " + (i + 1), (i + 1) % 3 == 0, coils.getBit(i));
+            }
+            BitVector discretes = master.readInputDiscretes(ARRAY_UNIT_ID, SIZE - 200, 10);
+            assertTrue("Incorrect status for discrete " + (SIZE - 200), discretes.getBit(0));
+            assertFalse("Incorrect status for discrete " + (SIZE - 199), discretes.getBit(1));
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testWriteRegisters() {
+        try {
+            master.writeMultipleRegisters(ARRAY_UNIT_ID, 100, new Register[]{new SimpleRegister(1), new SimpleRegister(2)});
+            master.writeCoil(ARRAY_UNIT_ID, 1000, true);
+            assertEquals("Incorrect value for holding register 101", 2, image.getRegisterValue(101));
+            assertTrue("Coil 1000 not set", image.getCoil(1000));
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot write - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testReadInvalidRegister() {
+        try {
+            master.readInputRegisters(ARRAY_UNIT_ID, SIZE - 1, 2);
+            fail("Failed check for missing input register " + SIZE);
+        }
+        catch (ModbusSlaveException e) {
+            // Expected
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+}
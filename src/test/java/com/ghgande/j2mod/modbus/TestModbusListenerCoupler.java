@@ -0,0 +1,188 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.msg.WriteSingleRegisterResponse;
+import com.ghgande.j2mod.modbus.net.ModbusTCPListener;
+import com.ghgande.j2mod.modbus.procimg.SimpleProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.lang.reflect.Modifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests that listeners with couplers of their own answer from
+ * their own process images
+ */
+public class TestModbusListenerCoupler extends AbstractTestModbus {
+
+    private static final int OTHER_PORT = PORT + 1;
+    private static final int OTHER_UNIT_ID = UNIT_ID + 1;
+    private static ModbusTCPListener otherListener;
+    private static ModbusTCPMaster master;
+    private static ModbusTCPMaster otherMaster;
+
+    @BeforeClass
+    public static void setUpSlaves() {
+        try {
+            ModbusCoupler coupler = new ModbusCoupler();
+            coupler.setProcessImage(createProcessImage(UNIT_ID, 1));
+            listener = new ModbusTCPListener(5);
+            listener.setCoupler(coupler);
+            listener.setPort(PORT);
+            new Thread(listener).start();
+
+            ModbusCoupler otherCoupler = new ModbusCoupler();
+            otherCoupler.setProcessImage(createProcessImage(UNIT_ID, 2));
+            otherCoupler.setProcessImage(createProcessImage(OTHER_UNIT_ID, 3));
+            otherListener = new ModbusTCPListener(5);
+            otherListener.setCoupler(otherCoupler);
+            otherListener.setPort(OTHER_PORT);
+            new Thread(otherListener).start();
+            Thread.sleep(500);
+
+            master = new ModbusTCPMaster(LOCALHOST, PORT);
+            master.connect();
+            otherMaster = new ModbusTCPMaster(LOCALHOST, OTHER_PORT);
+            otherMaster.connect();
+        }
+        catch (Exception e) {
+            tearDownSlaves();
+            fail(String.format("Cannot initialise tests - %s", e.getMessage()));
+        }
+    }
+
+    @AfterClass
+    public static void tearDownSlaves() {
+        if (master != null) {
+            master.disconnect();
+        }
+        if (otherMaster != null) {
+            otherMaster.disconnect();
+        }
+        if (listener != null && listener.isListening()) {
+            listener.stop();
+        }
+        if (otherListener != null && otherListener.isListening()) {
+            otherListener.stop();
+        }
+    }
+
+    @Test
+    public void testRequestWithoutCoupler() {
+        final ModbusResponse answer = new WriteSingleRegisterResponse(1, 2);
+        ModbusRequest request = new ModbusRequest() {
+            @Override
+            public ModbusResponse getResponse() {
+                return answer;
+            }
+
+            @Override
+            public ModbusResponse createResponse() {
+                return answer;
+            }
+
+            @Override
+            public void writeData(DataOutput dout) {
+            }
+
+            @Override
+            public void readData(DataInput din) {
+            }
+
+            @Override
+            public byte[] getMessage() {
+                return new byte[0];
+            }
+        };
+        assertSame("Request only answering from the shared coupler wasn't used", answer, request.createResponse(new ModbusCoupler()));
+    }
+
+    @Test
+    public void testRequestOverridingNeither() throws Exception {
+        // A request implementing neither method must not compile, rather
+        // than the two falling back to each other until the stack overflows
+        assertTrue("createResponse() can be left out", Modifier.isAbstract(ModbusRequest.class.getMethod("createResponse").getModifiers()));
+        assertFalse("createResponse(ModbusCoupler) has to be implemented", Modifier.isAbstract(ModbusRequest.class.getMethod("createResponse", ModbusCoupler.class).getModifiers()));
+    }
+
+    @Test
+    public void testReadOwnProcessImage() {
+        try {
+            assertEquals("Incorrect value from the first listener", 1, master.readMultipleRegisters(UNIT_ID, 0, 1)[0].getValue());
+            assertEquals("Incorrect value from the second listener", 2, otherMaster.readMultipleRegisters(UNIT_ID, 0, 1)[0].getValue());
+            assertEquals("Incorrect value from the second unit", 3, otherMaster.readMultipleRegisters(OTHER_UNIT_ID, 0, 1)[0].getValue());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testWriteOwnProcessImage() {
+        try {
+            master.writeSingleRegister(UNIT_ID, 1, new SimpleRegister(5555));
+            assertEquals("Incorrect value written to the first listener", 5555, master.readMultipleRegisters(UNIT_ID, 1, 1)[0].getValue());
+            assertEquals("Write leaked to the second listener", 2, otherMaster.readMultipleRegisters(UNIT_ID, 1, 1)[0].getValue());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot write - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testReadOtherListenerUnit() {
+        try {
+            master.readMultipleRegisters(OTHER_UNIT_ID, 0, 1);
+            fail("Read a unit that only the second listener has");
+        }
+        catch (ModbusSlaveException e) {
+            // Expected
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Creates a process image with two holding registers set to a value
+     *
+     * @param unitID Unit ID of the image
+     * @param value  Value of the registers
+     *
+     * @return Process image
+     */
+    private static SimpleProcessImage createProcessImage(int unitID, int value) {
+        SimpleProcessImage spi = new SimpleProcessImage(unitID);
+        spi.addRegister(new SimpleRegister(value));
+        spi.addRegister(new SimpleRegister(value));
+        return spi;
+    }
+}
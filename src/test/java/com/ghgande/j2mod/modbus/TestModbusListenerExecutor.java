@@ -0,0 +1,218 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.facade.ModbusUDPMaster;
+import com.ghgande.j2mod.modbus.net.ModbusTCPListener;
+import com.ghgande.j2mod.modbus.net.ModbusUDPListener;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.util.ModbusExecutors;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import com.ghgande.j2mod.modbus.utils.TestUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests the listeners running their work on an executor
+ */
+public class TestModbusListenerExecutor extends AbstractTestModbus {
+
+    private static final int CLIENTS = 50;
+    private static final int SESSIONS = Math.max(500, Runtime.getRuntime().availableProcessors() * 50);
+    private static final int SESSION_TIMEOUT = 20000;
+    private ExecutorService executor;
+
+    @Before
+    public void setUpExecutor() {
+        getSimpleProcessImage();
+        executor = ModbusExecutors.newThreadPerTaskExecutor("Modbus test");
+    }
+
+    @After
+    public void tearDownListener() {
+        if (listener != null && listener.isListening()) {
+            listener.stop();
+        }
+        listener = null;
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testThreadPerTaskExecutor() throws Exception {
+        final CountDownLatch running = new CountDownLatch(CLIENTS);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < CLIENTS; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    running.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        // Finish
+                    }
+                }
+            });
+        }
+        assertTrue("Every blocked task should have a thread of its own", running.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void testTCPConnectionPerTask() {
+        ModbusTCPListener tcpListener = new ModbusTCPListener(executor);
+        tcpListener.setBacklog(CLIENTS);
+        listener = tcpListener;
+        listener.setPort(PORT);
+        new Thread(listener).start();
+        List<ModbusTCPMaster> masters = new ArrayList<ModbusTCPMaster>();
+        try {
+            Thread.sleep(500);
+
+            // More connections than a default pool would have threads, all open at once
+            for (int i = 0; i < CLIENTS; i++) {
+                ModbusTCPMaster master = new ModbusTCPMaster(LOCALHOST, PORT);
+                master.connect();
+                masters.add(master);
+            }
+            for (ModbusTCPMaster master : masters) {
+                assertEquals("Incorrect value for holding register 3", 3333, master.readMultipleRegisters(UNIT_ID, 3, 1)[0].getValue());
+            }
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+        finally {
+            for (ModbusTCPMaster master : masters) {
+                master.disconnect();
+            }
+        }
+    }
+
+    @Test
+    public void testVirtualThreadSessions() throws Exception {
+        Assume.assumeTrue("Needs virtual threads, Java 21 or later", ModbusExecutors.isVirtualThreadSupported());
+
+        // Every request is held until all the sessions are waiting for an answer, which
+        // needs them all to be blocked at once, far more than there are carrier threads
+        final CountDownLatch arrived = new CountDownLatch(SESSIONS);
+        final AtomicInteger heldBack = new AtomicInteger();
+        ModbusCoupler coupler = new ModbusCoupler();
+        coupler.setProcessImage(new SimpleProcessImage(UNIT_ID) {
+            {
+                addRegister(new SimpleRegister(1234));
+            }
+
+            @Override
+            public Register[] getRegisterRange(int ref, int count) {
+                arrived.countDown();
+                try {
+                    if (!arrived.await(SESSION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                        heldBack.incrementAndGet();
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getRegisterRange(ref, count);
+            }
+        });
+        ModbusTCPListener tcpListener = new ModbusTCPListener(executor);
+        tcpListener.setCoupler(coupler);
+        tcpListener.setBacklog(SESSIONS);
+        listener = tcpListener;
+        listener.setPort(PORT);
+        new Thread(listener).start();
+        Thread.sleep(500);
+
+        ExecutorService clients = ModbusExecutors.newThreadPerTaskExecutor("Modbus test client");
+        final List<ModbusTCPMaster> masters = Collections.synchronizedList(new ArrayList<ModbusTCPMaster>());
+        try {
+            List<Future<Integer>> reads = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < SESSIONS; i++) {
+                reads.add(clients.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        ModbusTCPMaster master = new ModbusTCPMaster(LOCALHOST, PORT, SESSION_TIMEOUT, false);
+                        masters.add(master);
+                        master.connect();
+                        return master.readMultipleRegisters(UNIT_ID, 0, 1)[0].getValue();
+                    }
+                }));
+            }
+            for (Future<Integer> read : reads) {
+                assertEquals("Incorrect value for holding register 0", 1234, (int)read.get(SESSION_TIMEOUT * 2, TimeUnit.MILLISECONDS));
+            }
+            assertEquals("Sessions were not all blocked at once", 0, heldBack.get());
+        }
+        finally {
+            clients.shutdownNow();
+            clients.awaitTermination(SESSION_TIMEOUT, TimeUnit.MILLISECONDS);
+            synchronized (masters) {
+                for (ModbusTCPMaster master : masters) {
+                    master.disconnect();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUDPRequestPerTask() {
+        ModbusUDPMaster master = null;
+        try {
+            listener = new ModbusUDPListener(InetAddress.getByAddress(new byte[]{0, 0, 0, 0}), executor);
+            listener.setPort(PORT);
+            new Thread(listener).start();
+            Thread.sleep(500);
+
+            master = new ModbusUDPMaster(TestUtils.getFirstIp4Address(), PORT);
+            master.connect();
+            for (int i = 0; i < 5; i++) {
+                assertEquals("Incorrect value for holding register " + i, i == 0 ? 251 : i * 1111,
+                        master.readMultipleRegisters(UNIT_ID, i, 1)[0].getValue());
+            }
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+        finally {
+            if (master != null) {
+                master.disconnect();
+            }
+        }
+    }
+}
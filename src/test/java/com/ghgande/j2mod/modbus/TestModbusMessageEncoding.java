@@ -0,0 +1,263 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.io.ByteBufferInput;
+import com.ghgande.j2mod.modbus.io.ByteBufferOutput;
+import com.ghgande.j2mod.modbus.io.BytesOutputStream;
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.procimg.InputRegister;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleInputRegister;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests that messages written in place by the transports, or
+ * into byte buffers, match their raw message bytes
+ */
+public class TestModbusMessageEncoding {
+
+    private static final int UNIT = 1;
+
+    @Test
+    public void testRequestsEncodeInPlace() {
+        ReadWriteMultipleRequest readWrite = new ReadWriteMultipleRequest(UNIT, 1, 2, 3, 2);
+        readWrite.setRegisters(new Register[]{new SimpleRegister(0x1234), new SimpleRegister(0xfedc)});
+        assertEncoding(new ReadCoilsRequest(300, 17));
+        assertEncoding(new WriteMultipleRegistersRequest(7, new Register[]{new SimpleRegister(1), new SimpleRegister(65535)}));
+        assertEncoding(new MaskWriteRegisterRequest(4, 0xf0f0, 0x0a0a));
+        assertEncoding(readWrite);
+        assertEncoding(new ReadExceptionStatusRequest());
+    }
+
+    @Test
+    public void testResponsesEncodeInPlace() {
+        ReadCoilsResponse coils = new ReadCoilsResponse(11);
+        coils.setCoilStatus(0, true);
+        coils.setCoilStatus(10, true);
+        MaskWriteRegisterResponse mask = new MaskWriteRegisterResponse();
+        mask.setReference(4);
+        mask.setAndMask(0xf0f0);
+        mask.setOrMask(0x0a0a);
+        ReadExceptionStatusResponse status = new ReadExceptionStatusResponse();
+        status.setStatus(0x81);
+        assertEncoding(coils);
+        assertEncoding(mask);
+        assertEncoding(status);
+        assertEncoding(new WriteCoilResponse(9, true));
+        assertEncoding(new WriteSingleRegisterResponse(9, 0xabcd));
+        assertEncoding(new WriteMultipleRegistersResponse(9, 3));
+        assertEncoding(new ReadMultipleRegistersResponse(new Register[]{new SimpleRegister(251), new SimpleRegister(1111)}));
+    }
+
+    @Test
+    public void testRegisterByteCounts() {
+        InputRegister[] registers = {new SimpleInputRegister(45), new SimpleInputRegister(9999)};
+        byte[] inputs = assertEncoding(new ReadInputRegistersResponse(registers));
+        assertEquals("Incorrect input register byte count", 4, inputs[0]);
+        byte[] readWrite = assertEncoding(new ReadWriteMultipleResponse(registers));
+        assertEquals("Incorrect read/write byte count", 4, readWrite[0]);
+    }
+
+    @Test
+    public void testByteBufferRoundTrip() {
+        ReadMultipleRegistersResponse registers = new ReadMultipleRegistersResponse();
+        registers.setRegisterBytes(new byte[]{0x00, (byte)0xfb, 0x04, 0x57});
+        ReadCoilsResponse coils = new ReadCoilsResponse(11);
+        coils.setCoilStatus(10, true);
+        assertRoundTrip(new WriteMultipleRegistersRequest(7, new Register[]{new SimpleRegister(1), new SimpleRegister(65535)}), true);
+        assertRoundTrip(new ReadInputDiscretesRequest(3, 40), true);
+        assertRoundTrip(new WriteCoilRequest(12, true), true);
+        assertRoundTrip(registers, false);
+        assertRoundTrip(coils, false);
+        assertRoundTrip(new ReadInputRegistersResponse(new InputRegister[]{new SimpleInputRegister(45)}), false);
+    }
+
+    @Test
+    public void testSharedAdapters() {
+        ReadMultipleRegistersResponse registers = new ReadMultipleRegistersResponse(new Register[]{new SimpleRegister(251), new SimpleRegister(1111)});
+        ReadCoilsResponse coils = new ReadCoilsResponse(11);
+        coils.setCoilStatus(10, true);
+        ModbusResponse[] responses = {registers, coils, new WriteSingleRegisterResponse(9, 0xabcd), new ReadInputRegistersResponse(new InputRegister[]{new SimpleInputRegister(45)})};
+        ByteBuffer buffer = ByteBuffer.allocate(4 * (Modbus.MAX_MESSAGE_LENGTH + 6));
+        ByteBufferOutput output = new ByteBufferOutput(buffer);
+        ByteBufferInput input = new ByteBufferInput(buffer);
+        try {
+            for (int i = 0; i < responses.length; i++) {
+                responses[i].setTransactionID(i);
+                responses[i].writeTo(output);
+            }
+            buffer.flip();
+            for (int i = 0; i < responses.length; i++) {
+                assertEquals("Incorrect header length", responses[i].getDataLength(), buffer.getShort(buffer.position() + 4));
+                ModbusResponse copy = ModbusResponse.createModbusResponse(responses[i].getFunctionCode());
+                copy.setHeadless(false);
+                copy.readFrom(input);
+                assertEquals("Incorrect transaction ID", i, copy.getTransactionID());
+                assertArrayEquals("Shared adapters differ for " + copy.getClass().getSimpleName(), responses[i].getMessage(), copy.getMessage());
+            }
+            assertEquals("Buffer not fully read", 0, buffer.remaining());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot encode through shared adapters - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testMessageOfItsOwn() {
+        assertEncoding(new RawMessage(new byte[]{0x00, 0x07, 0x12, 0x34}));
+    }
+
+    @Test
+    public void testByteBufferTooSmall() {
+        try {
+            new WriteMultipleRegistersRequest(7, new Register[]{new SimpleRegister(1), new SimpleRegister(2)}).writeData(ByteBuffer.allocate(6));
+            fail("Failed check for buffer overflow");
+        }
+        catch (Exception e) {
+            // Expected
+        }
+    }
+
+    /**
+     * A message implemented without <tt>ModbusMessageImpl</tt>, which only
+     * has its raw bytes
+     */
+    private static final class RawMessage implements ModbusMessage {
+
+        private final byte[] data;
+
+        RawMessage(byte[] data) {
+            this.data = data;
+        }
+
+        public boolean isHeadless() {
+            return true;
+        }
+
+        public void setHeadless() {
+        }
+
+        public int getTransactionID() {
+            return 0;
+        }
+
+        public int getProtocolID() {
+            return 0;
+        }
+
+        public int getDataLength() {
+            return data.length;
+        }
+
+        public int getUnitID() {
+            return UNIT;
+        }
+
+        public int getFunctionCode() {
+            return Modbus.WRITE_SINGLE_REGISTER;
+        }
+
+        public byte[] getMessage() {
+            return data;
+        }
+
+        public String getHexMessage() {
+            return "";
+        }
+
+        public int getOutputLength() {
+            return data.length + 2;
+        }
+
+        public void writeTo(DataOutput dout) throws IOException {
+            dout.writeByte(getUnitID());
+            dout.writeByte(getFunctionCode());
+            writeData(dout);
+        }
+
+        public void readFrom(DataInput din) {
+        }
+    }
+
+    /**
+     * Writes a message into a direct buffer with its header, reads it back
+     * into a new message and checks that both encode to the same bytes
+     *
+     * @param msg     Message to check
+     * @param request True if the message is a request
+     */
+    private static void assertRoundTrip(ModbusMessageImpl msg, boolean request) {
+        try {
+            msg.setUnitID(UNIT);
+            msg.setTransactionID(321);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Modbus.MAX_MESSAGE_LENGTH + 6);
+            msg.writeTo(buffer);
+            buffer.flip();
+            assertEquals("Incorrect header length", buffer.limit() - 6, buffer.getShort(4));
+            ModbusMessageImpl copy = request ? ModbusRequest.createModbusRequest(msg.getFunctionCode()) : ModbusResponse.createModbusResponse(msg.getFunctionCode());
+            copy.setHeadless(false);
+            copy.readFrom(buffer);
+            assertEquals("Buffer not fully read", 0, buffer.remaining());
+            assertEquals("Incorrect transaction ID", 321, copy.getTransactionID());
+            assertArrayEquals("Round trip differs for " + msg.getClass().getSimpleName(), msg.getMessage(), copy.getMessage());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot round trip %s - %s", msg.getClass().getSimpleName(), e.getMessage()));
+        }
+    }
+
+    /**
+     * Checks that writing a message's data gives its raw message bytes
+     *
+     * @param msg Message to check
+     *
+     * @return Bytes written
+     */
+    private static byte[] assertEncoding(ModbusMessage msg) {
+        BytesOutputStream out = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+        try {
+            msg.writeData(out);
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot encode %s - %s", msg.getClass().getSimpleName(), e.getMessage()));
+        }
+        byte[] written = out.getBufferBytes();
+        assertArrayEquals("Encoding differs for " + msg.getClass().getSimpleName(), msg.getMessage(), written);
+        ByteBuffer buffer = ByteBuffer.allocate(Modbus.MAX_MESSAGE_LENGTH);
+        try {
+            msg.writeData(buffer);
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot encode %s into a buffer - %s", msg.getClass().getSimpleName(), e.getMessage()));
+        }
+        byte[] buffered = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(buffered);
+        assertArrayEquals("Buffer encoding differs for " + msg.getClass().getSimpleName(), written, buffered);
+        return written;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.net.ModbusTCPListener;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests the reuse of pooled requests and responses, by a slave
+ * and by a transaction
+ */
+public class TestModbusMessagePool extends AbstractTestModbus {
+
+    private static TCPMasterConnection connection;
+
+    @BeforeClass
+    public static void setUpSlave() {
+        try {
+            getSimpleProcessImage();
+            ModbusTCPListener tcpListener = new ModbusTCPListener(2);
+            tcpListener.setMessagePooling(true);
+            tcpListener.setListening(true);
+            tcpListener.setPort(PORT);
+            listener = tcpListener;
+            new Thread(listener).start();
+            Thread.sleep(500);
+            connection = new TCPMasterConnection(InetAddress.getByName(LOCALHOST));
+            connection.setPort(PORT);
+            connection.connect();
+        }
+        catch (Exception e) {
+            tearDownSlave();
+            fail(String.format("Cannot initialise tests - %s", e.getMessage()));
+        }
+    }
+
+    @AfterClass
+    public static void tearDownSlave() {
+        if (connection != null) {
+            connection.close();
+        }
+        if (listener != null && listener.isListening()) {
+            listener.stop();
+        }
+    }
+
+    @Test
+    public void testReuse() {
+        ModbusMessagePool pool = new ModbusMessagePool(1);
+        ModbusRequest request = pool.getRequest(Modbus.READ_MULTIPLE_REGISTERS);
+        request.setUnitID(UNIT_ID);
+        request.setTransactionID(99);
+        pool.release(request);
+        assertSame("Request not reused", request, pool.getRequest(Modbus.READ_MULTIPLE_REGISTERS));
+        assertEquals("Unit ID not reset", Modbus.DEFAULT_UNIT_ID, request.getUnitID());
+        assertEquals("Transaction ID not reset", Modbus.DEFAULT_TRANSACTION_ID, request.getTransactionID());
+        assertEquals("Function code lost", Modbus.READ_MULTIPLE_REGISTERS, request.getFunctionCode());
+
+        ModbusResponse response = request.getResponse();
+        ((ReadMultipleRegistersResponse)response).setRegisters(new Register[]{new SimpleRegister(1)});
+        pool.release(response);
+        pool.release(new ReadMultipleRegistersResponse());
+        ModbusResponse reused = pool.getResponse(Modbus.READ_MULTIPLE_REGISTERS);
+        assertSame("Response not taken from the request's pool", response, reused);
+        assertEquals("Registers not reset", 0, ((ReadMultipleRegistersResponse)reused).getWordCount());
+        assertNotSame("Response handed out twice", reused, pool.getResponse(Modbus.READ_MULTIPLE_REGISTERS));
+    }
+
+    @Test
+    public void testPooledTransaction() {
+        try {
+            ModbusTCPTransaction transaction = new ModbusTCPTransaction(connection);
+            transaction.setMessagePool(new ModbusMessagePool());
+            ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(0, 5);
+            request.setUnitID(UNIT_ID);
+            transaction.setRequest(request);
+            transaction.execute();
+            ReadMultipleRegistersResponse first = (ReadMultipleRegistersResponse)transaction.getResponse();
+            assertEquals("Incorrect value for holding register 4", 4444, first.getRegisterValue(4));
+            transaction.execute();
+            assertSame("Response not reused", first, transaction.getResponse());
+            assertEquals("Incorrect value for holding register 0", 251, first.getRegisterValue(0));
+            assertEquals("Incorrect value for holding register 4", 4444, first.getRegisterValue(4));
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testPooledSlave() {
+        try {
+            ModbusTCPTransaction transaction = new ModbusTCPTransaction(connection);
+            for (int i = 0; i < 100; i++) {
+                ReadInputRegistersRequest read = new ReadInputRegistersRequest(i % 5, 1);
+                read.setUnitID(UNIT_ID);
+                transaction.setRequest(read);
+                transaction.execute();
+                int value = ((ReadInputRegistersResponse)transaction.getResponse()).getRegisterValue(0);
+                assertEquals("Incorrect value for input register " + (i % 5), new int[]{45, 9999, 8888, 7777, 6666}[i % 5], value);
+            }
+            WriteSingleRegisterRequest write = new WriteSingleRegisterRequest(2, new SimpleRegister(1234));
+            write.setUnitID(UNIT_ID);
+            transaction.setRequest(write);
+            transaction.execute();
+            assertEquals("Incorrect echoed value", 1234, ((WriteSingleRegisterResponse)transaction.getResponse()).getRegisterValue());
+            write.setRegister(new SimpleRegister(2222));
+            transaction.execute();
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+}
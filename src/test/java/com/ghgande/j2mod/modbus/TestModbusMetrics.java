@@ -0,0 +1,128 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransport;
+import com.ghgande.j2mod.modbus.msg.ReadInputRegistersRequest;
+import com.ghgande.j2mod.modbus.util.InMemoryModbusMetrics;
+import com.ghgande.j2mod.modbus.util.LatencyHistogram;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.Test;
+
+import java.net.Socket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests the metrics recorded by masters and slaves
+ */
+public class TestModbusMetrics extends AbstractTestModbusTCPMaster {
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals("Incorrect count", 1000, histogram.getCount());
+        assertEquals("Incorrect max", 1000000, histogram.getMax());
+        assertEquals("Incorrect mean", 500500.0, histogram.getMean(), 0.001);
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue("Median out of range " + median, median >= 500000 && median <= 500000 * 17 / 16);
+        assertEquals("Incorrect 100th percentile", 1000000, histogram.getValueAtPercentile(100));
+        histogram.record(5);
+        assertEquals("Small values not exact", 5, histogram.getValueAtPercentile(0));
+        histogram.reset();
+        assertEquals("Not reset", 0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testMasterMetrics() {
+        InMemoryModbusMetrics metrics = new InMemoryModbusMetrics();
+        ModbusTCPTransport transport = null;
+        try {
+            transport = new ModbusTCPTransport(new Socket(LOCALHOST, PORT));
+            ModbusTCPTransaction transaction = (ModbusTCPTransaction)transport.createTransaction();
+            transaction.setMetrics(metrics);
+            transaction.setRequest(createRequest(0, 5));
+            transaction.execute();
+            transaction.setRequest(createRequest(1000, 1));
+            try {
+                transaction.execute();
+                fail("Read beyond the input registers should fail");
+            }
+            catch (ModbusSlaveException e) {
+                // Expected
+            }
+            String device = transport.getDeviceName();
+            assertTrue("Device not recorded", metrics.getDevices().contains(device));
+            InMemoryModbusMetrics.Counters counters = metrics.getCounters(device, UNIT_ID, Modbus.READ_INPUT_REGISTERS);
+            assertNotNull("No counters for the function code", counters);
+            assertEquals("Incorrect request count", 2, counters.getRequests());
+            assertEquals("Incorrect exception count", 1, counters.getExceptions(Modbus.ILLEGAL_ADDRESS_EXCEPTION));
+            assertEquals("Incorrect failure count", 0, counters.getFailures());
+            assertTrue("No bytes counted", counters.getBytesIn() > 0 && counters.getBytesOut() > 0);
+            assertEquals("Incorrect latency count", 2, counters.getLatency().getCount());
+            transport.close();
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testSlaveMetrics() {
+        InMemoryModbusMetrics metrics = new InMemoryModbusMetrics();
+        listener.setMetrics(metrics);
+        try {
+            ModbusTCPTransport transport = new ModbusTCPTransport(new Socket(LOCALHOST, PORT));
+            ModbusTCPTransaction transaction = (ModbusTCPTransaction)transport.createTransaction();
+            transaction.setRequest(createRequest(0, 2));
+            transaction.execute();
+            transaction.execute();
+
+            // The slave records after sending the response, so allow it to catch up
+            for (int i = 0; i < 100 && metrics.getDevices().isEmpty(); i++) {
+                Thread.sleep(10);
+            }
+            assertEquals("Incorrect number of masters", 1, metrics.getDevices().size());
+            String device = metrics.getDevices().iterator().next();
+            InMemoryModbusMetrics.Counters counters = metrics.getCounters(device, UNIT_ID, Modbus.READ_INPUT_REGISTERS);
+            for (int i = 0; i < 100 && counters.getRequests() < 2; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals("Incorrect request count", 2, counters.getRequests());
+            assertEquals("Incorrect bytes out", 2 * transaction.getResponse().getOutputLength(), counters.getBytesOut());
+            transport.close();
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+        finally {
+            listener.setMetrics(null);
+        }
+    }
+
+    private static ReadInputRegistersRequest createRequest(int ref, int count) {
+        ReadInputRegistersRequest request = new ReadInputRegistersRequest(ref, count);
+        request.setUnitID(UNIT_ID);
+        return request;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusReadItem;
+import com.ghgande.j2mod.modbus.facade.ModbusReadPlanner;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests the planning of coalesced reads
+ */
+public class TestModbusReadPlanner extends AbstractTestModbusTCPMaster {
+
+    @Test
+    public void testPlanMergesWithinGap() {
+        ModbusReadPlanner planner = new ModbusReadPlanner();
+        planner.setRegisterGap(5);
+        List<ModbusReadPlanner.Block> blocks = planner.plan(Arrays.asList(
+                new ModbusReadItem(1, Modbus.READ_HOLDING_REGISTERS, 20, 2),
+                new ModbusReadItem(1, Modbus.READ_HOLDING_REGISTERS, 0, 2),
+                new ModbusReadItem(1, Modbus.READ_HOLDING_REGISTERS, 6, 1),
+                new ModbusReadItem(1, Modbus.READ_INPUT_REGISTERS, 0, 1),
+                new ModbusReadItem(2, Modbus.READ_HOLDING_REGISTERS, 0, 1)));
+        assertEquals("Incorrect number of requests", 4, blocks.size());
+        assertEquals("Incorrect start of merged block", 0, blocks.get(0).getReference());
+        assertEquals("Incorrect length of merged block", 7, blocks.get(0).getCount());
+        assertEquals("Incorrect items in merged block", 2, blocks.get(0).getItems().size());
+        assertEquals("Incorrect start of separate block", 20, blocks.get(1).getReference());
+    }
+
+    @Test
+    public void testPlanSplitsOversizedItems() {
+        ModbusReadPlanner planner = new ModbusReadPlanner();
+        List<ModbusReadPlanner.Block> blocks = planner.plan(Arrays.asList(
+                new ModbusReadItem(1, Modbus.READ_HOLDING_REGISTERS, 0, 300),
+                new ModbusReadItem(1, Modbus.READ_COILS, 0, 4500)));
+        assertEquals("Incorrect number of requests", 6, blocks.size());
+        for (ModbusReadPlanner.Block block : blocks) {
+            assertTrue("Block exceeds PDU limit", block.getCount() <= (block.getFunctionCode() == Modbus.READ_COILS ? Modbus.MAX_BITS : Modbus.MAX_REGISTERS));
+        }
+        assertEquals("Incorrect length of last register block", 50, blocks.get(5).getCount());
+        assertEquals("Incorrect start of last register block", 250, blocks.get(5).getReference());
+    }
+
+    @Test
+    public void testReadScattersValues() {
+        ModbusReadPlanner planner = new ModbusReadPlanner();
+        planner.setRegisterGap(2);
+        planner.setBitGap(8);
+        ModbusReadItem first = new ModbusReadItem(UNIT_ID, Modbus.READ_HOLDING_REGISTERS, 0, 1);
+        ModbusReadItem second = new ModbusReadItem(UNIT_ID, Modbus.READ_HOLDING_REGISTERS, 3, 2);
+        ModbusReadItem discretes = new ModbusReadItem(UNIT_ID, Modbus.READ_INPUT_DISCRETES, 1, 1);
+        ModbusReadItem moreDiscretes = new ModbusReadItem(UNIT_ID, Modbus.READ_INPUT_DISCRETES, 3, 2);
+        try {
+            planner.read(master, Arrays.asList(first, second, discretes, moreDiscretes));
+            assertEquals("Incorrect value for holding register 0", 251, first.getValue(0));
+            assertEquals("Incorrect value for holding register 3", 3333, second.getValue(0));
+            assertEquals("Incorrect value for holding register 4", 4444, second.getValue(1));
+            assertTrue("Incorrect status for discrete 1", discretes.getBit(0));
+            assertTrue("Incorrect status for discrete 3", moreDiscretes.getBit(0));
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testReadRefusedGap() {
+        ModbusReadPlanner planner = new ModbusReadPlanner();
+        planner.setRegisterGap(10);
+        ModbusReadItem valid = new ModbusReadItem(UNIT_ID, Modbus.READ_HOLDING_REGISTERS, 2, 1);
+        ModbusReadItem missing = new ModbusReadItem(UNIT_ID, Modbus.READ_HOLDING_REGISTERS, 8, 1);
+        try {
+            planner.read(master, Arrays.asList(valid, missing));
+            assertTrue("Valid item not read", valid.isValid());
+            assertEquals("Incorrect value for holding register 2", 2222, valid.getValue(0));
+            assertFalse("Missing item read", missing.isValid());
+            assertTrue("Missing item has no exception", missing.getException() instanceof ModbusSlaveException);
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.io.BytesInputStream;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransport;
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.Test;
+
+import java.net.Socket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests reading values through the views of read responses
+ */
+public class TestModbusResponseView extends AbstractTestModbusTCPMaster {
+
+    @Test
+    public void testRegisterView() {
+        try {
+            ReadMultipleRegistersResponse response = new ReadMultipleRegistersResponse();
+            response.readData(new BytesInputStream(new byte[]{8, 0x40, 0x49, 0x0F, (byte)0xDB, (byte)0xFF, (byte)0xFE, 0x00, 0x01}));
+            ResponseView view = response.getView();
+            assertEquals("Incorrect word count", 4, view.getWordCount());
+            assertEquals("Incorrect unsigned value", 0xFFFE, view.getUnsignedShort(2));
+            assertEquals("Incorrect signed value", -2, view.getShort(2));
+            assertEquals("Incorrect high word first value", 0xFFFE0001, view.getInt32(2, ResponseView.HIGH_WORD_FIRST));
+            assertEquals("Incorrect low word first value", 0x0001FFFE, view.getInt32(2, ResponseView.LOW_WORD_FIRST));
+            assertEquals("Incorrect float", (float)Math.PI, view.getFloat(0, ResponseView.HIGH_WORD_FIRST), 0.0f);
+            assertEquals("Incorrect swapped float", Float.intBitsToFloat(0x0FDB4049), view.getFloat(0, ResponseView.LOW_WORD_FIRST), 0.0f);
+            try {
+                view.getInt32(3, ResponseView.HIGH_WORD_FIRST);
+                fail("Value beyond the data read");
+            }
+            catch (IndexOutOfBoundsException e) {
+                // Expected
+            }
+            assertEquals("View does not match registers", 0xFFFE, response.getRegisterValue(2));
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot decode - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testBitView() {
+        try {
+            ReadCoilsResponse response = new ReadCoilsResponse();
+            response.readData(new BytesInputStream(new byte[]{2, (byte)0xCD, 0x01}));
+            ResponseView view = response.getView();
+            assertEquals("Incorrect bit count", 16, view.getBitCount());
+            assertTrue("Coil 0 not set", view.getBit(0));
+            assertFalse("Coil 1 set", view.getBit(1));
+            assertTrue("Coil 8 not set", view.getBit(8));
+            long[] bits = new long[1];
+            assertEquals("Incorrect number of bits copied", 10, view.getBits(bits, 10));
+            assertEquals("Incorrect bits copied", 0x1CDL, bits[0]);
+            assertEquals("Incorrect number of bits copied", 3, view.getBits(bits, 3));
+            assertEquals("Bits beyond the count copied", 0x5L, bits[0]);
+            for (int i = 0; i < 16; i++) {
+                assertEquals("View does not match coil " + i, response.getCoilStatus(i), view.getBit(i));
+            }
+            assertTrue("View lost after decoding the coils", response.getView().getBit(8));
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot decode - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testViewOfReadResponse() {
+        ModbusTCPTransport transport = null;
+        try {
+            transport = new ModbusTCPTransport(new Socket(LOCALHOST, PORT));
+            ModbusTCPTransaction transaction = (ModbusTCPTransaction)transport.createTransaction();
+            transaction.setMessagePool(new ModbusMessagePool());
+            ReadInputRegistersRequest request = new ReadInputRegistersRequest(0, 5);
+            request.setUnitID(UNIT_ID);
+            transaction.setRequest(request);
+            transaction.execute();
+            ResponseView view = ((ReadInputRegistersResponse)transaction.getResponse()).getView();
+            assertEquals("Incorrect value for input register 0", 45, view.getUnsignedShort(0));
+            assertEquals("Incorrect value for input registers 1 and 2", (9999 << 16) | 8888, view.getInt32(1, ResponseView.HIGH_WORD_FIRST));
+            request.setReference(3);
+            request.setWordCount(2);
+            transaction.execute();
+            assertEquals("View not repointed at the next response", 2, view.getWordCount());
+            assertEquals("Incorrect value for input register 4", 6666, view.getUnsignedShort(1));
+            transport.close();
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnectionPool;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests the pooling of TCP master connections
+ */
+public class TestModbusTCPConnectionPool extends AbstractTestModbusTCPMaster {
+
+    private static final int THREADS = 8;
+    private static final int READS = 25;
+
+    @Test
+    public void testBorrowReusesConnection() {
+        TCPMasterConnectionPool pool = new TCPMasterConnectionPool();
+        try {
+            InetAddress address = InetAddress.getByName(LOCALHOST);
+            TCPMasterConnection first = pool.borrow(address, PORT);
+            assertTrue("Borrowed connection not open", first.isConnected());
+            assertEquals("Incorrect active count", 1, pool.getActiveCount());
+            pool.release(first);
+            assertEquals("Incorrect idle count", 1, pool.getIdleCount());
+            TCPMasterConnection second = pool.borrow(address, PORT);
+            assertSame("Idle connection not reused", first, second);
+            pool.release(second);
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot borrow - %s", e.getMessage()));
+        }
+        finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testBorrowTimeout() {
+        TCPMasterConnectionPool pool = new TCPMasterConnectionPool(1);
+        pool.setBorrowTimeout(200);
+        TCPMasterConnection connection = null;
+        try {
+            InetAddress address = InetAddress.getByName(LOCALHOST);
+            connection = pool.borrow(address, PORT);
+            pool.borrow(address, PORT);
+            fail("Device connection limit not enforced");
+        }
+        catch (ModbusIOException e) {
+            // Expected
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot borrow - %s", e.getMessage()));
+        }
+        finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testBrokenConnectionDiscarded() {
+        TCPMasterConnectionPool pool = new TCPMasterConnectionPool();
+        try {
+            InetAddress address = InetAddress.getByName(LOCALHOST);
+            TCPMasterConnection connection = pool.borrow(address, PORT);
+            connection.close();
+            pool.release(connection);
+            assertEquals("Closed connection kept", 0, pool.getIdleCount());
+            TCPMasterConnection other = pool.borrow(address, PORT);
+            assertTrue("Borrowed connection not open", other.isConnected());
+            pool.release(other);
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot borrow - %s", e.getMessage()));
+        }
+        finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testIdleEviction() {
+        TCPMasterConnectionPool pool = new TCPMasterConnectionPool();
+        pool.setIdleTimeout(50);
+        try {
+            TCPMasterConnection connection = pool.borrow(InetAddress.getByName(LOCALHOST), PORT);
+            pool.release(connection);
+            Thread.sleep(100);
+            pool.evictIdle();
+            assertEquals("Idle connection not evicted", 0, pool.getIdleCount());
+            assertTrue("Evicted connection still open", !connection.isConnected());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot borrow - %s", e.getMessage()));
+        }
+        finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testSharedPoolMasters() {
+        final TCPMasterConnectionPool pool = new TCPMasterConnectionPool(2);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < THREADS; i++) {
+                final int register = i % 5;
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        ModbusTCPMaster pooled = new ModbusTCPMaster(LOCALHOST, PORT, pool);
+                        pooled.connect();
+                        try {
+                            int value = 0;
+                            for (int j = 0; j < READS; j++) {
+                                value = pooled.readMultipleRegisters(UNIT_ID, register, 1)[0].getValue();
+                                assertTrue("Device connection limit exceeded", pool.getActiveCount() <= 2);
+                            }
+                            return value;
+                        }
+                        finally {
+                            pooled.disconnect();
+                        }
+                    }
+                }));
+            }
+            int[] expected = {251, 1111, 2222, 3333, 4444};
+            for (int i = 0; i < THREADS; i++) {
+                assertEquals("Incorrect value for holding register " + i % 5, expected[i % 5], (int)results.get(i).get());
+            }
+            assertEquals("Connections left borrowed", 0, pool.getActiveCount());
+            assertTrue("Too many connections opened", pool.getIdleCount() <= 2);
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+        finally {
+            executor.shutdown();
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.net.ModbusTCPListener;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests the connection limits and rejection policies of the TCP
+ * listener
+ */
+public class TestModbusTCPListenerLimits extends AbstractTestModbus {
+
+    private List<ModbusTCPMaster> masters = new ArrayList<ModbusTCPMaster>();
+    private ModbusTCPListener tcpListener;
+
+    @Before
+    public void setUpProcessImage() {
+        getSimpleProcessImage();
+    }
+
+    @After
+    public void tearDownSlave() {
+        for (ModbusTCPMaster master : masters) {
+            master.disconnect();
+        }
+        masters.clear();
+        if (listener != null && listener.isListening()) {
+            listener.stop();
+        }
+        listener = null;
+    }
+
+    @Test
+    public void testMaxConnectionsBusy() throws Exception {
+        startListener(new ModbusTCPListener(5, InetAddress.getByAddress(new byte[]{0, 0, 0, 0})));
+        tcpListener.setMaxConnections(2);
+        tcpListener.setRejectionPolicy(ModbusTCPListener.REJECT_BUSY);
+        read(connect());
+        read(connect());
+        assertEquals("Both connections should be counted", 2, tcpListener.getConnectionCount());
+
+        try {
+            read(connect());
+            fail("Third connection should have been rejected");
+        }
+        catch (ModbusSlaveException e) {
+            assertEquals("Rejected connection should be answered as busy", Modbus.SLAVE_BUSY_EXCEPTION, e.getType());
+        }
+        assertEquals(1, tcpListener.getRejectedCount());
+
+        // Room is made when a connection finishes
+        masters.remove(0).disconnect();
+        waitForConnectionCount(1);
+        read(connect());
+    }
+
+    @Test
+    public void testMaxConnectionsPerAddressClose() throws Exception {
+        startListener(new ModbusTCPListener(5, InetAddress.getByAddress(new byte[]{0, 0, 0, 0})));
+        tcpListener.setMaxConnectionsPerAddress(1);
+        read(connect());
+        try {
+            read(connect());
+            fail("Second connection from the same address should have been rejected");
+        }
+        catch (ModbusSlaveException e) {
+            fail("Rejected connection should have been closed, not answered");
+        }
+        catch (ModbusException e) {
+            // Expected
+        }
+        assertEquals(1, tcpListener.getRejectedCount());
+    }
+
+    @Test
+    public void testBoundedQueue() throws Exception {
+        startListener(new ModbusTCPListener(1, 1, InetAddress.getByAddress(new byte[]{0, 0, 0, 0})));
+        tcpListener.setRejectionPolicy(ModbusTCPListener.REJECT_BUSY);
+        read(connect());
+
+        // The only thread is busy with the first connection, so the second waits in the queue
+        connect();
+        waitForConnectionCount(2);
+        assertEquals("Second connection should be waiting for a thread", 1, tcpListener.getQueueDepth());
+
+        try {
+            read(connect());
+            fail("Third connection should have been rejected");
+        }
+        catch (ModbusSlaveException e) {
+            assertEquals("Rejected connection should be answered as busy", Modbus.SLAVE_BUSY_EXCEPTION, e.getType());
+        }
+        assertEquals(1, tcpListener.getRejectedCount());
+    }
+
+    /**
+     * Starts a listener on the test port
+     *
+     * @param tcpListener Listener to start
+     *
+     * @throws InterruptedException If interrupted while it starts
+     */
+    private void startListener(ModbusTCPListener tcpListener) throws InterruptedException {
+        this.tcpListener = tcpListener;
+        listener = tcpListener;
+        listener.setPort(PORT);
+        new Thread(listener).start();
+        Thread.sleep(500);
+        assertTrue("Listener did not start", listener.isListening());
+    }
+
+    /**
+     * Connects a master to the listener
+     *
+     * @return Master
+     *
+     * @throws Exception If it cannot connect
+     */
+    private ModbusTCPMaster connect() throws Exception {
+        ModbusTCPMaster master = new ModbusTCPMaster(LOCALHOST, PORT);
+        master.connect();
+        masters.add(master);
+        return master;
+    }
+
+    /**
+     * Reads a register through a master
+     *
+     * @param master Master to read with
+     *
+     * @throws ModbusException If the read fails
+     */
+    private static void read(ModbusTCPMaster master) throws ModbusException {
+        assertEquals("Incorrect value for holding register 3", 3333, master.readMultipleRegisters(UNIT_ID, 3, 1)[0].getValue());
+    }
+
+    /**
+     * Waits for the listener to count the connections
+     *
+     * @param count Number of connections to wait for
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private void waitForConnectionCount(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && tcpListener.getConnectionCount() != count; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(count, tcpListener.getConnectionCount());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransport;
+import com.ghgande.j2mod.modbus.procimg.InputRegister;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.util.BitVector;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests the asynchronous TCP master features of the library
+ */
+public class TestModbusTCPMasterAsync extends AbstractTestModbusTCPMaster {
+
+    private static final int REQUESTS = 200;
+
+    @Test
+    public void testReadAsync() {
+        try {
+            CompletableFuture<BitVector> coils = master.readCoilsAsync(UNIT_ID, 0, 2);
+            CompletableFuture<InputRegister[]> inputs = master.readInputRegistersAsync(UNIT_ID, 0, 1);
+            CompletableFuture<Register[]> registers = master.readMultipleRegistersAsync(UNIT_ID, 0, 5);
+            assertEquals("Incorrect status for coil 0", true, coils.get(5, TimeUnit.SECONDS).getBit(0));
+            assertEquals("Incorrect status for coil 1", false, coils.get(5, TimeUnit.SECONDS).getBit(1));
+            assertEquals("Incorrect value for input register 0", 45, inputs.get(5, TimeUnit.SECONDS)[0].getValue());
+            assertEquals("Incorrect value for holding register 4", 4444, registers.get(5, TimeUnit.SECONDS)[4].getValue());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testWriteAsync() {
+        try {
+            master.writeSingleRegisterAsync(UNIT_ID, 2, new SimpleRegister(5555)).get(5, TimeUnit.SECONDS);
+            assertEquals("Incorrect value for holding register 2", 5555, master.readMultipleRegistersAsync(UNIT_ID, 2, 1).get(5, TimeUnit.SECONDS)[0].getValue());
+            master.writeSingleRegisterAsync(UNIT_ID, 2, new SimpleRegister(2222)).get(5, TimeUnit.SECONDS);
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot write - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testSlaveExceptionAsync() {
+        try {
+            master.readMultipleRegistersAsync(UNIT_ID, 5, 1).get(5, TimeUnit.SECONDS);
+            fail("Failed check for missing holding register 5");
+        }
+        catch (ExecutionException e) {
+            assertTrue("Expected a slave exception", e.getCause() instanceof ModbusSlaveException);
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testPipelinedReadsAsync() {
+        ModbusTCPTransport transport = (ModbusTCPTransport)master.getTransport();
+        transport.setPipelineWindow(8);
+        try {
+            List<CompletableFuture<Register[]>> results = new ArrayList<CompletableFuture<Register[]>>();
+            for (int i = 0; i < REQUESTS; i++) {
+                results.add(master.readMultipleRegistersAsync(UNIT_ID, i % 5, 1));
+            }
+            int[] expected = {251, 1111, 2222, 3333, 4444};
+            for (int i = 0; i < REQUESTS; i++) {
+                assertEquals("Incorrect value for holding register " + i % 5, expected[i % 5], results.get(i).get(5, TimeUnit.SECONDS)[0].getValue());
+            }
+            assertEquals("Transactions left outstanding", 0, transport.getOutstandingCount());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+        finally {
+            transport.setPipelineWindow(1);
+        }
+    }
+
+    @Test
+    public void testCancelAsync() {
+        try {
+            CompletableFuture<Register[]> first = master.readMultipleRegistersAsync(UNIT_ID, 0, 1);
+            CompletableFuture<Register[]> cancelled = master.readMultipleRegistersAsync(UNIT_ID, 1, 1);
+            cancelled.cancel(false);
+            assertEquals("Incorrect value for holding register 0", 251, first.get(5, TimeUnit.SECONDS)[0].getValue());
+            assertTrue("Request not cancelled", cancelled.isCancelled());
+            assertEquals("Master unusable after cancel", 3333, master.readMultipleRegistersAsync(UNIT_ID, 3, 1).get(5, TimeUnit.SECONDS)[0].getValue());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransport;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests the pipelined mode of the TCP transport
+ */
+public class TestModbusTCPMasterPipelined extends AbstractTestModbusTCPMaster {
+
+    private static final int THREADS = 16;
+    private static final int READS = 50;
+
+    @Test
+    public void testPipelinedReads() {
+        final ModbusTCPTransport transport = (ModbusTCPTransport)master.getTransport();
+        transport.setPipelineWindow(8);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < THREADS; i++) {
+                final int register = i % 5;
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        ModbusTCPTransaction trans = (ModbusTCPTransaction)transport.createTransaction();
+                        int value = 0;
+                        for (int j = 0; j < READS; j++) {
+                            ReadMultipleRegistersRequest req = new ReadMultipleRegistersRequest(register, 1);
+                            req.setUnitID(UNIT_ID);
+                            trans.setRequest(req);
+                            trans.execute();
+                            ReadMultipleRegistersResponse res = (ReadMultipleRegistersResponse)trans.getResponse();
+                            assertEquals("Response matched to the wrong request", req.getTransactionID(), res.getTransactionID());
+                            assertTrue("Transaction ID out of range", res.getTransactionID() > 0 && res.getTransactionID() <= Modbus.MAX_TRANSACTION_ID);
+                            value = res.getRegisterValue(0);
+                        }
+                        return value;
+                    }
+                }));
+            }
+            int[] expected = {251, 1111, 2222, 3333, 4444};
+            for (int i = 0; i < THREADS; i++) {
+                assertEquals("Incorrect value for holding register " + i % 5, expected[i % 5], (int)results.get(i).get());
+            }
+            assertEquals("Transactions left outstanding", 0, transport.getOutstandingCount());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+        finally {
+            executor.shutdown();
+            transport.setPipelineWindow(1);
+        }
+    }
+
+    @Test
+    public void testPipelinedSlaveException() {
+        ModbusTCPTransport transport = (ModbusTCPTransport)master.getTransport();
+        transport.setPipelineWindow(4);
+        try {
+            ModbusTCPTransaction trans = (ModbusTCPTransaction)transport.createTransaction();
+            ReadMultipleRegistersRequest req = new ReadMultipleRegistersRequest(5, 1);
+            req.setUnitID(UNIT_ID);
+            trans.setRequest(req);
+            trans.execute();
+            fail("Failed check for missing holding register 5");
+        }
+        catch (ModbusSlaveException e) {
+            // Expected
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+        finally {
+            transport.setPipelineWindow(1);
+        }
+    }
+
+    @Test
+    public void testInvalidPipelineWindow() {
+        try {
+            ((ModbusTCPTransport)master.getTransport()).setPipelineWindow(0);
+            fail("Invalid pipeline window accepted");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
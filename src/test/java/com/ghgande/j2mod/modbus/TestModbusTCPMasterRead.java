@@ -156,6 +156,36 @@ public class TestModbusTCPMasterRead extends AbstractTestModbusTCPMaster {
         }
     }
 
+    @Test
+    public void testReadRegistersIntoArray() {
+        try {
+            int[] values = new int[7];
+            assertEquals("Incorrect number of holding registers read", 5, master.readMultipleRegisters(UNIT_ID, 0, 5, values, 2));
+            assertEquals("Failed to read holding register 1 into array", 251, values[2]);
+            assertEquals("Failed to read holding register 5 into array", 4444, values[6]);
+            assertEquals("Incorrect number of input registers read", 2, master.readInputRegisters(UNIT_ID, 1, 2, values, 0));
+            assertEquals("Failed to read input register 2 into array", 9999, values[0]);
+            assertEquals("Failed to read input register 3 into array", 8888, values[1]);
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testReadBitsIntoArray() {
+        try {
+            long[] bits = new long[1];
+            assertEquals("Incorrect number of coils read", 2, master.readCoils(UNIT_ID, 0, 2, bits));
+            assertEquals("Failed to read coils into array", 1L, bits[0]);
+            assertEquals("Incorrect number of discretes read", 8, master.readInputDiscretes(UNIT_ID, 0, 8, bits));
+            assertEquals("Failed to read discretes into array", 0xFAL, bits[0]);
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
     @Test
     public void testBadUnitIdRequest() {
         try {
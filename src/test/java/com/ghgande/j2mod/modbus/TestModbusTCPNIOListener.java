@@ -0,0 +1,225 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransport;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.net.ModbusTCPNIOListener;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests the non-blocking TCP listener
+ */
+public class TestModbusTCPNIOListener extends AbstractTestModbus {
+
+    private static final int CLIENTS = 20;
+    private static final int BURST = 200;
+    private static final int OTHER_PORT = PORT + 1;
+    private static ModbusTCPMaster master;
+
+    @BeforeClass
+    public static void setUpSlave() {
+        try {
+            getSimpleProcessImage();
+            listener = new ModbusTCPNIOListener(2, 5);
+            listener.setListening(true);
+            listener.setPort(PORT);
+            new Thread(listener).start();
+            Thread.sleep(500);
+            master = new ModbusTCPMaster(LOCALHOST, PORT);
+            master.connect();
+        }
+        catch (Exception e) {
+            tearDownSlave();
+            fail(String.format("Cannot initialise tests - %s", e.getMessage()));
+        }
+    }
+
+    @AfterClass
+    public static void tearDownSlave() {
+        if (master != null) {
+            master.disconnect();
+        }
+        if (listener != null && listener.isListening()) {
+            listener.stop();
+        }
+    }
+
+    @Test
+    public void testReadHoldingRegisters() {
+        try {
+            assertEquals("Incorrect value for holding register 0", 251, master.readMultipleRegisters(UNIT_ID, 0, 1)[0].getValue());
+            assertEquals("Incorrect value for holding register 4", 4444, master.readMultipleRegisters(UNIT_ID, 4, 1)[0].getValue());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testReadInvalidHoldingRegister() {
+        try {
+            master.readMultipleRegisters(UNIT_ID, 5, 1);
+            fail("Failed check for missing holding register 5");
+        }
+        catch (ModbusSlaveException e) {
+            // Expected
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testWriteRegister() {
+        try {
+            master.writeSingleRegister(UNIT_ID, 1, new SimpleRegister(5555));
+            assertEquals("Incorrect value for holding register 1", 5555, master.readMultipleRegisters(UNIT_ID, 1, 1)[0].getValue());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot write - %s", e.getMessage()));
+        }
+        finally {
+            try {
+                master.writeSingleRegister(UNIT_ID, 1, new SimpleRegister(1111));
+            }
+            catch (Exception e) {
+                fail(String.format("Cannot restore register - %s", e.getMessage()));
+            }
+        }
+    }
+
+    @Test
+    public void testManyConnections() {
+        List<ModbusTCPMaster> masters = new ArrayList<ModbusTCPMaster>();
+        try {
+            for (int i = 0; i < CLIENTS; i++) {
+                ModbusTCPMaster client = new ModbusTCPMaster(LOCALHOST, PORT);
+                client.connect();
+                masters.add(client);
+            }
+            for (ModbusTCPMaster client : masters) {
+                assertEquals("Incorrect value for holding register 3", 3333, client.readMultipleRegisters(UNIT_ID, 3, 1)[0].getValue());
+            }
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+        finally {
+            for (ModbusTCPMaster client : masters) {
+                client.disconnect();
+            }
+        }
+    }
+
+    @Test
+    public void testPipelinedReads() {
+        ModbusTCPTransport transport = (ModbusTCPTransport)master.getTransport();
+        transport.setPipelineWindow(4);
+        try {
+            ModbusTCPTransaction trans = (ModbusTCPTransaction)transport.createTransaction();
+            for (int i = 0; i < 10; i++) {
+                ReadMultipleRegistersRequest req = new ReadMultipleRegistersRequest(i % 5, 1);
+                req.setUnitID(UNIT_ID);
+                trans.setRequest(req);
+                trans.execute();
+                ReadMultipleRegistersResponse res = (ReadMultipleRegistersResponse)trans.getResponse();
+                assertEquals("Response matched to the wrong request", req.getTransactionID(), res.getTransactionID());
+            }
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+        finally {
+            transport.setPipelineWindow(1);
+        }
+    }
+
+    @Test
+    public void testStopBeforeRun() throws Exception {
+        ModbusTCPNIOListener early = new ModbusTCPNIOListener(2, 1);
+        early.setPort(OTHER_PORT);
+        early.stop();
+        Thread thread = new Thread(early);
+        thread.start();
+        thread.join(5000);
+        assertFalse("Listener ran after being stopped", thread.isAlive());
+        assertFalse("Listener is listening after being stopped", early.isListening());
+        assertEquals("Event loops left open", 0, early.getConnectionCount());
+    }
+
+    @Test
+    public void testBurstBeforeReading() {
+        Socket socket = null;
+        try {
+            socket = new Socket(LOCALHOST, PORT);
+            socket.setSoTimeout(5000);
+
+            // Far more responses than a connection buffers, so the workers
+            // have to wait for the client to read some of them
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            for (int i = 0; i < BURST; i++) {
+                ReadMultipleRegistersRequest req = new ReadMultipleRegistersRequest(0, 5);
+                req.setUnitID(UNIT_ID);
+                req.setTransactionID(i);
+                req.writeTo(out);
+            }
+            out.flush();
+            Thread.sleep(200);
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            for (int i = 0; i < BURST; i++) {
+                ReadMultipleRegistersResponse res = new ReadMultipleRegistersResponse();
+                res.setHeadless(false);
+                res.readFrom(in);
+                assertEquals("Responses out of order", i, res.getTransactionID());
+                assertEquals("Incorrect value for holding register 4", 4444, res.getRegisterValue(4));
+            }
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+        finally {
+            if (socket != null) {
+                try {
+                    socket.close();
+                }
+                catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+}
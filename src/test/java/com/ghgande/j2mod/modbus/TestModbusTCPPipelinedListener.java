@@ -0,0 +1,257 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransport;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.msg.WriteSingleRegisterRequest;
+import com.ghgande.j2mod.modbus.net.ModbusTCPListener;
+import com.ghgande.j2mod.modbus.net.TCPConnectionHandler;
+import com.ghgande.j2mod.modbus.net.TCPSlaveConnection;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.util.ModbusExecutors;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests a TCP listener answering the pipelined requests of a
+ * connection side by side
+ */
+public class TestModbusTCPPipelinedListener extends AbstractTestModbus {
+
+    private static final int SLOW_UNIT_ID = UNIT_ID + 1;
+    private static final int SLOW_DELAY = 1000;
+    private static final int WINDOW = 8;
+
+    private ModbusTCPMaster master;
+    private ModbusTCPTransport transport;
+
+    @Before
+    public void setUpSlave() throws Exception {
+        ModbusCoupler coupler = new ModbusCoupler();
+        coupler.setProcessImage(createProcessImage(UNIT_ID));
+        coupler.setProcessImage(new SimpleProcessImage(SLOW_UNIT_ID) {
+            {
+                addRegister(new SimpleRegister(9999));
+            }
+
+            @Override
+            public Register[] getRegisterRange(int ref, int count) {
+                try {
+                    Thread.sleep(SLOW_DELAY);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getRegisterRange(ref, count);
+            }
+        });
+        ModbusTCPListener tcpListener = new ModbusTCPListener(5);
+        tcpListener.setCoupler(coupler);
+        tcpListener.setPipelineWindow(WINDOW);
+        listener = tcpListener;
+        listener.setPort(PORT);
+        new Thread(listener).start();
+        Thread.sleep(500);
+        assertTrue("Listener did not start", listener.isListening());
+
+        master = new ModbusTCPMaster(LOCALHOST, PORT);
+        master.connect();
+        transport = (ModbusTCPTransport)master.getTransport();
+        transport.setPipelineWindow(WINDOW);
+    }
+
+    @After
+    public void tearDownSlave() {
+        if (master != null) {
+            master.disconnect();
+        }
+        if (listener != null && listener.isListening()) {
+            listener.stop();
+        }
+        listener = null;
+    }
+
+    @Test
+    public void testUnitsAnsweredSideBySide() throws Exception {
+        CompletableFuture<ModbusResponse> slow = transport.sendPipelined(read(SLOW_UNIT_ID, 0));
+        CompletableFuture<ModbusResponse> fast = transport.sendPipelined(read(UNIT_ID, 3));
+
+        // The fast unit is answered while the slow one is still working
+        assertEquals("Incorrect value for holding register 3", 3333, value(fast.get(SLOW_DELAY / 2, TimeUnit.MILLISECONDS)));
+        assertFalse("Slow unit answered too soon", slow.isDone());
+        assertEquals("Incorrect value from the slow unit", 9999, value(slow.get(SLOW_DELAY * 3, TimeUnit.MILLISECONDS)));
+    }
+
+    @Test
+    public void testUnitOrderKept() throws Exception {
+        List<CompletableFuture<ModbusResponse>> reads = new ArrayList<CompletableFuture<ModbusResponse>>();
+        for (int i = 0; i < WINDOW / 2; i++) {
+            WriteSingleRegisterRequest write = new WriteSingleRegisterRequest(1, new SimpleRegister(i));
+            write.setUnitID(UNIT_ID);
+            transport.sendPipelined(write);
+            reads.add(transport.sendPipelined(read(UNIT_ID, 1)));
+        }
+
+        // Each read follows the write sent just before it
+        for (int i = 0; i < reads.size(); i++) {
+            assertEquals("Read overtook a write to the same unit", i, value(reads.get(i).get(Modbus.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS)));
+        }
+    }
+
+    @Test
+    public void testWindowBoundsRequestsRead() throws Exception {
+        final CountDownLatch answer = new CountDownLatch(1);
+        final ModbusCoupler coupler = new ModbusCoupler();
+        coupler.setProcessImage(new SimpleProcessImage(UNIT_ID) {
+            {
+                addRegister(new SimpleRegister(251));
+            }
+
+            @Override
+            public Register[] getRegisterRange(int ref, int count) {
+                try {
+                    answer.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getRegisterRange(ref, count);
+            }
+        });
+
+        ServerSocket server = new ServerSocket(0);
+        ModbusTCPMaster client = new ModbusTCPMaster(LOCALHOST, server.getLocalPort());
+        ExecutorService executor = ModbusExecutors.newThreadPerTaskExecutor("Modbus TCP request");
+        try {
+            client.connect();
+            final Socket incoming = server.accept();
+            final AtomicInteger requestsRead = new AtomicInteger();
+            final ModbusTCPTransport countingTransport = new ModbusTCPTransport(incoming) {
+                @Override
+                public ModbusRequest readRequest() throws ModbusIOException {
+                    ModbusRequest request = super.readRequest();
+                    requestsRead.incrementAndGet();
+                    return request;
+                }
+            };
+            countingTransport.setCoupler(coupler);
+            TCPSlaveConnection connection = new TCPSlaveConnection(incoming) {
+                @Override
+                public AbstractModbusTransport getModbusTransport() {
+                    return countingTransport;
+                }
+            };
+            new Thread(new TCPConnectionHandler(connection, executor, WINDOW)).start();
+
+            // Send more than the window while the unit holds on to the first request
+            ModbusTCPTransport clientTransport = (ModbusTCPTransport)client.getTransport();
+            clientTransport.setPipelineWindow(WINDOW + 2);
+            List<CompletableFuture<ModbusResponse>> reads = new ArrayList<CompletableFuture<ModbusResponse>>();
+            for (int i = 0; i < WINDOW + 2; i++) {
+                reads.add(clientTransport.sendPipelined(read(UNIT_ID, 0)));
+            }
+            Thread.sleep(500);
+            assertEquals("Read more requests than the pipeline window", WINDOW, requestsRead.get());
+
+            answer.countDown();
+            for (CompletableFuture<ModbusResponse> read : reads) {
+                assertEquals("Incorrect value for holding register 0", 251, value(read.get(Modbus.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS)));
+            }
+            assertEquals("Not all requests were read", WINDOW + 2, requestsRead.get());
+        }
+        finally {
+            answer.countDown();
+            client.disconnect();
+            server.close();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRequestsOnOneConnection() throws Exception {
+        transport.setPipelineWindow(1);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("Incorrect value for holding register " + i, i == 0 ? 251 : i * 1111,
+                    master.readMultipleRegisters(UNIT_ID, i, 1)[0].getValue());
+        }
+    }
+
+    /**
+     * Creates a request to read one holding register
+     *
+     * @param unitID Unit to read from
+     * @param ref    Register to read
+     *
+     * @return Request
+     */
+    private static ReadMultipleRegistersRequest read(int unitID, int ref) {
+        ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(ref, 1);
+        request.setUnitID(unitID);
+        return request;
+    }
+
+    /**
+     * Returns the register value of a read response
+     *
+     * @param response Response
+     *
+     * @return Value of the first register
+     */
+    private static int value(ModbusResponse response) {
+        return ((ReadMultipleRegistersResponse)response).getRegisterValue(0);
+    }
+
+    /**
+     * Creates a process image with the registers of the test image
+     *
+     * @param unitID Unit ID of the image
+     *
+     * @return Process image
+     */
+    private static SimpleProcessImage createProcessImage(int unitID) {
+        SimpleProcessImage spi = new SimpleProcessImage(unitID);
+        spi.addRegister(new SimpleRegister(251));
+        spi.addRegister(new SimpleRegister(1111));
+        spi.addRegister(new SimpleRegister(2222));
+        spi.addRegister(new SimpleRegister(3333));
+        spi.addRegister(new SimpleRegister(4444));
+        return spi;
+    }
+}
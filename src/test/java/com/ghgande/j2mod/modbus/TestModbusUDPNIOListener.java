@@ -0,0 +1,195 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusUDPMaster;
+import com.ghgande.j2mod.modbus.net.ModbusUDPNIOListener;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import com.ghgande.j2mod.modbus.utils.TestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests the UDP listener built on a datagram channel
+ */
+public class TestModbusUDPNIOListener extends AbstractTestModbus {
+
+    private static final int CLIENTS = 8;
+    private static final int READS = 50;
+    private static final int DROP_TIMEOUT = 5000;
+    private static ModbusUDPNIOListener udpListener;
+    private static ModbusUDPMaster master;
+
+    @BeforeClass
+    public static void setUpSlave() {
+        try {
+            getSimpleProcessImage();
+            udpListener = new ModbusUDPNIOListener(4);
+            listener = udpListener;
+            listener.setPort(PORT);
+
+            // Reused messages must answer exactly as new ones do
+            listener.setMessagePooling(true);
+            new Thread(listener).start();
+            Thread.sleep(500);
+            assertTrue("Listener did not start", listener.isListening());
+            master = new ModbusUDPMaster(TestUtils.getFirstIp4Address(), PORT);
+            master.connect();
+        }
+        catch (Exception e) {
+            tearDownSlave();
+            fail(String.format("Cannot initialise tests - %s", e.getMessage()));
+        }
+    }
+
+    @AfterClass
+    public static void tearDownSlave() {
+        if (master != null) {
+            master.disconnect();
+        }
+        if (listener != null && listener.isListening()) {
+            listener.stop();
+        }
+    }
+
+    @Test
+    public void testReadHoldingRegisters() {
+        try {
+            assertEquals("Incorrect value for holding register 0", 251, master.readMultipleRegisters(UNIT_ID, 0, 1)[0].getValue());
+            assertEquals("Incorrect value for holding register 4", 4444, master.readMultipleRegisters(UNIT_ID, 4, 1)[0].getValue());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testReadInvalidHoldingRegister() {
+        try {
+            master.readMultipleRegisters(UNIT_ID, 5, 1);
+            fail("Failed check for missing holding register 5");
+        }
+        catch (ModbusSlaveException e) {
+            // Expected
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testWriteRegister() {
+        try {
+            master.writeSingleRegister(UNIT_ID, 2, new SimpleRegister(5555));
+            assertEquals("Incorrect value for holding register 2", 5555, master.readMultipleRegisters(UNIT_ID, 2, 1)[0].getValue());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot write - %s", e.getMessage()));
+        }
+        finally {
+            try {
+                master.writeSingleRegister(UNIT_ID, 2, new SimpleRegister(2222));
+            }
+            catch (Exception e) {
+                fail(String.format("Cannot restore register - %s", e.getMessage()));
+            }
+        }
+    }
+
+    @Test
+    public void testClientsWithSameTransactionIDs() {
+        ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            // Every master numbers its transactions from the same start
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < CLIENTS; i++) {
+                final int register = i % 5;
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        ModbusUDPMaster client = new ModbusUDPMaster(TestUtils.getFirstIp4Address(), PORT);
+                        client.connect();
+                        try {
+                            int value = 0;
+                            for (int j = 0; j < READS; j++) {
+                                value = client.readMultipleRegisters(UNIT_ID, register, 1)[0].getValue();
+                                assertEquals("Answer sent to the wrong master", register == 0 ? 251 : register * 1111, value);
+                            }
+                            return value;
+                        }
+                        finally {
+                            client.disconnect();
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < CLIENTS; i++) {
+                assertEquals("Incorrect value for holding register " + i % 5, i % 5 == 0 ? 251 : (i % 5) * 1111, (int)results.get(i).get());
+            }
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDropInvalidDatagram() {
+        DatagramSocket socket = null;
+        try {
+            long dropped = udpListener.getDroppedCount();
+            socket = new DatagramSocket();
+            byte[] junk = {0, 1, 0, 0, 0, 100, 15, 3};
+            socket.send(new DatagramPacket(junk, junk.length, InetAddress.getByName(TestUtils.getFirstIp4Address()), PORT));
+
+            // The listener carries on answering after dropping it
+            assertEquals("Incorrect value for holding register 3", 3333, master.readMultipleRegisters(UNIT_ID, 3, 1)[0].getValue());
+
+            // Another worker may answer the read before the junk is counted
+            long deadline = System.currentTimeMillis() + DROP_TIMEOUT;
+            while (udpListener.getDroppedCount() == dropped && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals("Invalid datagram not dropped", dropped + 1, udpListener.getDroppedCount());
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+        finally {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.net.ModbusUDPNIOListener;
+import com.ghgande.j2mod.modbus.net.UDPMasterMultiplexer;
+import com.ghgande.j2mod.modbus.procimg.SimpleProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests a UDP master talking to several slaves over one channel
+ */
+public class TestUDPMasterMultiplexer extends AbstractTestModbus {
+
+    private static final int OTHER_PORT = PORT + 1;
+    private static final int LATE_PORT = PORT + 2;
+    private static final int REQUESTS = 200;
+
+    private final List<ModbusUDPNIOListener> listeners = new ArrayList<ModbusUDPNIOListener>();
+    private UDPMasterMultiplexer multiplexer;
+    private InetSocketAddress device;
+    private InetSocketAddress otherDevice;
+
+    @Before
+    public void setUpSlaves() throws Exception {
+        startListener(PORT, 1);
+        startListener(OTHER_PORT, 2);
+        Thread.sleep(500);
+        device = new InetSocketAddress(InetAddress.getByName(LOCALHOST), PORT);
+        otherDevice = new InetSocketAddress(InetAddress.getByName(LOCALHOST), OTHER_PORT);
+        multiplexer = new UDPMasterMultiplexer();
+        multiplexer.open();
+    }
+
+    @After
+    public void tearDownSlaves() {
+        multiplexer.close();
+        for (ModbusUDPNIOListener udpListener : listeners) {
+            udpListener.stop();
+        }
+        listeners.clear();
+    }
+
+    @Test
+    public void testManyOutstandingRequests() throws Exception {
+        List<CompletableFuture<ModbusResponse>> responses = new ArrayList<CompletableFuture<ModbusResponse>>();
+        for (int i = 0; i < REQUESTS; i++) {
+            responses.add(multiplexer.send(i % 2 == 0 ? device : otherDevice, read(i % 2)));
+        }
+
+        // Both devices number their answers from the same transaction IDs
+        for (int i = 0; i < REQUESTS; i++) {
+            ReadMultipleRegistersResponse response = (ReadMultipleRegistersResponse)responses.get(i).get(Modbus.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+            assertEquals("Response from the wrong device", (i % 2 == 0 ? 1 : 2) * 100 + i % 2, response.getRegisterValue(0));
+        }
+        assertEquals("Requests left outstanding", 0, multiplexer.getOutstandingCount());
+    }
+
+    @Test
+    public void testSharedRequest() throws Exception {
+        final ReadMultipleRegistersRequest request = read(1);
+        request.setTransactionID(1234);
+        List<CompletableFuture<ModbusResponse>> deviceResponses = new CopyOnWriteArrayList<CompletableFuture<ModbusResponse>>();
+        List<CompletableFuture<ModbusResponse>> otherResponses = new CopyOnWriteArrayList<CompletableFuture<ModbusResponse>>();
+
+        // Threads sending the same request to both devices at once
+        Thread[] senders = new Thread[4];
+        for (int i = 0; i < senders.length; i++) {
+            final InetSocketAddress target = i % 2 == 0 ? device : otherDevice;
+            final List<CompletableFuture<ModbusResponse>> responses = i % 2 == 0 ? deviceResponses : otherResponses;
+            senders[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < REQUESTS / 4; j++) {
+                        try {
+                            responses.add(multiplexer.send(target, request));
+                        }
+                        catch (ModbusIOException e) {
+                            fail(String.format("Cannot send - %s", e.getMessage()));
+                        }
+                    }
+                }
+            });
+            senders[i].start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        assertEquals("Requests not sent", REQUESTS, deviceResponses.size() + otherResponses.size());
+        for (CompletableFuture<ModbusResponse> response : deviceResponses) {
+            assertEquals("Response from the wrong device", 101, ((ReadMultipleRegistersResponse)response.get(Modbus.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS)).getRegisterValue(0));
+        }
+        for (CompletableFuture<ModbusResponse> response : otherResponses) {
+            assertEquals("Response from the wrong device", 201, ((ReadMultipleRegistersResponse)response.get(Modbus.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS)).getRegisterValue(0));
+        }
+        assertEquals("Transaction ID of the request was changed", 1234, request.getTransactionID());
+    }
+
+    @Test
+    public void testExecute() {
+        try {
+            assertEquals(101, ((ReadMultipleRegistersResponse)multiplexer.execute(device, read(1))).getRegisterValue(0));
+            assertEquals(200, ((ReadMultipleRegistersResponse)multiplexer.execute(otherDevice, read(0))).getRegisterValue(0));
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testSlaveException() {
+        try {
+            multiplexer.execute(device, read(5));
+            fail("Failed check for missing holding register 5");
+        }
+        catch (ModbusSlaveException e) {
+            // Expected
+        }
+        catch (Exception e) {
+            fail(String.format("Cannot read - %s", e.getMessage()));
+        }
+    }
+
+    @Test
+    public void testRetransmit() throws Exception {
+        multiplexer.setTimeout(200);
+        multiplexer.setRetries(5);
+        CompletableFuture<ModbusResponse> response = multiplexer.send(new InetSocketAddress(InetAddress.getByName(LOCALHOST), LATE_PORT), read(0));
+
+        // The slave only starts after the first request has been lost
+        Thread.sleep(300);
+        startListener(LATE_PORT, 3);
+        assertEquals(300, ((ReadMultipleRegistersResponse)response.get(Modbus.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS)).getRegisterValue(0));
+        assertTrue("Request was not sent again", multiplexer.getRetransmitCount() > 0);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        multiplexer.setTimeout(100);
+        multiplexer.setRetries(1);
+        try {
+            multiplexer.execute(new InetSocketAddress(InetAddress.getByName(LOCALHOST), LATE_PORT), read(0));
+            fail("Request to a missing slave was answered");
+        }
+        catch (ModbusIOException e) {
+            // Expected
+        }
+        assertEquals("Request was not sent again", 1, multiplexer.getRetransmitCount());
+        assertEquals("Requests left outstanding", 0, multiplexer.getOutstandingCount());
+    }
+
+    /**
+     * Starts a slave whose registers hold a multiple of 100 plus their
+     * reference
+     *
+     * @param port  Port to listen on
+     * @param value Multiple of 100
+     *
+     * @throws InterruptedException If interrupted while it starts
+     */
+    private void startListener(int port, int value) throws InterruptedException {
+        ModbusCoupler coupler = new ModbusCoupler();
+        SimpleProcessImage spi = new SimpleProcessImage(UNIT_ID);
+        spi.addRegister(new SimpleRegister(value * 100));
+        spi.addRegister(new SimpleRegister(value * 100 + 1));
+        coupler.setProcessImage(spi);
+        ModbusUDPNIOListener udpListener = new ModbusUDPNIOListener(2);
+        udpListener.setCoupler(coupler);
+        udpListener.setPort(port);
+        new Thread(udpListener).start();
+        listeners.add(udpListener);
+    }
+
+    /**
+     * Creates a request to read one holding register
+     *
+     * @param ref Register to read
+     *
+     * @return Request
+     */
+    private static ReadMultipleRegistersRequest read(int ref) {
+        ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(ref, 1);
+        request.setUnitID(UNIT_ID);
+        return request;
+    }
+}
@@ -94,6 +94,25 @@ public final class BitVectorTest {
         bv.forceSize(8000);
     }
 
+    @Test
+    public void testGetBits() {
+        for (int s = 1; s <= 130; s++) {
+            BitVector bv = new BitVector(s);
+            for (int i = 0; i < s; i += 3) {
+                bv.setBit(i, true);
+            }
+            long[] bits = new long[3];
+            bits[2] = -1;
+            Assert.assertEquals("Incorrect number of bits copied", s, bv.getBits(bits));
+            for (int i = 0; i < s; i++) {
+                Assert.assertEquals("Incorrect bit " + i + " of " + s, i % 3 == 0, ((bits[i / 64] >>> (i % 64)) & 1) != 0);
+            }
+            if (s <= 128) {
+                Assert.assertEquals("Unused word not preserved", -1, bits[2]);
+            }
+        }
+    }
+
     @Test
     public void testToString() {
         byte[] testData = new byte[8];
@@ -0,0 +1,122 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.util.CRC16;
+import com.ghgande.j2mod.modbus.util.ModbusUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public final class CRC16Test {
+
+    private static final int MAX_LENGTH = 300;
+
+    @Test
+    public void testCheckValue() {
+        Assert.assertEquals(0x4B37, CRC16.calculate("123456789".getBytes(), 0, 9));
+    }
+
+    @Test
+    public void testRTUFrame() {
+        // Read 10 holding registers from unit 1, sent with C5 CD on the end
+        byte[] frame = {0x01, 0x03, 0x00, 0x00, 0x00, 0x0A};
+        int crc = CRC16.calculate(frame, 0, frame.length);
+        Assert.assertEquals(0xC5, crc & 0xFF);
+        Assert.assertEquals(0xCD, crc >>> 8);
+        Assert.assertArrayEquals(new int[]{0xC5, 0xCD}, ModbusUtil.calculateCRC(frame, 0, frame.length));
+    }
+
+    @Test
+    public void testEmpty() {
+        Assert.assertEquals(CRC16.INITIAL, CRC16.calculate(new byte[0], 0, 0));
+        Assert.assertArrayEquals(new int[]{0xFF, 0xFF}, ModbusUtil.calculateCRC(new byte[4], 2, 2));
+    }
+
+    @Test
+    public void testEveryLengthAndOffset() {
+        byte[] data = randomBytes(MAX_LENGTH + 8);
+        for (int offset = 0; offset < 8; offset++) {
+            for (int length = 0; length <= MAX_LENGTH; length++) {
+                int expected = bitwise(data, offset, length);
+                Assert.assertEquals("Array of " + length + " at " + offset, expected, CRC16.calculate(data, offset, length));
+                Assert.assertArrayEquals(new int[]{expected & 0xFF, expected >>> 8}, ModbusUtil.calculateCRC(data, offset, offset + length));
+            }
+        }
+    }
+
+    @Test
+    public void testCalculateCRCEndIndex() {
+        // The end index is limited to the end of the array
+        byte[] data = randomBytes(20);
+        int expected = bitwise(data, 4, 16);
+        Assert.assertArrayEquals(new int[]{expected & 0xFF, expected >>> 8}, ModbusUtil.calculateCRC(data, 4, 100));
+    }
+
+    @Test
+    public void testByteBuffers() {
+        byte[] data = randomBytes(MAX_LENGTH);
+        for (int length = 0; length <= MAX_LENGTH; length += 7) {
+            int expected = bitwise(data, 3, length);
+
+            ByteBuffer heap = ByteBuffer.wrap(data, 3, length).slice();
+            Assert.assertEquals("Heap buffer of " + length, expected, CRC16.calculate(heap));
+            Assert.assertFalse("Heap buffer not consumed", heap.hasRemaining());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(length + 5);
+            direct.position(2);
+            direct.put(data, 3, length);
+            direct.flip();
+            direct.position(2);
+            Assert.assertEquals("Direct buffer of " + length, expected, CRC16.calculate(direct));
+            Assert.assertFalse("Direct buffer not consumed", direct.hasRemaining());
+        }
+    }
+
+    @Test
+    public void testIncremental() {
+        byte[] data = randomBytes(MAX_LENGTH);
+        int expected = bitwise(data, 0, data.length);
+        for (int split = 0; split <= data.length; split += 13) {
+            int crc = CRC16.update(CRC16.INITIAL, data, 0, split);
+            crc = CRC16.update(crc, ByteBuffer.wrap(data, split, data.length - split));
+            Assert.assertEquals("Split at " + split, expected, crc);
+        }
+        int crc = CRC16.INITIAL;
+        for (byte value : data) {
+            crc = CRC16.update(crc, value);
+        }
+        Assert.assertEquals("Byte at a time", expected, crc);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() {
+        CRC16.calculate(new byte[8], 4, 5);
+    }
+
+    /**
+     * Reference implementation working a bit at a time
+     *
+     * @param data   Bytes
+     * @param offset First byte
+     * @param length Number of bytes
+     *
+     * @return CRC
+     */
+    private static int bitwise(byte[] data, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc ^= data[i] & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+        }
+        return crc;
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,89 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.io.SerialBusTimer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class SerialBusTimerTest {
+
+    // Generous, so that a busy machine descheduling the thread doesn't fail the tests
+    private static final long MAX_OVERSHOOT_NANOS = 20000000;
+
+    @Test
+    public void testSlowLineIntervals() {
+        // 9600 8N1 has 10 bits a character
+        SerialBusTimer timer = new SerialBusTimer();
+        timer.configure(9600, 10);
+        Assert.assertEquals(1041667, timer.getCharacterNanos());
+        Assert.assertEquals(1562500, timer.getInterCharacterNanos());
+        Assert.assertEquals(3645834, timer.getInterFrameNanos());
+    }
+
+    @Test
+    public void testFastLineIntervals() {
+        SerialBusTimer timer = new SerialBusTimer();
+        timer.configure(115200, 11);
+        Assert.assertEquals(95486, timer.getCharacterNanos());
+        Assert.assertEquals(750000, timer.getInterCharacterNanos());
+        Assert.assertEquals(1750000, timer.getInterFrameNanos());
+    }
+
+    @Test
+    public void testUnconfigured() {
+        SerialBusTimer timer = new SerialBusTimer();
+        timer.bytesSent(100);
+        long start = System.nanoTime();
+        timer.awaitTransmitted();
+        timer.awaitSilentInterval();
+        Assert.assertTrue("Waited without a baud rate", System.nanoTime() - start < MAX_OVERSHOOT_NANOS);
+        Assert.assertEquals(0, timer.getBusyNanos());
+    }
+
+    @Test
+    public void testTransmitAndSilentInterval() {
+        SerialBusTimer timer = new SerialBusTimer();
+        timer.configure(115200, 10);
+        long frameNanos = 8 * timer.getCharacterNanos();
+
+        long start = System.nanoTime();
+        timer.bytesSent(8);
+        timer.awaitTransmitted();
+        long transmitted = System.nanoTime() - start;
+        Assert.assertTrue("Returned before the frame was sent", transmitted >= frameNanos);
+        Assert.assertTrue("Overshot the frame by " + (transmitted - frameNanos), transmitted - frameNanos < MAX_OVERSHOOT_NANOS);
+
+        timer.awaitSilentInterval();
+        long silent = System.nanoTime() - start;
+        long expected = frameNanos + timer.getInterFrameNanos();
+        Assert.assertTrue("Returned before the silent interval", silent >= expected);
+        Assert.assertTrue("Overshot the silent interval by " + (silent - expected), silent - expected < MAX_OVERSHOOT_NANOS);
+    }
+
+    @Test
+    public void testSilentIntervalAfterReceive() {
+        SerialBusTimer timer = new SerialBusTimer();
+        timer.configure(19200, 10);
+        long start = System.nanoTime();
+        timer.bytesReceived(4);
+        timer.awaitSilentInterval();
+        Assert.assertTrue("Returned before the silent interval", System.nanoTime() - start >= timer.getInterFrameNanos());
+    }
+
+    @Test
+    public void testUtilization() throws Exception {
+        SerialBusTimer timer = new SerialBusTimer();
+        timer.configure(115200, 10);
+        timer.resetStatistics();
+        timer.bytesSent(100);
+        timer.awaitTransmitted();
+        Thread.sleep(20);
+        long busy = timer.getBusyNanos();
+        Assert.assertEquals(100 * timer.getCharacterNanos(), busy);
+        double utilization = timer.getBusUtilization();
+        Assert.assertTrue("Utilisation " + utilization, utilization > 0.05 && utilization < 0.95);
+
+        timer.resetStatistics();
+        Assert.assertEquals(0, timer.getBusyNanos());
+        Assert.assertEquals(0.0, timer.getBusUtilization(), 0.0);
+    }
+}
@@ -0,0 +1,84 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.util.ThreadPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public final class ThreadPoolTest {
+
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    @Test
+    public void testExecute() throws Exception {
+        ThreadPool pool = new ThreadPool(2, 4);
+        try {
+            final CountDownLatch done = new CountDownLatch(3);
+            for (int i = 0; i < 3; i++) {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        done.countDown();
+                    }
+                });
+            }
+            Assert.assertTrue("Tasks were not run", done.await(5, TimeUnit.SECONDS));
+        }
+        finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        ThreadPool pool = new ThreadPool(1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        // Finish
+                    }
+                }
+            });
+            Assert.assertTrue("Task was not started", started.await(5, TimeUnit.SECONDS));
+            pool.execute(NOTHING);
+            try {
+                pool.execute(NOTHING);
+                Assert.fail("Task beyond the queue was accepted");
+            }
+            catch (RejectedExecutionException e) {
+                // Expected
+            }
+        }
+        finally {
+            release.countDown();
+            pool.close();
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testClosed() {
+        ThreadPool pool = new ThreadPool(1);
+        pool.close();
+        pool.execute(NOTHING);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoQueue() {
+        new ThreadPool(1, 0);
+    }
+}